@@ -30,6 +30,15 @@ import mclachlan.brewday.recipe.Recipe;
 
 public class BatchAnalyser
 {
+	private final RecipeRunCache runCache;
+
+	/*-------------------------------------------------------------------------*/
+	public BatchAnalyser(RecipeRunCache runCache)
+	{
+		this.runCache = runCache;
+	}
+
+	/*-------------------------------------------------------------------------*/
 	/**
 	 * Return a list of strings representing the analysis of estimates vs
 	 * measurements for the given batch.
@@ -43,19 +52,24 @@ public class BatchAnalyser
 		List<String> result = new ArrayList<String>();
 		Recipe recipe = Database.getInstance().getRecipes().get(batch.getRecipe());
 		EquipmentProfile equipmentProfile = Database.getInstance().getEquipmentProfiles().get(recipe.getEquipmentProfile());
-		Set<String> outputVolumes = recipe.getVolumes().getOutputVolumes();
+		Volumes estimates = runCache.getRun(recipe, equipmentProfile).getVolumes();
+		Set<String> outputVolumes = estimates.getOutputVolumes();
+
+		// the same recipe with full conversion, run once for all the mash steps
+		Volumes fullConversionVolumes = null;
 
 		// output analysis of mash steps
 		for (ProcessStep step : recipe.getSteps())
 		{
 			if (step instanceof Lauter)
 			{
-				Volumes fullConversionVolumes = new Volumes();
-
-				EquipmentProfile fullConversionProfile = new EquipmentProfile(equipmentProfile);
-				fullConversionProfile.setConversionEfficiency(new PercentageUnit(1));
+				if (fullConversionVolumes == null)
+				{
+					EquipmentProfile fullConversionProfile = new EquipmentProfile(equipmentProfile);
+					fullConversionProfile.setConversionEfficiency(new PercentageUnit(1));
 
-				recipe.run(fullConversionVolumes, fullConversionProfile, new ProcessLog());
+					fullConversionVolumes = runCache.getRun(recipe, fullConversionProfile).getVolumes();
+				}
 
 				String firstRunningsVolName = ((Lauter)step).getOutputFirstRunnings();
 				Volume firstRunnings = fullConversionVolumes.getVolume(firstRunningsVolName);
@@ -88,7 +102,7 @@ public class BatchAnalyser
 		// output analysis for the volumes packaged
 		for (String outputVolume : outputVolumes)
 		{
-			Volume estV = recipe.getVolumes().getVolume(outputVolume);
+			Volume estV = estimates.getVolume(outputVolume);
 			Volume measV = batch.getActualVolumes().getVolume(outputVolume);
 
 			result.add(StringUtils.getUiString("batch.analysis.packaged", estV.getName()));
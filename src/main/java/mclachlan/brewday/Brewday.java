@@ -25,6 +25,7 @@ import mclachlan.brewday.batch.Batch;
 import mclachlan.brewday.batch.BatchVolumeEstimate;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.inventory.MaterialsPlanner;
 import mclachlan.brewday.math.*;
 import mclachlan.brewday.process.*;
 import mclachlan.brewday.recipe.HopAddition;
@@ -38,7 +39,14 @@ import static mclachlan.brewday.math.Quantity.Unit.*;
 public class Brewday
 {
 	private static final Brewday instance = new Brewday();
-	private final BatchAnalyser batchAnalyser = new BatchAnalyser();
+	private final RecipeRunCache runCache = new RecipeRunCache();
+	private final BatchAnalyser batchAnalyser = new BatchAnalyser(runCache);
+	private final MaterialsPlanner materialsPlanner = new MaterialsPlanner();
+
+	/** the recorded propagation of the measurements of each batch */
+	private final Map<Batch, MeasuredRun> measuredRuns =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
 	private final Properties appConfig;
 
 	public static final String BREWDAY_VERSION = "mclachlan.brewday.version";
@@ -112,9 +120,7 @@ public class Brewday
 		VolumeUnit trubAndChillerLoss = equipmentProfile.getTrubAndChillerLoss();
 
 		Settings.HopBitternessFormula hopBitternessFormula =
-			Settings.HopBitternessFormula.valueOf(
-				Database.getInstance().getSettings().get(
-					Settings.HOP_BITTERNESS_FORMULA));
+			Database.getInstance().getSettings().getSnapshot().getHopBitternessFormula();
 
 		BitternessUnit hopAdditionIbu;
 
@@ -337,7 +343,7 @@ public class Brewday
 		ArrayList<ProcessStep> steps = new ArrayList<>();
 
 		String equipmentProfile =
-			Database.getInstance().getSettings().get(Settings.DEFAULT_EQUIPMENT_PROFILE);
+			Database.getInstance().getSettings().getSnapshot().getDefaultEquipmentProfile();
 
 		Recipe template = Database.getInstance().getProcessTemplates().get(processTemplateName);
 
@@ -504,13 +510,14 @@ public class Brewday
 			return result;
 		}
 
-		// run the recipe first in case it has no estimates yet
-		recipe.run();
-
 		EquipmentProfile equipmentProfile = Database.getInstance().getEquipmentProfiles().get(recipe.getEquipmentProfile());
 
+		// the estimates, from the last run of this recipe if nothing has changed.
+		// The run is of a copy with the steps already sorted.
+		Recipe run = runCache.getRun(recipe, equipmentProfile);
+		Volumes recipeVols = run.getVolumes();
+
 		// copy over ingredient additions from the recipe to the batch
-		Volumes recipeVols = recipe.getVolumes();
 		for (Volume v : batch.getActualVolumes().getVolumes().values())
 		{
 			if (recipeVols.contains(v.getName()))
@@ -519,71 +526,35 @@ public class Brewday
 			}
 		}
 
-		ProcessLog log = new ProcessLog();
-		recipe.sortSteps(log);
+		// propagate the measurements with a run over the actual volumes
+		measuredRuns.put(batch, new MeasuredRun(run,
+			run.runRecorded(batch.getActualVolumes(), equipmentProfile, new ProcessLog(ProcessLog.Level.NONE))));
 
-		// re-run with the actual volumes
-		recipe.run(batch.getActualVolumes(), equipmentProfile, log);
-
-		Set<String> keyVolumes = new HashSet<>();
+		Set<String> keyVolumes = getKeyVolumes(run);
 
 		//
-		// find all the volumes for key measurements as follows
-		// - pre-boil volume and gravity
-		// - OG at fermentation time
-		// - FG and volume at packaging time
+		// create all the step volume measurements
 		//
-		for (ProcessStep step : recipe.getSteps())
+		for (ProcessStep step : run.getSteps())
 		{
-			if (step instanceof Boil)
-			{
-				String preBoil = ((Boil)step).getInputWortVolume();
-
-				// check for WORT type to avoid decoction boils
-				if (recipeVols.contains(preBoil) &&
-					recipeVols.getVolume(preBoil).getType() == Volume.Type.WORT)
-				{
-					keyVolumes.add(preBoil);
-				}
-			}
-			else if (step instanceof Ferment)
+			for (String volName : step.getOutputVolumes())
 			{
-				// in the case of multiple fermentation stages we only want the first one
-
-				String fermentInput = ((Ferment)step).getInputVolume();
+				Volume estVol = recipeVols.getVolume(volName);
+				Volume measuredVol = batch.getActualVolumes().getVolumes().get(volName);
 
-				ProcessStep prevStep = recipe.getStepProducingVolume(fermentInput);
-				if (!(prevStep instanceof Ferment))
+				if (measuredVol == null &&
+					(estVol.getType() == Volume.Type.MASH ||
+					estVol.getType() == Volume.Type.WORT ||
+					estVol.getType() == Volume.Type.BEER))
 				{
-					keyVolumes.add(fermentInput);
-					// need this to work out attenuation
-					keyVolumes.add(((Ferment)step).getOutputVolume());
+					measuredVol = new Volume(volName, estVol.getType());
+					batch.getActualVolumes().addVolume(estVol.getName(), measuredVol);
 				}
-			}
-			else if (step instanceof PackageStep)
-			{
-				keyVolumes.addAll(step.getOutputVolumes());
-			}
-		}
 
-		//
-		// create  all the step volume measurements
-		//
-		for (ProcessStep step : recipe.getSteps())
-		{
-			for (String volName : step.getOutputVolumes())
-			{
-				Volume estVol = recipe.getVolumes().getVolume(volName);
-				Volume measuredVol = batch.getActualVolumes().getVolumes().get(volName);
+				boolean isKey = keyVolumes.contains(volName);
 
 				if (estVol.getType() == Volume.Type.MASH)
 				{
-					if (measuredVol == null)
-					{
-						measuredVol = new Volume(volName, Volume.Type.MASH);
-						batch.getActualVolumes().addVolume(estVol.getName(), measuredVol);
-					}
-
 					result.add(
 						new BatchVolumeEstimate(
 							estVol,
@@ -604,12 +575,6 @@ public class Brewday
 				}
 				else if (estVol.getType() == Volume.Type.WORT)
 				{
-					if (measuredVol == null)
-					{
-						measuredVol = new Volume(volName, Volume.Type.WORT);
-						batch.getActualVolumes().addVolume(estVol.getName(), measuredVol);
-					}
-
 					result.add(
 						new BatchVolumeEstimate(
 							estVol,
@@ -626,7 +591,7 @@ public class Brewday
 							BatchVolumeEstimate.MEASUREMENTS_VOLUME,
 							estVol.getVolume(),
 							measuredVol.getVolume(),
-							keyVolumes.contains(volName)));
+							isKey));
 
 					result.add(
 						new BatchVolumeEstimate(
@@ -635,7 +600,7 @@ public class Brewday
 							BatchVolumeEstimate.MEASUREMENTS_DENSITY,
 							estVol.getGravity(),
 							measuredVol.getGravity(),
-							keyVolumes.contains(volName)));
+							isKey));
 
 					result.add(
 						new BatchVolumeEstimate(
@@ -648,12 +613,6 @@ public class Brewday
 				}
 				else if (estVol.getType() == Volume.Type.BEER)
 				{
-					if (measuredVol == null)
-					{
-						measuredVol = new Volume(volName, Volume.Type.BEER);
-						batch.getActualVolumes().addVolume(estVol.getName(), measuredVol);
-					}
-
 					result.add(
 						new BatchVolumeEstimate(
 							estVol,
@@ -661,7 +620,7 @@ public class Brewday
 							BatchVolumeEstimate.MEASUREMENTS_VOLUME,
 							estVol.getVolume(),
 							measuredVol.getVolume(),
-							keyVolumes.contains(volName)));
+							isKey));
 
 					// not a key metric because it's not needed to work out the attenuation
 					result.add(
@@ -671,7 +630,7 @@ public class Brewday
 							BatchVolumeEstimate.MEASUREMENTS_DENSITY,
 							estVol.getGravity(),
 							measuredVol.getGravity(),
-							keyVolumes.contains(volName)));
+							isKey));
 
 					result.add(
 						new BatchVolumeEstimate(
@@ -688,6 +647,147 @@ public class Brewday
 		return result;
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Propagates a changed measurement through the batch. Only the process
+	 * steps downstream of the measured volume are applied again, and only the
+	 * estimates of the volumes they output are refreshed.
+	 *
+	 * @param batch
+	 * 	The batch being measured
+	 * @param estimates
+	 * 	The estimates from {@link #getBatchVolumeEstimates(Batch)}
+	 * @param changed
+	 * 	The estimate whose measurement has changed
+	 * @return
+	 * 	The estimates that were refreshed
+	 */
+	public List<BatchVolumeEstimate> updateBatchVolumeEstimates(
+		Batch batch,
+		List<BatchVolumeEstimate> estimates,
+		BatchVolumeEstimate changed)
+	{
+		List<BatchVolumeEstimate> result = new ArrayList<>();
+
+		Recipe recipe = Database.getInstance().getRecipes().get(batch.getRecipe());
+
+		if (recipe == null)
+		{
+			return result;
+		}
+
+		EquipmentProfile equipmentProfile = Database.getInstance().getEquipmentProfiles().get(recipe.getEquipmentProfile());
+		Recipe run = runCache.getRun(recipe, equipmentProfile);
+
+		// steps may pass a volume on under another name, so the changed
+		// volume is found by identity and the first step producing it is used
+		ProcessStep step = null;
+		for (Map.Entry<String, Volume> e : batch.getActualVolumes().getVolumes().entrySet())
+		{
+			if (e.getValue() == changed.getMeasuredVolume())
+			{
+				ProcessStep s = run.getStepProducingVolume(e.getKey());
+				if (s != null && (step == null || run.getSteps().indexOf(s) < run.getSteps().indexOf(step)))
+				{
+					step = s;
+				}
+			}
+		}
+
+		if (step == null)
+		{
+			return result;
+		}
+
+		MeasuredRun measuredRun = measuredRuns.get(batch);
+
+		if (measuredRun == null || measuredRun.run != run)
+		{
+			// the recipe has changed since, propagate all the measurements again
+			measuredRuns.put(batch, new MeasuredRun(run,
+				run.runRecorded(batch.getActualVolumes(), equipmentProfile, new ProcessLog(ProcessLog.Level.NONE))));
+
+			for (BatchVolumeEstimate bve : estimates)
+			{
+				bve.refreshMeasured();
+			}
+			return new ArrayList<>(estimates);
+		}
+
+		Set<Volume> affectedVolumes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (ProcessStep s : run.run(
+			batch.getActualVolumes(),
+			equipmentProfile,
+			new ProcessLog(ProcessLog.Level.NONE),
+			step,
+			measuredRun.inputs))
+		{
+			for (String volName : s.getOutputVolumes())
+			{
+				affectedVolumes.add(batch.getActualVolumes().getVolumes().get(volName));
+			}
+		}
+
+		for (BatchVolumeEstimate bve : estimates)
+		{
+			if (affectedVolumes.contains(bve.getMeasuredVolume()))
+			{
+				bve.refreshMeasured();
+				result.add(bve);
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Finds all the volumes for key measurements as follows
+	 * - pre-boil volume and gravity
+	 * - OG at fermentation time
+	 * - FG and volume at packaging time
+	 */
+	private Set<String> getKeyVolumes(Recipe run)
+	{
+		Set<String> result = new HashSet<>();
+		Volumes recipeVols = run.getVolumes();
+
+		for (ProcessStep step : run.getSteps())
+		{
+			if (step instanceof Boil)
+			{
+				String preBoil = ((Boil)step).getInputWortVolume();
+
+				// check for WORT type to avoid decoction boils
+				if (recipeVols.contains(preBoil) &&
+					recipeVols.getVolume(preBoil).getType() == Volume.Type.WORT)
+				{
+					result.add(preBoil);
+				}
+			}
+			else if (step instanceof Ferment)
+			{
+				// in the case of multiple fermentation stages we only want the first one
+
+				String fermentInput = ((Ferment)step).getInputVolume();
+
+				ProcessStep prevStep = run.getStepProducingVolume(fermentInput);
+				if (!(prevStep instanceof Ferment))
+				{
+					result.add(fermentInput);
+					// need this to work out attenuation
+					result.add(((Ferment)step).getOutputVolume());
+				}
+			}
+			else if (step instanceof PackageStep)
+			{
+				result.addAll(step.getOutputVolumes());
+			}
+		}
+
+		return result;
+	}
+
 	/*-------------------------------------------------------------------------*/
 
 	/**
@@ -705,6 +805,27 @@ public class Brewday
 		return batchAnalyser.getBatchAnalysis(batch);
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The cache of recipe runs shared by the batch views. The recipe
+	 * 	editors don't use it, they run the working copy being edited.
+	 */
+	public RecipeRunCache getRunCache()
+	{
+		return runCache;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The planner of ingredients for scheduled batches.
+	 */
+	public MaterialsPlanner getMaterialsPlanner()
+	{
+		return materialsPlanner;
+	}
+
 	/*-------------------------------------------------------------------------*/
 
 	/**
@@ -724,4 +845,21 @@ public class Brewday
 		result.sort(String::compareTo);
 		return result;
 	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The recipe run that a batch's measurements were propagated with, and
+	 * the input volumes recorded for each step.
+	 */
+	private static class MeasuredRun
+	{
+		private final Recipe run;
+		private final Map<String, Map<String, Volume>> inputs;
+
+		private MeasuredRun(Recipe run, Map<String, Map<String, Volume>> inputs)
+		{
+			this.run = run;
+			this.inputs = inputs;
+		}
+	}
 }
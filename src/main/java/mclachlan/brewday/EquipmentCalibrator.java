@@ -0,0 +1,628 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday;
+
+import java.util.*;
+import mclachlan.brewday.batch.Batch;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.math.*;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.process.Volume;
+import mclachlan.brewday.process.Volumes;
+import mclachlan.brewday.recipe.Recipe;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * Fits the parameters of an equipment profile to the measurements of the
+ * batches brewed with it, by least squares on the relative error between
+ * the measured volumes, gravities and bitterness and the recipe estimates.
+ * <p>
+ * The estimates of a recipe only depend on the recipe and the profile, so
+ * each recipe is run once for the current parameters and once per parameter
+ * to linearise it, however many batches were brewed from it. Batches are
+ * added or re-measured with {@link #update(Batch)}, which reuses these
+ * linearisations and only re-solves the small normal equations. A
+ * {@link #fit(Collection)} runs the recipes again (in parallel) until the
+ * parameters settle.
+ * <p>
+ * A weak prior keeps each parameter near the value typed into the profile,
+ * so parameters that no measurement depends on (e.g. the hop utilisation
+ * without any bitterness measurements) are left as they are.
+ * <p>
+ * Not thread safe.
+ */
+public class EquipmentCalibrator
+{
+	/** the parameters fitted */
+	public enum Parameter
+	{
+		CONVERSION_EFFICIENCY(0.1D, 0D, 1D),
+		BOIL_EVAPOURATION_RATE(0.01D, 0D, 1D),
+		LAUTER_LOSS(1000D, 0D, Double.MAX_VALUE),
+		TRUB_AND_CHILLER_LOSS(1000D, 0D, Double.MAX_VALUE),
+		HOP_UTILISATION(0.1D, 0D, 2D);
+
+		/** a typical change in the parameter, in its base unit */
+		private final double scale;
+		private final double min, max;
+
+		Parameter(double scale, double min, double max)
+		{
+			this.scale = scale;
+			this.min = min;
+			this.max = max;
+		}
+
+		public double get(EquipmentProfile profile)
+		{
+			Quantity q;
+			switch (this)
+			{
+				case CONVERSION_EFFICIENCY: q = profile.getConversionEfficiency(); break;
+				case BOIL_EVAPOURATION_RATE: q = profile.getBoilEvapourationRate(); break;
+				case LAUTER_LOSS: q = profile.getLauterLoss(); break;
+				case TRUB_AND_CHILLER_LOSS: q = profile.getTrubAndChillerLoss(); break;
+				case HOP_UTILISATION: q = profile.getHopUtilisation(); break;
+				default: throw new BrewdayException("invalid " + this);
+			}
+			return q == null ? 0D : q.get();
+		}
+
+		public void set(EquipmentProfile profile, double value)
+		{
+			switch (this)
+			{
+				case CONVERSION_EFFICIENCY: profile.setConversionEfficiency(new PercentageUnit(value)); break;
+				case BOIL_EVAPOURATION_RATE: profile.setBoilEvapourationRate(new PercentageUnit(value)); break;
+				case LAUTER_LOSS: profile.setLauterLoss(new VolumeUnit(value)); break;
+				case TRUB_AND_CHILLER_LOSS: profile.setTrubAndChillerLoss(new VolumeUnit(value)); break;
+				case HOP_UTILISATION: profile.setHopUtilisation(new PercentageUnit(value)); break;
+				default: throw new BrewdayException("invalid " + this);
+			}
+		}
+	}
+
+	private static final Parameter[] PARAMETERS = Parameter.values();
+	private static final int N = PARAMETERS.length;
+
+	/** the metrics compared, each in the unit its relative error is taken in */
+	private static final Map<Volume.Metric, Quantity.Unit> METRICS = new EnumMap<>(Volume.Metric.class);
+
+	static
+	{
+		METRICS.put(Volume.Metric.VOLUME, LITRES);
+		METRICS.put(Volume.Metric.GRAVITY, GU);
+		METRICS.put(Volume.Metric.ORIGINAL_GRAVITY, GU);
+		METRICS.put(Volume.Metric.BITTERNESS, IBU);
+	}
+
+	/** weight of a deviation of one scale from the profile, vs a 1% error */
+	private static final double PRIOR_WEIGHT = 0.01D;
+
+	/** finite difference step, in scales */
+	private static final double STEP = 1E-3D;
+
+	/** fit() stops once no parameter moves by more than this many scales */
+	private static final double TOLERANCE = 1E-4D;
+	private static final int MAX_ITERATIONS = 20;
+
+	private final EquipmentProfile profile;
+	private final double[] prior = new double[N];
+	private final double[] params = new double[N];
+
+	/** linearised estimates, by recipe name */
+	private final Map<String, Linearisation> linearisations = new HashMap<>();
+
+	/** measurements, by batch name */
+	private final Map<String, BatchMeasurements> batches = new LinkedHashMap<>();
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param profile
+	 * 	The profile to calibrate, its values are the starting point and the
+	 * 	prior. It is not modified.
+	 */
+	public EquipmentCalibrator(EquipmentProfile profile)
+	{
+		this.profile = profile;
+		for (int j=0; j<N; j++)
+		{
+			prior[j] = params[j] = PARAMETERS[j].get(profile);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return all the batches in the database brewed with the given profile
+	 */
+	public static List<Batch> getBatches(EquipmentProfile profile)
+	{
+		Database db = Database.getInstance();
+		List<Batch> result = new ArrayList<>();
+
+		for (Batch batch : db.getBatches().values())
+		{
+			Recipe recipe = db.getRecipes().get(batch.getRecipe());
+			if (recipe != null && profile.getName().equals(recipe.getEquipmentProfile()))
+			{
+				result.add(batch);
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Fits the parameters to the given batches, replacing any added before.
+	 * Each iteration runs the recipes again at the current parameters.
+	 *
+	 * @return the number of iterations
+	 */
+	public int fit(Collection<Batch> batches)
+	{
+		this.batches.clear();
+		for (Batch batch : batches)
+		{
+			this.batches.put(batch.getName(), new BatchMeasurements(batch));
+		}
+
+		for (int i=1; i<=MAX_ITERATIONS; i++)
+		{
+			linearisations.clear();
+			lineariseAll();
+
+			double[] next = solve();
+			double change = 0;
+			for (int j=0; j<N; j++)
+			{
+				change = Math.max(change, Math.abs(next[j] - params[j]) / PARAMETERS[j].scale);
+			}
+			System.arraycopy(next, 0, params, 0, N);
+
+			if (change < TOLERANCE)
+			{
+				return i;
+			}
+		}
+		return MAX_ITERATIONS;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Adds the batch, or takes its new measurements, and re-solves for the
+	 * parameters. Only runs the batch's recipe if it is not linearised yet.
+	 */
+	public void update(Batch batch)
+	{
+		batches.put(batch.getName(), new BatchMeasurements(batch));
+
+		if (!linearisations.containsKey(batch.getRecipe()))
+		{
+			Recipe recipe = Database.getInstance().getRecipes().get(batch.getRecipe());
+			if (recipe != null)
+			{
+				linearisations.put(recipe.getName(), new Linearisation(recipe, params));
+			}
+		}
+
+		System.arraycopy(solve(), 0, params, 0, N);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Drops the batch and re-solves for the parameters.
+	 */
+	public void remove(Batch batch)
+	{
+		batches.remove(batch.getName());
+		System.arraycopy(solve(), 0, params, 0, N);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the fitted value of the given parameter, in its base unit
+	 */
+	public double get(Parameter p)
+	{
+		return params[p.ordinal()];
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return a copy of the profile with the fitted parameters
+	 */
+	public EquipmentProfile getCalibratedProfile()
+	{
+		return getProfile(params);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the errors of every batch, in the order the batches were added.
+	 * 	The estimates are from the linearisations, so they are exact right
+	 * 	after a {@link #fit(Collection)} and close to it after updates.
+	 */
+	public List<BatchResiduals> getResiduals()
+	{
+		List<BatchResiduals> result = new ArrayList<>();
+
+		for (BatchMeasurements bm : batches.values())
+		{
+			List<Residual> residuals = new ArrayList<>();
+			Linearisation lin = linearisations.get(bm.recipe);
+
+			if (lin != null)
+			{
+				for (Measurement m : bm.measurements)
+				{
+					double[] row = lin.get(m);
+					if (row != null)
+					{
+						residuals.add(new Residual(
+							m.volume, m.metric, m.value, lin.estimate(row, params)));
+					}
+				}
+			}
+
+			result.add(new BatchResiduals(bm.name, residuals));
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Linearises all the recipes of the batches at the current parameters.
+	 */
+	private void lineariseAll()
+	{
+		Set<String> recipeNames = new LinkedHashSet<>();
+		for (BatchMeasurements bm : batches.values())
+		{
+			recipeNames.add(bm.recipe);
+		}
+
+		Map<String, Recipe> recipes = new LinkedHashMap<>();
+		for (String name : recipeNames)
+		{
+			Recipe recipe = Database.getInstance().getRecipes().get(name);
+			if (recipe != null)
+			{
+				recipes.put(name, recipe);
+			}
+		}
+
+		// only read by the linearisations
+		double[] at = params.clone();
+		List<Linearisation> results = ParallelTasks.map("Brewday equipment calibrator",
+			recipes.values(), recipe -> new Linearisation(recipe, at));
+
+		Iterator<Linearisation> iter = results.iterator();
+		for (String name : recipes.keySet())
+		{
+			linearisations.put(name, iter.next());
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Minimises the sum of the squared, linearised relative errors of all the
+	 * measurements plus the prior, by solving the normal equations.
+	 *
+	 * @return the parameters, clamped to their bounds
+	 */
+	private double[] solve()
+	{
+		double[][] a = new double[N][N];
+		double[] b = new double[N];
+
+		for (int j=0; j<N; j++)
+		{
+			double w = PRIOR_WEIGHT / PARAMETERS[j].scale;
+			a[j][j] += w * w;
+			b[j] += w * w * prior[j];
+		}
+
+		double[] jac = new double[N];
+		for (BatchMeasurements bm : batches.values())
+		{
+			Linearisation lin = linearisations.get(bm.recipe);
+			if (lin == null)
+			{
+				continue;
+			}
+
+			for (Measurement m : bm.measurements)
+			{
+				double[] row = lin.get(m);
+				if (row == null)
+				{
+					continue;
+				}
+
+				// r(p) = r0 + jac.(p - at), with errors relative to the measurement
+				double r0 = (row[0] - m.value) / m.value;
+				double jacDotAt = 0;
+				for (int j=0; j<N; j++)
+				{
+					jac[j] = row[j + 1] / m.value;
+					jacDotAt += jac[j] * lin.at[j];
+				}
+
+				for (int j=0; j<N; j++)
+				{
+					for (int k=0; k<N; k++)
+					{
+						a[j][k] += jac[j] * jac[k];
+					}
+					b[j] += jac[j] * (jacDotAt - r0);
+				}
+			}
+		}
+
+		double[] result = new LUDecomposition(new Array2DRowRealMatrix(a, false))
+			.getSolver().solve(new ArrayRealVector(b, false)).toArray();
+
+		for (int j=0; j<N; j++)
+		{
+			result[j] = Math.max(PARAMETERS[j].min, Math.min(PARAMETERS[j].max, result[j]));
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private EquipmentProfile getProfile(double[] values)
+	{
+		EquipmentProfile result = new EquipmentProfile(profile);
+		for (int j=0; j<N; j++)
+		{
+			PARAMETERS[j].set(result, values[j]);
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The estimates of a recipe at some parameters, and their derivatives by
+	 * forward differences.
+	 */
+	private class Linearisation
+	{
+		private final double[] at;
+
+		/** value then derivatives, by volume and metric */
+		private final Map<String, Map<Volume.Metric, double[]>> estimates = new HashMap<>();
+
+		private Linearisation(Recipe recipe, double[] at)
+		{
+			this.at = at;
+
+			Volumes base = run(recipe, at);
+			for (Map.Entry<String, Volume> e : base.getVolumes().entrySet())
+			{
+				Map<Volume.Metric, double[]> rows = new EnumMap<>(Volume.Metric.class);
+				for (Map.Entry<Volume.Metric, Quantity.Unit> m : METRICS.entrySet())
+				{
+					Quantity q = e.getValue().getMetric(m.getKey());
+					if (q != null)
+					{
+						double[] row = new double[N + 1];
+						row[0] = q.get(m.getValue());
+						rows.put(m.getKey(), row);
+					}
+				}
+				estimates.put(e.getKey(), rows);
+			}
+
+			for (int j=0; j<N; j++)
+			{
+				Parameter p = PARAMETERS[j];
+				double h = STEP * p.scale;
+				if (at[j] + h > p.max)
+				{
+					h = -h;
+				}
+
+				double[] stepped = at.clone();
+				stepped[j] += h;
+				Volumes vols = run(recipe, stepped);
+
+				for (Map.Entry<String, Map<Volume.Metric, double[]>> e : estimates.entrySet())
+				{
+					Volume v = vols.getVolumes().get(e.getKey());
+					for (Map.Entry<Volume.Metric, double[]> row : e.getValue().entrySet())
+					{
+						Quantity q = v == null ? null : v.getMetric(row.getKey());
+						if (q != null)
+						{
+							double[] r = row.getValue();
+							r[j + 1] = (q.get(METRICS.get(row.getKey())) - r[0]) / h;
+						}
+					}
+				}
+			}
+		}
+
+		private Volumes run(Recipe recipe, double[] values)
+		{
+			Recipe copy = new Recipe(recipe);
+			copy.run(getProfile(values), ProcessLog.Level.NONE);
+			return copy.getVolumes();
+		}
+
+		/**
+		 * @return the value then derivatives of the estimate of the given
+		 * 	measurement, or null if the recipe has no such estimate
+		 */
+		private double[] get(Measurement m)
+		{
+			Map<Volume.Metric, double[]> rows = estimates.get(m.volume);
+			return rows == null ? null : rows.get(m.metric);
+		}
+
+		private double estimate(double[] row, double[] values)
+		{
+			double result = row[0];
+			for (int j=0; j<N; j++)
+			{
+				result += row[j + 1] * (values[j] - at[j]);
+			}
+			return result;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The measured metrics of a batch.
+	 */
+	private static class BatchMeasurements
+	{
+		private final String name;
+		private final String recipe;
+		private final List<Measurement> measurements = new ArrayList<>();
+
+		private BatchMeasurements(Batch batch)
+		{
+			this.name = batch.getName();
+			this.recipe = batch.getRecipe();
+
+			for (Map.Entry<String, Volume> e : batch.getActualVolumes().getVolumes().entrySet())
+			{
+				for (Map.Entry<Volume.Metric, Quantity.Unit> m : METRICS.entrySet())
+				{
+					Quantity q = e.getValue().getMetric(m.getKey());
+
+					// estimates propagated into the batch are not measurements
+					if (q != null && !q.isEstimated() && q.get(m.getValue()) != 0)
+					{
+						measurements.add(new Measurement(e.getKey(), m.getKey(), q.get(m.getValue())));
+					}
+				}
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Measurement
+	{
+		private final String volume;
+		private final Volume.Metric metric;
+		private final double value;
+
+		private Measurement(String volume, Volume.Metric metric, double value)
+		{
+			this.volume = volume;
+			this.metric = metric;
+			this.value = value;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * A measured metric of a batch vs the estimate with the fitted profile.
+	 * Volumes are in litres, gravities in GU and bitterness in IBU.
+	 */
+	public static class Residual
+	{
+		private final String volume;
+		private final Volume.Metric metric;
+		private final double measured;
+		private final double estimated;
+
+		public Residual(String volume, Volume.Metric metric, double measured, double estimated)
+		{
+			this.volume = volume;
+			this.metric = metric;
+			this.measured = measured;
+			this.estimated = estimated;
+		}
+
+		public String getVolume()
+		{
+			return volume;
+		}
+
+		public Volume.Metric getMetric()
+		{
+			return metric;
+		}
+
+		public double getMeasured()
+		{
+			return measured;
+		}
+
+		public double getEstimated()
+		{
+			return estimated;
+		}
+
+		/**
+		 * @return the error relative to the measurement
+		 */
+		public double getRelativeError()
+		{
+			return (estimated - measured) / measured;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The residuals of one batch.
+	 */
+	public static class BatchResiduals
+	{
+		private final String batch;
+		private final List<Residual> residuals;
+
+		public BatchResiduals(String batch, List<Residual> residuals)
+		{
+			this.batch = batch;
+			this.residuals = residuals;
+		}
+
+		public String getBatch()
+		{
+			return batch;
+		}
+
+		public List<Residual> getResiduals()
+		{
+			return residuals;
+		}
+
+		/**
+		 * @return the root mean square of the relative errors, 0 if there are
+		 * 	no measurements
+		 */
+		public double getRmsError()
+		{
+			double sum = 0;
+			for (Residual r : residuals)
+			{
+				sum += r.getRelativeError() * r.getRelativeError();
+			}
+			return residuals.isEmpty() ? 0 : Math.sqrt(sum / residuals.size());
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a batch of independent tasks on a pool of daemon threads, one per
+ * processor, that lasts as long as the batch. Daemon threads so that an
+ * abandoned batch never keeps the app from exiting.
+ */
+public class ParallelTasks
+{
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param threadName
+	 * 	Name of the pool's threads, as seen in a thread dump.
+	 * @return
+	 * 	A new pool of daemon threads, one per processor. The caller must shut
+	 * 	it down.
+	 */
+	public static ExecutorService newPool(String threadName)
+	{
+		return Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			r ->
+			{
+				Thread t = new Thread(r, threadName);
+				t.setDaemon(true);
+				return t;
+			});
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs the task on each of the items in parallel, and passes the results
+	 * to the consumer in the order of the items, each as soon as it and those
+	 * before it are done. The consumer is called on the calling thread.
+	 *
+	 * @throws BrewdayException
+	 * 	wrapping the first failure of a task, in the order of the items
+	 */
+	public static <T, R> void forEach(
+		String threadName,
+		Collection<T> items,
+		Function<T, R> task,
+		Consumer<R> consumer)
+	{
+		ExecutorService executor = newPool(threadName);
+
+		try
+		{
+			List<Future<R>> futures = new ArrayList<>();
+			for (T item : items)
+			{
+				futures.add(executor.submit(() -> task.apply(item)));
+			}
+
+			for (Future<R> future : futures)
+			{
+				consumer.accept(future.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new BrewdayException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new BrewdayException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The results of running the task on each of the items in parallel, in
+	 * 	the order of the items.
+	 */
+	public static <T, R> List<R> map(
+		String threadName,
+		Collection<T> items,
+		Function<T, R> task)
+	{
+		List<R> result = new ArrayList<>();
+		forEach(threadName, items, task, result::add);
+		return result;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday;
+
+import java.util.*;
+import java.util.function.Consumer;
+import mclachlan.brewday.math.*;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.process.Volume;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Runs a set of recipes in parallel and reports the estimated end result of
+ * each. Every recipe is run on a private copy, so the volumes and logs of the
+ * given recipes (e.g. those open in an editor) are left alone. Reference data
+ * is only read from the database.
+ */
+public class RecipeEvaluator
+{
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs the given recipes and passes the results to the consumer in the
+	 * order of the recipes, each as soon as it and those before it are done.
+	 * The consumer is called on the calling thread.
+	 */
+	public void evaluate(Collection<Recipe> recipes, Consumer<Result> consumer)
+	{
+		ParallelTasks.forEach("Brewday recipe evaluator", recipes, this::evaluate, consumer);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the results of the given recipes, in the same order
+	 */
+	public List<Result> evaluate(Collection<Recipe> recipes)
+	{
+		List<Result> result = new ArrayList<>();
+		evaluate(recipes, result::add);
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs a copy of the given recipe.
+	 */
+	public Result evaluate(Recipe recipe)
+	{
+		Recipe copy = new Recipe(recipe);
+
+		try
+		{
+			copy.run(ProcessLog.Level.ERROR);
+
+			List<Volume> beers = copy.getBeers();
+			Volume mainBeer = null;
+
+			// the main batch is the largest one
+			for (Volume beer : beers)
+			{
+				if (mainBeer == null || beer.getVolume().get() > mainBeer.getVolume().get())
+				{
+					mainBeer = beer;
+				}
+			}
+
+			return new Result(recipe.getName(), mainBeer, copy.getErrors());
+		}
+		catch (Exception e)
+		{
+			// if the recipe is poked report it as an error
+			return new Result(
+				recipe.getName(),
+				null,
+				Collections.singletonList(String.valueOf(e.getMessage())));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The estimated end result of a recipe. The beer metrics are null if the
+	 * recipe produces no beer.
+	 */
+	public static class Result
+	{
+		private final String recipeName;
+		private final Volume beer;
+		private final List<String> errors;
+
+		public Result(String recipeName, Volume beer, List<String> errors)
+		{
+			this.recipeName = recipeName;
+			this.beer = beer;
+			this.errors = new ArrayList<>(errors);
+		}
+
+		public String getRecipeName()
+		{
+			return recipeName;
+		}
+
+		/**
+		 * @return the largest beer volume produced by the recipe, or null
+		 */
+		public Volume getBeer()
+		{
+			return beer;
+		}
+
+		public DensityUnit getOriginalGravity()
+		{
+			return beer == null ? null : beer.getOriginalGravity();
+		}
+
+		public DensityUnit getFinalGravity()
+		{
+			return beer == null ? null : beer.getGravity();
+		}
+
+		public PercentageUnit getAbv()
+		{
+			return beer == null ? null : beer.getAbv();
+		}
+
+		public BitternessUnit getBitterness()
+		{
+			return beer == null ? null : beer.getBitterness();
+		}
+
+		public ColourUnit getColour()
+		{
+			return beer == null ? null : beer.getColour();
+		}
+
+		public List<String> getErrors()
+		{
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday;
+
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.db.v2.SimpleMapSilo;
+import mclachlan.brewday.db.v2.V2DataObject;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Remembers the results of running recipes, so that views of the same recipe
+ * (e.g. the batch estimates and the batch analysis) don't each run it again.
+ * <p>
+ * Results are keyed on the contents of the recipe and equipment profile as
+ * they would be saved, and on the settings. Reference data (hops,
+ * fermentables etc) is referred to by name, so edits to it need an explicit
+ * {@link #invalidateAll()}.
+ */
+public class RecipeRunCache
+{
+	private static final int CACHE_SIZE = 32;
+
+	private final Map<Key, Recipe> cache =
+		new LinkedHashMap<Key, Recipe>(16, 0.75F, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Recipe> eldest)
+			{
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return a copy of the recipe, run with its own equipment profile
+	 */
+	public Recipe getRun(Recipe recipe)
+	{
+		return getRun(recipe,
+			Database.getInstance().getEquipmentProfiles().get(recipe.getEquipmentProfile()));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return a copy of the recipe, run with the given equipment profile. This
+	 * 	is shared, so its volumes and log must not be modified.
+	 */
+	public Recipe getRun(Recipe recipe, EquipmentProfile equipment)
+	{
+		Key key = new Key(recipe, equipment);
+
+		synchronized (cache)
+		{
+			Recipe result = cache.get(key);
+			if (result != null)
+			{
+				return result;
+			}
+		}
+
+		// run outside the lock, a race just runs the same recipe twice
+		Recipe result = new Recipe(recipe);
+		result.run(equipment, ProcessLog.Level.ERROR);
+
+		synchronized (cache)
+		{
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Forgets the runs of the given recipe.
+	 */
+	public void invalidate(Recipe recipe)
+	{
+		synchronized (cache)
+		{
+			cache.keySet().removeIf(k -> Objects.equals(k.recipeName, recipe.getName()));
+		}
+	}
+
+	/**
+	 * Forgets the runs with the given equipment profile.
+	 */
+	public void invalidate(EquipmentProfile equipment)
+	{
+		synchronized (cache)
+		{
+			cache.keySet().removeIf(k -> Objects.equals(k.equipmentName, equipment.getName()));
+		}
+	}
+
+	/**
+	 * Forgets all runs.
+	 */
+	public void invalidateAll()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Key
+	{
+		private final String recipeName;
+		private final String equipmentName;
+		private final List<Object> contents;
+		private final int hash;
+
+		private Key(Recipe recipe, EquipmentProfile equipment)
+		{
+			Database db = Database.getInstance();
+			Map<String, SimpleMapSilo<?>> silos = db.getSilos();
+
+			recipeName = recipe.getName();
+			equipmentName = equipment == null ? null : equipment.getName();
+			contents = Arrays.asList(
+				toMap(silos.get(Database.RECIPES_JSON), recipe, db),
+				equipment == null ? null : toMap(silos.get(Database.EQUIPMENTPROFILES_JSON), equipment, db),
+				// rebuilt whenever a setting changes
+				db.getSettings().getSnapshot());
+			hash = contents.hashCode();
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Map toMap(SimpleMapSilo silo, Object v, Database db)
+		{
+			return silo.toMap((V2DataObject)v, db);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && contents.equals(((Key)o).contents);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+}
@@ -74,12 +74,20 @@ public class Settings
 	public static final String FEATURE_TOGGLE_REMOTE_BACKENDS = "feature.remote.backends";
 	public static final String FEATURE_TOGGLE_UI_SETTINGS = "feature.ui.settings";
 
+	/*-------------------------------------------------------------------------*/
+	private static final String[] FORMATS = {"%.0f", "%.1f", "%.2f", "%.3f"};
+	private static final String[] UNIT_FORMATS = {"%.0f%s", "%.1f%s", "%.2f%s", "%.3f%s"};
+
 	/*-------------------------------------------------------------------------*/
 	private Map<String, String> settings;
 
+	/** the parsed brewing settings, rebuilt whenever a setting changes */
+	private volatile Snapshot snapshot;
+
 	public Settings(Map<String, String> settings)
 	{
 		this.settings = settings;
+		this.snapshot = new Snapshot(settings);
 	}
 
 	public String get(String name)
@@ -90,6 +98,16 @@ public class Settings
 	public void set(String name, String value)
 	{
 		settings.put(name, value);
+		snapshot = new Snapshot(settings);
+	}
+
+	/**
+	 * @return the brewing settings, already parsed. Calculation code should
+	 * 	use this rather than parsing the string values.
+	 */
+	public Snapshot getSnapshot()
+	{
+		return snapshot;
 	}
 
 	public Map<String, String> getSettings()
@@ -364,23 +382,37 @@ public class Settings
 
 	/*-------------------------------------------------------------------------*/
 	public String getStringFormatter(double v)
+	{
+		return FORMATS[getPrecision(v)];
+	}
+
+	/**
+	 * @return the format for the given value followed by a unit abbreviation
+	 */
+	public String getUnitStringFormatter(double v)
+	{
+		return UNIT_FORMATS[getPrecision(v)];
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static int getPrecision(double v)
 	{
 		double abs = Math.abs(v);
 		if (abs > 1000)
 		{
-			return "%.0f";
+			return 0;
 		}
 		else if (abs > 100)
 		{
-			return "%.1f";
+			return 1;
 		}
 		else if (abs > 2)
 		{
-			return "%.2f";
+			return 2;
 		}
 		else
 		{
-			return "%.3f";
+			return 3;
 		}
 	}
 
@@ -407,4 +439,159 @@ public class Settings
 			return StringUtils.getUiString("mash.ph.model."+name());
 		}
 	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * An immutable, parsed copy of the brewing settings. A setting that is
+	 * missing or can't be parsed only causes an error when it is used.
+	 */
+	public static class Snapshot
+	{
+		private final String defaultEquipmentProfile;
+		private final MashPhModel mashPhModel;
+		private final double mphMaltBufferingCorrectionFactor;
+		private final double mashHopUtilisation;
+		private final double firstWortHopUtilisation;
+		private final double leafHopAdjustment;
+		private final double plugHopAdjustment;
+		private final double pelletHopAdjustment;
+		private final HopBitternessFormula hopBitternessFormula;
+		private final double tinsethMaxUtilisation;
+		private final double garetzYeastFactor;
+		private final double garetzPelletFactor;
+		private final double garetzBagFactor;
+		private final double garetzFilterFactor;
+
+		private Snapshot(Map<String, String> settings)
+		{
+			defaultEquipmentProfile = settings.get(DEFAULT_EQUIPMENT_PROFILE);
+			mashPhModel = parse(MashPhModel.class, settings.get(MASH_PH_MODEL));
+			mphMaltBufferingCorrectionFactor = parse(settings.get(MPH_MALT_BUFFERING_CORRECTION_FACTOR));
+			mashHopUtilisation = parse(settings.get(MASH_HOP_UTILISATION));
+			firstWortHopUtilisation = parse(settings.get(FIRST_WORT_HOP_UTILISATION));
+			leafHopAdjustment = parse(settings.get(LEAF_HOP_ADJUSTMENT));
+			plugHopAdjustment = parse(settings.get(PLUG_HOP_ADJUSTMENT));
+			pelletHopAdjustment = parse(settings.get(PELLET_HOP_ADJUSTMENT));
+			hopBitternessFormula = parse(HopBitternessFormula.class, settings.get(HOP_BITTERNESS_FORMULA));
+			tinsethMaxUtilisation = parse(settings.get(TINSETH_MAX_UTILISATION));
+			garetzYeastFactor = parse(settings.get(GARETZ_YEAST_FACTOR));
+			garetzPelletFactor = parse(settings.get(GARETZ_PELLET_FACTOR));
+			garetzBagFactor = parse(settings.get(GARETZ_BAG_FACTOR));
+			garetzFilterFactor = parse(settings.get(GARETZ_FILTER_FACTOR));
+		}
+
+		/*----------------------------------------------------------------------*/
+		private static double parse(String value)
+		{
+			try
+			{
+				return value == null ? Double.NaN : Double.parseDouble(value);
+			}
+			catch (NumberFormatException e)
+			{
+				return Double.NaN;
+			}
+		}
+
+		private static <E extends Enum<E>> E parse(Class<E> c, String value)
+		{
+			try
+			{
+				return value == null ? null : Enum.valueOf(c, value);
+			}
+			catch (IllegalArgumentException e)
+			{
+				return null;
+			}
+		}
+
+		private static double check(double value, String name)
+		{
+			if (Double.isNaN(value))
+			{
+				throw new BrewdayException("invalid setting: " + name);
+			}
+			return value;
+		}
+
+		private static <E> E check(E value, String name)
+		{
+			if (value == null)
+			{
+				throw new BrewdayException("invalid setting: " + name);
+			}
+			return value;
+		}
+
+		/*----------------------------------------------------------------------*/
+		public String getDefaultEquipmentProfile()
+		{
+			return defaultEquipmentProfile;
+		}
+
+		public MashPhModel getMashPhModel()
+		{
+			return check(mashPhModel, MASH_PH_MODEL);
+		}
+
+		public double getMphMaltBufferingCorrectionFactor()
+		{
+			return check(mphMaltBufferingCorrectionFactor, MPH_MALT_BUFFERING_CORRECTION_FACTOR);
+		}
+
+		public double getMashHopUtilisation()
+		{
+			return check(mashHopUtilisation, MASH_HOP_UTILISATION);
+		}
+
+		public double getFirstWortHopUtilisation()
+		{
+			return check(firstWortHopUtilisation, FIRST_WORT_HOP_UTILISATION);
+		}
+
+		public double getLeafHopAdjustment()
+		{
+			return check(leafHopAdjustment, LEAF_HOP_ADJUSTMENT);
+		}
+
+		public double getPlugHopAdjustment()
+		{
+			return check(plugHopAdjustment, PLUG_HOP_ADJUSTMENT);
+		}
+
+		public double getPelletHopAdjustment()
+		{
+			return check(pelletHopAdjustment, PELLET_HOP_ADJUSTMENT);
+		}
+
+		public HopBitternessFormula getHopBitternessFormula()
+		{
+			return check(hopBitternessFormula, HOP_BITTERNESS_FORMULA);
+		}
+
+		public double getTinsethMaxUtilisation()
+		{
+			return check(tinsethMaxUtilisation, TINSETH_MAX_UTILISATION);
+		}
+
+		public double getGaretzYeastFactor()
+		{
+			return check(garetzYeastFactor, GARETZ_YEAST_FACTOR);
+		}
+
+		public double getGaretzPelletFactor()
+		{
+			return check(garetzPelletFactor, GARETZ_PELLET_FACTOR);
+		}
+
+		public double getGaretzBagFactor()
+		{
+			return check(garetzBagFactor, GARETZ_BAG_FACTOR);
+		}
+
+		public double getGaretzFilterFactor()
+		{
+			return check(garetzFilterFactor, GARETZ_FILTER_FACTOR);
+		}
+	}
 }
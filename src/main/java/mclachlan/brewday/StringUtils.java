@@ -95,7 +95,7 @@ public class StringUtils
 	{
 		// passing Locale.ROOT here to force a '.' decimal separator.
 
-		String format = Database.getInstance().getSettings().getStringFormatter(v)+"%s";
+		String format = Database.getInstance().getSettings().getUnitStringFormatter(v);
 		return String.format(Locale.ROOT, format, v, unit.abbr());
 	}
 }
@@ -156,4 +156,32 @@ public class BatchVolumeEstimate
 		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Re-reads the measured quantity from the measured volume, after other
+	 * measurements have been propagated to it.
+	 */
+	public void refreshMeasured()
+	{
+		if (MEASUREMENTS_VOLUME.equals(metric))
+		{
+			this.measured = measuredVolume.getVolume();
+		}
+		else if (MEASUREMENTS_COLOUR.equals(metric))
+		{
+			this.measured = measuredVolume.getColour();
+		}
+		else if (MEASUREMENTS_DENSITY.equals(metric))
+		{
+			this.measured = measuredVolume.getGravity();
+		}
+		else if (MEASUREMENTS_TEMPERATURE.equals(metric))
+		{
+			this.measured = measuredVolume.getTemperature();
+		}
+		else
+		{
+			throw new BrewdayException("Invalid [" + metric + "]");
+		}
+	}
 }
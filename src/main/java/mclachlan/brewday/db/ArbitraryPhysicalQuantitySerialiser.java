@@ -44,10 +44,12 @@ public class ArbitraryPhysicalQuantitySerialiser implements V2SerialiserObject<A
 			return null;
 		}
 
-		Map<String, String> map = (Map)obj;
+		Map<String, ?> map = (Map)obj;
 
-		double amount = Double.valueOf(map.get("amount"));
-		Quantity.Unit unit = Quantity.Unit.valueOf(map.get("unit"));
+		// already a double if read from the binary snapshot
+		Object value = map.get("amount");
+		double amount = value instanceof Double ? (Double)value : Double.valueOf((String)value);
+		Quantity.Unit unit = Quantity.Unit.valueOf((String)map.get("unit"));
 
 		return new ArbitraryPhysicalQuantity(amount, unit);
 	}
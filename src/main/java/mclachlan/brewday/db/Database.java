@@ -20,19 +20,24 @@ package mclachlan.brewday.db;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import mclachlan.brewday.Brewday;
 import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.ParallelTasks;
 import mclachlan.brewday.Settings;
 import mclachlan.brewday.batch.Batch;
-import mclachlan.brewday.db.v2.MapSingletonSilo;
-import mclachlan.brewday.db.v2.PropertiesSilo;
-import mclachlan.brewday.db.v2.ReflectiveSerialiser;
-import mclachlan.brewday.db.v2.SimpleMapSilo;
+import mclachlan.brewday.db.v2.*;
 import mclachlan.brewday.equipment.EquipmentProfile;
 import mclachlan.brewday.ingredients.*;
+import mclachlan.brewday.inventory.InventoryLedger;
 import mclachlan.brewday.inventory.InventoryLineItem;
+import mclachlan.brewday.inventory.InventoryTransaction;
 import mclachlan.brewday.math.*;
 import mclachlan.brewday.recipe.Recipe;
 import mclachlan.brewday.style.Style;
@@ -50,16 +55,21 @@ public class Database
 	public static final String WATER_PARAMETERS_JSON = "waterparameters.json";
 	public static final String STYLES_JSON = "styles.json";
 	public static final String INVENTORY_JSON = "inventory.json";
+	public static final String INVENTORY_LEDGER_JSON = "inventoryledger.json";
 	public static final String PROCESSTEMPLATES_JSON = "processtemplates.json";
 	public static final String EQUIPMENTPROFILES_JSON = "equipmentprofiles.json";
 	public static final String RECIPES_JSON = "recipes.json";
 	public static final String BATCHES_JSON = "batches.json";
 	public static final String SETTINGS_JSON = "settings.json";
+	public static final String BINARY_SNAPSHOT = "snapshot.bin";
 
 	private static Database instance = new Database();
 
 	private final String dbDir;
 
+	/** true if this database is only read, eg when importing from it */
+	private final boolean readOnly;
+
 	// non-beery data
 	private Settings settings;
 	private MapSingletonSilo settingsSilo;
@@ -68,7 +78,7 @@ public class Database
 	private PropertiesSilo stringsSilo;
 
 	// beery data
-	private Map<String, InventoryLineItem> inventory;
+	private InventoryLedger inventoryLedger;
 	private Map<String, EquipmentProfile> equipmentProfiles;
 	private Map<String, Recipe> processTemplates;
 	private Map<String, Recipe> recipes;
@@ -78,8 +88,28 @@ public class Database
 	private final SimpleMapSilo<Recipe> processTemplateSilo;
 	private final SimpleMapSilo<EquipmentProfile> equipmentSilo;
 	private final SimpleMapSilo<InventoryLineItem> inventorySilo;
+	private final SimpleMapSilo<InventoryTransaction> inventoryLedgerSilo;
 	private final SimpleMapSilo<Batch> batchSilo;
 
+	// changes to the user data are journalled rather than rewriting the silo
+	private final SiloJournal<Recipe> recipeJournal;
+	private final SiloJournal<Recipe> processTemplateJournal;
+	private final SiloJournal<InventoryTransaction> inventoryLedgerJournal;
+	private final SiloJournal<Batch> batchJournal;
+
+	/** compact a journal once it holds more than this many records */
+	public static final int JOURNAL_COMPACTION_THRESHOLD = 200;
+
+	/** held by a save and by compactions, which must not overlap */
+	private final Object saveLock = new Object();
+
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread t = new Thread(r, "Brewday journal compactor");
+		t.setDaemon(true);
+		return t;
+	});
+
 	// reference data
 	private Map<String, Hop> hops;
 	private Map<String, Fermentable> fermentables;
@@ -97,6 +127,30 @@ public class Database
 	private final SimpleMapSilo<WaterParameters> waterParametersSilo;
 	private final SimpleMapSilo<Style> stylesSilo;
 
+	// binary cache of the JSON silos
+	private final BinarySnapshot binarySnapshot;
+
+	private final Map<String, Long> loadTimings = new ConcurrentHashMap<>();
+
+	/**
+	 * Loads a single silo from an open reader.
+	 */
+	private interface SiloLoader<T>
+	{
+		T load(BufferedReader reader) throws Exception;
+	}
+
+	/**
+	 * Saves a single silo to a writer.
+	 */
+	private interface SiloSaver
+	{
+		void save(BufferedWriter writer) throws IOException;
+	}
+
+	/** digests of each silo file as last loaded or saved */
+	private final Map<String, byte[]> savedDigests = new ConcurrentHashMap<>();
+
 	/*-------------------------------------------------------------------------*/
 	public Database()
 	{
@@ -104,19 +158,47 @@ public class Database
 	}
 
 	public Database(String dbDir)
+	{
+		this(dbDir, false);
+	}
+
+	/**
+	 * @param readOnly
+	 * 	True to only read the database, leaving its directory exactly as
+	 * 	found: loading does not recover an interrupted save, and saving is
+	 * 	not allowed.
+	 */
+	public Database(String dbDir, boolean readOnly)
 	{
 		this.dbDir = dbDir;
+		this.readOnly = readOnly;
+
+		binarySnapshot = new BinarySnapshot(new File(dbDir, BINARY_SNAPSHOT));
 
 		settingsSilo = new MapSingletonSilo();
 		stringsSilo = new PropertiesSilo();
 
-		recipeSilo = new SimpleMapSilo<>(new RecipeSerialiser());
-		processTemplateSilo = new SimpleMapSilo<>(new RecipeSerialiser());
-		batchSilo = new SimpleMapSilo<>(new BatchSerialiser());
+		RecipeSerialiser recipeSerialiser = new RecipeSerialiser();
+		recipeSilo = new SimpleMapSilo<>(recipeSerialiser);
+		recipeJournal = new SiloJournal<>(new File(dbDir, RECIPES_JSON), recipeSerialiser);
+
+		RecipeSerialiser processTemplateSerialiser = new RecipeSerialiser();
+		processTemplateSilo = new SimpleMapSilo<>(processTemplateSerialiser);
+		processTemplateJournal = new SiloJournal<>(new File(dbDir, PROCESSTEMPLATES_JSON), processTemplateSerialiser);
+
+		BatchSerialiser batchSerialiser = new BatchSerialiser();
+		batchSilo = new SimpleMapSilo<>(batchSerialiser);
+		batchJournal = new SiloJournal<>(new File(dbDir, BATCHES_JSON), batchSerialiser);
+
+		// only read to migrate a database from before the inventory ledger
+		inventorySilo = new SimpleMapSilo<>(new InventoryLineItemSerialiser());
 
-		InventoryLineItemSerialiser inventoryLineItemSerialiser =
-			new InventoryLineItemSerialiser();
-		inventorySilo = new SimpleMapSilo<>(inventoryLineItemSerialiser);
+		InventoryTransactionSerialiser inventoryTransactionSerialiser =
+			new InventoryTransactionSerialiser();
+		inventoryLedgerSilo = new SimpleMapSilo<>(inventoryTransactionSerialiser);
+		// ledger entries are never changed once recorded
+		inventoryLedgerJournal = new SiloJournal<>(new File(dbDir, INVENTORY_LEDGER_JSON), inventoryTransactionSerialiser,
+			obj -> (String)obj.get("name"), true);
 
 		ReflectiveSerialiser<EquipmentProfile> equipmentSerialiser = new ReflectiveSerialiser<>(
 			EquipmentProfile.class,
@@ -291,198 +373,528 @@ public class Database
 	}
 
 	/*-------------------------------------------------------------------------*/
+	/**
+	 * Loads every silo. Settings, strings and the reference data silos do not
+	 * depend on each other and are loaded concurrently; the user data silos
+	 * resolve ingredients against the reference data, so they are loaded in a
+	 * second wave once those are in place.
+	 */
 	public void loadAll()
 	{
+		loadTimings.clear();
+		savedDigests.clear();
+
+		// don't read a snapshot while it is being compacted
+		join(compactor.submit(() -> null));
+
+		AtomicCommit atomicCommit = new AtomicCommit(new File(dbDir));
+		if (readOnly)
+		{
+			// the files are a mix of two saves until the commit is recovered
+			if (atomicCommit.isIncomplete())
+			{
+				throw new BrewdayException("Interrupted save in " + dbDir +
+					", open it with Brewday to recover it first");
+			}
+		}
+		else
+		{
+			try
+			{
+				// finish or discard any save that was interrupted
+				atomicCommit.recover();
+			}
+			catch (IOException e)
+			{
+				throw new BrewdayException(e);
+			}
+		}
+
+		binarySnapshot.read();
+
+		ExecutorService executor = ParallelTasks.newPool("Brewday DB loader");
+
 		try
 		{
-			BufferedReader settingsReader = getFileReader(dbDir+"/" + SETTINGS_JSON);
-			BufferedReader uiStringsReader = getFileReader("data/strings/ui.properties");
-			BufferedReader processStringsReader = getFileReader("data/strings/process.properties");
-			BufferedReader documentStringsReader = getFileReader("data/strings/document.properties");
-			BufferedReader fermentablesReader = getFileReader(dbDir+"/" + FERMENTABLES_JSON);
-			BufferedReader hopsReader = getFileReader(dbDir+"/" + HOPS_JSON);
-			BufferedReader yeastsReader = getFileReader(dbDir+"/" + YEASTS_JSON);
-			BufferedReader miscsReader = getFileReader(dbDir+"/" + MISCS_JSON);
-			BufferedReader watersReader = getFileReader(dbDir+"/" + WATERS_JSON);
-			BufferedReader waterParametersReader = getFileReader(dbDir+"/" + WATER_PARAMETERS_JSON);
-			BufferedReader stylesReader = getFileReader(dbDir+"/" + STYLES_JSON);
-			BufferedReader inventoryReader = getFileReader(dbDir+"/" + INVENTORY_JSON);
-			BufferedReader processTemplateReader = getFileReader(dbDir+"/" + PROCESSTEMPLATES_JSON);
-			BufferedReader equipmentsReader = getFileReader(dbDir+"/" + EQUIPMENTPROFILES_JSON);
-			BufferedReader recipesReader = getFileReader(dbDir+"/" + RECIPES_JSON);
-			BufferedReader batchesReader = getFileReader(dbDir+"/" + BATCHES_JSON);
-
-			settings = new Settings(settingsSilo.load(settingsReader, this));
-			uiStrings = stringsSilo.load(uiStringsReader, this);
-			processStrings = stringsSilo.load(processStringsReader, this);
-			documentStrings = stringsSilo.load(documentStringsReader, this);
-
-			fermentables = fermentableSilo.load(fermentablesReader, this);
-			hops = hopsSilo.load(hopsReader, this);
-			yeasts = yeastsSilo.load(yeastsReader, this);
-			miscs = miscsSilo.load(miscsReader, this);
-			waters = watersSilo.load(watersReader, this);
-			waterParameters = waterParametersSilo.load(waterParametersReader, this);
-			styles = stylesSilo.load(stylesReader, this);
-
-			inventory = inventorySilo.load(inventoryReader, this);
-			processTemplates = processTemplateSilo.load(processTemplateReader, this);
-			equipmentProfiles = equipmentSilo.load(equipmentsReader, this);
-			recipes = recipeSilo.load(recipesReader, this);
-			batches = batchSilo.load(batchesReader, this);
-
-			settingsReader.close();
-			uiStringsReader.close();
-			processStringsReader.close();
-			documentStringsReader.close();
-			fermentablesReader.close();
-			hopsReader.close();
-			yeastsReader.close();
-			miscsReader.close();
-			watersReader.close();
-			waterParametersReader.close();
-			stylesReader.close();
-			inventoryReader.close();
-			processTemplateReader.close();
-			equipmentsReader.close();
-			recipesReader.close();
-			batchesReader.close();
+			// independent silos
+			Future<Map> settingsFuture = submitLoad(executor, dbDir+"/" + SETTINGS_JSON, r -> settingsSilo.load(r, this));
+			Future<Properties> uiStringsFuture = submitLoad(executor, "data/strings/ui.properties", r -> stringsSilo.load(r, this));
+			Future<Properties> processStringsFuture = submitLoad(executor, "data/strings/process.properties", r -> stringsSilo.load(r, this));
+			Future<Properties> documentStringsFuture = submitLoad(executor, "data/strings/document.properties", r -> stringsSilo.load(r, this));
+
+			Future<Map<String, Fermentable>> fermentablesFuture = submitSiloLoad(executor, FERMENTABLES_JSON, fermentableSilo, null);
+			Future<Map<String, Hop>> hopsFuture = submitSiloLoad(executor, HOPS_JSON, hopsSilo, null);
+			Future<Map<String, Yeast>> yeastsFuture = submitSiloLoad(executor, YEASTS_JSON, yeastsSilo, null);
+			Future<Map<String, Misc>> miscsFuture = submitSiloLoad(executor, MISCS_JSON, miscsSilo, null);
+			Future<Map<String, Water>> watersFuture = submitSiloLoad(executor, WATERS_JSON, watersSilo, null);
+			Future<Map<String, WaterParameters>> waterParametersFuture = submitSiloLoad(executor, WATER_PARAMETERS_JSON, waterParametersSilo, null);
+			Future<Map<String, Style>> stylesFuture = submitSiloLoad(executor, STYLES_JSON, stylesSilo, null);
+			Future<Map<String, EquipmentProfile>> equipmentsFuture = submitSiloLoad(executor, EQUIPMENTPROFILES_JSON, equipmentSilo, null);
+
+			settings = new Settings(join(settingsFuture));
+			uiStrings = join(uiStringsFuture);
+			processStrings = join(processStringsFuture);
+			documentStrings = join(documentStringsFuture);
+
+			fermentables = join(fermentablesFuture);
+			hops = join(hopsFuture);
+			yeasts = join(yeastsFuture);
+			miscs = join(miscsFuture);
+			waters = join(watersFuture);
+			waterParameters = join(waterParametersFuture);
+			styles = join(stylesFuture);
+			equipmentProfiles = join(equipmentsFuture);
+
+			// silos that reference the ingredient data
+			// databases older than the inventory ledger have no ledger file
+			// or journal, only the inventory that becomes its opening balance
+			boolean hasLedger = new File(dbDir, INVENTORY_LEDGER_JSON).exists();
+			boolean hasLedgerJournal = inventoryLedgerJournal.exists();
+			Future<Map<String, InventoryTransaction>> inventoryLedgerFuture =
+				hasLedger ?
+					submitSiloLoad(executor, INVENTORY_LEDGER_JSON, inventoryLedgerSilo, inventoryLedgerJournal) :
+					executor.submit(() -> inventoryLedgerJournal.replay(new HashMap<>(), Collections.emptyList(), this));
+			Future<Map<String, InventoryLineItem>> inventoryFuture =
+				hasLedger || hasLedgerJournal ? null :
+					submitSiloLoad(executor, INVENTORY_JSON, inventorySilo, null);
+			Future<Map<String, Recipe>> processTemplatesFuture = submitSiloLoad(executor, PROCESSTEMPLATES_JSON, processTemplateSilo, processTemplateJournal);
+			Future<Map<String, Recipe>> recipesFuture = submitSiloLoad(executor, RECIPES_JSON, recipeSilo, recipeJournal);
+			Future<Map<String, Batch>> batchesFuture = submitSiloLoad(executor, BATCHES_JSON, batchSilo, batchJournal);
+
+			inventoryLedger = new InventoryLedger(join(inventoryLedgerFuture).values());
+			if (inventoryFuture != null)
+			{
+				// recorded in the ledger with the first save
+				inventoryLedger.reconcile(join(inventoryFuture), LocalDateTime.now());
+			}
+			processTemplates = join(processTemplatesFuture);
+			recipes = join(recipesFuture);
+			batches = join(batchesFuture);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		// any new cache sections are written with the next save
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Loads a silo from the binary snapshot if it holds a section built from
+	 * the current JSON file, otherwise parses the JSON and caches the records
+	 * in the binary snapshot as they go past.
+	 * <p>
+	 * The reference data silos, which have no journal, are cached with their
+	 * numbers decoded since ReflectiveSerialiser takes either; the user data
+	 * serialisers expect strings.
+	 *
+	 * @param journal
+	 * 	The journal to replay over the loaded silo, or null if it has none.
+	 */
+	private <V extends V2DataObject> Future<Map<String, V>> submitSiloLoad(
+		ExecutorService executor,
+		String fileName,
+		SimpleMapSilo<V> silo,
+		SiloJournal<V> journal)
+	{
+		return executor.submit(() ->
+		{
+			long start = System.nanoTime();
+
+			try
+			{
+				byte[] bytes = Files.readAllBytes(new File(dbDir, fileName).toPath());
+				byte[] digest = getDigest().digest(bytes);
+				savedDigests.put(fileName, digest);
+
+				// the journal takes its digests from the records as read
+				List<Map> records = new ArrayList<>();
+				Consumer<Map> keep = journal == null ? obj -> {} : records::add;
+
+				Map<String, V> result;
+				Iterable<Map> cached = binarySnapshot.get(fileName, digest);
+
+				if (cached != null)
+				{
+					if (journal == null)
+					{
+						result = silo.load(cached, this);
+					}
+					else
+					{
+						cached.forEach(keep);
+						result = silo.load(records, this);
+					}
+				}
+				else
+				{
+					BinarySnapshot.SectionBuilder section =
+						new BinarySnapshot.SectionBuilder(journal == null);
+
+					try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(
+							new ByteArrayInputStream(bytes),
+							StandardCharsets.UTF_8)))
+					{
+						result = silo.load(reader, this, obj ->
+						{
+							section.add(obj);
+							keep.accept(obj);
+						});
+					}
+
+					binarySnapshot.put(fileName, digest, section);
+				}
+
+				if (journal != null)
+				{
+					journal.replay(result, records, this);
+				}
+
+				return result;
+			}
+			finally
+			{
+				loadTimings.put(fileName, (System.nanoTime() - start) / 1000000);
+			}
+		});
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void writeBinarySnapshot()
+	{
+		try
+		{
+			binarySnapshot.write();
 		}
 		catch (IOException e)
 		{
+			// The snapshot is only a cache of the JSON files. Failing to write
+			// it costs the next startup a JSON parse, nothing more.
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private <T> Future<T> submitLoad(
+		ExecutorService executor,
+		String fileName,
+		SiloLoader<T> loader)
+	{
+		return executor.submit(() ->
+		{
+			long start = System.nanoTime();
+			MessageDigest digest = getDigest();
+
+			try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(
+					new DigestInputStream(new FileInputStream(fileName), digest),
+					StandardCharsets.UTF_8)))
+			{
+				T result = loader.load(reader);
+
+				// consume any trailing content so that the digest covers the file
+				reader.skip(Long.MAX_VALUE);
+				savedDigests.put(new File(fileName).getName(), digest.digest());
+
+				return result;
+			}
+			finally
+			{
+				loadTimings.put(
+					new File(fileName).getName(),
+					(System.nanoTime() - start) / 1000000);
+			}
+		});
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private <T> T join(Future<T> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
 			throw new BrewdayException(e);
 		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof BrewdayException)
+			{
+				throw (BrewdayException)e.getCause();
+			}
+			throw new BrewdayException(e.getCause());
+		}
 	}
 
 	/*-------------------------------------------------------------------------*/
-	private BufferedReader getFileReader(
-		String fileName) throws FileNotFoundException
+	/**
+	 * @return
+	 * 	The time taken by the last {@link #loadAll()} to load each file, in
+	 * 	milliseconds, keyed on file name.
+	 */
+	public Map<String, Long> getLoadTimings()
 	{
-		return new BufferedReader(
-			new InputStreamReader(
-				new FileInputStream(fileName),
-				StandardCharsets.UTF_8));
+		return new TreeMap<>(loadTimings);
 	}
 
 	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The object map silos, keyed on the name of the file each is stored in.
+	 */
+	public Map<String, SimpleMapSilo<?>> getSilos()
+	{
+		Map<String, SimpleMapSilo<?>> result = new LinkedHashMap<>();
+		result.put(FERMENTABLES_JSON, fermentableSilo);
+		result.put(HOPS_JSON, hopsSilo);
+		result.put(YEASTS_JSON, yeastsSilo);
+		result.put(MISCS_JSON, miscsSilo);
+		result.put(WATERS_JSON, watersSilo);
+		result.put(WATER_PARAMETERS_JSON, waterParametersSilo);
+		result.put(STYLES_JSON, stylesSilo);
+		result.put(EQUIPMENTPROFILES_JSON, equipmentSilo);
+		result.put(INVENTORY_JSON, inventorySilo);
+		result.put(INVENTORY_LEDGER_JSON, inventoryLedgerSilo);
+		result.put(PROCESSTEMPLATES_JSON, processTemplateSilo);
+		result.put(RECIPES_JSON, recipeSilo);
+		result.put(BATCHES_JSON, batchSilo);
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Saves the database. Every silo is marshalled in memory, but only those
+	 * whose contents differ from what was last loaded or saved are written to
+	 * disk. Changes to recipes, process templates, the inventory ledger and
+	 * batches are appended to their journals instead. The silo files and
+	 * journal lines are written in a single atomic commit, so a save is all or
+	 * nothing.
+	 */
 	public void saveAll()
 	{
-		StringWriter settingsBuffer = new StringWriter();
-		StringWriter inventoryBuffer = new StringWriter();
-		StringWriter equipmentBuffer = new StringWriter();
-		StringWriter recipesBuffer = new StringWriter();
-		StringWriter batchesBuffer = new StringWriter();
-		StringWriter processBuffer = new StringWriter();
-
-		StringWriter fermentablesBuffer = new StringWriter();
-		StringWriter hopsBuffer = new StringWriter();
-		StringWriter yeastBuffer = new StringWriter();
-		StringWriter waterBuffer = new StringWriter();
-		StringWriter waterParametersBuffer = new StringWriter();
-		StringWriter miscBuffer = new StringWriter();
-		StringWriter styleBuffer = new StringWriter();
+		checkWritable();
+
+		Map<String, String> buffers = new LinkedHashMap<>();
+		Map<String, List<Map>> records = new HashMap<>();
 
 		try
 		{
-			// back up the current database
-			backupDb();
-
 			// marshall into memory. errors here will not overwrite any file contents
-			settingsSilo.save(new BufferedWriter(settingsBuffer), this.settings.getSettings());
-			inventorySilo.save(new BufferedWriter(inventoryBuffer), this.inventory, this);
-			processTemplateSilo.save(new BufferedWriter(processBuffer), this.processTemplates, this);
-			equipmentSilo.save(new BufferedWriter(equipmentBuffer), this.equipmentProfiles, this);
-			recipeSilo.save(new BufferedWriter(recipesBuffer), this.recipes, this);
-			batchSilo.save(new BufferedWriter(batchesBuffer), this.batches, this);
-
-			fermentableSilo.save(new BufferedWriter(fermentablesBuffer), this.fermentables, this);
-			hopsSilo.save(new BufferedWriter(hopsBuffer), this.hops, this);
-			yeastsSilo.save(new BufferedWriter(yeastBuffer), this.yeasts, this);
-			watersSilo.save(new BufferedWriter(waterBuffer), this.waters, this);
-			waterParametersSilo.save(new BufferedWriter(waterParametersBuffer), this.waterParameters, this);
-			miscsSilo.save(new BufferedWriter(miscBuffer), this.miscs, this);
-			stylesSilo.save(new BufferedWriter(styleBuffer), this.styles, this);
+			buffers.put(SETTINGS_JSON, marshall(w -> settingsSilo.save(w, this.settings.getSettings())));
+			marshall(buffers, records, EQUIPMENTPROFILES_JSON, equipmentSilo, this.equipmentProfiles);
+
+			marshall(buffers, records, FERMENTABLES_JSON, fermentableSilo, this.fermentables);
+			marshall(buffers, records, HOPS_JSON, hopsSilo, this.hops);
+			marshall(buffers, records, YEASTS_JSON, yeastsSilo, this.yeasts);
+			marshall(buffers, records, WATERS_JSON, watersSilo, this.waters);
+			marshall(buffers, records, WATER_PARAMETERS_JSON, waterParametersSilo, this.waterParameters);
+			marshall(buffers, records, MISCS_JSON, miscsSilo, this.miscs);
+			marshall(buffers, records, STYLES_JSON, stylesSilo, this.styles);
 		}
 		catch (IOException e)
 		{
 			throw new BrewdayException(e);
 		}
 
-		try
+		Set<String> changed;
+		synchronized (saveLock)
 		{
-			// write to disk
-			writeToDisk(dbDir+"/" + SETTINGS_JSON, settingsBuffer.toString());
-			writeToDisk(dbDir+"/" + INVENTORY_JSON, inventoryBuffer.toString());
-			writeToDisk(dbDir+"/" + PROCESSTEMPLATES_JSON, processBuffer.toString());
-			writeToDisk(dbDir+"/" + EQUIPMENTPROFILES_JSON, equipmentBuffer.toString());
-			writeToDisk(dbDir+"/" + RECIPES_JSON, recipesBuffer.toString());
-			writeToDisk(dbDir+"/" + BATCHES_JSON, batchesBuffer.toString());
-
-			writeToDisk(dbDir+"/" + FERMENTABLES_JSON, fermentablesBuffer.toString());
-			writeToDisk(dbDir+"/" + HOPS_JSON, hopsBuffer.toString());
-			writeToDisk(dbDir+"/" + YEASTS_JSON, yeastBuffer.toString());
-			writeToDisk(dbDir+"/" + WATERS_JSON, waterBuffer.toString());
-			writeToDisk(dbDir+"/" + WATER_PARAMETERS_JSON, waterParametersBuffer.toString());
-			writeToDisk(dbDir+"/" + MISCS_JSON, miscBuffer.toString());
-			writeToDisk(dbDir+"/" + STYLES_JSON, styleBuffer.toString());
-		}
-		catch (IOException e)
-		{
-			// At this point we assume that the data on disk is corrupt.
-			// Roll back to the backed up db state
-			try
+			Map<SiloJournal<?>, SiloJournal.Change> changes = new LinkedHashMap<>();
+			getChange(changes, inventoryLedgerJournal, inventoryLedger.getTransactionMap());
+			getChange(changes, processTemplateJournal, this.processTemplates);
+			getChange(changes, recipeJournal, this.recipes);
+			getChange(changes, batchJournal, this.batches);
+
+			Map<String, String> appends = new LinkedHashMap<>();
+			for (SiloJournal.Change change : changes.values())
 			{
-				restoreDb();
+				appends.put(change.getFileName(), change.getLine());
 			}
-			catch (IOException ex)
+
+			changed = writeChanged(buffers, appends);
+
+			for (Map.Entry<SiloJournal<?>, SiloJournal.Change> e : changes.entrySet())
 			{
-				throw new BrewdayException(e);
+				SiloJournal<?> journal = e.getKey();
+				if (journal.committed(e.getValue()) > JOURNAL_COMPACTION_THRESHOLD)
+				{
+					// a failure here leaves the journal in place, to be retried later
+					compactor.submit(() ->
+					{
+						synchronized (saveLock)
+						{
+							journal.compact();
+						}
+						return null;
+					});
+				}
 			}
+		}
 
-			throw new BrewdayException(e);
+		// keep the binary snapshot in step with the JSON just written
+		for (String fileName : changed)
+		{
+			List<Map> list = records.get(fileName);
+			if (list != null)
+			{
+				try
+				{
+					// only the reference data silos are marshalled here
+					BinarySnapshot.SectionBuilder section = new BinarySnapshot.SectionBuilder(true);
+					list.forEach(section::add);
+					binarySnapshot.put(fileName, savedDigests.get(fileName), section);
+				}
+				catch (V2Exception e)
+				{
+					// not cacheable, the stale section will just miss next time
+				}
+			}
 		}
+		writeBinarySnapshot();
 	}
 
 	/*-------------------------------------------------------------------------*/
-	private void writeToDisk(String fileName,
-		String fileContents) throws IOException
+	private void checkWritable()
 	{
-		FileWriter fileWriter = new FileWriter(fileName, StandardCharsets.UTF_8);
-		fileWriter.write(fileContents);
-		fileWriter.flush();
-		fileWriter.close();
+		if (readOnly)
+		{
+			throw new BrewdayException("Database " + dbDir + " is read only");
+		}
 	}
 
 	/*-------------------------------------------------------------------------*/
-	private void backupDb() throws IOException
+	/**
+	 * Adds the journal line for any changes to the given silo, if there are
+	 * any, to the given changes.
+	 */
+	private <V extends V2DataObject> void getChange(
+		Map<SiloJournal<?>, SiloJournal.Change> changes,
+		SiloJournal<V> journal,
+		Map<String, V> map)
 	{
-		copyFiles(dbDir, dbDir+"/backup/");
+		SiloJournal.Change change = journal.getChange(map, this);
+		if (change != null)
+		{
+			changes.put(journal, change);
+		}
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public void restoreDb() throws IOException
+	/**
+	 * Folds every journal back into its JSON snapshot, leaving the db dir
+	 * holding only plain silo files.
+	 */
+	public void compact()
 	{
-		copyFiles(dbDir+"/backup", dbDir);
+		checkWritable();
+
+		join(compactor.submit(() ->
+		{
+			synchronized (saveLock)
+			{
+				inventoryLedgerJournal.compact();
+				processTemplateJournal.compact();
+				recipeJournal.compact();
+				batchJournal.compact();
+			}
+			return null;
+		}));
 	}
 
 	/*-------------------------------------------------------------------------*/
-	private void copyFiles(String src, String dest) throws IOException
+	/**
+	 * Writes the given file contents and journal lines in a single atomic
+	 * commit, skipping any files that are unchanged since they were last
+	 * loaded or saved.
+	 *
+	 * @param buffers
+	 * 	File contents, keyed on the silo file name.
+	 * @param appends
+	 * 	Journal lines, keyed on the journal file name.
+	 * @return
+	 * 	The names of the files written, not counting journals.
+	 */
+	private Set<String> writeChanged(
+		Map<String, String> buffers,
+		Map<String, String> appends)
 	{
-		File srcFile = new File(src);
-		File destDir = new File(dest);
-		if (!destDir.exists())
+		Map<String, byte[]> changed = new LinkedHashMap<>();
+		for (Map.Entry<String, String> e : buffers.entrySet())
 		{
-			if (!destDir.mkdirs())
+			byte[] digest = digest(e.getValue());
+			if (!Arrays.equals(savedDigests.get(e.getKey()), digest))
 			{
-				throw new IOException("can't create dir " + destDir.getName());
+				changed.put(e.getKey(), digest);
 			}
 		}
 
-		File[] files = srcFile.listFiles((dir, name) -> name.endsWith(".json"));
+		if (changed.isEmpty() && appends.isEmpty())
+		{
+			return changed.keySet();
+		}
 
-		for (File f : files)
+		Map<String, String> contents = new LinkedHashMap<>();
+		for (String fileName : changed.keySet())
 		{
-			Files.copy(f.toPath(), new File(destDir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			contents.put(fileName, buffers.get(fileName));
+		}
+
+		try
+		{
+			// all or nothing: either every change is made or none are
+			new AtomicCommit(new File(dbDir)).commit(contents, appends);
+		}
+		catch (IOException e)
+		{
+			throw new BrewdayException(e);
+		}
+
+		savedDigests.putAll(changed);
+
+		return changed.keySet();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private <V extends V2DataObject> void marshall(
+		Map<String, String> buffers,
+		Map<String, List<Map>> records,
+		String fileName,
+		SimpleMapSilo<V> silo,
+		Map<String, V> map)
+	{
+		List<Map> list = silo.toMaps(map, this);
+		records.put(fileName, list);
+		buffers.put(fileName, V2Utils.getJson(list));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private String marshall(SiloSaver saver) throws IOException
+	{
+		StringWriter buffer = new StringWriter();
+		saver.save(new BufferedWriter(buffer));
+		return buffer.toString();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private byte[] digest(String contents)
+	{
+		return getDigest().digest(contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private MessageDigest getDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new BrewdayException(e);
 		}
 	}
 
@@ -500,37 +912,23 @@ public class Database
 
 	public void saveSettings()
 	{
-		StringWriter settingsBuffer = new StringWriter();
+		checkWritable();
+
+		Map<String, String> buffers = new HashMap<>();
 
 		try
 		{
 			// marshall into memory. errors here will not overwrite any file contents
-			settingsSilo.save(new BufferedWriter(settingsBuffer), this.settings.getSettings());
+			buffers.put(SETTINGS_JSON, marshall(w -> settingsSilo.save(w, this.settings.getSettings())));
 		}
 		catch (IOException e)
 		{
 			throw new BrewdayException(e);
 		}
 
-		try
+		synchronized (saveLock)
 		{
-			// write to disk
-			writeToDisk(dbDir+"/" + SETTINGS_JSON, settingsBuffer.toString());
-		}
-		catch (IOException e)
-		{
-			// At this point we assume that the data on disk is corrupt.
-			// Roll back to the backed up db state
-			try
-			{
-				restoreDb();
-			}
-			catch (IOException ex)
-			{
-				throw new BrewdayException(e);
-			}
-
-			throw new BrewdayException(e);
+			writeChanged(buffers, Collections.emptyMap());
 		}
 	}
 
@@ -584,7 +982,12 @@ public class Database
 
 	public Map<String, InventoryLineItem> getInventory()
 	{
-		return inventory;
+		return inventoryLedger.getInventory();
+	}
+
+	public InventoryLedger getInventoryLedger()
+	{
+		return inventoryLedger;
 	}
 
 	public Map<String, EquipmentProfile> getEquipmentProfiles()
@@ -642,10 +1045,4 @@ public class Database
 	{
 		return new File(dbDir);
 	}
-
-	/*-------------------------------------------------------------------------*/
-	public File getLocalStorageBackupDirectory()
-	{
-		return new File(dbDir, "backup");
-	}
 }
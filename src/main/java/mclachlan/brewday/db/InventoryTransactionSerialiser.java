@@ -0,0 +1,96 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.db;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.db.v2.V2SerialiserMap;
+import mclachlan.brewday.inventory.InventoryTransaction;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.recipe.IngredientAddition;
+
+/**
+ *
+ */
+public class InventoryTransactionSerialiser implements V2SerialiserMap<InventoryTransaction>
+{
+	public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+	QuantitySerialiser quantitySerialiser = new QuantitySerialiser(false);
+
+	/*-------------------------------------------------------------------------*/
+	@Override
+	public Map toMap(InventoryTransaction transaction, Database db)
+	{
+		Map result = new HashMap();
+
+		result.put("name", transaction.getName());
+		result.put("sequence", String.valueOf(transaction.getSequence()));
+		result.put("timestamp", TIMESTAMP_FORMAT.format(transaction.getTimestamp()));
+		result.put("type", transaction.getType().name());
+		result.put("ingredient", transaction.getIngredient());
+		result.put("ingredientType", transaction.getIngredientType().name());
+		result.put("quantity", quantitySerialiser.toMap(transaction.getQuantity(), db));
+		result.put("unit", transaction.getUnit().name());
+		if (transaction.getBatch() != null)
+		{
+			result.put("batch", transaction.getBatch());
+		}
+		if (transaction.getReverses() >= 0)
+		{
+			result.put("reverses", String.valueOf(transaction.getReverses()));
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	@Override
+	public InventoryTransaction fromMap(Map<String, ?> map, Database db)
+	{
+		long sequence = Long.parseLong((String)map.get("sequence"));
+		InventoryTransaction.Type type = InventoryTransaction.Type.valueOf((String)map.get("type"));
+		String ingredient = (String)map.get("ingredient");
+		IngredientAddition.Type ingredientType = IngredientAddition.Type.valueOf((String)map.get("ingredientType"));
+		Quantity quantity = quantitySerialiser.fromMap((Map<String, ?>)map.get("quantity"), db);
+		Quantity.Unit unit = Quantity.Unit.valueOf((String)map.get("unit"));
+		String batch = (String)map.get("batch");
+		String reverses = (String)map.get("reverses");
+
+		try
+		{
+			return new InventoryTransaction(
+				sequence,
+				LocalDateTime.parse((String)map.get("timestamp"), TIMESTAMP_FORMAT),
+				type,
+				ingredient,
+				ingredientType,
+				quantity,
+				unit,
+				batch,
+				reverses == null ? -1 : Long.parseLong(reverses));
+		}
+		catch (DateTimeParseException e)
+		{
+			throw new BrewdayException(e);
+		}
+	}
+}
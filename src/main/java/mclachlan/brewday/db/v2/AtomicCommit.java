@@ -0,0 +1,370 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.db.v2;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes a set of files in a directory as a single all-or-nothing unit. A
+ * commit can replace whole files and append lines to others (eg journals).
+ * <p>
+ * The list of files is first written to a temp manifest, then each file's
+ * new contents or appended lines are written to a temp file and forced to
+ * disk. The manifest is then atomically moved into place: this is the
+ * commit point. Finally each temp file is atomically renamed over its
+ * target, or appended to it, and the manifest is removed.
+ * <p>
+ * The manifest records where each append starts, so rolling an append
+ * forward again cuts off whatever an interrupted attempt wrote and is safe
+ * to repeat. Anything after the last newline of a file being appended to
+ * is an unfinished line from an older interrupted write, and is cut off.
+ * <p>
+ * If a commit is interrupted, {@link #recover()} either rolls it forward
+ * (the manifest exists, so every temp file is complete) or discards the
+ * temp files listed in the temp manifest (no manifest, so the targets were
+ * never touched). Other temp files in the directory are left alone.
+ * <p>
+ * Commits and recovery in the same directory are serialised, since they
+ * share the manifest.
+ */
+public class AtomicCommit
+{
+	public static final String MANIFEST = "commit.manifest";
+	public static final String TEMP_SUFFIX = ".tmp";
+
+	/** one lock per directory, keyed on its canonical path */
+	private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	private final File dir;
+	private final Object lock;
+
+	/*-------------------------------------------------------------------------*/
+	public AtomicCommit(File dir)
+	{
+		this.dir = dir;
+
+		String key;
+		try
+		{
+			key = dir.getCanonicalPath();
+		}
+		catch (IOException e)
+		{
+			key = dir.getAbsolutePath();
+		}
+		this.lock = locks.computeIfAbsent(key, k -> new Object());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param files
+	 * 	File contents to write, keyed on file name within the directory.
+	 */
+	public void commit(Map<String, String> files) throws IOException
+	{
+		commit(files, Collections.emptyMap());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param files
+	 * 	File contents to write, keyed on file name within the directory.
+	 * @param appends
+	 * 	Complete lines to add to the end of files, keyed on file name within
+	 * 	the directory. A file can't be both written and appended to.
+	 */
+	public void commit(
+		Map<String, String> files,
+		Map<String, String> appends) throws IOException
+	{
+		if (files.isEmpty() && appends.isEmpty())
+		{
+			return;
+		}
+
+		synchronized (lock)
+		{
+			// file name to the offset to append at, or null to replace it
+			Map<String, Long> manifest = new LinkedHashMap<>();
+			for (String fileName : files.keySet())
+			{
+				manifest.put(fileName, null);
+			}
+			for (String fileName : appends.keySet())
+			{
+				manifest.put(fileName, getAppendOffset(getPath(fileName)));
+			}
+
+			// stage
+			Path manifestTemp = getTempPath(MANIFEST);
+			try
+			{
+				write(manifestTemp, getManifest(manifest));
+
+				for (Map.Entry<String, String> e : files.entrySet())
+				{
+					write(getTempPath(e.getKey()), e.getValue());
+				}
+				for (Map.Entry<String, String> e : appends.entrySet())
+				{
+					write(getTempPath(e.getKey()), e.getValue());
+				}
+
+				Files.move(manifestTemp, getPath(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+				syncDir();
+			}
+			catch (IOException e)
+			{
+				// nothing has been committed, the targets are untouched
+				discardTempFiles(manifest.keySet());
+				throw e;
+			}
+
+			// publish
+			rollForward(manifest);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Completes or discards any commit that was interrupted.
+	 */
+	public void recover() throws IOException
+	{
+		synchronized (lock)
+		{
+			Path manifest = getPath(MANIFEST);
+
+			if (Files.exists(manifest))
+			{
+				rollForward(readManifest(manifest));
+			}
+			else if (Files.exists(getTempPath(MANIFEST)))
+			{
+				discardTempFiles(readManifest(getTempPath(MANIFEST)).keySet());
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	True if a commit got past its commit point but not all of its files
+	 * 	are in place yet, so that the directory holds a mix of old and new
+	 * 	files until it is recovered.
+	 */
+	public boolean isIncomplete()
+	{
+		return Files.exists(getPath(MANIFEST));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * One line per file: the file name for a file that is replaced, or the
+	 * file name, a tab and the offset to append at.
+	 */
+	private String getManifest(Map<String, Long> manifest)
+	{
+		List<String> lines = new ArrayList<>();
+		for (Map.Entry<String, Long> e : manifest.entrySet())
+		{
+			lines.add(e.getValue() == null ? e.getKey() : e.getKey() + "\t" + e.getValue());
+		}
+		return String.join("\n", lines);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Map<String, Long> readManifest(Path path) throws IOException
+	{
+		String contents = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (String line : contents.split("\n"))
+		{
+			if (line.trim().length() > 0)
+			{
+				String[] fields = line.trim().split("\t");
+				result.put(fields[0], fields.length > 1 ? Long.valueOf(fields[1]) : null);
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void rollForward(Map<String, Long> manifest) throws IOException
+	{
+		for (Map.Entry<String, Long> e : manifest.entrySet())
+		{
+			Path temp = getTempPath(e.getKey());
+
+			// already done if a previous roll forward got part way
+			if (!Files.exists(temp))
+			{
+				continue;
+			}
+
+			if (e.getValue() == null)
+			{
+				Files.move(temp, getPath(e.getKey()), StandardCopyOption.ATOMIC_MOVE);
+			}
+			else
+			{
+				append(getPath(e.getKey()), e.getValue(), Files.readAllBytes(temp));
+				Files.delete(temp);
+			}
+		}
+		syncDir();
+
+		Files.deleteIfExists(getPath(MANIFEST));
+		syncDir();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void write(Path path, String contents) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE))
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Writes the given bytes to the file at the given offset, cutting off
+	 * anything after it first.
+	 */
+	private void append(Path path, long offset, byte[] bytes) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE))
+		{
+			channel.truncate(offset);
+
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long position = offset;
+			while (buffer.hasRemaining())
+			{
+				position += channel.write(buffer, position);
+			}
+			channel.force(true);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The end of the last complete line of the given file, or 0 if it
+	 * 	doesn't exist.
+	 */
+	private long getAppendOffset(Path path) throws IOException
+	{
+		if (!Files.exists(path))
+		{
+			return 0;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+			long end = channel.size();
+			while (end > 0)
+			{
+				long start = Math.max(0, end - buffer.capacity());
+				buffer.clear().limit((int)(end - start));
+				while (buffer.hasRemaining())
+				{
+					if (channel.read(buffer, start + buffer.position()) < 0)
+					{
+						throw new EOFException(path.toString());
+					}
+				}
+
+				for (int i = buffer.limit() - 1; i >= 0; i--)
+				{
+					if (buffer.get(i) == '\n')
+					{
+						return start + i + 1;
+					}
+				}
+				end = start;
+			}
+
+			return 0;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Deletes the temp files of the given commit, then its temp manifest.
+	 */
+	private void discardTempFiles(Collection<String> fileNames) throws IOException
+	{
+		for (String fileName : fileNames)
+		{
+			Files.deleteIfExists(getTempPath(fileName));
+		}
+		Files.deleteIfExists(getTempPath(MANIFEST));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Makes renames in the directory durable. Not all platforms support
+	 * opening a directory (Windows doesn't), in which case this is a no-op.
+	 */
+	private void syncDir()
+	{
+		try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{
+			// not supported on this platform
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Path getPath(String fileName)
+	{
+		return new File(dir, fileName).toPath();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Path getTempPath(String fileName)
+	{
+		return new File(dir, fileName + TEMP_SUFFIX).toPath();
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.db.v2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A binary cache of the parsed contents of the JSON silo files, to make
+ * startup faster. The JSON files remain the source of truth: each section
+ * of the cache records the digest of the JSON file it was built from, and is
+ * only used while that file is unchanged.
+ * <p>
+ * The cache holds the same map trees that parsing the JSON would produce
+ * (strings, doubles, booleans, maps and lists), so the silo serialisers
+ * work on it unchanged. Sections built with number decoding on also store
+ * numeric strings (eg "0.25") as primitive doubles and hand them back as
+ * doubles, saving the serialiser from parsing them again; this is only for
+ * silos whose serialiser accepts either.
+ * <p>
+ * File layout: magic, version, section count, then for each section its
+ * silo file name, JSON digest and length-prefixed body, followed by a CRC32
+ * of everything before it. A section body is a string table followed by
+ * length-prefixed records, in which strings are table indexes and numbers
+ * are primitive doubles.
+ */
+public class BinarySnapshot
+{
+	private static final int MAGIC = 0x42444253; // "BDBS"
+	private static final int VERSION = 2;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte DOUBLE = 2;
+	private static final byte TRUE = 3;
+	private static final byte FALSE = 4;
+	private static final byte MAP = 5;
+	private static final byte LIST = 6;
+
+	private final File file;
+	private final Map<String, Section> sections = new ConcurrentHashMap<>();
+	private volatile boolean dirty;
+
+	/*-------------------------------------------------------------------------*/
+	public BinarySnapshot(File file)
+	{
+		this.file = file;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Reads the cache file. A missing, unreadable or corrupt file just leaves
+	 * the cache empty.
+	 */
+	public synchronized void read()
+	{
+		sections.clear();
+		dirty = false;
+
+		if (!file.exists())
+		{
+			return;
+		}
+
+		try
+		{
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			if (bytes.length < 4)
+			{
+				return;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length - 4);
+			if ((int)crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt())
+			{
+				return;
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				return;
+			}
+
+			int count = in.readInt();
+			for (int i=0; i<count; i++)
+			{
+				String fileName = in.readUTF();
+				byte[] digest = new byte[in.readInt()];
+				in.readFully(digest);
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+
+				sections.put(fileName, new Section(digest, body));
+			}
+		}
+		catch (IOException e)
+		{
+			// treat as a cache miss
+			sections.clear();
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The cached records for the given silo file, decoded one at a time as
+	 * 	they are iterated, or null if there is no section built from a JSON
+	 * 	file with the given digest.
+	 */
+	public Iterable<Map> get(String fileName, byte[] jsonDigest)
+	{
+		Section section = sections.get(fileName);
+
+		if (section == null || !Arrays.equals(section.digest, jsonDigest))
+		{
+			return null;
+		}
+
+		return () -> new SectionIterator(section.body);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Replaces the section for the given silo file. Call {@link #write()} to
+	 * persist it.
+	 */
+	public void put(String fileName, byte[] jsonDigest, SectionBuilder builder)
+	{
+		sections.put(fileName, new Section(jsonDigest, builder.build()));
+		dirty = true;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Writes the cache file if any section has changed since it was read or
+	 * last written.
+	 */
+	public synchronized void write() throws IOException
+	{
+		if (!dirty)
+		{
+			return;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		List<Map.Entry<String, Section>> entries = new ArrayList<>(sections.entrySet());
+		out.writeInt(entries.size());
+		for (Map.Entry<String, Section> e : entries)
+		{
+			out.writeUTF(e.getKey());
+			out.writeInt(e.getValue().digest.length);
+			out.write(e.getValue().digest);
+			out.writeInt(e.getValue().body.length);
+			out.write(e.getValue().body);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int)crc.getValue());
+		out.flush();
+
+		File temp = new File(file.getPath() + AtomicCommit.TEMP_SUFFIX);
+		try (FileChannel channel = FileChannel.open(temp.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE))
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		dirty = false;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Section
+	{
+		private final byte[] digest;
+		private final byte[] body;
+
+		public Section(byte[] digest, byte[] body)
+		{
+			this.digest = digest;
+			this.body = body;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Encodes the records of one section as they are added.
+	 */
+	public static class SectionBuilder
+	{
+		private final Map<String, Integer> strings = new LinkedHashMap<>();
+		private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+		private final DataOutputStream recordOut = new DataOutputStream(record);
+		private final boolean decodeNumbers;
+		private int count;
+
+		/*----------------------------------------------------------------------*/
+		/**
+		 * @param decodeNumbers
+		 * 	true to store numeric strings as doubles
+		 */
+		public SectionBuilder(boolean decodeNumbers)
+		{
+			this.decodeNumbers = decodeNumbers;
+		}
+
+		/*----------------------------------------------------------------------*/
+		/**
+		 * Adds a record, either as parsed from JSON or as produced by a
+		 * serialiser before it is written as JSON.
+		 */
+		public void add(Map obj)
+		{
+			try
+			{
+				record.reset();
+				writeValue(obj);
+				recordOut.flush();
+
+				DataOutputStream out = new DataOutputStream(records);
+				out.writeInt(record.size());
+				record.writeTo(records);
+				count++;
+			}
+			catch (IOException e)
+			{
+				throw new V2Exception(e);
+			}
+		}
+
+		/*----------------------------------------------------------------------*/
+		private void writeValue(Object value) throws IOException
+		{
+			if (value == null)
+			{
+				recordOut.writeByte(NULL);
+			}
+			else if (value instanceof String)
+			{
+				double d = decodeNumbers ? parseNumber((String)value) : Double.NaN;
+				if (Double.isNaN(d))
+				{
+					recordOut.writeByte(STRING);
+					recordOut.writeInt(getStringIndex((String)value));
+				}
+				else
+				{
+					recordOut.writeByte(DOUBLE);
+					recordOut.writeDouble(d);
+				}
+			}
+			else if (value instanceof Number)
+			{
+				// Gson reads all JSON numbers as doubles
+				recordOut.writeByte(DOUBLE);
+				recordOut.writeDouble(((Number)value).doubleValue());
+			}
+			else if (value instanceof Boolean)
+			{
+				recordOut.writeByte((Boolean)value ? TRUE : FALSE);
+			}
+			else if (value instanceof Map)
+			{
+				// null values are not written to JSON, so drop them here too
+				List<Map.Entry<?, ?>> entries = new ArrayList<>();
+				for (Map.Entry<?, ?> e : ((Map<?, ?>)value).entrySet())
+				{
+					if (e.getValue() != null)
+					{
+						entries.add(e);
+					}
+				}
+
+				recordOut.writeByte(MAP);
+				recordOut.writeInt(entries.size());
+				for (Map.Entry<?, ?> e : entries)
+				{
+					recordOut.writeInt(getStringIndex(String.valueOf(e.getKey())));
+					writeValue(e.getValue());
+				}
+			}
+			else if (value instanceof List)
+			{
+				List<?> list = (List<?>)value;
+				recordOut.writeByte(LIST);
+				recordOut.writeInt(list.size());
+				for (Object item : list)
+				{
+					writeValue(item);
+				}
+			}
+			else
+			{
+				throw new V2Exception("Can't cache value of " + value.getClass());
+			}
+		}
+
+		/*----------------------------------------------------------------------*/
+		/**
+		 * @return
+		 * 	The value of the given string if it is a number that prints back
+		 * 	as exactly the same string, so that nothing is lost by storing the
+		 * 	double, otherwise NaN.
+		 */
+		private static double parseNumber(String s)
+		{
+			if (s.isEmpty() || !(Character.isDigit(s.charAt(0)) || s.charAt(0) == '-'))
+			{
+				return Double.NaN;
+			}
+
+			try
+			{
+				double result = Double.parseDouble(s);
+				return Double.toString(result).equals(s) ? result : Double.NaN;
+			}
+			catch (NumberFormatException e)
+			{
+				return Double.NaN;
+			}
+		}
+
+		/*----------------------------------------------------------------------*/
+		private int getStringIndex(String s)
+		{
+			Integer index = strings.get(s);
+			if (index == null)
+			{
+				index = strings.size();
+				strings.put(s, index);
+			}
+			return index;
+		}
+
+		/*----------------------------------------------------------------------*/
+		private byte[] build()
+		{
+			try
+			{
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(result);
+
+				out.writeInt(strings.size());
+				for (String s : strings.keySet())
+				{
+					byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(utf8.length);
+					out.write(utf8);
+				}
+
+				out.writeInt(count);
+				records.writeTo(out);
+				out.flush();
+
+				return result.toByteArray();
+			}
+			catch (IOException e)
+			{
+				throw new V2Exception(e);
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Decodes the records of a section one at a time.
+	 */
+	private static class SectionIterator implements Iterator<Map>
+	{
+		private final ByteBuffer buffer;
+		private final String[] strings;
+		private int remaining;
+
+		/*----------------------------------------------------------------------*/
+		public SectionIterator(byte[] body)
+		{
+			buffer = ByteBuffer.wrap(body);
+
+			strings = new String[buffer.getInt()];
+			for (int i=0; i<strings.length; i++)
+			{
+				int length = buffer.getInt();
+				strings[i] = new String(body, buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+
+			remaining = buffer.getInt();
+		}
+
+		/*----------------------------------------------------------------------*/
+		@Override
+		public boolean hasNext()
+		{
+			return remaining > 0;
+		}
+
+		/*----------------------------------------------------------------------*/
+		@Override
+		public Map next()
+		{
+			if (remaining <= 0)
+			{
+				throw new NoSuchElementException();
+			}
+
+			remaining--;
+			buffer.getInt(); // record length, not needed when reading in order
+			return (Map)readValue();
+		}
+
+		/*----------------------------------------------------------------------*/
+		private Object readValue()
+		{
+			byte tag = buffer.get();
+			switch (tag)
+			{
+				case NULL:
+					return null;
+				case STRING:
+					return strings[buffer.getInt()];
+				case DOUBLE:
+					return buffer.getDouble();
+				case TRUE:
+					return Boolean.TRUE;
+				case FALSE:
+					return Boolean.FALSE;
+				case MAP:
+					int mapSize = buffer.getInt();
+					Map<String, Object> map = new LinkedHashMap<>();
+					for (int i=0; i<mapSize; i++)
+					{
+						String key = strings[buffer.getInt()];
+						map.put(key, readValue());
+					}
+					return map;
+				case LIST:
+					int listSize = buffer.getInt();
+					List<Object> list = new ArrayList<>(listSize);
+					for (int i=0; i<listSize; i++)
+					{
+						list.add(readValue());
+					}
+					return list;
+				default:
+					throw new V2Exception("Invalid tag " + tag);
+			}
+		}
+	}
+}
@@ -17,9 +17,12 @@
 
 package mclachlan.brewday.db.v2;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.function.Function;
 import mclachlan.brewday.BrewdayException;
 import mclachlan.brewday.db.Database;
 
@@ -28,10 +31,20 @@ import mclachlan.brewday.db.Database;
  */
 public class ReflectiveSerialiser<E extends V2DataObject> implements V2SerialiserMap<E>
 {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
 	private Class<E> clazz;
 	private List<String> fields;
 	private Map<Class, V2SerialiserObject> customSerialisers;
 
+	/**
+	 * constructor and accessors for each field, resolved once and published
+	 * together; rebuilt if custom serialisers change
+	 */
+	private volatile Handles handles;
+
 	/*-------------------------------------------------------------------------*/
 	public ReflectiveSerialiser(Class<E> clazz, String... fields)
 	{
@@ -44,160 +57,256 @@ public class ReflectiveSerialiser<E extends V2DataObject> implements V2Serialise
 	@Override
 	public Map toMap(E e, Database db)
 	{
-		try
+		Map<String, Object> result = new HashMap<>();
+
+		for (FieldAccessor accessor : getHandles().accessors)
 		{
-			Map<String, Object> result = new HashMap<>();
+			if (accessor.getter == null)
+			{
+				throw new BrewdayException(
+					new NoSuchMethodException(clazz.getName()+".is"+getMethodSuffix(accessor.field)+"()"));
+			}
 
-			for (String field : fields)
+			Object value;
+			try
 			{
-				Method method = null;
-				try
-				{
-					method = clazz.getMethod("get" + getMethodSuffix(field));
-				}
-				catch (NoSuchMethodException ex)
-				{
-					method = clazz.getMethod("is"+getMethodSuffix(field));
-				}
-				catch (SecurityException ex)
-				{
-					throw new RuntimeException(ex);
-				}
+				value = (Object)accessor.getter.invokeExact((Object)e);
+			}
+			catch (RuntimeException | Error ex)
+			{
+				throw ex;
+			}
+			catch (Throwable ex)
+			{
+				throw new BrewdayException(ex);
+			}
 
-				Object value = method.invoke(e);
+			if (value == null)
+			{
+				result.put(accessor.field, null);
+			}
+			else
+			{
+				V2SerialiserObject customSerialiser = customSerialisers.get(value.getClass());
 
-				if (value == null)
+				if (customSerialiser != null)
+				{
+					result.put(accessor.field, customSerialiser.toObj(value));
+				}
+				else if (Enum.class.isAssignableFrom(value.getClass()))
 				{
-					result.put(field, null);
+					// use name() here so that toString() can be used for the UI
+					result.put(accessor.field, ((Enum<?>)value).name());
 				}
 				else
 				{
-					V2SerialiserObject customSerialiser = customSerialisers.get(value.getClass());
-
-					if (customSerialiser != null)
-					{
-						result.put(field, customSerialiser.toObj(value));
-					}
-					else if (Enum.class.isAssignableFrom(value.getClass()))
-					{
-						// use name() here so that toString() can be used for the UI
-						result.put(field, ((Enum<?>)value).name());
-					}
-					else
-					{
-						result.put(field, value.toString());
-					}
+					result.put(accessor.field, value.toString());
 				}
 			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	@Override
+	public E fromMap(Map<String, ?> map, Database db)
+	{
+		Handles handles = getHandles();
 
-			return result;
+		E result;
+		try
+		{
+			result = (E)(Object)handles.constructor.invokeExact();
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
 		}
-		catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex)
+		catch (Throwable e)
 		{
-			throw new BrewdayException(ex);
+			throw new BrewdayException(e);
 		}
+
+		for (FieldAccessor accessor : handles.accessors)
+		{
+			Object value = map.get(accessor.field);
+
+			if (value == null && accessor.skipNull)
+			{
+				continue;
+			}
+
+			try
+			{
+				accessor.setter.invokeExact((Object)result, accessor.converter.apply(value));
+			}
+			catch (IllegalArgumentException | ClassCastException | NullPointerException e)
+			{
+				throw new BrewdayException("Error setting field [" +accessor.field+
+					"] paramType [" +accessor.parameterType+
+					"] setMethod [" +accessor.setMethod+
+					"]", e);
+			}
+			catch (RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch (Throwable e)
+			{
+				throw new BrewdayException("Error setting field [" +accessor.field+
+					"] paramType [" +accessor.parameterType+
+					"] setMethod [" +accessor.setMethod+
+					"]", e);
+			}
+		}
+
+		return result;
 	}
 
 	/*-------------------------------------------------------------------------*/
-	@Override
-	public E fromMap(Map<String, ?> map, Database db)
+	/**
+	 * Resolves the getter, setter and value converter for each field. This
+	 * used to be done reflectively per field per object, which dominated the
+	 * cost of loading and saving the reference databases.
+	 */
+	private Handles getHandles()
 	{
+		Handles current = handles;
+		if (current != null)
+		{
+			return current;
+		}
+
 		try
 		{
-			E result = clazz.newInstance();
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
 
-			for (String field : fields)
+			MethodHandle constructor = lookup.unreflectConstructor(clazz.getConstructor()).asType(CONSTRUCTOR_TYPE);
+
+			FieldAccessor[] result = new FieldAccessor[fields.size()];
+			Method[] methods = clazz.getMethods();
+
+			for (int i=0; i<fields.size(); i++)
 			{
-				String setMethodName = "set" + getMethodSuffix(field);
-				Method[] methods = clazz.getMethods();
-				Method setMethod = null;
-				for (Method m : methods)
+				String field = fields.get(i);
+				FieldAccessor accessor = new FieldAccessor(field);
+
+				Method getMethod = findMethod(methods, "get" + getMethodSuffix(field), 0);
+				if (getMethod == null)
 				{
-					if (m.getName().equals(setMethodName) && m.getParameterTypes().length == 1)
-					{
-						setMethod = m;
-						break;
-					}
+					getMethod = findMethod(methods, "is" + getMethodSuffix(field), 0);
 				}
-
-				Object value = map.get(field);
-				Class parameterType = setMethod.getParameterTypes()[0];
-
-				try
+				if (getMethod != null)
 				{
-					if (parameterType == String.class)
-					{
-						setMethod.invoke(result, (String)value);
-					}
-					else if (parameterType == Integer.class || parameterType == int.class)
-					{
-						setMethod.invoke(result, Integer.valueOf((String)value));
-					}
-					else if (parameterType == Short.class|| parameterType == short.class)
-					{
-						setMethod.invoke(result, Short.valueOf((String)value));
-					}
-					else if (parameterType == Byte.class|| parameterType == byte.class)
-					{
-						setMethod.invoke(result, Byte.valueOf((String)value));
-					}
-					else if (parameterType == Double.class || parameterType == double.class)
-					{
-						setMethod.invoke(result, Double.valueOf((String)value));
-					}
-					else if (parameterType == Float.class|| parameterType == float.class)
-					{
-						setMethod.invoke(result, Float.valueOf((String)value));
-					}
-					else if (parameterType == Boolean.class || parameterType == boolean.class)
-					{
-						setMethod.invoke(result, Boolean.valueOf((String)value));
-					}
-					else if (parameterType == Character.class || parameterType == char.class)
-					{
-						setMethod.invoke(result, Character.valueOf(value.toString().charAt(0)));
-					}
-					else if (Enum.class.isAssignableFrom(parameterType))
-					{
-						if (value != null)
-						{
-							setMethod.invoke(result, Enum.valueOf(parameterType, (String)value));
-						}
-					}
-					else
-					{
-						V2SerialiserObject customSerialiser = customSerialisers.get(parameterType);
-
-						if (customSerialiser != null)
-						{
-							// honestly this probably won't work
-							Object val = customSerialiser.fromObj(value);
-							setMethod.invoke(result, parameterType.cast(val));
-						}
-						else
-						{
-							setMethod.invoke(result, value);
-						}
-					}
+					accessor.getter = lookup.unreflect(getMethod).asType(GETTER_TYPE);
 				}
-				catch (IllegalAccessException | IllegalArgumentException |
-					InvocationTargetException e)
+
+				Method setMethod = findMethod(methods, "set" + getMethodSuffix(field), 1);
+				if (setMethod == null)
 				{
-					throw new BrewdayException("Error setting field [" +field+
-						"] paramType [" +parameterType+
-						"] setMethod [" +setMethod+
-						"]", e);
+					throw new BrewdayException("No set method for field [" + field +
+						"] in " + clazz.getName());
 				}
+				accessor.setMethod = setMethod;
+				accessor.parameterType = setMethod.getParameterTypes()[0];
+				accessor.setter = lookup.unreflect(setMethod).asType(SETTER_TYPE);
+				accessor.converter = getConverter(accessor.parameterType);
+				accessor.skipNull = Enum.class.isAssignableFrom(accessor.parameterType);
+
+				result[i] = accessor;
 			}
 
-			return result;
+			// racing threads may both resolve, which is harmless
+			current = new Handles(constructor, result);
+			handles = current;
+			return current;
 		}
-		catch (InstantiationException | IllegalAccessException e)
+		catch (NoSuchMethodException | IllegalAccessException e)
 		{
 			throw new BrewdayException(e);
 		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	private Method findMethod(Method[] methods, String name, int nrParams)
+	{
+		for (Method m : methods)
+		{
+			if (m.getName().equals(name) && m.getParameterTypes().length == nrParams)
+			{
+				return m;
+			}
+		}
+		return null;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the value as it appears in the JSON. Numbers read from the
+	 * 	binary snapshot print back as the string they were stored from.
+	 */
+	private static String toText(Object value)
+	{
+		return value instanceof Double ? value.toString() : (String)value;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Function<Object, Object> getConverter(Class parameterType)
+	{
+		if (parameterType == String.class)
+		{
+			return value -> toText(value);
+		}
+		else if (parameterType == Integer.class || parameterType == int.class)
+		{
+			return value -> Integer.valueOf(toText(value));
+		}
+		else if (parameterType == Short.class|| parameterType == short.class)
+		{
+			return value -> Short.valueOf(toText(value));
+		}
+		else if (parameterType == Byte.class|| parameterType == byte.class)
+		{
+			return value -> Byte.valueOf(toText(value));
+		}
+		else if (parameterType == Double.class || parameterType == double.class)
+		{
+			// the binary snapshot may have decoded it already
+			return value -> value instanceof Double ? value : Double.valueOf((String)value);
+		}
+		else if (parameterType == Float.class|| parameterType == float.class)
+		{
+			return value -> Float.valueOf(toText(value));
+		}
+		else if (parameterType == Boolean.class || parameterType == boolean.class)
+		{
+			return value -> Boolean.valueOf(toText(value));
+		}
+		else if (parameterType == Character.class || parameterType == char.class)
+		{
+			return value -> Character.valueOf(value.toString().charAt(0));
+		}
+		else if (Enum.class.isAssignableFrom(parameterType))
+		{
+			return value -> Enum.valueOf(parameterType, (String)value);
+		}
+		else
+		{
+			V2SerialiserObject customSerialiser = customSerialisers.get(parameterType);
+
+			if (customSerialiser != null)
+			{
+				// honestly this probably won't work
+				return value -> parameterType.cast(customSerialiser.fromObj(value));
+			}
+			else
+			{
+				return value -> value;
+			}
+		}
+	}
+
 	/*-------------------------------------------------------------------------*/
 	private String getMethodSuffix(String field)
 	{
@@ -210,6 +319,38 @@ public class ReflectiveSerialiser<E extends V2DataObject> implements V2Serialise
 		V2SerialiserObject<?> serialiser)
 	{
 		this.customSerialisers.put(clazz, serialiser);
+
+		// converters capture the custom serialisers, so re-resolve
+		this.handles = null;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Handles
+	{
+		private final MethodHandle constructor;
+		private final FieldAccessor[] accessors;
+
+		public Handles(MethodHandle constructor, FieldAccessor[] accessors)
+		{
+			this.constructor = constructor;
+			this.accessors = accessors;
+		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	private static class FieldAccessor
+	{
+		private final String field;
+		private MethodHandle getter;
+		private MethodHandle setter;
+		private Method setMethod;
+		private Class parameterType;
+		private Function<Object, Object> converter;
+		private boolean skipNull;
+
+		public FieldAccessor(String field)
+		{
+			this.field = field;
+		}
+	}
 }
@@ -0,0 +1,457 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.db.v2;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.db.Database;
+
+/**
+ * An append-only journal of changes to a map silo, kept next to the silo's
+ * JSON snapshot.
+ * <p>
+ * Each save writes a single line recording the objects that were added,
+ * changed or removed since the last one, so saving costs I/O proportional
+ * to what changed rather than to the whole silo. {@link #getChange} works
+ * out the line, which the caller appends through an {@link AtomicCommit},
+ * usually together with the lines of other journals and any other files
+ * of the same save, and then passes to {@link #committed}. A torn final
+ * line, left by a crash in an older version, is ignored on replay.
+ * <p>
+ * {@link #compact()} folds the journal back into the snapshot. Records are
+ * idempotent, so replaying a journal over a snapshot that already contains
+ * its changes is harmless. It must not run while a change to the same
+ * journal is being committed.
+ */
+public class SiloJournal<V extends V2DataObject>
+{
+	public static final String JOURNAL_SUFFIX = ".journal";
+
+	private static final String UPSERT = "upsert";
+	private static final String DELETE = "delete";
+
+	private final File snapshotFile;
+	private final File journalFile;
+	private final V2SerialiserMap<V> serialiser;
+
+	/** gives the name of a serialised object in the snapshot */
+	private final Function<Map, String> names;
+
+	/** true if the objects are never changed once journalled */
+	private final boolean immutable;
+
+	/** digests of each object as last loaded or journalled */
+	private Map<String, byte[]> digests = new HashMap<>();
+
+	/** number of object records in the journal */
+	private int recordCount;
+
+	/*-------------------------------------------------------------------------*/
+	public SiloJournal(File snapshotFile, V2SerialiserMap<V> serialiser)
+	{
+		this(snapshotFile, serialiser, obj -> (String)obj.get("name"));
+	}
+
+	/**
+	 * @param names
+	 * 	Gives the name of a serialised object, for silos whose objects do not
+	 * 	store their name
+	 */
+	public SiloJournal(
+		File snapshotFile,
+		V2SerialiserMap<V> serialiser,
+		Function<Map, String> names)
+	{
+		this(snapshotFile, serialiser, names, false);
+	}
+
+	/**
+	 * @param immutable
+	 * 	True if objects are never changed once added, only added or removed.
+	 * 	Saves then only serialise the objects they add.
+	 */
+	public SiloJournal(
+		File snapshotFile,
+		V2SerialiserMap<V> serialiser,
+		Function<Map, String> names,
+		boolean immutable)
+	{
+		this.snapshotFile = snapshotFile;
+		this.journalFile = new File(snapshotFile.getPath() + JOURNAL_SUFFIX);
+		this.serialiser = serialiser;
+		this.names = names;
+		this.immutable = immutable;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Applies the journal to a silo freshly loaded from the snapshot. The
+	 * digests that later saves compare against are taken from the records
+	 * as read, so nothing is serialised again.
+	 *
+	 * @param records
+	 * 	The records the silo was loaded from.
+	 * @return
+	 * 	The given map, now reflecting every journalled change.
+	 */
+	public synchronized Map<String, V> replay(
+		Map<String, V> map,
+		Iterable<Map> records,
+		Database db) throws IOException
+	{
+		recordCount = 0;
+		digests = new HashMap<>();
+
+		for (Map obj : records)
+		{
+			digests.put(names.apply(obj), digest(obj));
+		}
+
+		for (Map<String, ?> entry : readEntries())
+		{
+			Map<String, Map> upserts = (Map<String, Map>)entry.get(UPSERT);
+			List<String> deletes = (List<String>)entry.get(DELETE);
+
+			for (String name : deletes)
+			{
+				map.remove(name);
+				digests.remove(name);
+			}
+			for (Map.Entry<String, Map> e : upserts.entrySet())
+			{
+				V v = (V)serialiser.fromMap(e.getValue(), db);
+				map.put(v.getName(), v);
+				digests.put(e.getKey(), digest(e.getValue()));
+			}
+
+			recordCount += upserts.size() + deletes.size();
+		}
+
+		return map;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Journals every object in the given map that has changed since it was
+	 * last loaded or journalled, and every object that has been removed, in
+	 * a commit of its own.
+	 *
+	 * @return
+	 * 	The number of object records now in the journal.
+	 */
+	public synchronized int append(
+		Map<String, V> map,
+		Database db) throws IOException
+	{
+		Change change = getChange(map, db);
+		if (change == null)
+		{
+			return recordCount;
+		}
+
+		Map<String, String> appends = new HashMap<>();
+		appends.put(change.getFileName(), change.getLine());
+		new AtomicCommit(journalFile.getParentFile()).commit(Collections.emptyMap(), appends);
+
+		return committed(change);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Works out the journal line for every object in the given map that has
+	 * changed since it was last loaded or journalled, and every object that
+	 * has been removed. Nothing is written.
+	 *
+	 * @return
+	 * 	The line to append to the journal, or null if nothing has changed.
+	 */
+	public synchronized Change getChange(
+		Map<String, V> map,
+		Database db)
+	{
+		Map<String, Map> upserts = new HashMap<>();
+		Map<String, byte[]> newDigests = new HashMap<>();
+
+		for (V v : map.values())
+		{
+			byte[] digest = immutable ? digests.get(v.getName()) : null;
+
+			if (digest == null)
+			{
+				Map obj = serialiser.toMap(v, db);
+				digest = digest(obj);
+
+				if (!Arrays.equals(digests.get(v.getName()), digest))
+				{
+					upserts.put(v.getName(), obj);
+				}
+			}
+			newDigests.put(v.getName(), digest);
+		}
+
+		List<String> deletes = new ArrayList<>();
+		for (String name : digests.keySet())
+		{
+			if (!newDigests.containsKey(name))
+			{
+				deletes.add(name);
+			}
+		}
+
+		if (upserts.isEmpty() && deletes.isEmpty())
+		{
+			return null;
+		}
+
+		Map<String, Object> entry = new HashMap<>();
+		entry.put(UPSERT, upserts);
+		entry.put(DELETE, deletes);
+
+		return new Change(
+			journalFile.getName(),
+			new Gson().toJson(entry) + "\n",
+			newDigests,
+			upserts.size() + deletes.size());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records that the given change has been appended to the journal.
+	 *
+	 * @return
+	 * 	The number of object records now in the journal.
+	 */
+	public synchronized int committed(Change change)
+	{
+		digests = change.digests;
+		recordCount += change.records;
+
+		return recordCount;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Rewrites the snapshot with the journal applied, then removes the
+	 * journal. This works on the files alone and never touches the live
+	 * objects, so it is safe to run in the background.
+	 */
+	public synchronized void compact() throws IOException
+	{
+		if (!journalFile.exists())
+		{
+			return;
+		}
+
+		Map<String, Map> objects = new LinkedHashMap<>();
+
+		if (snapshotFile.exists())
+		{
+			try (BufferedReader reader = getReader(snapshotFile))
+			{
+				V2Utils.streamObjects(reader, obj -> objects.put(names.apply(obj), obj));
+			}
+		}
+
+		for (Map<String, ?> entry : readEntries())
+		{
+			for (String name : (List<String>)entry.get(DELETE))
+			{
+				objects.remove(name);
+			}
+			objects.putAll((Map<String, Map>)entry.get(UPSERT));
+		}
+
+		Map<String, String> contents = new HashMap<>();
+		contents.put(snapshotFile.getName(), V2Utils.getJson(new ArrayList<>(objects.values())));
+		new AtomicCommit(snapshotFile.getParentFile()).commit(contents);
+
+		Files.deleteIfExists(journalFile.toPath());
+		recordCount = 0;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public synchronized int getRecordCount()
+	{
+		return recordCount;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	True if the journal is on disk, ie it holds changes not yet compacted
+	 * 	into the snapshot
+	 */
+	public boolean exists()
+	{
+		return journalFile.exists();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private List<Map<String, ?>> readEntries() throws IOException
+	{
+		List<Map<String, ?>> result = new ArrayList<>();
+
+		if (!journalFile.exists())
+		{
+			return result;
+		}
+
+		Gson gson = new Gson();
+		try (BufferedReader reader = getReader(journalFile))
+		{
+			String line = reader.readLine();
+			while (line != null)
+			{
+				String next = reader.readLine();
+
+				if (line.trim().length() > 0)
+				{
+					try
+					{
+						result.add(gson.fromJson(line, Map.class));
+					}
+					catch (JsonParseException e)
+					{
+						if (next != null)
+						{
+							throw new V2Exception("Corrupt journal entry in " + journalFile, e);
+						}
+						// else a torn final write, the save never completed
+					}
+				}
+
+				line = next;
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private BufferedReader getReader(File file) throws IOException
+	{
+		return new BufferedReader(
+			new InputStreamReader(
+				new FileInputStream(file),
+				StandardCharsets.UTF_8));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	A digest of the given record that is the same whether it came from a
+	 * 	serialiser or was read back from JSON.
+	 */
+	private byte[] digest(Map obj)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256").digest(
+				new Gson().toJson(canonical(obj)).getBytes(StandardCharsets.UTF_8));
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new BrewdayException(e);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The given value with map keys in order, and numbers as doubles as
+	 * 	they are when read back from JSON.
+	 */
+	private static Object canonical(Object value)
+	{
+		if (value instanceof Map)
+		{
+			Map<String, Object> result = new TreeMap<>();
+			for (Map.Entry<?, ?> e : ((Map<?, ?>)value).entrySet())
+			{
+				// null values are not written to JSON
+				if (e.getValue() != null)
+				{
+					result.put(String.valueOf(e.getKey()), canonical(e.getValue()));
+				}
+			}
+			return result;
+		}
+		else if (value instanceof List)
+		{
+			List<Object> result = new ArrayList<>();
+			for (Object item : (List<?>)value)
+			{
+				result.add(canonical(item));
+			}
+			return result;
+		}
+		else if (value instanceof Number)
+		{
+			return ((Number)value).doubleValue();
+		}
+		else
+		{
+			return value;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * A line to append to a journal.
+	 */
+	public static class Change
+	{
+		private final String fileName;
+		private final String line;
+		private final Map<String, byte[]> digests;
+		private final int records;
+
+		private Change(
+			String fileName,
+			String line,
+			Map<String, byte[]> digests,
+			int records)
+		{
+			this.fileName = fileName;
+			this.line = line;
+			this.digests = digests;
+			this.records = records;
+		}
+
+		/**
+		 * @return the name of the journal file, in the snapshot's directory
+		 */
+		public String getFileName()
+		{
+			return fileName;
+		}
+
+		public String getLine()
+		{
+			return line;
+		}
+	}
+}
@@ -21,6 +21,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 import mclachlan.brewday.db.Database;
 
 /**
@@ -40,12 +41,46 @@ public class SimpleMapSilo<V extends V2DataObject> implements V2SiloMap<V>
 	@Override
 	public Map<String, V> load(BufferedReader reader,
 		Database db) throws IOException
+	{
+		return load(reader, db, null);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Load up this silo from the given input stream, passing each parsed
+	 * record to the given listener (if any) before it is deserialised.
+	 */
+	public Map<String, V> load(BufferedReader reader,
+		Database db, Consumer<Map> listener) throws IOException
 	{
 		Map<String, V> result = new HashMap<String, V>();
 
-		List<Map> objects = V2Utils.getObjects(reader);
+		// decode one record at a time, so that the intermediate maps can be
+		// collected as we go instead of materialising the whole file
+		V2Utils.streamObjects(reader, map ->
+		{
+			if (listener != null)
+			{
+				listener.accept(map);
+			}
+
+			V v = (V)serialiser.fromMap(map, db);
+
+			result.put(v.getName(), v);
+		});
+
+		return result;
+	}
 
-		for (Map map : objects)
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Load up this silo from records that have already been parsed.
+	 */
+	public Map<String, V> load(Iterable<Map> records, Database db)
+	{
+		Map<String, V> result = new HashMap<String, V>();
+
+		for (Map map : records)
 		{
 			V v = (V)serialiser.fromMap(map, db);
 
@@ -59,6 +94,16 @@ public class SimpleMapSilo<V extends V2DataObject> implements V2SiloMap<V>
 	@Override
 	public void save(BufferedWriter writer, Map<String, V> map,
 		Database db) throws IOException
+	{
+		V2Utils.writeJson(toMaps(map, db), writer);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The records that {@link #save} would write for the given map.
+	 */
+	public List<Map> toMaps(Map<String, V> map, Database db)
 	{
 		List<Map> list = new ArrayList<>();
 		for (V v : map.values())
@@ -66,6 +111,16 @@ public class SimpleMapSilo<V extends V2DataObject> implements V2SiloMap<V>
 			list.add(serialiser.toMap(v, db));
 		}
 
-		V2Utils.writeJson(list, writer);
+		return list;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The record that {@link #save} would write for the given object.
+	 */
+	public Map toMap(V v, Database db)
+	{
+		return serialiser.toMap(v, db);
 	}
 }
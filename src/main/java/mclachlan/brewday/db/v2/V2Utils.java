@@ -19,6 +19,7 @@ package mclachlan.brewday.db.v2;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import java.io.BufferedReader;
@@ -26,6 +27,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.function.Consumer;
 import mclachlan.brewday.db.Database;
 
 /**
@@ -41,6 +43,28 @@ public class V2Utils
 		return gson.fromJson(new JsonReader(reader), type);
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Streams a JSON array of objects from the given reader, handing each
+	 * object to the consumer as soon as it has been parsed. Unlike
+	 * {@link #getObjects} the whole list is never held in memory.
+	 */
+	public static void streamObjects(
+		BufferedReader reader,
+		Consumer<Map> consumer) throws IOException
+	{
+		Gson gson = new Gson();
+		TypeAdapter<Map> adapter = gson.getAdapter(Map.class);
+		JsonReader jsonReader = new JsonReader(reader);
+
+		jsonReader.beginArray();
+		while (jsonReader.hasNext())
+		{
+			consumer.accept(adapter.read(jsonReader));
+		}
+		jsonReader.endArray();
+	}
+
 	/*-------------------------------------------------------------------------*/
 	public static Map getMap(BufferedReader reader)
 	{
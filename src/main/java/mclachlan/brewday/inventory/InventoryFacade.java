@@ -18,13 +18,16 @@
 
 package mclachlan.brewday.inventory;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 import javafx.scene.image.Image;
+import mclachlan.brewday.Brewday;
 import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.batch.Batch;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.math.Quantity;
 import mclachlan.brewday.recipe.IngredientAddition;
-import mclachlan.brewday.recipe.Recipe;
 import mclachlan.brewday.ui.UiUtils;
 import mclachlan.brewday.ui.jfx.Icons;
 import mclachlan.brewday.ui.jfx.JfxUi;
@@ -42,105 +45,58 @@ public class InventoryFacade
 	{
 		List<InventoryLineItemDelta> result = new ArrayList<>();
 
-		Recipe recipe = Database.getInstance().getRecipes().get(recipeName);
+		MaterialsPlanner.Plan plan = Brewday.getInstance().getMaterialsPlanner().plan(
+			Collections.singletonList(
+				new MaterialsPlanner.PlannedBatch(recipeName, 1, LocalDate.now())));
 
-		// de-duplicate the recipe additions
-		Map<String, InventoryLineItemDelta> dedupe = new HashMap<>();
-		for (IngredientAddition ia : recipe.getIngredientsBillOfMaterials())
+		for (MaterialsPlanner.Requirement r : plan.getRequirements())
 		{
-			String inventoryId = ia.getInventoryId();
-
-			InventoryLineItem ili = Database.getInstance().getInventory().get(inventoryId);
-			Quantity.Unit unit = ili == null ? ia.getUnit() : ili.getUnit();
-
-			if (dedupe.containsKey(inventoryId))
-			{
-				// add to the current delta
-
-				InventoryLineItemDelta ilid = dedupe.get(inventoryId);
-
-				double c = ilid.getDelta().get(unit) + ia.getQuantity().get(unit);
-
-				Quantity consumed = Quantity.parseQuantity("" + c, unit);
-				ilid.setDelta(consumed);
-			}
-			else
-			{
-				// add a new delta
-
-				Quantity inInv = null;
-				if (ili != null)
-				{
-					inInv = ili.getQuantity();
-				}
-				else
-				{
-					inInv = Quantity.parseQuantity("0", ia.getUnit());
-				}
-				double c = ia.getQuantity().get(unit);
-
-				Quantity consumed = Quantity.parseQuantity("" + c, unit);
-
-				InventoryLineItemDelta ilid = new InventoryLineItemDelta(
-					ia.getName(), ia.getType(), inInv, consumed, unit);
-				result.add(ilid);
-
-				dedupe.put(inventoryId, ilid);
-			}
+			result.add(new InventoryLineItemDelta(
+				r.getIngredient(), r.getType(), r.getInInventory(), r.getRequired(), r.getUnit()));
 		}
 
 		return result;
 	}
 
 	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records the consumption of the given ingredients by a batch in the
+	 * inventory ledger.
+	 */
 	public static void consumeInventory(
+		Batch batch,
 		List<InventoryLineItemDelta> inventoryDelta)
 	{
-		Map<String, InventoryLineItem> inventory = Database.getInstance().getInventory();
-
-		for (InventoryLineItemDelta ilid : inventoryDelta)
-		{
-			InventoryLineItem item = inventory.get(ilid.getInventoryId());
-			if (item != null)
-			{
-				Quantity.Unit unit = item.getQuantity().getUnit();
-				double c = item.getQuantity().get() - ilid.getDelta().get();
-				item.setQuantity(Quantity.parseQuantity("" + c, unit));
-
-				if (item.getQuantity().get() <= 0)
-				{
-					inventory.remove(ilid.getInventoryId());
-				}
-
-				JfxUi.getInstance().setDirty(JfxUi.INVENTORY);
-				JfxUi.getInstance().setDirty(item);
-			}
-		}
+		setDirty(Database.getInstance().getInventoryLedger().consume(
+			batch.getName(), inventoryDelta, LocalDateTime.now()));
 	}
 
 	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records entries in the inventory ledger that compensate for the
+	 * consumption of a batch.
+	 */
 	public static void restoreInventory(
+		Batch batch,
 		List<InventoryLineItemDelta> inventoryDelta)
+	{
+		setDirty(Database.getInstance().getInventoryLedger().restore(
+			batch.getName(), inventoryDelta, LocalDateTime.now()));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void setDirty(List<InventoryTransaction> transactions)
 	{
 		Map<String, InventoryLineItem> inventory = Database.getInstance().getInventory();
 
-		for (InventoryLineItemDelta ilid : inventoryDelta)
+		JfxUi.getInstance().setDirty(JfxUi.INVENTORY);
+		for (InventoryTransaction t : transactions)
 		{
-			InventoryLineItem item = inventory.get(ilid.getInventoryId());
-			if (item == null)
-			{
-				item = new InventoryLineItem(ilid.ingredient, ilid.type, ilid.delta, ilid.unit);
-				inventory.put(ilid.getInventoryId(), item);
-			}
-			else
+			InventoryLineItem item = inventory.get(t.getInventoryId());
+			if (item != null)
 			{
-				Quantity.Unit unit = item.getQuantity().getUnit();
-				double c = item.getQuantity().get() + ilid.getDelta().get();
-				item.setQuantity(Quantity.parseQuantity("" + c, unit));
+				JfxUi.getInstance().setDirty(item);
 			}
-
-			JfxUi.getInstance().setDirty(JfxUi.INVENTORY);
-			JfxUi.getInstance().setDirty(item);
 		}
 	}
 
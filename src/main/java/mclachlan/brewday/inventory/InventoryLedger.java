@@ -0,0 +1,514 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.inventory;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.recipe.IngredientAddition;
+
+/**
+ * An append-only record of everything that has changed the inventory.
+ * <p>
+ * The ledger is the record of the inventory. The inventory line items are a
+ * view of it, built from the balances when it is loaded: every entry
+ * recorded here updates the on-hand amount of its ingredient, and items run
+ * down to nothing drop out of the view while their balance is kept here.
+ * Changes to the inventory are made by recording entries, never by editing
+ * the line items.
+ * <p>
+ * A copy of every balance is kept after each {@link #SNAPSHOT_INTERVAL}
+ * entries, so the inventory at a point in time is found by replaying at
+ * most that many entries over the nearest earlier snapshot.
+ */
+public class InventoryLedger
+{
+	/** balances are snapshotted after this many entries */
+	public static final int SNAPSHOT_INTERVAL = 256;
+
+	/** every entry, in sequence and so also in timestamp order */
+	private final List<InventoryTransaction> transactions = new ArrayList<>();
+
+	/** the same entries keyed on name, as stored in the silo */
+	private final Map<String, InventoryTransaction> transactionMap = new HashMap<>();
+
+	/**
+	 * Balances by inventory id; element i holds the balances after the first
+	 * (i+1)*SNAPSHOT_INTERVAL entries.
+	 */
+	private final List<Map<String, Double>> snapshots = new ArrayList<>();
+
+	/** current balances by inventory id, in the base unit of each */
+	private final Map<String, Double> balances = new HashMap<>();
+
+	/** the latest entry for each inventory id */
+	private final Map<String, InventoryTransaction> latest = new HashMap<>();
+
+	/** consumption not yet reversed, keyed on batch name */
+	private final Map<String, List<InventoryTransaction>> outstanding = new HashMap<>();
+
+	/** the on-hand view, keyed on inventory id */
+	private final Map<String, InventoryLineItem> inventory = new HashMap<>();
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param transactions
+	 * 	The entries recorded so far, in any order
+	 */
+	public InventoryLedger(Collection<InventoryTransaction> transactions)
+	{
+		List<InventoryTransaction> sorted = new ArrayList<>(transactions);
+		sorted.sort(Comparator.comparingLong(InventoryTransaction::getSequence));
+
+		for (InventoryTransaction t : sorted)
+		{
+			if (t.getSequence() != this.transactions.size())
+			{
+				throw new BrewdayException("Inventory ledger entry missing: " +
+					InventoryTransaction.getName(this.transactions.size()));
+			}
+			apply(t);
+		}
+
+		for (Map.Entry<String, Double> e : balances.entrySet())
+		{
+			if (e.getValue() > 0)
+			{
+				inventory.put(e.getKey(), newLineItem(e.getKey(), e.getValue()));
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records stock coming into the inventory.
+	 */
+	public InventoryTransaction receive(
+		String ingredient,
+		IngredientAddition.Type type,
+		Quantity quantity,
+		Quantity.Unit unit,
+		LocalDateTime timestamp)
+	{
+		return record(timestamp, InventoryTransaction.Type.RECEIPT,
+			ingredient, type, quantity, unit, null, -1);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records a correction to the amount of an ingredient in stock.
+	 *
+	 * @param delta
+	 * 	The change in the amount, negative for a reduction
+	 */
+	public InventoryTransaction adjust(
+		String ingredient,
+		IngredientAddition.Type type,
+		Quantity delta,
+		Quantity.Unit unit,
+		LocalDateTime timestamp)
+	{
+		return record(timestamp, InventoryTransaction.Type.ADJUSTMENT,
+			ingredient, type, delta, unit, null, -1);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records the ingredients used by a batch. An ingredient that is not in
+	 * the inventory is still recorded, and runs its balance below zero.
+	 *
+	 * @return
+	 * 	The entries recorded
+	 * @throws BrewdayException
+	 * 	If the batch has already consumed inventory that has not been restored
+	 */
+	public List<InventoryTransaction> consume(
+		String batch,
+		List<InventoryFacade.InventoryLineItemDelta> deltas,
+		LocalDateTime timestamp)
+	{
+		if (isConsumed(batch))
+		{
+			throw new BrewdayException("Inventory already consumed by batch [" + batch + "]");
+		}
+
+		List<InventoryTransaction> result = new ArrayList<>();
+
+		for (InventoryFacade.InventoryLineItemDelta ilid : deltas)
+		{
+			Quantity q = ilid.getDelta();
+			result.add(record(timestamp, InventoryTransaction.Type.CONSUMPTION,
+				ilid.getIngredient(), ilid.getType(),
+				Quantity.newQuantity(-q.get(), q.getUnit()),
+				ilid.getUnit(), batch, -1));
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Undoes the consumption of a batch by recording a compensating entry for
+	 * each ingredient it consumed.
+	 *
+	 * @param deltas
+	 * 	The ingredients to return to the inventory if the ledger holds no
+	 * 	entries at all for this batch, ie it was consumed before the ledger
+	 * 	was kept. These are recorded as adjustments.
+	 * @return
+	 * 	The entries recorded
+	 */
+	public List<InventoryTransaction> restore(
+		String batch,
+		List<InventoryFacade.InventoryLineItemDelta> deltas,
+		LocalDateTime timestamp)
+	{
+		List<InventoryTransaction> result = new ArrayList<>();
+
+		if (isConsumed(batch))
+		{
+			for (InventoryTransaction t : new ArrayList<>(outstanding.get(batch)))
+			{
+				Quantity q = t.getQuantity();
+				result.add(record(timestamp, InventoryTransaction.Type.REVERSAL,
+					t.getIngredient(), t.getIngredientType(),
+					Quantity.newQuantity(-q.get(), q.getUnit()),
+					t.getUnit(), batch, t.getSequence()));
+			}
+		}
+		else if (getTransactions(batch).isEmpty())
+		{
+			for (InventoryFacade.InventoryLineItemDelta ilid : deltas)
+			{
+				Quantity q = ilid.getDelta();
+				result.add(record(timestamp, InventoryTransaction.Type.ADJUSTMENT,
+					ilid.getIngredient(), ilid.getType(),
+					Quantity.newQuantity(q.get(), q.getUnit()),
+					ilid.getUnit(), batch, -1));
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records the adjustments that bring the on-hand view into line with the
+	 * given inventory. Used once, to take the opening balance of a database
+	 * from before the ledger was kept.
+	 *
+	 * @param inventory
+	 * 	The inventory as it was stored before the ledger
+	 * @return
+	 * 	The entries recorded
+	 */
+	public List<InventoryTransaction> reconcile(
+		Map<String, InventoryLineItem> inventory,
+		LocalDateTime timestamp)
+	{
+		List<InventoryTransaction> result = new ArrayList<>();
+
+		for (InventoryLineItem item : inventory.values())
+		{
+			Double balance = balances.get(item.getName());
+			double amount = item.getQuantity().get();
+
+			if (balance == null)
+			{
+				if (amount > 0)
+				{
+					result.add(record(timestamp, InventoryTransaction.Type.RECEIPT,
+						item.getIngredient(), item.getType(),
+						Quantity.newQuantity(amount, item.getQuantity().getUnit()),
+						item.getUnit(), null, -1));
+				}
+			}
+			else if (!isEqual(amount, balance))
+			{
+				result.add(record(timestamp, InventoryTransaction.Type.ADJUSTMENT,
+					item.getIngredient(), item.getType(),
+					Quantity.newQuantity(amount - balance, item.getQuantity().getUnit()),
+					item.getUnit(), null, -1));
+			}
+		}
+
+		for (Map.Entry<String, Double> e : new ArrayList<>(balances.entrySet()))
+		{
+			if (e.getValue() > 0 && !inventory.containsKey(e.getKey()))
+			{
+				InventoryTransaction t = latest.get(e.getKey());
+				result.add(record(timestamp, InventoryTransaction.Type.ADJUSTMENT,
+					t.getIngredient(), t.getIngredientType(),
+					Quantity.newQuantity(-e.getValue(), t.getQuantity().getUnit()),
+					t.getUnit(), null, -1));
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The inventory as it stood at the given time, keyed on inventory id
+	 */
+	public Map<String, InventoryLineItem> getInventory(LocalDateTime time)
+	{
+		// the number of entries recorded up to the given time
+		int lo = 0, hi = transactions.size();
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (transactions.get(mid).getTimestamp().isAfter(time))
+			{
+				hi = mid;
+			}
+			else
+			{
+				lo = mid + 1;
+			}
+		}
+
+		int snapshot = lo / SNAPSHOT_INTERVAL;
+		Map<String, Double> balances = snapshot == 0 ?
+			new HashMap<>() : new HashMap<>(snapshots.get(snapshot - 1));
+
+		for (int i = snapshot * SNAPSHOT_INTERVAL; i < lo; i++)
+		{
+			InventoryTransaction t = transactions.get(i);
+			balances.merge(t.getInventoryId(), t.getQuantity().get(), Double::sum);
+		}
+
+		Map<String, InventoryLineItem> result = new HashMap<>();
+		for (Map.Entry<String, Double> e : balances.entrySet())
+		{
+			if (e.getValue() > 0)
+			{
+				result.put(e.getKey(), newLineItem(e.getKey(), e.getValue()));
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The ingredients on hand, keyed on inventory id. This is a live view
+	 * 	that changes as entries are recorded, and is not to be changed
+	 * 	directly.
+	 */
+	public Map<String, InventoryLineItem> getInventory()
+	{
+		return inventory;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	True if the given batch has consumed inventory that has not been
+	 * 	restored
+	 */
+	public boolean isConsumed(String batch)
+	{
+		return outstanding.containsKey(batch);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	Every entry, in the order recorded
+	 */
+	public List<InventoryTransaction> getTransactions()
+	{
+		return Collections.unmodifiableList(transactions);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	Every entry recorded against the given batch, in the order recorded
+	 */
+	public List<InventoryTransaction> getTransactions(String batch)
+	{
+		List<InventoryTransaction> result = new ArrayList<>();
+		for (InventoryTransaction t : transactions)
+		{
+			if (batch.equals(t.getBatch()))
+			{
+				result.add(t);
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The entries keyed on name, for storage in a silo
+	 */
+	public Map<String, InventoryTransaction> getTransactionMap()
+	{
+		return transactionMap;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The current balance of the given inventory item, which may be zero or
+	 * 	below, or null if the ledger has no record of it
+	 */
+	public Quantity getBalance(String inventoryId)
+	{
+		Double balance = balances.get(inventoryId);
+		if (balance == null)
+		{
+			return null;
+		}
+		return Quantity.newQuantity(balance, latest.get(inventoryId).getQuantity().getUnit());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Discards the whole history, and with it the on-hand view.
+	 */
+	public void clear()
+	{
+		inventory.clear();
+		transactions.clear();
+		transactionMap.clear();
+		snapshots.clear();
+		balances.clear();
+		latest.clear();
+		outstanding.clear();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private InventoryTransaction record(
+		LocalDateTime timestamp,
+		InventoryTransaction.Type type,
+		String ingredient,
+		IngredientAddition.Type ingredientType,
+		Quantity quantity,
+		Quantity.Unit unit,
+		String batch,
+		long reverses)
+	{
+		// keep the entries in timestamp order, even if the clock goes back
+		if (!transactions.isEmpty())
+		{
+			LocalDateTime last = transactions.get(transactions.size() - 1).getTimestamp();
+			if (timestamp.isBefore(last))
+			{
+				timestamp = last;
+			}
+		}
+
+		InventoryTransaction result = new InventoryTransaction(
+			transactions.size(),
+			timestamp,
+			type,
+			ingredient,
+			ingredientType,
+			quantity,
+			unit,
+			batch,
+			reverses);
+
+		apply(result);
+
+		// update the on-hand view
+		String id = result.getInventoryId();
+		double balance = balances.get(id);
+		InventoryLineItem item = inventory.get(id);
+
+		if (balance <= 0)
+		{
+			inventory.remove(id);
+		}
+		else if (item == null)
+		{
+			inventory.put(id, new InventoryLineItem(
+				ingredient,
+				ingredientType,
+				Quantity.newQuantity(balance, quantity.getUnit()),
+				unit));
+		}
+		else
+		{
+			item.setQuantity(Quantity.newQuantity(balance, item.getQuantity().getUnit()));
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Applies an entry to the balances, but not to the on-hand view.
+	 */
+	private void apply(InventoryTransaction t)
+	{
+		transactions.add(t);
+		transactionMap.put(t.getName(), t);
+
+		String id = t.getInventoryId();
+		balances.merge(id, t.getQuantity().get(), Double::sum);
+		latest.put(id, t);
+
+		switch (t.getType())
+		{
+			case CONSUMPTION:
+				outstanding.computeIfAbsent(t.getBatch(), k -> new ArrayList<>()).add(t);
+				break;
+			case REVERSAL:
+				List<InventoryTransaction> list = outstanding.get(t.getBatch());
+				if (list != null)
+				{
+					list.removeIf(c -> c.getSequence() == t.getReverses());
+					if (list.isEmpty())
+					{
+						outstanding.remove(t.getBatch());
+					}
+				}
+				break;
+		}
+
+		if (transactions.size() % SNAPSHOT_INTERVAL == 0)
+		{
+			snapshots.add(new HashMap<>(balances));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private InventoryLineItem newLineItem(String inventoryId, double balance)
+	{
+		InventoryTransaction t = latest.get(inventoryId);
+		return new InventoryLineItem(
+			t.getIngredient(),
+			t.getIngredientType(),
+			Quantity.newQuantity(balance, t.getQuantity().getUnit()),
+			t.getUnit());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static boolean isEqual(double a, double b)
+	{
+		return Math.abs(a - b) <= 1E-9 * Math.max(1, Math.abs(b));
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.inventory;
+
+import java.time.LocalDateTime;
+import mclachlan.brewday.db.v2.V2DataObject;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.recipe.IngredientAddition;
+
+/**
+ * A single entry in the {@link InventoryLedger}. Entries are never changed
+ * once recorded, a mistake is corrected by recording another entry.
+ */
+public class InventoryTransaction implements V2DataObject
+{
+	public enum Type
+	{
+		/** stock coming into the inventory */
+		RECEIPT,
+		/** stock used by a batch */
+		CONSUMPTION,
+		/** a correction to the amount in stock, eg from a stocktake */
+		ADJUSTMENT,
+		/** compensates for an earlier consumption that has been undone */
+		REVERSAL
+	}
+
+	/** position of this entry in the ledger, starting from 0 */
+	private final long sequence;
+
+	/** when this entry was recorded */
+	private final LocalDateTime timestamp;
+
+	private final Type type;
+
+	/** unique name of the ingredient */
+	private final String ingredient;
+
+	/** type of the ingredient */
+	private final IngredientAddition.Type ingredientType;
+
+	/**
+	 * The change in the amount of the ingredient, negative for stock going
+	 * out of the inventory.
+	 */
+	private final Quantity quantity;
+
+	/** unit to express the ingredient in */
+	private final Quantity.Unit unit;
+
+	/** the batch that consumed the ingredient, or null */
+	private final String batch;
+
+	/** sequence number of the consumption that this reverses, or -1 */
+	private final long reverses;
+
+	/*-------------------------------------------------------------------------*/
+	public InventoryTransaction(
+		long sequence,
+		LocalDateTime timestamp,
+		Type type,
+		String ingredient,
+		IngredientAddition.Type ingredientType,
+		Quantity quantity,
+		Quantity.Unit unit,
+		String batch,
+		long reverses)
+	{
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.type = type;
+		this.ingredient = ingredient;
+		this.ingredientType = ingredientType;
+		this.quantity = quantity;
+		this.unit = unit;
+		this.batch = batch;
+		this.reverses = reverses;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	@Override
+	public String getName()
+	{
+		return getName(sequence);
+	}
+
+	/**
+	 * @return the name of the entry with the given sequence number, padded so
+	 * 	that names sort in ledger order
+	 */
+	public static String getName(long sequence)
+	{
+		return String.format("%010d", sequence);
+	}
+
+	@Override
+	public void setName(String newName)
+	{
+		// no-op
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the unique id of the inventory line item this entry changes
+	 */
+	public String getInventoryId()
+	{
+		return InventoryLineItem.getUniqueId(ingredient, ingredientType);
+	}
+
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	public LocalDateTime getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public Type getType()
+	{
+		return type;
+	}
+
+	public String getIngredient()
+	{
+		return ingredient;
+	}
+
+	public IngredientAddition.Type getIngredientType()
+	{
+		return ingredientType;
+	}
+
+	public Quantity getQuantity()
+	{
+		return quantity;
+	}
+
+	public Quantity.Unit getUnit()
+	{
+		return unit;
+	}
+
+	public String getBatch()
+	{
+		return batch;
+	}
+
+	public long getReverses()
+	{
+		return reverses;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	@Override
+	public String toString()
+	{
+		return getName() + " " + timestamp + " " + type + " " + getInventoryId() +
+			" " + quantity.get() + (batch == null ? "" : " [" + batch + "]");
+	}
+}
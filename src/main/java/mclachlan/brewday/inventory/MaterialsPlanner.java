@@ -0,0 +1,508 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.inventory;
+
+import java.time.LocalDate;
+import java.util.*;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.recipe.IngredientAddition;
+import mclachlan.brewday.recipe.Recipe;
+import mclachlan.brewday.ui.UiUtils;
+
+/**
+ * Works out the ingredients needed by a schedule of planned batches, and
+ * what has to be bought, and by when, to brew them from the inventory.
+ * <p>
+ * The bill of materials of each recipe is compiled once into arrays of
+ * amounts in the base unit of each ingredient, so a plan is a pass of
+ * primitive sums over the batches. Compiled bills are kept until the
+ * recipe is invalidated, or is replaced by a different recipe object of
+ * the same name.
+ */
+public class MaterialsPlanner
+{
+	/** every ingredient in a compiled bill of materials, by index */
+	private final List<Ingredient> ingredients = new ArrayList<>();
+
+	/** index of each ingredient, by inventory id */
+	private final Map<String, Integer> indices = new HashMap<>();
+
+	/** compiled bills of materials, by recipe name */
+	private final Map<String, BillOfMaterials> bills = new HashMap<>();
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Plans the given batches against the current inventory.
+	 */
+	public Plan plan(List<PlannedBatch> batches)
+	{
+		return plan(batches, Database.getInstance().getInventory());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param batches
+	 * 	The planned batches, in any order
+	 * @param inventory
+	 * 	The inventory on hand before the first batch, keyed on inventory id
+	 */
+	public synchronized Plan plan(
+		List<PlannedBatch> batches,
+		Map<String, InventoryLineItem> inventory)
+	{
+		List<PlannedBatch> sorted = new ArrayList<>(batches);
+		sorted.sort(Comparator.comparing(PlannedBatch::getDate));
+
+		BillOfMaterials[] bom = new BillOfMaterials[sorted.size()];
+		for (int i = 0; i < bom.length; i++)
+		{
+			bom[i] = getBillOfMaterials(sorted.get(i).getRecipe());
+		}
+
+		int n = ingredients.size();
+		double[] required = new double[n];
+		double[] balance = new double[n];
+		double[] toBuy = new double[n];
+		LocalDate[] neededBy = new LocalDate[n];
+		boolean[] needed = new boolean[n];
+
+		// ingredients in the order first needed
+		int[] order = new int[n];
+		int count = 0;
+
+		// ingredients to buy by the current date
+		double[] buying = new double[n];
+		int[] bought = new int[n];
+		int boughtCount = 0;
+
+		List<ShoppingListItem> shoppingList = new ArrayList<>();
+
+		for (int b = 0; b < bom.length; b++)
+		{
+			LocalDate date = sorted.get(b).getDate();
+			double scale = sorted.get(b).getScale();
+			int[] index = bom[b].index;
+			double[] amount = bom[b].amount;
+
+			for (int j = 0; j < index.length; j++)
+			{
+				int i = index[j];
+
+				if (!needed[i])
+				{
+					// first needed, start from the amount on hand
+					needed[i] = true;
+					balance[i] = getOnHand(inventory, i);
+					order[count++] = i;
+				}
+
+				double a = amount[j] * scale;
+				required[i] += a;
+				balance[i] -= a;
+
+				if (balance[i] < 0 && a > 0)
+				{
+					double buy = Math.min(-balance[i], a);
+					if (buying[i] == 0)
+					{
+						bought[boughtCount++] = i;
+					}
+					buying[i] += buy;
+					toBuy[i] += buy;
+					if (neededBy[i] == null)
+					{
+						neededBy[i] = date;
+					}
+				}
+			}
+
+			// close off the purchases needed by this date
+			if (b == bom.length - 1 || !sorted.get(b + 1).getDate().equals(date))
+			{
+				Arrays.sort(bought, 0, boughtCount);
+				for (int k = 0; k < boughtCount; k++)
+				{
+					int i = bought[k];
+					shoppingList.add(new ShoppingListItem(ingredients.get(i),
+						newQuantity(i, buying[i]), getUnit(inventory, i), date));
+					buying[i] = 0;
+				}
+				boughtCount = 0;
+			}
+		}
+
+		List<Requirement> requirements = new ArrayList<>();
+		for (int k = 0; k < count; k++)
+		{
+			int i = order[k];
+			requirements.add(new Requirement(
+				ingredients.get(i),
+				newQuantity(i, required[i]),
+				newQuantity(i, getOnHand(inventory, i)),
+				newQuantity(i, toBuy[i]),
+				getUnit(inventory, i),
+				neededBy[i]));
+		}
+
+		return new Plan(requirements, shoppingList);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Drops the compiled bill of materials of the given recipe.
+	 */
+	public synchronized void invalidate(Recipe recipe)
+	{
+		bills.remove(recipe.getName());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Drops every compiled bill of materials.
+	 */
+	public synchronized void invalidateAll()
+	{
+		bills.clear();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private BillOfMaterials getBillOfMaterials(String recipeName)
+	{
+		Recipe recipe = Database.getInstance().getRecipes().get(recipeName);
+		if (recipe == null)
+		{
+			throw new BrewdayException("Invalid recipe [" + recipeName + "]");
+		}
+
+		BillOfMaterials result = bills.get(recipeName);
+		if (result == null || result.recipe != recipe)
+		{
+			result = compile(recipe);
+			bills.put(recipeName, result);
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Sums the additions of each ingredient in a recipe, in the base unit of
+	 * the ingredient, in the same order as the recipe bill of materials.
+	 */
+	private BillOfMaterials compile(Recipe recipe)
+	{
+		Map<Integer, IngredientAddition> totals = new HashMap<>();
+
+		for (IngredientAddition ia : recipe.getIngredients())
+		{
+			String id = ia.getInventoryId();
+			Integer i = indices.get(id);
+			if (i == null)
+			{
+				i = ingredients.size();
+				indices.put(id, i);
+				ingredients.add(new Ingredient(ia.getName(), ia.getType(),
+					ia.getQuantity().getUnit(), ia.getUnit()));
+			}
+
+			IngredientAddition total = totals.get(i);
+			if (total == null)
+			{
+				totals.put(i, ia.clone());
+			}
+			else
+			{
+				Quantity q = total.getQuantity();
+				total.setQuantity(Quantity.newQuantity(
+					q.get() + ia.getQuantity().get(), q.getUnit()));
+			}
+		}
+
+		List<Map.Entry<Integer, IngredientAddition>> entries = new ArrayList<>(totals.entrySet());
+		Comparator<IngredientAddition> comparator = UiUtils.getIngredientAdditionComparator();
+		entries.sort((e1, e2) -> comparator.compare(e1.getValue(), e2.getValue()));
+
+		int[] index = new int[entries.size()];
+		double[] amount = new double[entries.size()];
+		for (int j = 0; j < index.length; j++)
+		{
+			index[j] = entries.get(j).getKey();
+			amount[j] = entries.get(j).getValue().getQuantity().get();
+		}
+
+		return new BillOfMaterials(recipe, index, amount);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private double getOnHand(Map<String, InventoryLineItem> inventory, int i)
+	{
+		InventoryLineItem item = inventory.get(ingredients.get(i).inventoryId);
+		return item == null ? 0 : item.getQuantity().get();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Quantity.Unit getUnit(Map<String, InventoryLineItem> inventory, int i)
+	{
+		InventoryLineItem item = inventory.get(ingredients.get(i).inventoryId);
+		return item == null ? ingredients.get(i).unit : item.getUnit();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Quantity newQuantity(int i, double amount)
+	{
+		return Quantity.newQuantity(amount, ingredients.get(i).baseUnit);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Ingredient
+	{
+		private final String name;
+		private final IngredientAddition.Type type;
+		private final String inventoryId;
+		/** the unit of the summed amounts */
+		private final Quantity.Unit baseUnit;
+		/** the unit to express the ingredient in if it is not in the inventory */
+		private final Quantity.Unit unit;
+
+		public Ingredient(
+			String name,
+			IngredientAddition.Type type,
+			Quantity.Unit baseUnit,
+			Quantity.Unit unit)
+		{
+			this.name = name;
+			this.type = type;
+			this.inventoryId = InventoryLineItem.getUniqueId(name, type);
+			this.baseUnit = baseUnit;
+			this.unit = unit;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class BillOfMaterials
+	{
+		/** the recipe compiled, to spot it being replaced */
+		private final Recipe recipe;
+		/** the ingredients used */
+		private final int[] index;
+		/** the amount of each, in its base unit */
+		private final double[] amount;
+
+		public BillOfMaterials(Recipe recipe, int[] index, double[] amount)
+		{
+			this.recipe = recipe;
+			this.index = index;
+			this.amount = amount;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static class PlannedBatch
+	{
+		private final String recipe;
+		private final double scale;
+		private final LocalDate date;
+
+		/**
+		 * @param scale
+		 * 	Multiplies the amount of every ingredient in the recipe
+		 */
+		public PlannedBatch(String recipe, double scale, LocalDate date)
+		{
+			this.recipe = recipe;
+			this.scale = scale;
+			this.date = date;
+		}
+
+		public String getRecipe()
+		{
+			return recipe;
+		}
+
+		public double getScale()
+		{
+			return scale;
+		}
+
+		public LocalDate getDate()
+		{
+			return date;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static class Requirement
+	{
+		private final String ingredient;
+		private final IngredientAddition.Type type;
+		private final Quantity required;
+		private final Quantity inInventory;
+		private final Quantity toBuy;
+		private final Quantity.Unit unit;
+		private final LocalDate neededBy;
+
+		private Requirement(
+			Ingredient ingredient,
+			Quantity required,
+			Quantity inInventory,
+			Quantity toBuy,
+			Quantity.Unit unit,
+			LocalDate neededBy)
+		{
+			this.ingredient = ingredient.name;
+			this.type = ingredient.type;
+			this.required = required;
+			this.inInventory = inInventory;
+			this.toBuy = toBuy;
+			this.unit = unit;
+			this.neededBy = neededBy;
+		}
+
+		public String getIngredient()
+		{
+			return ingredient;
+		}
+
+		public IngredientAddition.Type getType()
+		{
+			return type;
+		}
+
+		public String getInventoryId()
+		{
+			return InventoryLineItem.getUniqueId(ingredient, type);
+		}
+
+		/**
+		 * @return the total amount used by the planned batches
+		 */
+		public Quantity getRequired()
+		{
+			return required;
+		}
+
+		public Quantity getInInventory()
+		{
+			return inInventory;
+		}
+
+		public Quantity getToBuy()
+		{
+			return toBuy;
+		}
+
+		public Quantity.Unit getUnit()
+		{
+			return unit;
+		}
+
+		/**
+		 * @return the date of the first batch that the inventory runs short
+		 * 	for, or null if it never does
+		 */
+		public LocalDate getNeededBy()
+		{
+			return neededBy;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static class ShoppingListItem
+	{
+		private final String ingredient;
+		private final IngredientAddition.Type type;
+		private final Quantity quantity;
+		private final Quantity.Unit unit;
+		private final LocalDate neededBy;
+
+		private ShoppingListItem(
+			Ingredient ingredient,
+			Quantity quantity,
+			Quantity.Unit unit,
+			LocalDate neededBy)
+		{
+			this.ingredient = ingredient.name;
+			this.type = ingredient.type;
+			this.quantity = quantity;
+			this.unit = unit;
+			this.neededBy = neededBy;
+		}
+
+		public String getIngredient()
+		{
+			return ingredient;
+		}
+
+		public IngredientAddition.Type getType()
+		{
+			return type;
+		}
+
+		public String getInventoryId()
+		{
+			return InventoryLineItem.getUniqueId(ingredient, type);
+		}
+
+		public Quantity getQuantity()
+		{
+			return quantity;
+		}
+
+		public Quantity.Unit getUnit()
+		{
+			return unit;
+		}
+
+		public LocalDate getNeededBy()
+		{
+			return neededBy;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static class Plan
+	{
+		private final List<Requirement> requirements;
+		private final List<ShoppingListItem> shoppingList;
+
+		public Plan(
+			List<Requirement> requirements,
+			List<ShoppingListItem> shoppingList)
+		{
+			this.requirements = requirements;
+			this.shoppingList = shoppingList;
+		}
+
+		/**
+		 * @return every ingredient used, in the order first needed
+		 */
+		public List<Requirement> getRequirements()
+		{
+			return requirements;
+		}
+
+		/**
+		 * @return what to buy, in the order needed
+		 */
+		public List<ShoppingListItem> getShoppingList()
+		{
+			return shoppingList;
+		}
+	}
+}
@@ -79,14 +79,9 @@ public class DensityUnit extends Quantity
 			case GU:
 				return density;
 			case SPECIFIC_GRAVITY:
-				return (1000+density)/1000;
+				return EquationsKernel.toSpecificGravity(density);
 			case PLATO:
-				double sg = (1000+density)/1000;
-				return
-					135.997*Math.pow(sg, 3) -
-					630.272*Math.pow(sg, 2) +
-					1111.14*sg -
-					616.868;
+				return EquationsKernel.toPlato(density);
 
 			default:
 				throw new BrewdayException("Invalid: "+unit);
@@ -109,10 +104,10 @@ public class DensityUnit extends Quantity
 				this.density = amount;
 				break;
 			case SPECIFIC_GRAVITY:
-				this.density = 1000 * amount -1000;
+				this.density = EquationsKernel.fromSpecificGravity(amount);
 				break;
 			case PLATO:
-				this.density = 1000*(1 + (amount / (258.6 - 227.1*(amount/258.2)))) -1000;
+				this.density = EquationsKernel.fromPlato(amount);
 				break;
 			default:
 				throw new BrewdayException("Invalid: "+unit);
@@ -18,6 +18,8 @@
 package mclachlan.brewday.math;
 
 import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
 import mclachlan.brewday.BrewdayException;
 import mclachlan.brewday.Settings;
 import mclachlan.brewday.db.Database;
@@ -32,6 +34,12 @@ import static mclachlan.brewday.math.Quantity.Unit.*;
  */
 public class Equations
 {
+	/** solves the mash pH models for the pH */
+	private static final RootFinder PH_SOLVER = new RootFinder(1E-9, 50);
+
+	/** solves the mash pH models for an acid addition, in ml */
+	private static final RootFinder ACID_SOLVER = new RootFinder(1E-4, 100);
+
 	/*-------------------------------------------------------------------------*/
 
 	/**
@@ -51,23 +59,11 @@ public class Equations
 				volumeAddition.isEstimated() || tempAddition.isEstimated();
 
 		return new TemperatureUnit(
-			(
-				(currentVolume.get(MILLILITRES) *
-					currentTemperature.get(CELSIUS) *
-					Const.SPECIFIC_HEAT_OF_WATER)
-					+
-					volumeAddition.get(MILLILITRES) *
-						tempAddition.get(CELSIUS) *
-						Const.SPECIFIC_HEAT_OF_WATER
-			)
-				/
-				(
-					currentVolume.get(MILLILITRES) *
-						Const.SPECIFIC_HEAT_OF_WATER
-						+
-						volumeAddition.get(MILLILITRES) *
-							Const.SPECIFIC_HEAT_OF_WATER
-				),
+			EquationsKernel.calcCombinedTemperature(
+				currentVolume.get(MILLILITRES),
+				currentTemperature.get(CELSIUS),
+				volumeAddition.get(MILLILITRES),
+				tempAddition.get(CELSIUS)),
 			CELSIUS,
 			estimated);
 	}
@@ -214,49 +210,16 @@ public class Equations
 		List<FermentableAddition> allAdditions,
 		List<MiscAddition> miscAdditions)
 	{
-		List<FermentableAddition> grainBill = new ArrayList<>();
+		GristBuffering grist = GristBuffering.of(allAdditions);
+		double totalGrainWeight = grist.getTotalWeight().get(KILOGRAMS);
+		double total_phi_bi = grist.getPhBufferingCapacity();
+		double total_bi = grist.getBufferingCapacity();
 
-		// filter out stuff that won't impact the pH
-		for (FermentableAddition fa : allAdditions)
-		{
-			Fermentable f = fa.getFermentable();
-			if (f.getBufferingCapacity() != null && f.getBufferingCapacity().get() > 0 &&
-				f.getDistilledWaterPh() != null && f.getDistilledWaterPh().get() > 0)
-			{
-				grainBill.add(fa);
-			}
-		}
-
-		// sum up the grist distilled pH and buffering capacity
-		WeightUnit weightUnit = calcTotalGrainWeight(grainBill);
-		double totalGrainWeight = weightUnit.get(KILOGRAMS);
-		double total_phi_bi = 0D;
-		double total_bi = 0D;
-
-		double acidMaltMeqL = 0D;
+		double waterL = mashWater.getVolume().get(LITRES);
+		double acidMaltMeqL = -grist.getAcidMaltOunces() * 28.35 / 90.09 / waterL * 1000;
 		double lacticAcidMeqL = 0D;
 		double phosphoricAcidMeqL = 0D;
 
-		for (FermentableAddition fa : grainBill)
-		{
-			Fermentable fermentable = fa.getFermentable();
-
-			double ph_i = fermentable.getDistilledWaterPh() == null ? 5.6 : fermentable.getDistilledWaterPh().get(PH);
-			double b_i = fermentable.getBufferingCapacity() == null ? 51.5 : fermentable.getBufferingCapacity().get(MEQ_PER_KILOGRAM);
-			double f_i = fa.getQuantity().get(KILOGRAMS) / totalGrainWeight;
-
-			double phi_bi_fi = ph_i * b_i * f_i;
-			double bi_fi = b_i * f_i;
-
-			total_phi_bi += phi_bi_fi;
-			total_bi += bi_fi;
-
-			if (fermentable.getLacticAcidContent() != null && fermentable.getLacticAcidContent().get() > 0)
-			{
-				double perc = fermentable.getLacticAcidContent().get(PERCENTAGE);
-				acidMaltMeqL += (-perc * fa.getQuantity().get(OUNCES) * 28.35 / 90.09 / mashWater.getVolume().get(LITRES) * 1000);
-			}
-		}
 		for (MiscAddition ma : miscAdditions)
 		{
 			Misc m = ma.getMisc();
@@ -268,24 +231,23 @@ public class Equations
 				if (m.getWaterAdditionFormula() == Misc.WaterAdditionFormula.LACTIC_ACID)
 				{
 					double density = 1 + 0.237 * perc;
-					lacticAcidMeqL += (-perc * density / 90.09 * 1000 * ml / mashWater.getVolume().get(LITRES));
+					lacticAcidMeqL += (-perc * density / 90.09 * 1000 * ml / waterL);
 				}
 				else if (m.getWaterAdditionFormula() == Misc.WaterAdditionFormula.PHOSPHORIC_ACID)
 				{
 					double density = 1 + 0.49 * perc + 0.375 * Math.pow(perc, 2);
-					phosphoricAcidMeqL += (-perc * density / 98 * 1000 * ml / mashWater.getVolume().get(LITRES));
+					phosphoricAcidMeqL += (-perc * density / 98 * 1000 * ml / waterL);
 				}
 			}
 		}
 
 		double waterPh = mashWater.getWater().getPh().get(PH);
 		double distilledPh = total_phi_bi / total_bi;
-		double mashThickness = mashWater.getVolume().get(LITRES) / totalGrainWeight;
+		double mashThickness = waterL / totalGrainWeight;
 
 		// this is the bit that MD Riffe worked out from forum user data
-		double maltBufferingCorrectionFactor = Double.valueOf(
-			Database.getInstance().getSettings().get(
-				Settings.MPH_MALT_BUFFERING_CORRECTION_FACTOR));
+		double maltBufferingCorrectionFactor = Database.getInstance().getSettings()
+			.getSnapshot().getMphMaltBufferingCorrectionFactor();
 
 		double ph_ra_slope = mashThickness / total_bi / maltBufferingCorrectionFactor;
 
@@ -296,33 +258,45 @@ public class Equations
 		double caMeqL = 2 * mashWater.getWater().getCalcium().get(PPM) / 40.078;
 		double mgMeqL = 2 * mashWater.getWater().getMagnesium().get(PPM) / 24.305;
 
-		// work out the mash pH with these malts
-		double ph = distilledPh;
-		double fph;
-		double z_alk;
-		double zra;
-
 		// fph_i =(1 + 4.435*10^(-7)*10^WaterPH +4.435*10^(-7)* 4.667*10^(-11)*10^(2*WaterPH) ) / (4.435*10^(-7)*10^WaterPH)
 		double fph_i = (1 + 0.0000004435 * Math.pow(10, waterPh) + 0.0000004435 * 0.00000000004667 * Math.pow(10, 2 * waterPh))
 			/ (0.0000004435 * Math.pow(10, waterPh));
 
-		// the spreadsheet uses 26 iterations, i think this is way too many but hey
-		for (int i = 0; i < 26; i++)
-		{
-			// f(pH)=(1 + 4.435*10^(-7)*10^ph + 4.435*10^(-7)* 4.667*10^(-11)*10^(2*ph) ) / (4.435*10^(-7)*10^ph)
-			fph = (1 + 0.0000004435 * Math.pow(10, ph) + 0.0000004435 * 0.00000000004667 * Math.pow(10, 2 * ph))
-				/ (0.0000004435 * Math.pow(10, ph));
+		// z_alk =(1 + 2*4.667*10^(-11)*10^WaterPh -fph_i/fph)
+		// (not needed for the pH, just in the spreadsheet)
+
+		// zra =c_alk - c_totall/fph - (Ca meq/L)/2.8 - (Mg meq/L))/5.6 + (phos_mEqL) + (lact_mEqL) + (acidmalt_mEqL) + (OH-_mEqL)
+		// todo: we do not support calcium hydroxide additions yet, when we do this should be updated to include the OH- impact here
+		double zra_const = c_alkalinity - (caMeqL / 2.8) - (mgMeqL / 5.6) + phosphoricAcidMeqL + lacticAcidMeqL + acidMaltMeqL;
+
+		// The spreadsheet iterates ph = distilledPh + ph_ra_slope * zra(ph) a
+		// fixed 26 times. Instead solve ph - distilledPh - ph_ra_slope * zra(ph) = 0,
+		// where f(pH) = 10^-pH/k1 + 1 + k2*10^pH and zra(pH) = zra_const - c_total/f(pH)
+		double k1 = 0.0000004435;
+		double k2 = 0.00000000004667;
 
-			// z_alk =(1 + 2*4.667*10^(-11)*10^WaterPh -fph_i/fph)
-			z_alk = (1 + 2 * 0.00000000004667 * Math.pow(10, waterPh) - fph_i / fph);
+		DoubleUnaryOperator g = ph ->
+		{
+			double p = Math.pow(10, ph);
+			double fph = 1 / (k1 * p) + 1 + k2 * p;
+			return ph - distilledPh - ph_ra_slope * (zra_const - c_total / fph);
+		};
 
-			// zra =c_alk - c_totall/fph - (Ca meq/L)/2.8 - (Mg meq/L))/5.6 + (phos_mEqL) + (lact_mEqL) + (acidmalt_mEqL) + (OH-_mEqL)
-			// todo: we do not support calcium hydroxide additions yet, when we do this should be updated to include the OH- impact here
-			zra = c_alkalinity - c_total / fph - (caMeqL / 2.8) - (mgMeqL / 5.6) + phosphoricAcidMeqL + lacticAcidMeqL + acidMaltMeqL;
+		DoubleUnaryOperator dg = ph ->
+		{
+			double p = Math.pow(10, ph);
+			double fph = 1 / (k1 * p) + 1 + k2 * p;
+			double dfph = Math.log(10) * (k2 * p - 1 / (k1 * p));
+			return 1 - ph_ra_slope * c_total * dfph / (fph * fph);
+		};
 
-			ph = distilledPh + ph_ra_slope * zra;
+		if (Double.isNaN(g.applyAsDouble(distilledPh)))
+		{
+			return new PhUnit(Double.NaN);
 		}
 
+		double ph = PH_SOLVER.solve(g, dg, 0, 14, distilledPh);
+
 		return new PhUnit(ph);
 	}
 
@@ -340,43 +314,8 @@ public class Equations
 		List<FermentableAddition> grainBill,
 		List<MiscAddition> origMiscAdditions)
 	{
-		if (acid.getAcidContent() != null && acid.getAcidContent().get(PERCENTAGE) > 0)
-		{
-			if (!acid.isAcidAddition())
-			{
-				return null;
-			}
-		}
-
-		// work this out iteratively, kind of a binary search
-		double target = targetPh.get(PH);
-		double diff = Double.MAX_VALUE;
-		double additionMl = 0.01;
-		double ph;
-
-		MiscAddition acidAddition = new MiscAddition(acid, new VolumeUnit(additionMl, MILLILITRES), MILLILITRES, new TimeUnit(0));
-		ArrayList<MiscAddition> miscAdditions = new ArrayList<>(origMiscAdditions);
-
-		while (Math.abs(diff) > 0.005)
-		{
-			acidAddition.setQuantity(new VolumeUnit(additionMl, MILLILITRES));
-			miscAdditions.add(acidAddition);
-			ph = calcMashPhMpH(mashWater, grainBill, miscAdditions).get(PH);
-			miscAdditions.remove(acidAddition);
-
-			diff = target - ph;
-
-			if (ph > target)
-			{
-				additionMl = additionMl + 0.005;
-			}
-			else
-			{
-				break;
-			}
-		}
-
-		return new VolumeUnit(additionMl, MILLILITRES);
+		return calcMashAcidAddition(acid, targetPh, origMiscAdditions,
+			miscAdditions -> calcMashPhMpH(mashWater, grainBill, miscAdditions));
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -389,38 +328,12 @@ public class Equations
 		List<FermentableAddition> allAdditions,
 		List<MiscAddition> miscAdditions)
 	{
-		List<FermentableAddition> grainBill = new ArrayList<>();
-
-		// filter out stuff that won't impact the pH
-		for (FermentableAddition fa : allAdditions)
-		{
-			Fermentable f = fa.getFermentable();
-			if (f.getBufferingCapacity() != null && f.getBufferingCapacity().get() > 0 &&
-				f.getDistilledWaterPh() != null && f.getDistilledWaterPh().get() > 0)
-			{
-				grainBill.add(fa);
-			}
-		}
-
 		// sum up the grist impact on distilled water ph
 		// also detect any acid malt
-		WeightUnit weightUnit = calcTotalGrainWeight(grainBill);
-		double totalGrainWeight = weightUnit.get(KILOGRAMS);
-		double distilledPh = 0;
-		double acidMaltContrib = 0;
+		GristBuffering grist = GristBuffering.of(allAdditions);
+		double distilledPh = grist.getDistilledWaterPh();
+		double acidMaltContrib = grist.getAcidMaltOunces();
 		double lacticAcidAdditions = 0;
-		for (FermentableAddition fa : grainBill)
-		{
-			Fermentable fermentable = fa.getFermentable();
-			double phi = fermentable.getDistilledWaterPh() == null ? 5.6 : fermentable.getDistilledWaterPh().get(PH);
-			double grainWeight = fa.getQuantity().get(KILOGRAMS);
-			distilledPh += (phi * grainWeight);
-
-			if (fermentable.getLacticAcidContent() != null && fermentable.getLacticAcidContent().get() > 0)
-			{
-				acidMaltContrib += (fermentable.getLacticAcidContent().get(PERCENTAGE) * fa.getQuantity().get(OUNCES));
-			}
-		}
 		for (MiscAddition ma : miscAdditions)
 		{
 			Misc m = ma.getMisc();
@@ -433,9 +346,7 @@ public class Equations
 			}
 		}
 
-		distilledPh /= totalGrainWeight;
-
-		double totalGrainWeightLbs = weightUnit.get(POUNDS);
+		double totalGrainWeightLbs = grist.getTotalWeight().get(POUNDS);
 
 		// =HCo3(ppm) * 50/61 + (-176.1*[lactic acid %]*[lactic acid ml]*2 -4160.4*[acid malt %]*[acid malt oz]*2.5)/[water vol gal]
 		// we are folding the water additions into the water profile so ignoreing those,
@@ -478,6 +389,26 @@ public class Equations
 		WaterAddition mashWater,
 		List<FermentableAddition> grainBill,
 		List<MiscAddition> origAdditions)
+	{
+		return calcMashAcidAddition(acid, targetPh, origAdditions,
+			miscAdditions -> calcMashPhEzWater(mashWater, grainBill, miscAdditions));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Solves for the volume of the given acid that brings the mash to the
+	 * target pH under the given pH model. At least 0.01ml is always returned.
+	 *
+	 * @param phModel
+	 * 	Returns the mash pH with the given misc additions.
+	 * @return
+	 * 	The acid volume, or null if the pH model takes no account of this acid.
+	 */
+	private static VolumeUnit calcMashAcidAddition(
+		Misc acid,
+		PhUnit targetPh,
+		List<MiscAddition> origAdditions,
+		Function<List<MiscAddition>, PhUnit> phModel)
 	{
 		if (acid.getAcidContent() != null && acid.getAcidContent().get(PERCENTAGE) > 0)
 		{
@@ -487,36 +418,36 @@ public class Equations
 			}
 		}
 
-		// work this out iteratively, kind of a binary search
 		double target = targetPh.get(PH);
-		double diff = Double.MAX_VALUE;
-		double additionMl = 0.01;
-		double ph;
+		double minMl = 0.01;
 
-		MiscAddition acidAddition = new MiscAddition(acid, new VolumeUnit(additionMl, MILLILITRES), MILLILITRES, new TimeUnit(0));
+		MiscAddition acidAddition = new MiscAddition(acid, new VolumeUnit(minMl, MILLILITRES), MILLILITRES, new TimeUnit(0));
 		ArrayList<MiscAddition> miscAdditions = new ArrayList<>(origAdditions);
+		miscAdditions.add(acidAddition);
 
-
-		while (Math.abs(diff) > 0.005)
+		DoubleUnaryOperator f = ml ->
 		{
-			acidAddition.setQuantity(new VolumeUnit(additionMl, MILLILITRES));
-			miscAdditions.add(acidAddition);
-			ph = calcMashPhEzWater(mashWater, grainBill, miscAdditions).get(PH);
-			miscAdditions.remove(acidAddition);
+			acidAddition.setQuantity(new VolumeUnit(ml, MILLILITRES));
+			return phModel.apply(miscAdditions).get(PH) - target;
+		};
 
-			diff = target - ph;
+		// already there, or the pH can't be worked out
+		double atMin = f.applyAsDouble(minMl);
+		if (!(atMin > 0))
+		{
+			return new VolumeUnit(minMl, MILLILITRES);
+		}
 
-			if (ph > target)
-			{
-				additionMl = additionMl + 0.005;
-			}
-			else
-			{
-				break;
-			}
+		// the model ignores this acid (eg EZ Water only models lactic acid)
+		double maxMl = 10;
+		if (!(f.applyAsDouble(maxMl) < atMin))
+		{
+			return null;
 		}
 
-		return new VolumeUnit(additionMl, MILLILITRES);
+		double additionMl = ACID_SOLVER.solve(f, null, minMl, maxMl, minMl);
+
+		return new VolumeUnit(Math.max(minMl, additionMl), MILLILITRES);
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -534,9 +465,10 @@ public class Equations
 		boolean estimated = volumeIn.isEstimated() || gravityIn.isEstimated() || volumeOut.isEstimated();
 
 		return new DensityUnit(
-			gravityIn.get() *
-				volumeIn.get(MILLILITRES) /
-				volumeOut.get(MILLILITRES),
+			EquationsKernel.calcGravityWithVolumeChange(
+				volumeIn.get(MILLILITRES),
+				gravityIn.get(),
+				volumeOut.get(MILLILITRES)),
 			gravityIn.getUnit(),
 			estimated);
 	}
@@ -560,15 +492,14 @@ public class Equations
 	{
 		boolean estimated = v1.isEstimated() || d1.isEstimated() || v2.isEstimated() || d2.isEstimated();
 
-		double e1 = getExtractContent(v1, d1).get(KILOGRAMS);
-		double e2 = getExtractContent(v2, d2).get(KILOGRAMS);
-
-		double w1 = v1.get(LITRES) * d1.get(SPECIFIC_GRAVITY);
-		double w2 = v2.get(LITRES) * d2.get(SPECIFIC_GRAVITY);
-
-		double plato = 100 * (e1 + e2) / (w1 + w2);
-
-		return new DensityUnit(plato, PLATO, estimated);
+		return new DensityUnit(
+			EquationsKernel.calcCombinedGravity(
+				v1.get(MILLILITRES),
+				d1.get(GU),
+				v2.get(MILLILITRES),
+				d2.get(GU)),
+			GU,
+			estimated);
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -581,13 +512,8 @@ public class Equations
 	{
 		boolean estimated = vol.isEstimated() || gravity.isEstimated();
 
-		double volL = vol.get(LITRES);
-
-		double sg = gravity.get(SPECIFIC_GRAVITY);
-
-		double plato = gravity.get(PLATO);
-
-		double extract = volL * (sg) * (plato / 100D);
+		double extract = EquationsKernel.getExtractContent(
+			vol.get(MILLILITRES), gravity.get(GU));
 
 		return new WeightUnit(extract, KILOGRAMS, estimated);
 	}
@@ -627,8 +553,8 @@ public class Equations
 
 		boolean estimated = v1.isEstimated() || q1.isEstimated() || v2.isEstimated() || q2.isEstimated();
 
-		double vc = v1.get() + v2.get();
-		double qc = (v1.get() / vc * q1.get()) + (v2.get() / vc * q2.get());
+		double qc = EquationsKernel.calcCombinedLinearInterpolation(
+			v1.get(), q1.get(), v2.get(), q2.get());
 
 		Quantity result = Quantity.parseQuantity("" + qc, q1.getUnit());
 		result.setEstimated(estimated);
@@ -666,8 +592,8 @@ public class Equations
 		boolean estimated = volumeIn.isEstimated() || tempDecrease.isEstimated();
 
 		return new VolumeUnit(
-			volumeIn.get(MILLILITRES) *
-				(1 - (Const.COOLING_SHRINKAGE * tempDecrease.get(CELSIUS))),
+			EquationsKernel.calcCoolingShrinkage(
+				volumeIn.get(MILLILITRES), tempDecrease.get(CELSIUS)),
 			MILLILITRES,
 			estimated);
 	}
@@ -690,10 +616,10 @@ public class Equations
 		}
 		boolean estimated = volumeIn.isEstimated() || abvIn.isEstimated() || volumeOut.isEstimated();
 
-		double abvInD = abvIn == null ? 0 : abvIn.get();
-		double volInD = volumeIn.get();
-		double volOutD = volumeOut.get();
-		return new PercentageUnit(abvInD * volInD / volOutD, estimated);
+		return new PercentageUnit(
+			EquationsKernel.calcAbvWithVolumeChange(
+				volumeIn.get(), abvIn.get(), volumeOut.get()),
+			estimated);
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -708,9 +634,10 @@ public class Equations
 		DensityUnit gravityIn,
 		DensityUnit gravityOut)
 	{
-		double abv = (gravityIn.get(SPECIFIC_GRAVITY) - gravityOut.get(SPECIFIC_GRAVITY)) * Const.ABV_CONST;
 		boolean estimated = gravityIn.isEstimated() || gravityOut.isEstimated();
-		return new PercentageUnit(abv / 100D, estimated);
+		return new PercentageUnit(
+			EquationsKernel.calcAbvWithGravityChange(gravityIn.get(), gravityOut.get()),
+			estimated);
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -915,8 +842,8 @@ public class Equations
 		// relaxed about this stuff.
 		//
 
-		double srmIn = colourIn.get(SRM);
-		return new ColourUnit(srmIn * 1.42, SRM);
+		return new ColourUnit(
+			EquationsKernel.calcColourAfterBoil(colourIn.get(SRM)), SRM);
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -934,9 +861,11 @@ public class Equations
 	{
 		boolean estimated = volumeIn.isEstimated() || colourIn.isEstimated() || volumeOut.isEstimated();
 
-		return new ColourUnit(colourIn.get(SRM) *
-			volumeIn.get(MILLILITRES) /
-			volumeOut.get(MILLILITRES),
+		return new ColourUnit(
+			EquationsKernel.calcColourWithVolumeChange(
+				volumeIn.get(MILLILITRES),
+				colourIn.get(SRM),
+				volumeOut.get(MILLILITRES)),
 			SRM,
 			estimated);
 	}
@@ -959,9 +888,10 @@ public class Equations
 		boolean estimated = volumeIn.isEstimated() || bitternessIn.isEstimated() || volumeOut.isEstimated();
 
 		return new BitternessUnit(
-			bitternessIn.get(IBU) *
-				volumeIn.get(MILLILITRES) /
-				volumeOut.get(MILLILITRES),
+			EquationsKernel.calcBitternessWithVolumeChange(
+				volumeIn.get(MILLILITRES),
+				bitternessIn.get(IBU),
+				volumeOut.get(MILLILITRES)),
 			IBU,
 			estimated);
 	}
@@ -975,7 +905,7 @@ public class Equations
 	public static ColourUnit calcColourAfterFermentation(ColourUnit colour)
 	{
 		return new ColourUnit(
-			colour.get(SRM) * (1 - Const.COLOUR_LOSS_DURING_FERMENTATION),
+			EquationsKernel.calcColourAfterFermentation(colour.get(SRM)),
 			SRM,
 			colour.isEstimated());
 	}
@@ -996,11 +926,10 @@ public class Equations
 
 		double aveGrav = wortGravity.get(DensityUnit.Unit.SPECIFIC_GRAVITY);
 
-		double maxUtilFactor = Double.valueOf(Database.getInstance().getSettings().get(
-			Settings.TINSETH_MAX_UTILISATION));
-		double bignessFactor = 1.65D * Math.pow(0.000125, aveGrav - 1);
-		double boilTimeFactor = (1D - Math.exp(-0.04 * steepDuration.get(MINUTES))) / maxUtilFactor;
-		double decimalAAUtilisation = bignessFactor * boilTimeFactor;
+		double maxUtilFactor = Database.getInstance().getSettings()
+			.getSnapshot().getTinsethMaxUtilisation();
+		double decimalAAUtilisation =
+			HopUtilisation.TINSETH.get(steepDuration.get(MINUTES), aveGrav) / maxUtilFactor;
 
 		Hop h = hopAddition.getHop();
 		double alpha = h.getAlphaAcid().get(PERCENTAGE);
@@ -1034,31 +963,31 @@ public class Equations
 		double multiplier = 1D;
 		double base = 0D;
 
-		Settings settings = Database.getInstance().getSettings();
+		Settings.Snapshot settings = Database.getInstance().getSettings().getSnapshot();
 
 		switch (baseForm)
 		{
 			case PELLET:
-				base += Double.valueOf(settings.get(Settings.PELLET_HOP_ADJUSTMENT));
+				base += settings.getPelletHopAdjustment();
 				break;
 			case PLUG:
-				base += Double.valueOf(settings.get(Settings.PLUG_HOP_ADJUSTMENT));
+				base += settings.getPlugHopAdjustment();
 				break;
 			case LEAF:
-				base += Double.valueOf(settings.get(Settings.LEAF_HOP_ADJUSTMENT));
+				base += settings.getLeafHopAdjustment();
 				break;
 		}
 
 		switch (form)
 		{
 			case PELLET:
-				multiplier += Double.valueOf(settings.get(Settings.PELLET_HOP_ADJUSTMENT));
+				multiplier += settings.getPelletHopAdjustment();
 				break;
 			case PLUG:
-				multiplier += Double.valueOf(settings.get(Settings.PLUG_HOP_ADJUSTMENT));
+				multiplier += settings.getPlugHopAdjustment();
 				break;
 			case LEAF:
-				multiplier += Double.valueOf(settings.get(Settings.LEAF_HOP_ADJUSTMENT));
+				multiplier += settings.getLeafHopAdjustment();
 				break;
 		}
 
@@ -1084,11 +1013,10 @@ public class Equations
 		double alpha = hopAddition.getHop().getAlphaAcid().get(PERCENTAGE);
 		double volumeL = wortVolume.get(LITRES);
 
-		double ga = Math.max(0, wortGravity.get(SPECIFIC_GRAVITY) - 1.050) * 0.2D;
+		// includes the gravity adjustment
+		double utilisation = HopUtilisation.RAGER.get(minutes, wortGravity.get(SPECIFIC_GRAVITY));
 
-		double utilisation = (18.11 + 13.86 * Math.tanh((minutes - 31.32) / 18.27)) / 100;
-
-		double ibu = (weightG * utilisation * alpha * 1000) / (volumeL * (1 + ga));
+		double ibu = (weightG * utilisation * alpha * 1000) / volumeL;
 
 		// Rager's numbers are believed to be for pellet hops.
 		double multiplier = getHopFormMultiplier(
@@ -1154,7 +1082,7 @@ public class Equations
 		double litres = boilVol.get(LITRES);
 
 		// from here: https://straighttothepint.com/ibu-calculator/
-		double utilisation = 7.2994 + 15.0746 * Math.tanh((mins - 21.86) / 24.71);
+		double utilisation = HopUtilisation.GARETZ.get(mins, startingGrav);
 
 		// concentration factor
 		double cf = finalVol.get() / boilVol.get();
@@ -1172,11 +1100,11 @@ public class Equations
 		double tf = 1 + equipmentElevationInFeet / 550 * 0.02;
 
 		// yeast factor, pellet factor, bag factor, filter factor
-		Settings settings = Database.getInstance().getSettings();
-		double yf = Double.valueOf(settings.get(Settings.GARETZ_YEAST_FACTOR));
-		double pf = Double.valueOf(settings.get(Settings.GARETZ_PELLET_FACTOR));
-		double bf = Double.valueOf(settings.get(Settings.GARETZ_BAG_FACTOR));
-		double ff = Double.valueOf(settings.get(Settings.GARETZ_FILTER_FACTOR));
+		Settings.Snapshot settings = Database.getInstance().getSettings().getSnapshot();
+		double yf = settings.getGaretzYeastFactor();
+		double pf = settings.getGaretzPelletFactor();
+		double bf = settings.getGaretzBagFactor();
+		double ff = settings.getGaretzFilterFactor();
 
 		// combined adjustments
 		double ca = gf * hf * tf * yf * pf * bf * ff;
@@ -1209,9 +1137,7 @@ public class Equations
 		double aveGrav = wortGravity.get(DensityUnit.Unit.SPECIFIC_GRAVITY);
 
 		// the TINSETH utilisation formula
-		double bignessFactor = 1.65D * Math.pow(0.000125, aveGrav - 1);
-		double boilTimeFactor = (1D - Math.exp(-0.04 * steepDuration.get(MINUTES))) / 4.15D;
-		double utilisation = bignessFactor * boilTimeFactor;
+		double utilisation = HopUtilisation.TINSETH.get(steepDuration.get(MINUTES), aveGrav) / 4.15D;
 
 		// daniels formula:
 
@@ -1233,9 +1159,10 @@ public class Equations
 		TemperatureUnit inputTemp,
 		TimeUnit standDuration)
 	{
-		double inC = inputTemp.get(CELSIUS);
-		double lossC = Const.HEAT_LOSS * standDuration.get(HOURS);
-		return new TemperatureUnit(inC - lossC, CELSIUS);
+		return new TemperatureUnit(
+			EquationsKernel.calcStandEndingTemperature(
+				inputTemp.get(CELSIUS), standDuration.get(HOURS)),
+			CELSIUS);
 	}
 
 
@@ -1751,10 +1678,7 @@ public class Equations
 	 */
 	public static double calcAttenuation(DensityUnit start, DensityUnit end)
 	{
-		double sgStart = start.get(SPECIFIC_GRAVITY);
-		double sgEnd = end.get(SPECIFIC_GRAVITY);
-
-		return (sgStart - sgEnd) / (sgStart - 1D);
+		return EquationsKernel.calcAttenuation(start.get(GU), end.get(GU));
 	}
 
 	/*-------------------------------------------------------------------------*/
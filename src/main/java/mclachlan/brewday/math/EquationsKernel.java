@@ -0,0 +1,313 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.math;
+
+/**
+ * Primitive versions of the simple {@link Equations}, working on doubles in
+ * the canonical unit of each quantity: GU, ml, SRM, IBU, C, and fractions
+ * for percentages. The Quantity based methods in {@link Equations} delegate
+ * to these, and hot paths can call them directly to avoid allocating
+ * intermediate quantities.
+ */
+public class EquationsKernel
+{
+	/*-------------------------------------------------------------------------*/
+	private EquationsKernel()
+	{
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param gu density in GU
+	 * @return the specific gravity
+	 */
+	public static double toSpecificGravity(double gu)
+	{
+		return (1000+gu)/1000;
+	}
+
+	/**
+	 * @param sg a specific gravity
+	 * @return the density in GU
+	 */
+	public static double fromSpecificGravity(double sg)
+	{
+		return 1000 * sg -1000;
+	}
+
+	/**
+	 * @param gu density in GU
+	 * @return the density in degrees Plato
+	 */
+	public static double toPlato(double gu)
+	{
+		double sg = toSpecificGravity(gu);
+		return
+			135.997*Math.pow(sg, 3) -
+			630.272*Math.pow(sg, 2) +
+			1111.14*sg -
+			616.868;
+	}
+
+	/**
+	 * @param plato density in degrees Plato
+	 * @return the density in GU
+	 */
+	public static double fromPlato(double plato)
+	{
+		return 1000*(1 + (plato / (258.6 - 227.1*(plato/258.2)))) -1000;
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param currentVolume in ml
+	 * @param currentTemperature in C
+	 * @param volumeAddition in ml
+	 * @param tempAddition in C
+	 * @return New temp of the combined fluid volume, in C
+	 */
+	public static double calcCombinedTemperature(
+		double currentVolume,
+		double currentTemperature,
+		double volumeAddition,
+		double tempAddition)
+	{
+		return
+			(
+				(currentVolume *
+					currentTemperature *
+					Const.SPECIFIC_HEAT_OF_WATER)
+					+
+					volumeAddition *
+						tempAddition *
+						Const.SPECIFIC_HEAT_OF_WATER
+			)
+				/
+				(
+					currentVolume *
+						Const.SPECIFIC_HEAT_OF_WATER
+						+
+						volumeAddition *
+							Const.SPECIFIC_HEAT_OF_WATER
+				);
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param volumeIn in ml
+	 * @param gravityIn in GU
+	 * @param volumeOut in ml
+	 * @return New gravity of the output volume, in GU
+	 */
+	public static double calcGravityWithVolumeChange(
+		double volumeIn,
+		double gravityIn,
+		double volumeOut)
+	{
+		return gravityIn * volumeIn / volumeOut;
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param vol in ml
+	 * @param gravity in GU
+	 * @return the extract content of the given volume, in kg
+	 */
+	public static double getExtractContent(double vol, double gravity)
+	{
+		double volL = vol / 1000;
+
+		double sg = toSpecificGravity(gravity);
+
+		double plato = toPlato(gravity);
+
+		return volL * (sg) * (plato / 100D);
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param v1 in ml
+	 * @param d1 in GU
+	 * @param v2 in ml
+	 * @param d2 in GU
+	 * @return gravity of the combined fluids, in GU
+	 */
+	public static double calcCombinedGravity(
+		double v1,
+		double d1,
+		double v2,
+		double d2)
+	{
+		double e1 = getExtractContent(v1, d1);
+		double e2 = getExtractContent(v2, d2);
+
+		double w1 = v1 / 1000 * toSpecificGravity(d1);
+		double w2 = v2 / 1000 * toSpecificGravity(d2);
+
+		double plato = 100 * (e1 + e2) / (w1 + w2);
+
+		return fromPlato(plato);
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param v1 in ml
+	 * @param q1 any quantity of the first volume
+	 * @param v2 in ml
+	 * @param q2 the same quantity of the second volume
+	 * @return the volume weighted average of the two quantities
+	 */
+	public static double calcCombinedLinearInterpolation(
+		double v1,
+		double q1,
+		double v2,
+		double q2)
+	{
+		double vc = v1 + v2;
+		return (v1 / vc * q1) + (v2 / vc * q2);
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param volumeIn in ml
+	 * @param tempDecrease in C
+	 * @return The new volume after shrinkage, in ml
+	 */
+	public static double calcCoolingShrinkage(
+		double volumeIn,
+		double tempDecrease)
+	{
+		return volumeIn * (1 - (Const.COOLING_SHRINKAGE * tempDecrease));
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param volumeIn in ml
+	 * @param abvIn within 0..1
+	 * @param volumeOut in ml
+	 * @return the new ABV, within 0..1
+	 */
+	public static double calcAbvWithVolumeChange(
+		double volumeIn,
+		double abvIn,
+		double volumeOut)
+	{
+		return abvIn * volumeIn / volumeOut;
+	}
+
+	/**
+	 * @param gravityIn in GU
+	 * @param gravityOut in GU
+	 * @return the new ABV, within 0..1
+	 */
+	public static double calcAbvWithGravityChange(
+		double gravityIn,
+		double gravityOut)
+	{
+		double abv = (toSpecificGravity(gravityIn) - toSpecificGravity(gravityOut)) * Const.ABV_CONST;
+		return abv / 100D;
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param colourIn in SRM
+	 * @return colour after the boil, in SRM. See
+	 * 	{@link Equations#calcColourAfterBoil(ColourUnit)}
+	 */
+	public static double calcColourAfterBoil(double colourIn)
+	{
+		return colourIn * 1.42;
+	}
+
+	/**
+	 * @param volumeIn in ml
+	 * @param colourIn in SRM
+	 * @param volumeOut in ml
+	 * @return colour in SRM
+	 */
+	public static double calcColourWithVolumeChange(
+		double volumeIn,
+		double colourIn,
+		double volumeOut)
+	{
+		return colourIn * volumeIn / volumeOut;
+	}
+
+	/**
+	 * @param colour in SRM
+	 * @return colour after fermentation, in SRM
+	 */
+	public static double calcColourAfterFermentation(double colour)
+	{
+		return colour * (1 - Const.COLOUR_LOSS_DURING_FERMENTATION);
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param volumeIn in ml
+	 * @param bitternessIn in IBU
+	 * @param volumeOut in ml
+	 * @return bitterness in IBU
+	 */
+	public static double calcBitternessWithVolumeChange(
+		double volumeIn,
+		double bitternessIn,
+		double volumeOut)
+	{
+		return bitternessIn * volumeIn / volumeOut;
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param inputTemp in C
+	 * @param standDuration in hours
+	 * @return the temperature at the end of the stand, in C
+	 */
+	public static double calcStandEndingTemperature(
+		double inputTemp,
+		double standDuration)
+	{
+		return inputTemp - Const.HEAT_LOSS * standDuration;
+	}
+
+	/*-------------------------------------------------------------------------*/
+
+	/**
+	 * @param start the starting gravity in GU
+	 * @param end the final gravity in GU
+	 * @return The attenuation, within 0..1
+	 */
+	public static double calcAttenuation(double start, double end)
+	{
+		double sgStart = toSpecificGravity(start);
+		double sgEnd = toSpecificGravity(end);
+
+		return (sgStart - sgEnd) / (sgStart - 1D);
+	}
+}
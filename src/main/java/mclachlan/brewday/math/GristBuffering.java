@@ -0,0 +1,132 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.math;
+
+import java.util.*;
+import mclachlan.brewday.ingredients.Fermentable;
+import mclachlan.brewday.recipe.FermentableAddition;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * The sums over a grain bill that the mash pH models need. These only
+ * depend on the grist, so they are taken in one pass over the grain bill
+ * before the pH is solved, rather than on every step of the solver.
+ */
+public class GristBuffering
+{
+	/** total weight of the grains that affect the pH */
+	private final WeightUnit totalWeight;
+
+	/** sum of distilled water pH x buffering capacity x weight fraction */
+	private final double phBufferingCapacity;
+
+	/** sum of buffering capacity x weight fraction, in mEq/kg */
+	private final double bufferingCapacity;
+
+	/** the distilled water pH of the grist, weighted by weight */
+	private final double distilledWaterPh;
+
+	/** sum of lactic acid content (0..1) x weight in ounces, of any acid malt */
+	private final double acidMaltOunces;
+
+	/*-------------------------------------------------------------------------*/
+	private GristBuffering(List<FermentableAddition> allAdditions)
+	{
+		List<FermentableAddition> grainBill = new ArrayList<>();
+
+		// filter out stuff that won't impact the pH
+		for (FermentableAddition fa : allAdditions)
+		{
+			Fermentable f = fa.getFermentable();
+			if (f.getBufferingCapacity() != null && f.getBufferingCapacity().get() > 0 &&
+				f.getDistilledWaterPh() != null && f.getDistilledWaterPh().get() > 0)
+			{
+				grainBill.add(fa);
+			}
+		}
+
+		totalWeight = Equations.calcTotalGrainWeight(grainBill);
+		double totalGrainWeight = totalWeight.get(KILOGRAMS);
+
+		double total_phi_bi = 0D;
+		double total_bi = 0D;
+		double distilledPh = 0D;
+		double acidMalt = 0D;
+
+		for (FermentableAddition fa : grainBill)
+		{
+			Fermentable fermentable = fa.getFermentable();
+
+			double ph_i = fermentable.getDistilledWaterPh().get(PH);
+			double b_i = fermentable.getBufferingCapacity().get(MEQ_PER_KILOGRAM);
+			double weight = fa.getQuantity().get(KILOGRAMS);
+			double f_i = weight / totalGrainWeight;
+
+			total_phi_bi += ph_i * b_i * f_i;
+			total_bi += b_i * f_i;
+			distilledPh += ph_i * weight;
+
+			if (fermentable.getLacticAcidContent() != null && fermentable.getLacticAcidContent().get() > 0)
+			{
+				acidMalt += fermentable.getLacticAcidContent().get(PERCENTAGE) * fa.getQuantity().get(OUNCES);
+			}
+		}
+
+		this.phBufferingCapacity = total_phi_bi;
+		this.bufferingCapacity = total_bi;
+		this.distilledWaterPh = distilledPh / totalGrainWeight;
+		this.acidMaltOunces = acidMalt;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the buffering sums for the given fermentable additions,
+	 * 	ignoring any that do not have pH data
+	 */
+	public static GristBuffering of(List<FermentableAddition> allAdditions)
+	{
+		return new GristBuffering(allAdditions);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public WeightUnit getTotalWeight()
+	{
+		return totalWeight;
+	}
+
+	public double getPhBufferingCapacity()
+	{
+		return phBufferingCapacity;
+	}
+
+	public double getBufferingCapacity()
+	{
+		return bufferingCapacity;
+	}
+
+	public double getDistilledWaterPh()
+	{
+		return distilledWaterPh;
+	}
+
+	public double getAcidMaltOunces()
+	{
+		return acidMaltOunces;
+	}
+}
@@ -222,8 +222,18 @@ public abstract class Quantity
 	 */
 	public static Quantity parseQuantity(String str, Unit unit)
 	{
-		double amount = Double.parseDouble(str);
+		return newQuantity(Double.parseDouble(str), unit);
+	}
+
+	/*-------------------------------------------------------------------------*/
 
+	/**
+	 * @param amount The amount, in the given unit
+	 * @param unit The desired output unit
+	 * @return A Quantity in the given output unit.
+	 */
+	public static Quantity newQuantity(double amount, Unit unit)
+	{
 		switch (unit)
 		{
 			case GRAMS:
@@ -0,0 +1,155 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.math;
+
+import java.util.function.DoubleUnaryOperator;
+import mclachlan.brewday.BrewdayException;
+
+/**
+ * Finds a root of a function of one variable with Newton's method, falling
+ * back to bisection whenever a step would leave the bracket around the root.
+ * Used by the mash pH models to solve for the pH and for acid additions.
+ */
+public class RootFinder
+{
+	/** how many times the initial bracket may be widened to find a root */
+	private static final int MAX_EXPANSIONS = 60;
+
+	private final double tolerance;
+	private final int maxIterations;
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param tolerance
+	 * 	Stop once a step or the bracket is smaller than this.
+	 * @param maxIterations
+	 * 	Stop after this many steps regardless.
+	 */
+	public RootFinder(double tolerance, int maxIterations)
+	{
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param f
+	 * 	The function.
+	 * @param df
+	 * 	Its derivative, or null to use secant steps instead of Newton steps.
+	 * @param lo
+	 * 	Lower end of the initial bracket.
+	 * @param hi
+	 * 	Upper end of the initial bracket. If f does not change sign over the
+	 * 	bracket it is widened until it does.
+	 * @param guess
+	 * 	The starting point, clamped to the bracket.
+	 * @return
+	 * 	A root of f.
+	 */
+	public double solve(
+		DoubleUnaryOperator f,
+		DoubleUnaryOperator df,
+		double lo,
+		double hi,
+		double guess)
+	{
+		double fLo = f.applyAsDouble(lo);
+		double fHi = f.applyAsDouble(hi);
+
+		// NaN never compares as a sign change
+		for (int i=0; !(Math.signum(fLo) * Math.signum(fHi) < 0); i++)
+		{
+			if (fLo == 0)
+			{
+				return lo;
+			}
+			if (fHi == 0)
+			{
+				return hi;
+			}
+			if (i == MAX_EXPANSIONS || Double.isNaN(fLo) || Double.isNaN(fHi))
+			{
+				throw new BrewdayException("no root in [" + lo + ", " + hi + "]");
+			}
+
+			double width = hi - lo;
+			if (Math.abs(fLo) < Math.abs(fHi))
+			{
+				lo -= width;
+				fLo = f.applyAsDouble(lo);
+			}
+			else
+			{
+				hi += width;
+				fHi = f.applyAsDouble(hi);
+			}
+		}
+
+		double x = Math.max(lo, Math.min(hi, guess));
+		double prevX = lo;
+		double prevF = fLo;
+
+		for (int i=0; i<maxIterations; i++)
+		{
+			double fx = f.applyAsDouble(x);
+			if (fx == 0)
+			{
+				return x;
+			}
+
+			// keep the root bracketed
+			if (Math.signum(fx) == Math.signum(fLo))
+			{
+				lo = x;
+				fLo = fx;
+			}
+			else
+			{
+				hi = x;
+				fHi = fx;
+			}
+
+			double next;
+			if (df != null)
+			{
+				next = x - fx / df.applyAsDouble(x);
+			}
+			else
+			{
+				next = x - fx * (x - prevX) / (fx - prevF);
+			}
+
+			if (!(next > lo && next < hi))
+			{
+				next = (lo + hi) / 2;
+			}
+
+			if (Math.abs(next - x) < tolerance || hi - lo < tolerance)
+			{
+				return next;
+			}
+
+			prevX = x;
+			prevF = fx;
+			x = next;
+		}
+
+		return x;
+	}
+}
@@ -20,11 +20,14 @@ package mclachlan.brewday.math;
 
 import java.util.*;
 import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.ParallelTasks;
 import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.ingredients.Misc;
 import mclachlan.brewday.ingredients.Water;
 import mclachlan.brewday.recipe.MiscAddition;
 import mclachlan.brewday.recipe.WaterAddition;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.optim.PointValuePair;
 import org.apache.commons.math3.optim.linear.*;
 import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
@@ -36,6 +39,57 @@ import static mclachlan.brewday.math.Quantity.Unit.PPM;
  */
 public class WaterBuilder
 {
+	/** the additions, in the order of the LP variables */
+	private static final Misc.WaterAdditionFormula[] KEYS =
+		{
+			Misc.WaterAdditionFormula.CALCIUM_CARBONATE_UNDISSOLVED,
+			Misc.WaterAdditionFormula.CALCIUM_CARBONATE_DISSOLVED,
+			Misc.WaterAdditionFormula.CALCIUM_SULPHATE_DIHYDRATE,
+			Misc.WaterAdditionFormula.CALCIUM_CHLORIDE_DIHYDRATE,
+			Misc.WaterAdditionFormula.MAGNESIUM_SULFATE_HEPTAHYDRATE,
+			Misc.WaterAdditionFormula.SODIUM_BICARBONATE,
+			Misc.WaterAdditionFormula.SODIUM_CHLORIDE,
+			Misc.WaterAdditionFormula.CALCIUM_BICARBONATE,
+			Misc.WaterAdditionFormula.MAGNESIUM_CHLORIDE_HEXAHYDRATE,
+		};
+
+	//
+	// The coefficient matrix only depends on the chemistry, so it is built
+	// once and shared by every LP. The constraint vectors are never modified.
+	//
+
+	private static final double[] CALCIUM_COEFF = {40.08 / 100.09, (40.08 / 100.09) / 2, 40.08 / 172.9, 40.08 / 147.02, 0, 0, 0, 40.08 / 162.11, 0};
+	private static final double[] BICARBONATE_COEFF = {(61 / 100.09) * 2, (61 / 100.09), 0, 0, 0, 61D / 84D, 0, 61D / 162.11, 35.45 / 95.21};
+	private static final double[] SULFATE_COEFF = {0, 0, (96.07 / 172.9), 0, (96.07 / 246.51), 0, 0, 0, 0};
+	private static final double[] CHLORIDE_COEFF = {0, 0, 0, (70.9 / 147.02), 0, 0, (35.45 / 58.44), 0, (35.45 / 95.21)};
+	private static final double[] MAGNESIUM_COEFF = {0, 0, 0, 0, (24.31 / 246.51), 0, 0, 0, (24.31 / 95.21)};
+	private static final double[] SODIUM_COEFF = {0, 0, 0, 0, 0, (23D / 84D), (23D / 58.44), 0, 0};
+
+	/** simple alkalinity from bicarbonate: Alk = HCO3 * 50/61.02 */
+	private static final double A7 = 50D / 61.02D;
+
+	private static final RealVector CALCIUM = new ArrayRealVector(CALCIUM_COEFF, false);
+	private static final RealVector BICARBONATE = new ArrayRealVector(BICARBONATE_COEFF, false);
+	private static final RealVector SULFATE = new ArrayRealVector(SULFATE_COEFF, false);
+	private static final RealVector CHLORIDE = new ArrayRealVector(CHLORIDE_COEFF, false);
+	private static final RealVector MAGNESIUM = new ArrayRealVector(MAGNESIUM_COEFF, false);
+	private static final RealVector SODIUM = new ArrayRealVector(SODIUM_COEFF, false);
+	private static final RealVector ALKALINITY = new ArrayRealVector(getAlkalinityCoeff(), false);
+	private static final RealVector RESIDUAL_ALKALINITY = new ArrayRealVector(getResidualAlkalinityCoeff(), false);
+
+	/** x[i] alone, for bounds on a single addition */
+	private static final RealVector[] UNIT = getUnitVectors();
+
+	/** x[i] = 0, for additions that are not allowed */
+	private static final LinearConstraint[] NOT_ALLOWED = getNotAllowedConstraints();
+
+	/** how close to a whole number of increments counts as integral */
+	private static final double INTEGRALITY_TOLERANCE = 1E-6;
+
+	/** for MIN or MAX additions we simply sum the addition quantities */
+	private static final LinearObjectiveFunction OBJECTIVE =
+		new LinearObjectiveFunction(new double[]{1, 1, 1, 1, 1, 1, 1, 1, 1}, 0);
+
 	/*-------------------------------------------------------------------------*/
 	public enum Constraint
 	{
@@ -88,6 +142,45 @@ public class WaterBuilder
 		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Solves for every one of the given targets at once, in parallel.
+	 *
+	 * @param startingWater    The water profile to start with. You do the
+	 *                         dilutions
+	 * @param targets          The desired ending water profiles
+	 * @param allowedAdditions Map of additions that can be used in the solutions
+	 * @return The targets that can be reached, with the additions needed to
+	 * reach them, ranked with the least total additions first. Targets that
+	 * can't be reached are left out.
+	 */
+	public List<Solution> calcAdditions(
+		Water startingWater,
+		Collection<WaterParameters> targets,
+		Map<Misc.WaterAdditionFormula, Boolean> allowedAdditions,
+		AdditionGoal additionGoal)
+	{
+		List<Solution> result = new ArrayList<>();
+		ParallelTasks.forEach("Brewday water builder", targets,
+			target ->
+			{
+				Map<Misc.WaterAdditionFormula, Double> additions =
+					calcAdditions(startingWater, target, allowedAdditions, additionGoal);
+				return additions == null ? null : new Solution(target, additions);
+			},
+			solution ->
+			{
+				if (solution != null)
+				{
+					result.add(solution);
+				}
+			});
+
+		result.sort(Comparator.comparingDouble(Solution::getTotalAdditions)
+			.thenComparing(solution -> solution.getTarget().getName()));
+		return result;
+	}
+
 	/*-------------------------------------------------------------------------*/
 	protected Map<Misc.WaterAdditionFormula, Double> calcAdditionsMinOrMaxIngredients(
 		Water startingWater,
@@ -104,37 +197,10 @@ public class WaterBuilder
 			double sourceMgPpm = startingWater.getMagnesium().get(PPM);
 			double sourceNaPpm = startingWater.getSodium().get(PPM);
 
-			// the vars are:
-			Misc.WaterAdditionFormula[] keys =
-				{
-					Misc.WaterAdditionFormula.CALCIUM_CARBONATE_UNDISSOLVED,
-					Misc.WaterAdditionFormula.CALCIUM_CARBONATE_DISSOLVED,
-					Misc.WaterAdditionFormula.CALCIUM_SULPHATE_DIHYDRATE,
-					Misc.WaterAdditionFormula.CALCIUM_CHLORIDE_DIHYDRATE,
-					Misc.WaterAdditionFormula.MAGNESIUM_SULFATE_HEPTAHYDRATE,
-					Misc.WaterAdditionFormula.SODIUM_BICARBONATE,
-					Misc.WaterAdditionFormula.SODIUM_CHLORIDE,
-					Misc.WaterAdditionFormula.CALCIUM_BICARBONATE,
-					Misc.WaterAdditionFormula.MAGNESIUM_CHLORIDE_HEXAHYDRATE,
-				};
-
-			boolean[] allowed =
-				{
-					allowedAdditions.get(Misc.WaterAdditionFormula.CALCIUM_CARBONATE_UNDISSOLVED),
-					allowedAdditions.get(Misc.WaterAdditionFormula.CALCIUM_CARBONATE_DISSOLVED),
-					allowedAdditions.get(Misc.WaterAdditionFormula.CALCIUM_SULPHATE_DIHYDRATE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.CALCIUM_CHLORIDE_DIHYDRATE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.MAGNESIUM_SULFATE_HEPTAHYDRATE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.SODIUM_BICARBONATE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.SODIUM_CHLORIDE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.CALCIUM_BICARBONATE),
-					allowedAdditions.get(Misc.WaterAdditionFormula.MAGNESIUM_CHLORIDE_HEXAHYDRATE),
-				};
+			boolean[] allowed = getAllowed(allowedAdditions);
 
 			LinearOptimizer lp = new SimplexSolver();
 
-			LinearObjectiveFunction obj;
-
 			//
 			// LP construction:
 			//
@@ -204,38 +270,23 @@ public class WaterBuilder
 			//
 
 
-			// we simply sum up the addition quantities
-			obj = new LinearObjectiveFunction(
-				new double[]{1, 1, 1, 1, 1, 1, 1, 1, 1}, 0);
-
 			Collection<LinearConstraint> constraints = getLinearConstraints(
 				sourceCaPpm, sourceHCO3Ppm, sourceSO4Ppm, sourceClPpm, sourceMgPpm, sourceNaPpm, targetWater, allowed);
 
 			// all vars >=0
 			NonNegativeConstraint nonNegativeConstraint = new NonNegativeConstraint(true);
 
-			GoalType goal;
-			switch (additionGoal)
-			{
-				case MINIMISE_ADDITIONS:
-					goal = GoalType.MINIMIZE;
-					break;
-				case MAXIMISE_ADDITIONS:
-					goal = GoalType.MAXIMIZE;
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + additionGoal);
-			}
+			GoalType goal = getGoalType(additionGoal);
 
 			PointValuePair solution;
 
 			solution = lp.optimize(
-				obj,
+				OBJECTIVE,
 				new LinearConstraintSet(constraints),
 				nonNegativeConstraint,
 				goal);
 
-			return getWaterAdditions(keys, solution);
+			return getWaterAdditions(KEYS, solution);
 		}
 		catch (Exception e)
 		{
@@ -245,6 +296,303 @@ public class WaterBuilder
 		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Like {@link #calcAdditions(Water, WaterParameters, Map, AdditionGoal)},
+	 * but each salt is only added in whole multiples of the given increment,
+	 * e.g. the resolution of the scales or the size of a packet. The integral
+	 * solution is found by branch and bound over the LP relaxation.
+	 *
+	 * @param volume     The volume of water being treated, to convert the
+	 *                   increments to mg/L
+	 * @param increments The increment of each salt. Salts without one can be
+	 *                   added in any amount
+	 * @param maxNodes   Stop searching after this many LP relaxations
+	 * @param maxMillis  Stop searching after this long
+	 * @return The best integral solution found. If none within the target
+	 * ranges was found the rounded LP solution is returned, with its ppm error.
+	 * Returns null if the target can't be reached at all.
+	 */
+	public DiscreteSolution calcDiscreteAdditions(
+		Water startingWater,
+		WaterParameters targetWater,
+		Map<Misc.WaterAdditionFormula, Boolean> allowedAdditions,
+		AdditionGoal additionGoal,
+		VolumeUnit volume,
+		Map<Misc.WaterAdditionFormula, WeightUnit> increments,
+		int maxNodes,
+		long maxMillis)
+	{
+		long deadline = System.nanoTime() + maxMillis * 1000000L;
+
+		double[] source =
+			{
+				startingWater.getCalcium().get(PPM),
+				startingWater.getBicarbonate().get(PPM),
+				startingWater.getSulfate().get(PPM),
+				startingWater.getChloride().get(PPM),
+				startingWater.getMagnesium().get(PPM),
+				startingWater.getSodium().get(PPM),
+			};
+
+		// the increments in mg/L, 0 if the salt is continuous
+		double[] step = new double[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			WeightUnit inc = increments.get(KEYS[i]);
+			if (inc != null && inc.get(Quantity.Unit.GRAMS) > 0)
+			{
+				step[i] = inc.get(Quantity.Unit.GRAMS) * 1000D / volume.get(Quantity.Unit.LITRES);
+			}
+		}
+
+		// the constraints common to every node
+		List<LinearConstraint> base = new ArrayList<>(getLinearConstraints(
+			source[0], source[1], source[2], source[3], source[4], source[5],
+			targetWater, getAllowed(allowedAdditions)));
+		GoalType goal = getGoalType(additionGoal);
+
+		double[] lower = new double[KEYS.length];
+		double[] upper = new double[KEYS.length];
+		Arrays.fill(upper, Double.POSITIVE_INFINITY);
+
+		double[] root = solveRelaxation(base, lower, upper, goal);
+		if (root == null)
+		{
+			return null;
+		}
+
+		double[] best = null;
+		double bestValue = Double.NaN;
+		int nodes = 1;
+		boolean complete = true;
+
+		// depth first, so that an integral solution turns up early to prune with
+		Deque<double[][]> open = new ArrayDeque<>();
+		open.push(new double[][]{lower, upper, root});
+
+		while (!open.isEmpty())
+		{
+			double[][] node = open.pop();
+			double[] x = node[2];
+
+			double value = sum(x);
+			if (best != null && !isBetter(value, bestValue, goal))
+			{
+				continue;
+			}
+
+			// branch on the salt furthest from a whole number of increments
+			int branch = -1;
+			double worst = INTEGRALITY_TOLERANCE;
+			for (int i = 0; i < KEYS.length; i++)
+			{
+				if (step[i] > 0)
+				{
+					double k = x[i] / step[i];
+					double fraction = Math.abs(k - Math.rint(k));
+					if (fraction > worst)
+					{
+						worst = fraction;
+						branch = i;
+					}
+				}
+			}
+
+			if (branch == -1)
+			{
+				best = snap(x, step);
+				bestValue = sum(best);
+				continue;
+			}
+
+			double k = x[branch] / step[branch];
+			double[][] down = branch(node, branch, node[0][branch], Math.floor(k) * step[branch]);
+			double[][] up = branch(node, branch, Math.ceil(k) * step[branch], node[1][branch]);
+
+			// explore the nearer side first
+			for (double[][] child : k - Math.floor(k) < 0.5 ? new double[][][]{up, down} : new double[][][]{down, up})
+			{
+				if (nodes >= maxNodes || System.nanoTime() > deadline)
+				{
+					complete = false;
+					break;
+				}
+
+				nodes++;
+				double[] relaxation = solveRelaxation(base, child[0], child[1], goal);
+				if (relaxation != null)
+				{
+					open.push(new double[][]{child[0], child[1], relaxation});
+				}
+			}
+
+			if (!complete)
+			{
+				break;
+			}
+		}
+
+		if (best == null)
+		{
+			best = snap(root, step);
+		}
+
+		Map<Misc.WaterAdditionFormula, Double> additions = new HashMap<>();
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			additions.put(KEYS[i], best[i]);
+		}
+
+		return new DiscreteSolution(
+			targetWater, additions, getPpmError(source, best, targetWater), nodes, complete);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the bounds of the given node, with those of var i replaced, as
+	 * 	{lower, upper}
+	 */
+	private static double[][] branch(double[][] node, int i, double lower, double upper)
+	{
+		double[][] result = {node[0].clone(), node[1].clone()};
+		result[0][i] = lower;
+		result[1][i] = upper;
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Solves the LP relaxation of a branch and bound node.
+	 *
+	 * @param lower lower bound of each var
+	 * @param upper upper bound of each var, may be infinite
+	 * @return the solution, or null if there isn't one
+	 */
+	private double[] solveRelaxation(
+		List<LinearConstraint> base,
+		double[] lower,
+		double[] upper,
+		GoalType goal)
+	{
+		List<LinearConstraint> constraints = new ArrayList<>(base);
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			if (lower[i] > 0)
+			{
+				constraints.add(new LinearConstraint(UNIT[i], Relationship.GEQ, lower[i]));
+			}
+			if (upper[i] < Double.POSITIVE_INFINITY)
+			{
+				constraints.add(new LinearConstraint(UNIT[i], Relationship.LEQ, upper[i]));
+			}
+		}
+
+		try
+		{
+			return new SimplexSolver().optimize(
+				OBJECTIVE,
+				new LinearConstraintSet(constraints),
+				new NonNegativeConstraint(true),
+				goal).getPoint();
+		}
+		catch (Exception e)
+		{
+			// infeasible or unbounded, either way there's nothing down here
+			return null;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static boolean isBetter(double value, double than, GoalType goal)
+	{
+		double tolerance = INTEGRALITY_TOLERANCE * Math.max(1, Math.abs(than));
+		return goal == GoalType.MINIMIZE ? value < than - tolerance : value > than + tolerance;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the given additions rounded to the nearest increments
+	 */
+	private static double[] snap(double[] x, double[] step)
+	{
+		double[] result = new double[x.length];
+		for (int i = 0; i < x.length; i++)
+		{
+			result[i] = step[i] > 0 ? Math.rint(x[i] / step[i]) * step[i] : x[i];
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double sum(double[] x)
+	{
+		double result = 0;
+		for (double d : x)
+		{
+			result += d;
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @param source Ca, HCO3, SO4, Cl, Mg and Na of the starting water, in ppm
+	 * @param x      the additions in mg/L
+	 * @return the total ppm by which the treated water falls outside the
+	 * 	target ranges, according to the same model as the LP
+	 */
+	private static double getPpmError(double[] source, double[] x, WaterParameters target)
+	{
+		RealVector additions = new ArrayRealVector(x, false);
+
+		double ca = source[0] + CALCIUM.dotProduct(additions);
+		double hco3 = source[1] + BICARBONATE.dotProduct(additions);
+		double so4 = source[2] + SULFATE.dotProduct(additions);
+		double cl = source[3] + CHLORIDE.dotProduct(additions);
+		double mg = source[4] + MAGNESIUM.dotProduct(additions);
+		double na = source[5] + SODIUM.dotProduct(additions);
+		double alk = A7 * hco3;
+		double ra = alk - ca / 1.4 - mg / 1.7;
+
+		return getPpmError(ca, target.getMinCalcium(), target.getMaxCalcium())
+			+ getPpmError(hco3, target.getMinBicarbonate(), target.getMaxBicarbonate())
+			+ getPpmError(so4, target.getMinSulfate(), target.getMaxSulfate())
+			+ getPpmError(cl, target.getMinChloride(), target.getMaxChloride())
+			+ getPpmError(mg, target.getMinMagnesium(), target.getMaxMagnesium())
+			+ getPpmError(na, target.getMinSodium(), target.getMaxSodium())
+			+ getPpmError(alk, target.getMinAlkalinity(), target.getMaxAlkalinity())
+			+ getPpmError(ra, target.getMinResidualAlkalinity(), target.getMaxResidualAlkalinity());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double getPpmError(double ppm, PpmUnit min, PpmUnit max)
+	{
+		if (min != null && ppm < min.get(PPM))
+		{
+			return min.get(PPM) - ppm;
+		}
+		if (max != null && ppm > max.get(PPM))
+		{
+			return ppm - max.get(PPM);
+		}
+		return 0;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static GoalType getGoalType(AdditionGoal additionGoal)
+	{
+		switch (additionGoal)
+		{
+			case MINIMISE_ADDITIONS:
+				return GoalType.MINIMIZE;
+			case MAXIMISE_ADDITIONS:
+				return GoalType.MAXIMIZE;
+			default:
+				throw new IllegalStateException("Unexpected value: " + additionGoal);
+		}
+	}
+
 	/*-------------------------------------------------------------------------*/
 	protected Map<Misc.WaterAdditionFormula, Double> getWaterAdditions(
 		Misc.WaterAdditionFormula[] keys, PointValuePair solution)
@@ -269,148 +617,103 @@ public class WaterBuilder
 	{
 		Collection<LinearConstraint> constraints = new ArrayList<>();
 
-		double[] calciumCoeff = {40.08 / 100.09, (40.08 / 100.09) / 2, 40.08 / 172.9, 40.08 / 147.02, 0, 0, 0, 40.08 / 162.11, 0};
-		double[] bicarbonateCoeff = {(61 / 100.09) * 2, (61 / 100.09), 0, 0, 0, 61D / 84D, 0, 61D / 162.11, 35.45 / 95.21};
-		double[] sulfateCoeff = {0, 0, (96.07 / 172.9), 0, (96.07 / 246.51), 0, 0, 0, 0};
-		double[] chlorideCoeff = {0, 0, 0, (70.9 / 147.02), 0, 0, (35.45 / 58.44), 0, (35.45 / 95.21)};
-		double[] magnesiumCoeff = {0, 0, 0, 0, (24.31 / 246.51), 0, 0, 0, (24.31 / 95.21)};
-		double[] sodiumCoeff = {0, 0, 0, 0, 0, (23D / 84D), (23D / 58.44), 0, 0};
-
-		// alkalinity constraint
-		// - - - - - - - - - - - - - - - - -
-		// We use the simple Alk formula: Alk = (sourceHCO3 + incHCO3) * 50/61.02
-		// Let 50/61.02 = a7. This gives us:
-		// a7.a21.x1 + ... + a7.a29.x9 <=> Alk - a7.s2
-
-		double a7 = 50D / 61.02D;
-		double[] alkCoeff =
-			{
-				a7 * bicarbonateCoeff[0],
-				a7 * bicarbonateCoeff[1],
-				a7 * bicarbonateCoeff[2],
-				a7 * bicarbonateCoeff[3],
-				a7 * bicarbonateCoeff[4],
-				a7 * bicarbonateCoeff[5],
-				a7 * bicarbonateCoeff[6],
-				a7 * bicarbonateCoeff[7],
-				a7 * bicarbonateCoeff[8],
-			};
-
+		// alkalinity
 		if (target.getMinAlkalinity() != null)
 		{
-			constraints.add(new LinearConstraint(alkCoeff, Relationship.GEQ,
-				target.getMinAlkalinity().get(PPM) - a7 * sourceBicarbonatePpm));
+			constraints.add(new LinearConstraint(ALKALINITY, Relationship.GEQ,
+				target.getMinAlkalinity().get(PPM) - A7 * sourceBicarbonatePpm));
 		}
 		if (target.getMaxAlkalinity() != null)
 		{
-			constraints.add(new LinearConstraint(alkCoeff, Relationship.LEQ,
-				target.getMaxAlkalinity().get(PPM) - a7 * sourceBicarbonatePpm));
+			constraints.add(new LinearConstraint(ALKALINITY, Relationship.LEQ,
+				target.getMaxAlkalinity().get(PPM) - A7 * sourceBicarbonatePpm));
 		}
 
-		// residual alkalinity constraint
-		// - - - - - - - - - - - - - - - - -
-		// RA = Alk - (ppm Ca)/1.4 - (ppm Mg)/1.7
-		// thus:
-		// (a7.a21 - a11/1.4 - a51/1.7)x1 + ... + (a7.a29 - a19/1.4 - a59/1.7)x9
-		//      <=> -(a7.s2 - s1/1.4 - s5/1.7)
-
-		double[] raCoeff =
-			{
-				a7 * bicarbonateCoeff[0] - calciumCoeff[0] / 1.4 - magnesiumCoeff[0] / 1.7,
-				a7 * bicarbonateCoeff[1] - calciumCoeff[1] / 1.4 - magnesiumCoeff[1] / 1.7,
-				a7 * bicarbonateCoeff[2] - calciumCoeff[2] / 1.4 - magnesiumCoeff[2] / 1.7,
-				a7 * bicarbonateCoeff[3] - calciumCoeff[3] / 1.4 - magnesiumCoeff[3] / 1.7,
-				a7 * bicarbonateCoeff[4] - calciumCoeff[4] / 1.4 - magnesiumCoeff[4] / 1.7,
-				a7 * bicarbonateCoeff[5] - calciumCoeff[5] / 1.4 - magnesiumCoeff[5] / 1.7,
-				a7 * bicarbonateCoeff[6] - calciumCoeff[6] / 1.4 - magnesiumCoeff[6] / 1.7,
-				a7 * bicarbonateCoeff[7] - calciumCoeff[7] / 1.4 - magnesiumCoeff[7] / 1.7,
-				a7 * bicarbonateCoeff[8] - calciumCoeff[8] / 1.4 - magnesiumCoeff[8] / 1.7,
-			};
-
+		// residual alkalinity
 		if (target.getMinResidualAlkalinity() != null)
 		{
 			double raValue = target.getMinResidualAlkalinity().get(PPM)
-				- (a7 * sourceBicarbonatePpm - sourceCalciumPpm / 1.4 - sourceMagnesiumPpm / 1.7);
+				- (A7 * sourceBicarbonatePpm - sourceCalciumPpm / 1.4 - sourceMagnesiumPpm / 1.7);
 
-			constraints.add(new LinearConstraint(raCoeff, Relationship.GEQ, raValue));
+			constraints.add(new LinearConstraint(RESIDUAL_ALKALINITY, Relationship.GEQ, raValue));
 		}
 		if (target.getMaxResidualAlkalinity() != null)
 		{
 			double raValue = target.getMaxResidualAlkalinity().get(PPM)
-				- (a7 * sourceBicarbonatePpm - sourceCalciumPpm / 1.4 - sourceMagnesiumPpm / 1.7);
+				- (A7 * sourceBicarbonatePpm - sourceCalciumPpm / 1.4 - sourceMagnesiumPpm / 1.7);
 
-			constraints.add(new LinearConstraint(raCoeff, Relationship.LEQ, raValue));
+			constraints.add(new LinearConstraint(RESIDUAL_ALKALINITY, Relationship.LEQ, raValue));
 		}
 
 		// Ca
 		if (target.getMinCalcium() != null)
 		{
-			constraints.add(new LinearConstraint(calciumCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(CALCIUM, Relationship.GEQ,
 				target.getMinCalcium().get(PPM) - sourceCalciumPpm));
 		}
 		if (target.getMaxCalcium() != null)
 		{
-			constraints.add(new LinearConstraint(calciumCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(CALCIUM, Relationship.LEQ,
 				target.getMaxCalcium().get(PPM) - sourceCalciumPpm));
 		}
 
 		// HCO3-
 		if (target.getMinBicarbonate() != null)
 		{
-			constraints.add(new LinearConstraint(bicarbonateCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(BICARBONATE, Relationship.GEQ,
 				target.getMinBicarbonate().get(PPM) - sourceBicarbonatePpm));
 		}
 		if (target.getMaxBicarbonate() != null)
 		{
-			constraints.add(new LinearConstraint(bicarbonateCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(BICARBONATE, Relationship.LEQ,
 				target.getMaxBicarbonate().get(PPM) - sourceBicarbonatePpm));
 		}
 
 		// SO4
 		if (target.getMinSulfate() != null)
 		{
-			constraints.add(new LinearConstraint(sulfateCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(SULFATE, Relationship.GEQ,
 				target.getMinSulfate().get(PPM) - sourceSulfatePpm));
 		}
 		if (target.getMaxSulfate() != null)
 		{
-			constraints.add(new LinearConstraint(sulfateCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(SULFATE, Relationship.LEQ,
 				target.getMaxSulfate().get(PPM) - sourceSulfatePpm));
 		}
 
 		// Cl-
 		if (target.getMinChloride() != null)
 		{
-			constraints.add(new LinearConstraint(chlorideCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(CHLORIDE, Relationship.GEQ,
 				target.getMinChloride().get(PPM) - sourceChloridePpm));
 		}
 		if (target.getMaxChloride() != null)
 		{
-			constraints.add(new LinearConstraint(chlorideCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(CHLORIDE, Relationship.LEQ,
 				target.getMaxChloride().get(PPM) - sourceChloridePpm));
 		}
 
 		// Mg
 		if (target.getMinMagnesium() != null)
 		{
-			constraints.add(new LinearConstraint(magnesiumCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(MAGNESIUM, Relationship.GEQ,
 				target.getMinMagnesium().get(PPM) - sourceMagnesiumPpm));
 		}
 		if (target.getMaxMagnesium() != null)
 		{
-			constraints.add(new LinearConstraint(magnesiumCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(MAGNESIUM, Relationship.LEQ,
 				target.getMaxMagnesium().get(PPM) - sourceMagnesiumPpm));
 		}
 
 		// Na
 		if (target.getMinSodium() != null)
 		{
-			constraints.add(new LinearConstraint(sodiumCoeff, Relationship.GEQ,
+			constraints.add(new LinearConstraint(SODIUM, Relationship.GEQ,
 				target.getMinSodium().get(PPM) - sourceSodiumPpm));
 		}
 		if (target.getMaxSodium() != null)
 		{
-			constraints.add(new LinearConstraint(sodiumCoeff, Relationship.LEQ,
+			constraints.add(new LinearConstraint(SODIUM, Relationship.LEQ,
 				target.getMaxSodium().get(PPM) - sourceSodiumPpm));
 		}
 
@@ -419,14 +722,74 @@ public class WaterBuilder
 		{
 			if (!allowed[i])
 			{
-				double[] coefficients = {0, 0, 0, 0, 0, 0, 0, 0, 0};
-				coefficients[i] = 1;
-				constraints.add(new LinearConstraint(coefficients, Relationship.EQ, 0));
+				constraints.add(NOT_ALLOWED[i]);
 			}
 		}
 		return constraints;
 	}
 
+	/*-------------------------------------------------------------------------*/
+	private static boolean[] getAllowed(
+		Map<Misc.WaterAdditionFormula, Boolean> allowedAdditions)
+	{
+		boolean[] result = new boolean[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			result[i] = allowedAdditions.get(KEYS[i]);
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double[] getAlkalinityCoeff()
+	{
+		// a7.a21.x1 + ... + a7.a29.x9 <=> Alk - a7.s2
+		double[] result = new double[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			result[i] = A7 * BICARBONATE_COEFF[i];
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double[] getResidualAlkalinityCoeff()
+	{
+		// RA = Alk - (ppm Ca)/1.4 - (ppm Mg)/1.7
+		// thus:
+		// (a7.a21 - a11/1.4 - a51/1.7)x1 + ... + (a7.a29 - a19/1.4 - a59/1.7)x9
+		//      <=> -(a7.s2 - s1/1.4 - s5/1.7)
+		double[] result = new double[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			result[i] = A7 * BICARBONATE_COEFF[i] - CALCIUM_COEFF[i] / 1.4 - MAGNESIUM_COEFF[i] / 1.7;
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static RealVector[] getUnitVectors()
+	{
+		RealVector[] result = new RealVector[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			result[i] = new ArrayRealVector(KEYS.length);
+			result[i].setEntry(i, 1);
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static LinearConstraint[] getNotAllowedConstraints()
+	{
+		LinearConstraint[] result = new LinearConstraint[KEYS.length];
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			result[i] = new LinearConstraint(UNIT[i], Relationship.EQ, 0);
+		}
+		return result;
+	}
+
 	/*-------------------------------------------------------------------------*/
 	public Water buildWaterFromResult(Water startingWater,
 		Map<Misc.WaterAdditionFormula, Double> result, VolumeUnit volume)
@@ -478,4 +841,101 @@ public class WaterBuilder
 			w, volume, Quantity.Unit.LITRES, new TemperatureUnit(0), new TimeUnit(0)), ma);
 		return w;
 	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * A target water profile that can be reached, and how.
+	 */
+	public static class Solution
+	{
+		private final WaterParameters target;
+		private final Map<Misc.WaterAdditionFormula, Double> additions;
+		private final double totalAdditions;
+
+		public Solution(
+			WaterParameters target,
+			Map<Misc.WaterAdditionFormula, Double> additions)
+		{
+			this.target = target;
+			this.additions = additions;
+
+			double total = 0;
+			for (Double d : additions.values())
+			{
+				total += d;
+			}
+			this.totalAdditions = total;
+		}
+
+		public WaterParameters getTarget()
+		{
+			return target;
+		}
+
+		/**
+		 * @return the water addition formulae and their needed mg/L quantities
+		 */
+		public Map<Misc.WaterAdditionFormula, Double> getAdditions()
+		{
+			return additions;
+		}
+
+		/**
+		 * @return the sum of all the additions, in mg/L
+		 */
+		public double getTotalAdditions()
+		{
+			return totalAdditions;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * A solution in whole increments of each salt.
+	 */
+	public static class DiscreteSolution extends Solution
+	{
+		private final double ppmError;
+		private final int nodes;
+		private final boolean complete;
+
+		public DiscreteSolution(
+			WaterParameters target,
+			Map<Misc.WaterAdditionFormula, Double> additions,
+			double ppmError,
+			int nodes,
+			boolean complete)
+		{
+			super(target, additions);
+			this.ppmError = ppmError;
+			this.nodes = nodes;
+			this.complete = complete;
+		}
+
+		/**
+		 * @return the total ppm by which the treated water misses the target
+		 * 	ranges, 0 if it is within them
+		 */
+		public double getPpmError()
+		{
+			return ppmError;
+		}
+
+		/**
+		 * @return the number of LP relaxations solved
+		 */
+		public int getNodes()
+		{
+			return nodes;
+		}
+
+		/**
+		 * @return true if the search finished, so that this is the best
+		 * 	solution, false if it was cut short by the node or time limit
+		 */
+		public boolean isComplete()
+		{
+			return complete;
+		}
+	}
 }
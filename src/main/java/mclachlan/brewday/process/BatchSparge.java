@@ -119,7 +119,7 @@ public class BatchSparge extends ProcessStep
 
 		if (spargeWater == null)
 		{
-			log.addError(StringUtils.getProcessString("batch.sparge.no.water.additions"));
+			log.error("batch.sparge.no.water.additions");
 			return;
 		}
 
@@ -175,7 +175,7 @@ public class BatchSparge extends ProcessStep
 				equipmentProfile.getConversionEfficiency().get(PERCENTAGE),
 				spargeWater);
 
-			log.addMessage(StringUtils.getProcessString("batch.sparge.top.up.grains.gravity", addedGravity.describe(SPECIFIC_GRAVITY)));
+			log.message("batch.sparge.top.up.grains.gravity", addedGravity.describe(SPECIFIC_GRAVITY));
 
 			spargeGravity = new DensityUnit(spargeGravity.get(PLATO) + addedGravity.get(PLATO), PLATO);
 		}
@@ -264,7 +264,7 @@ public class BatchSparge extends ProcessStep
 	{
 		if (wortVolume != null && !volumes.contains(wortVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", wortVolume));
+			log.error("volumes.does.not.exist", wortVolume);
 			return false;
 		}
 		return true;
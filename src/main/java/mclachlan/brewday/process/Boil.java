@@ -106,7 +106,7 @@ public class Boil extends ProcessStep
 
 		if (equipmentProfile == null)
 		{
-			log.addError(StringUtils.getProcessString("equipment.invalid.profile", equipmentProfile));
+			log.error("equipment.invalid.profile", equipmentProfile);
 			return;
 		}
 
@@ -143,7 +143,7 @@ public class Boil extends ProcessStep
 		// if this is the first step in the recipe then we must have a water addition
 		if (inputWortVolume==null && !foundWaterAddition)
 		{
-			log.addError(StringUtils.getProcessString("boil.no.water.additions"));
+			log.error("boil.no.water.additions");
 			return;
 		}
 
@@ -151,10 +151,10 @@ public class Boil extends ProcessStep
 		if (inputVolume.getVolume().get(Quantity.Unit.MILLILITRES) * 1.2D >=
 			equipmentProfile.getBoilKettleVolume().get(Quantity.Unit.MILLILITRES))
 		{
-			log.addWarning(
-				StringUtils.getProcessString("boil.kettle.too.small",
-					equipmentProfile.getBoilKettleVolume().get(Quantity.Unit.LITRES),
-					inputVolume.getVolume().get(Quantity.Unit.LITRES)));
+			log.warning(
+				"boil.kettle.too.small",
+				equipmentProfile.getBoilKettleVolume().get(Quantity.Unit.LITRES),
+				inputVolume.getVolume().get(Quantity.Unit.LITRES));
 		}
 
 		// gather up hop charges
@@ -209,11 +209,11 @@ public class Boil extends ProcessStep
 				BitternessUnit ibu = Equations.calcSolubleFermentableAdditionBitternessContribution(fa, inputVolume.getVolume());
 				bitternessIn = new BitternessUnit(bitternessIn.get() + ibu.get());
 
-				log.addMessage(StringUtils.getProcessString("boil.fermentable.gravity",
+				log.message("boil.fermentable.gravity",
 					fa.getFermentable().getName(),
 					gravity.get(Quantity.Unit.GU),
 					col.get(Quantity.Unit.SRM),
-					ibu.get(Quantity.Unit.IBU)));
+					ibu.get(Quantity.Unit.IBU));
 			}
 		}
 
@@ -228,16 +228,19 @@ public class Boil extends ProcessStep
 		// other calculations below)
 		double boilEvapourationRatePerHour = equipmentProfile.getBoilEvapourationRate().get();
 
-		double boiledOff = inputVolume.getVolume().get(Quantity.Unit.MILLILITRES) *
+		double volumeInMl = inputVolume.getVolume().get(Quantity.Unit.MILLILITRES);
+		double boiledOff = volumeInMl *
 			boilEvapourationRatePerHour * (duration.get(Quantity.Unit.MINUTES)/60D);
 
-		log.addMessage(StringUtils.getProcessString("boil.boil.off.vol", boiledOff/1000D));
+		log.message("boil.boil.off.vol", boiledOff/1000D);
 
-		VolumeUnit volumeOut = new VolumeUnit(inputVolume.getVolume().get(Quantity.Unit.MILLILITRES) - boiledOff);
+		double volumeOutMl = volumeInMl - boiledOff;
+		VolumeUnit volumeOut = new VolumeUnit(volumeOutMl);
 
 		// Gravity out
-		DensityUnit gravityOut = Equations.calcGravityWithVolumeChange(
-			inputVolume.getVolume(), gravityIn, volumeOut);
+		DensityUnit gravityOut = new DensityUnit(
+			EquationsKernel.calcGravityWithVolumeChange(
+				volumeInMl, gravityIn.get(), volumeOutMl));
 
 		// ABV out, if for some reason you are boiling beer.
 		// This isn't really correct but we are notrunning a distilling simulation
@@ -246,9 +249,11 @@ public class Boil extends ProcessStep
 			inputVolume.getVolume(), inputVolume.getAbv(), volumeOut);
 
 		// colour changes
-		ColourUnit colourOut = Equations.calcColourAfterBoil(colourIn);
-		colourOut = Equations.calcColourWithVolumeChange(
-			inputVolume.getVolume(), colourOut, volumeOut);
+		ColourUnit colourOut = new ColourUnit(
+			EquationsKernel.calcColourWithVolumeChange(
+				volumeInMl,
+				EquationsKernel.calcColourAfterBoil(colourIn.get()),
+				volumeOutMl));
 
 		// Bitterness out
 		BitternessUnit bitternessOut = new BitternessUnit(bitternessIn);
@@ -262,8 +267,8 @@ public class Boil extends ProcessStep
 				gravityOut,
 				hopCharge);
 
-			log.addMessage(StringUtils.getProcessString("boil.hop.charge.ibu",
-				hopCharge.getName(), hopAdditionIbu.get(Quantity.Unit.IBU)));
+			log.message("boil.hop.charge.ibu",
+				hopCharge.getName(), hopAdditionIbu.get(Quantity.Unit.IBU));
 
 			bitternessOut.add(hopAdditionIbu);
 		}
@@ -341,7 +346,7 @@ public class Boil extends ProcessStep
 	{
 		if (inputWortVolume!=null && !volumes.contains(inputWortVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputWortVolume));
+			log.error("volumes.does.not.exist", inputWortVolume);
 			return false;
 		}
 		return true;
@@ -82,7 +82,7 @@ public class Combine extends FluidVolumeProcessStep
 
 		if (input.getType() != input2.getType())
 		{
-			log.addError(StringUtils.getProcessString("combine.different.volume.types"));
+			log.error("combine.different.volume.types");
 			return;
 		}
 
@@ -118,7 +118,7 @@ public class Combine extends FluidVolumeProcessStep
 
 		VolumeUnit volOut = new VolumeUnit(input.getVolume().get() + input2.getVolume().get());
 
-		Set<IngredientAddition> additions = new HashSet<>();
+		Set<IngredientAddition> additions = new LinkedHashSet<>();
 		if (input.getIngredientAdditions() != null)
 		{
 			additions.addAll(input.getIngredientAdditions());
@@ -151,7 +151,7 @@ public class Combine extends FluidVolumeProcessStep
 	{
 		if (!super.validateInputVolumes(volumes, log) || !volumes.contains(inputVolume2))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputVolume2));
+			log.error("volumes.does.not.exist", inputVolume2);
 			return false;
 		}
 		return true;
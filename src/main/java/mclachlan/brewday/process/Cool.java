@@ -77,23 +77,33 @@ public class Cool extends FluidVolumeProcessStep
 
 		Volume input = getInputVolume(volumes);
 
-		TemperatureUnit tempDecrease = new TemperatureUnit(
+		double tempDecrease =
 			input.getTemperature().get(Quantity.Unit.CELSIUS)
-				- targetTemp.get(Quantity.Unit.CELSIUS),
-			Quantity.Unit.CELSIUS,
-			false);
+				- targetTemp.get(Quantity.Unit.CELSIUS);
 
-		VolumeUnit volumeOut = Equations.calcCoolingShrinkage(
-			input.getVolume(), tempDecrease);
+		VolumeUnit volumeIn = input.getVolume();
+		double volumeInMl = volumeIn.get();
+		double volumeOutMl = EquationsKernel.calcCoolingShrinkage(volumeInMl, tempDecrease);
 
-		DensityUnit gravityOut = Equations.calcGravityWithVolumeChange(
-			input.getVolume(), input.getGravity(), volumeOut);
+		VolumeUnit volumeOut = new VolumeUnit(
+			volumeOutMl, Quantity.Unit.MILLILITRES, volumeIn.isEstimated());
 
-		PercentageUnit abvOut = Equations.calcAbvWithVolumeChange(
-			input.getVolume(), input.getAbv(), volumeOut);
+		DensityUnit gravityIn = input.getGravity();
+		DensityUnit gravityOut = new DensityUnit(
+			EquationsKernel.calcGravityWithVolumeChange(
+				volumeInMl, gravityIn.get(), volumeOutMl),
+			Quantity.Unit.GU,
+			volumeIn.isEstimated() || gravityIn.isEstimated());
 
-		ColourUnit colourOut = Equations.calcColourWithVolumeChange(
-			input.getVolume(), input.getColour(), volumeOut);
+		PercentageUnit abvOut = Equations.calcAbvWithVolumeChange(
+			volumeIn, input.getAbv(), volumeOut);
+
+		ColourUnit colourIn = input.getColour();
+		ColourUnit colourOut = new ColourUnit(
+			EquationsKernel.calcColourWithVolumeChange(
+				volumeInMl, colourIn.get(), volumeOutMl),
+			Quantity.Unit.SRM,
+			volumeIn.isEstimated() || colourIn.isEstimated());
 
 		Volume volOut = input.clone();
 
@@ -87,7 +87,7 @@ public class Dilute extends FluidVolumeProcessStep
 
 		if (waterAddition == null)
 		{
-			log.addError(StringUtils.getProcessString("dilute.no.water.addition", getName()));
+			log.error("dilute.no.water.addition", getName());
 			return;
 		}
 
@@ -113,7 +113,7 @@ public class Ferment extends FluidVolumeProcessStep
 
 		if (equipmentProfile == null)
 		{
-			log.addError(StringUtils.getProcessString("equipment.invalid.profile", equipmentProfile));
+			log.error("equipment.invalid.profile", equipmentProfile);
 			return;
 		}
 
@@ -140,10 +140,10 @@ public class Ferment extends FluidVolumeProcessStep
 		if (inputVolume.getVolume().get(Quantity.Unit.MILLILITRES)*1.2 >
 			equipmentProfile.getFermenterVolume().get(MILLILITRES))
 		{
-			log.addWarning(
-				StringUtils.getProcessString("ferment.fermenter.not.large.enough",
-					equipmentProfile.getFermenterVolume().get(LITRES),
-					inputVolume.getVolume().get(Quantity.Unit.LITRES)));
+			log.warning(
+				"ferment.fermenter.not.large.enough",
+				equipmentProfile.getFermenterVolume().get(LITRES),
+				inputVolume.getVolume().get(Quantity.Unit.LITRES));
 		}
 
 		// todo: support for multiple yeast additions
@@ -161,7 +161,7 @@ public class Ferment extends FluidVolumeProcessStep
 		// if we are starting with wort then this step needs to have a yeast addition
 		if (yeastAddition == null && inputVolume.getType() == Volume.Type.WORT)
 		{
-			log.addError(StringUtils.getProcessString("ferment.no.yeast.addition"));
+			log.error("ferment.no.yeast.addition");
 			estimatedFinalGravity = inputVolume.getGravity();
 			return;
 		}
@@ -18,7 +18,6 @@
 package mclachlan.brewday.process;
 
 import java.util.*;
-import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.recipe.Recipe;
 
 /**
@@ -65,7 +64,7 @@ public abstract class FluidVolumeProcessStep extends ProcessStep
 	{
 		if (!volumes.contains(inputVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputVolume));
+			log.error("volumes.does.not.exist", inputVolume);
 			return false;
 		}
 		return true;
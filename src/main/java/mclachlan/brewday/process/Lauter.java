@@ -19,7 +19,6 @@ package mclachlan.brewday.process;
 
 import java.util.*;
 import mclachlan.brewday.Brewday;
-import mclachlan.brewday.Settings;
 import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.equipment.EquipmentProfile;
@@ -115,7 +114,7 @@ public class Lauter extends ProcessStep
 			EquipmentProfile tempEp = new EquipmentProfile(equipmentProfile);
 			tempEp.setHopUtilisation(
 				new PercentageUnit(
-					Double.valueOf(Database.getInstance().getSettings().get(Settings.FIRST_WORT_HOP_UTILISATION))));
+					Database.getInstance().getSettings().getSnapshot().getFirstWortHopUtilisation()));
 
 			// mash hops
 			BitternessUnit fwhIbu = Brewday.getInstance().calcTotalIbu(
@@ -151,7 +150,7 @@ public class Lauter extends ProcessStep
 	{
 		if (!volumes.contains(inputMashVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputMashVolume));
+			log.error("volumes.does.not.exist", inputMashVolume);
 			return false;
 		}
 		return true;
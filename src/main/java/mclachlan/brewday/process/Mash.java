@@ -101,7 +101,7 @@ public class Mash extends ProcessStep
 	{
 		if (validateEquipmentProfile(equipmentProfile, log))
 		{
-			log.addError(StringUtils.getProcessString("equipment.invalid.profile", equipmentProfile));
+			log.error("equipment.invalid.profile", equipmentProfile);
 			return;
 		}
 
@@ -112,14 +112,14 @@ public class Mash extends ProcessStep
 
 		if (strikeWater != null)
 		{
-			log.addMessage(StringUtils.getProcessString("mash.strike.water.profile",
+			log.message("mash.strike.water.profile",
 				strikeWater.getVolume().get(LITRES),
 				strikeWater.getWater().getCalcium().get(PPM),
 				strikeWater.getWater().getMagnesium().get(PPM),
 				strikeWater.getWater().getSodium().get(PPM),
 				strikeWater.getWater().getSulfate().get(PPM),
 				strikeWater.getWater().getChloride().get(PPM),
-				strikeWater.getWater().getBicarbonate().get(PPM)));
+				strikeWater.getWater().getBicarbonate().get(PPM));
 		}
 
 		for (IngredientAddition item : getIngredientAdditions())
@@ -147,12 +147,12 @@ public class Mash extends ProcessStep
 
 		if (grainBill == null || grainBill.isEmpty())
 		{
-			log.addError(StringUtils.getProcessString("mash.no.fermentable.addition"));
+			log.error("mash.no.fermentable.addition");
 			return;
 		}
 		if (strikeWater == null)
 		{
-			log.addError(StringUtils.getProcessString("mash.no.strike.water"));
+			log.error("mash.no.strike.water");
 			return;
 		}
 
@@ -161,10 +161,10 @@ public class Mash extends ProcessStep
 
 		if (mashVolumeOut.getVolume().get() *1.1 > equipmentProfile.getMashTunVolume().get())
 		{
-			log.addWarning(
-					StringUtils.getProcessString("mash.mash.tun.not.large.enough",
+			log.warning(
+					"mash.mash.tun.not.large.enough",
 					equipmentProfile.getMashTunVolume().get(LITRES),
-					mashVolumeOut.getVolume().get(LITRES)));
+					mashVolumeOut.getVolume().get(LITRES));
 		}
 
 		if (hopCharges != null && !hopCharges.isEmpty())
@@ -173,7 +173,7 @@ public class Mash extends ProcessStep
 			EquipmentProfile tempEp = new EquipmentProfile(equipmentProfile);
 			tempEp.setHopUtilisation(
 				new PercentageUnit(
-					Double.valueOf(Database.getInstance().getSettings().get(Settings.MASH_HOP_UTILISATION))));
+					Database.getInstance().getSettings().getSnapshot().getMashHopUtilisation()));
 
 			// mash hops
 			BitternessUnit bitterness = Brewday.getInstance().calcTotalIbu(
@@ -213,8 +213,8 @@ public class Mash extends ProcessStep
 
 		if (validateEquipmentProfile(equipmentProfile, log))
 		{
-			log.addError(StringUtils.getProcessString("equipment.invalid.profile",
-				recipe.getEquipmentProfile()));
+			log.error("equipment.invalid.profile",
+				recipe.getEquipmentProfile());
 			return;
 		}
 
@@ -244,8 +244,8 @@ public class Mash extends ProcessStep
 
 		ColourUnit colourOut = Equations.calcColourSrmMoreyFormula(grainBill, volumeOut);
 
-		Settings.MashPhModel phModel = Settings.MashPhModel.valueOf(
-			Database.getInstance().getSettings().get(Settings.MASH_PH_MODEL));
+		Settings.MashPhModel phModel =
+			Database.getInstance().getSettings().getSnapshot().getMashPhModel();
 
 		switch (phModel)
 		{
@@ -99,7 +99,7 @@ public class MashInfusion extends ProcessStep
 
 		if (rli == null)
 		{
-			log.addError(StringUtils.getProcessString("mash.infusion.no.water.addition"));
+			log.error("mash.infusion.no.water.addition");
 			return;
 		}
 		else
@@ -153,7 +153,7 @@ public class MashInfusion extends ProcessStep
 	{
 		if (!volumes.contains(inputMashVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputMashVolume));
+			log.error("volumes.does.not.exist", inputMashVolume);
 			return false;
 		}
 		return true;
@@ -171,7 +171,7 @@ public class PackageStep extends FluidVolumeProcessStep
 			}
 			else if (this.styleId != null)
 			{
-				log.addError(StringUtils.getProcessString("style.unknown", this.styleId));
+				log.error("style.unknown", this.styleId);
 			}
 		}
 
@@ -190,69 +190,69 @@ public class PackageStep extends FluidVolumeProcessStep
 
 		if (og.get() > style.getOgMax().get())
 		{
-			log.addWarning(StringUtils.getProcessString("style.og.too.high",
+			log.warning("style.og.too.high",
 				og.get(DensityUnit.Unit.SPECIFIC_GRAVITY),
-				style.getOgMax().get(DensityUnit.Unit.SPECIFIC_GRAVITY)));
+				style.getOgMax().get(DensityUnit.Unit.SPECIFIC_GRAVITY));
 		}
 		if (og.get() < style.getOgMin().get())
 		{
-			log.addWarning(StringUtils.getProcessString("style.og.too.low",
+			log.warning("style.og.too.low",
 				og.get(DensityUnit.Unit.SPECIFIC_GRAVITY),
-				style.getOgMin().get(DensityUnit.Unit.SPECIFIC_GRAVITY)));
+				style.getOgMin().get(DensityUnit.Unit.SPECIFIC_GRAVITY));
 		}
 
 		if (fg.get() > style.getFgMax().get())
 		{
-			log.addWarning(StringUtils.getProcessString("style.fg.too.high",
+			log.warning("style.fg.too.high",
 				fg.get(DensityUnit.Unit.SPECIFIC_GRAVITY),
-				style.getFgMax().get(DensityUnit.Unit.SPECIFIC_GRAVITY)));
+				style.getFgMax().get(DensityUnit.Unit.SPECIFIC_GRAVITY));
 
 		}
 		if (fg.get() < style.getFgMin().get())
 		{
-			log.addWarning(StringUtils.getProcessString("style.fg.too.low",
+			log.warning("style.fg.too.low",
 				fg.get(DensityUnit.Unit.SPECIFIC_GRAVITY),
-				style.getFgMin().get(DensityUnit.Unit.SPECIFIC_GRAVITY)));
+				style.getFgMin().get(DensityUnit.Unit.SPECIFIC_GRAVITY));
 		}
 		
 		if (ibu > style.getIbuMax().get(Quantity.Unit.IBU))
 		{
-			log.addWarning(StringUtils.getProcessString("style.ibu.too.high", ibu, style.getIbuMax().get()));
+			log.warning("style.ibu.too.high", ibu, style.getIbuMax().get());
 		}
 		if (ibu < style.getIbuMin().get(Quantity.Unit.IBU))
 		{
-			log.addWarning(StringUtils.getProcessString("style.ibu.too.low", ibu, style.getIbuMin().get()));
+			log.warning("style.ibu.too.low", ibu, style.getIbuMin().get());
 		}
 		
 		if (srm > style.getColourMax().get(Quantity.Unit.SRM))
 		{
-			log.addWarning(StringUtils.getProcessString("style.srm.too.high", srm, style.getColourMax().get()));
+			log.warning("style.srm.too.high", srm, style.getColourMax().get());
 		}
 		if (srm < style.getColourMin().get(Quantity.Unit.SRM))
 		{
-			log.addWarning(StringUtils.getProcessString("style.srm.too.low", srm, style.getColourMin().get()));
+			log.warning("style.srm.too.low", srm, style.getColourMin().get());
 		}
 
 		if (abv.get(Quantity.Unit.PERCENTAGE) > style.getAbvMax().get(Quantity.Unit.PERCENTAGE))
 		{
-			log.addWarning(StringUtils.getProcessString("style.abv.too.high",
-				abv.get(Quantity.Unit.PERCENTAGE_DISPLAY), style.getAbvMax().get(Quantity.Unit.PERCENTAGE_DISPLAY)));
+			log.warning("style.abv.too.high",
+				abv.get(Quantity.Unit.PERCENTAGE_DISPLAY), style.getAbvMax().get(Quantity.Unit.PERCENTAGE_DISPLAY));
 		}
 		if (abv.get(Quantity.Unit.PERCENTAGE) < style.getAbvMin().get(Quantity.Unit.PERCENTAGE))
 		{
-			log.addWarning(StringUtils.getProcessString("style.abv.too.low",
-				abv.get(Quantity.Unit.PERCENTAGE_DISPLAY), style.getAbvMin().get(Quantity.Unit.PERCENTAGE_DISPLAY)));
+			log.warning("style.abv.too.low",
+				abv.get(Quantity.Unit.PERCENTAGE_DISPLAY), style.getAbvMin().get(Quantity.Unit.PERCENTAGE_DISPLAY));
 		}
 
 		if (carb.get(Quantity.Unit.VOLUMES) < style.getCarbMin().get(Quantity.Unit.VOLUMES))
 		{
-			log.addWarning(StringUtils.getProcessString("style.carb.too.low",
-				carb.get(Quantity.Unit.VOLUMES), style.getCarbMin().get(Quantity.Unit.VOLUMES)));
+			log.warning("style.carb.too.low",
+				carb.get(Quantity.Unit.VOLUMES), style.getCarbMin().get(Quantity.Unit.VOLUMES));
 		}
 		if (carb.get(Quantity.Unit.VOLUMES) > style.getCarbMax().get(Quantity.Unit.VOLUMES))
 		{
-			log.addWarning(StringUtils.getProcessString("style.carb.too.high",
-				carb.get(Quantity.Unit.VOLUMES), style.getCarbMax().get(Quantity.Unit.VOLUMES)));
+			log.warning("style.carb.too.high",
+				carb.get(Quantity.Unit.VOLUMES), style.getCarbMax().get(Quantity.Unit.VOLUMES));
 		}
 	}
 
@@ -21,52 +21,239 @@ import java.util.*;
 import mclachlan.brewday.StringUtils;
 
 /**
- *
+ * Log of the messages, warnings and errors from processing a recipe or batch.
+ * Entries are kept as a process string key plus arguments and only formatted
+ * when read. A log can be created at a reduced level, in which case entries
+ * below that level are dropped as they are added.
  */
 public class ProcessLog
 {
-	private List<String> msgs, errors, warnings;
+	public enum Level
+	{
+		/** record nothing */
+		NONE,
+		ERROR,
+		WARNING,
+		MESSAGE
+	}
 
+	private final Level level;
+	private final List<Entry> entries = new ArrayList<>();
+	private int errorCount;
+
+	/*-------------------------------------------------------------------------*/
 	public ProcessLog()
 	{
-		msgs = new ArrayList<>();
-		errors = new ArrayList<>();
-		warnings = new ArrayList<>();
+		this(Level.MESSAGE);
+	}
+
+	/**
+	 * @param level
+	 * 	The most detailed level of entry to record.
+	 */
+	public ProcessLog(Level level)
+	{
+		this.level = level;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public Level getLevel()
+	{
+		return level;
 	}
 
-	public void addMessage(String s) {msgs.add(s); }
+	/**
+	 * @return true if entries of the given level are being recorded
+	 */
+	public boolean isEnabled(Level level)
+	{
+		return level != Level.NONE && level.compareTo(this.level) <= 0;
+	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Adds a message that has already been formatted.
+	 */
+	public void addMessage(String s)
+	{
+		add(Level.MESSAGE, null, s);
+	}
+
+	/**
+	 * Adds an error that has already been formatted.
+	 */
 	public void addError(String s)
 	{
-		msgs.add(StringUtils.getProcessString("log.error", s));
-		errors.add(s);
+		add(Level.ERROR, null, s);
 	}
 
+	/**
+	 * Adds a warning that has already been formatted.
+	 */
 	public void addWarning(String s)
 	{
-		msgs.add(StringUtils.getProcessString("log.warning", s));
-		warnings.add(s);
+		add(Level.WARNING, null, s);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Adds a message from the given process string and arguments. The
+	 * arguments are formatted later, so must not be changed afterwards.
+	 */
+	public void message(String key, Object... args)
+	{
+		add(Level.MESSAGE, key, args);
+	}
+
+	/**
+	 * Adds an error from the given process string and arguments.
+	 */
+	public void error(String key, Object... args)
+	{
+		add(Level.ERROR, key, args);
+	}
+
+	/**
+	 * Adds a warning from the given process string and arguments.
+	 */
+	public void warning(String key, Object... args)
+	{
+		add(Level.WARNING, key, args);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void add(Level level, String key, Object... args)
+	{
+		if (level == Level.ERROR)
+		{
+			errorCount++;
+		}
+
+		if (isEnabled(level))
+		{
+			entries.add(new Entry(level, key, args));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Appends all entries of the other log to this one.
+	 */
+	public void addAll(ProcessLog other)
+	{
+		for (Entry e : other.entries)
+		{
+			if (isEnabled(e.level))
+			{
+				entries.add(e);
+			}
+		}
+		errorCount += other.errorCount;
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return all recorded entries, with errors and warnings marked as such
+	 */
 	public List<String> getMsgs()
 	{
-		return msgs;
+		List<String> result = new ArrayList<>();
+
+		for (Entry e : entries)
+		{
+			switch (e.level)
+			{
+				case ERROR:
+					result.add(StringUtils.getProcessString("log.error", e.getText()));
+					break;
+				case WARNING:
+					result.add(StringUtils.getProcessString("log.warning", e.getText()));
+					break;
+				default:
+					result.add(e.getText());
+			}
+		}
+
+		return result;
 	}
 
 	public List<String> getErrors()
 	{
-		return errors;
+		return getEntries(Level.ERROR);
 	}
 
 	public List<String> getWarnings()
 	{
-		return warnings;
+		return getEntries(Level.WARNING);
 	}
 
+	/**
+	 * @return true if any errors were added, even if they were not recorded
+	 */
+	public boolean hasErrors()
+	{
+		return errorCount > 0;
+	}
+
+	private List<String> getEntries(Level level)
+	{
+		List<String> result = new ArrayList<>();
+
+		for (Entry e : entries)
+		{
+			if (e.level == level)
+			{
+				result.add(e.getText());
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
 	public void clear()
 	{
-		this.msgs.clear();
-		this.errors.clear();
-		this.warnings.clear();
+		this.entries.clear();
+		this.errorCount = 0;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Entry
+	{
+		private final Level level;
+		private final String key;
+		private final Object[] args;
+		private String text;
+
+		/**
+		 * @param key
+		 * 	The process string key, or null if the single argument is the text
+		 */
+		Entry(Level level, String key, Object[] args)
+		{
+			this.level = level;
+			this.key = key;
+			this.args = args;
+		}
+
+		String getText()
+		{
+			if (text == null)
+			{
+				if (key == null)
+				{
+					text = (String)args[0];
+				}
+				else if (args.length == 0)
+				{
+					text = StringUtils.getProcessString(key);
+				}
+				else
+				{
+					text = StringUtils.getProcessString(key, args);
+				}
+			}
+			return text;
+		}
 	}
 }
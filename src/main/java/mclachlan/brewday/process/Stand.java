@@ -110,7 +110,7 @@ public class Stand extends FluidVolumeProcessStep
 		// if this is the first step in the recipe then we must have a water addition
 		if (getInputVolume()== null && !foundWaterAddition)
 		{
-			log.addError(StringUtils.getProcessString("stand.no.water.additions"));
+			log.error("stand.no.water.additions");
 			return;
 		}
 
@@ -197,7 +197,7 @@ public class Stand extends FluidVolumeProcessStep
 		String inputVolume = getInputVolume();
 		if (inputVolume != null && !volumes.contains(inputVolume))
 		{
-			log.addError(StringUtils.getProcessString("volumes.does.not.exist", inputVolume));
+			log.error("volumes.does.not.exist", inputVolume);
 			return false;
 		}
 		return true;
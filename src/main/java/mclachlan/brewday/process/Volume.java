@@ -41,9 +41,13 @@ public class Volume
 	private Type type;
 
 	/**
-	 * A bag of metrics, not all apply to every volume type
+	 * A bag of metrics, not all apply to every volume type. Values are held in
+	 * the canonical unit of each metric, indexed by {@link Metric#ordinal()};
+	 * the bit masks record which metrics are present and which are estimated.
 	 */
-	private Map<Metric, Quantity> metrics = new HashMap<>();
+	private final double[] values = new double[METRICS.length];
+	private long present;
+	private long estimated;
 
 	/**
 	 * Ingredient additions carried along in this volume as needed
@@ -55,6 +59,8 @@ public class Volume
 	 */
 	private Style style;
 
+	private static final Metric[] METRICS = Metric.values();
+
 	/*-------------------------------------------------------------------------*/
 	protected Volume()
 	{
@@ -73,7 +79,7 @@ public class Volume
 	{
 		this.name = name;
 		this.type = type;
-		this.metrics = new HashMap<>(metrics);
+		setMetrics(metrics);
 		this.ingredientAdditions = new ArrayList<>(ingredientAdditions);
 	}
 
@@ -156,12 +162,10 @@ public class Volume
 
 	public Volume(String name, Volume inputVolume)
 	{
-		this(
-			name,
-			inputVolume.getType(),
-			new HashMap<>(inputVolume.getMetrics()),
-			new ArrayList<>(inputVolume.getIngredientAdditions()));
-
+		setName(name);
+		this.type = inputVolume.getType();
+		copyMetrics(inputVolume);
+		this.ingredientAdditions = new ArrayList<>(inputVolume.getIngredientAdditions());
 		this.setStyle(inputVolume.style);
 	}
 
@@ -188,20 +192,44 @@ public class Volume
 		this.name = name;
 	}
 
+	/**
+	 * @return a new quantity holding the given metric, or null if this volume
+	 * 	does not have it. Changes to the returned quantity are not written back.
+	 */
 	public Quantity getMetric(Metric metric)
 	{
-		return this.metrics.get(metric);
+		if (!hasMetric(metric))
+		{
+			return null;
+		}
+
+		int i = metric.ordinal();
+		Quantity result = newQuantity(metric, values[i]);
+		result.setEstimated((estimated & (1L << i)) != 0);
+		return result;
 	}
 
 	private void setMetric(Metric metric, Quantity quantity)
 	{
+		long bit = 1L << metric.ordinal();
+
 		if (quantity == null)
 		{
-			this.metrics.remove(metric);
+			present &= ~bit;
+			estimated &= ~bit;
 		}
 		else
 		{
-			this.metrics.put(metric, quantity);
+			values[metric.ordinal()] = quantity.get();
+			present |= bit;
+			if (quantity.isEstimated())
+			{
+				estimated |= bit;
+			}
+			else
+			{
+				estimated &= ~bit;
+			}
 		}
 	}
 
@@ -213,17 +241,72 @@ public class Volume
 
 	public boolean hasMetric(Metric metric)
 	{
-		return this.metrics.containsKey(metric);
+		return (present & (1L << metric.ordinal())) != 0;
 	}
 
+	/**
+	 * @return a snapshot of the metrics of this volume
+	 */
 	public Map<Metric, Quantity> getMetrics()
 	{
-		return metrics;
+		Map<Metric, Quantity> result = new EnumMap<>(Metric.class);
+		for (Metric m : METRICS)
+		{
+			if (hasMetric(m))
+			{
+				result.put(m, getMetric(m));
+			}
+		}
+		return result;
 	}
 
 	public void setMetrics(Map<Metric, Quantity> metrics)
 	{
-		this.metrics = metrics;
+		present = 0;
+		estimated = 0;
+		for (Map.Entry<Metric, Quantity> e : metrics.entrySet())
+		{
+			setMetric(e.getKey(), e.getValue());
+		}
+	}
+
+	private void copyMetrics(Volume other)
+	{
+		System.arraycopy(other.values, 0, this.values, 0, values.length);
+		this.present = other.present;
+		this.estimated = other.estimated;
+	}
+
+	/**
+	 * @return a new quantity of the type used for the given metric
+	 */
+	private static Quantity newQuantity(Metric metric, double value)
+	{
+		switch (metric)
+		{
+			case VOLUME:
+				return new VolumeUnit(value);
+			case TEMPERATURE:
+				return new TemperatureUnit(value);
+			case GRAVITY:
+			case ORIGINAL_GRAVITY:
+				return new DensityUnit(value);
+			case COLOUR:
+				return new ColourUnit(value);
+			case BITTERNESS:
+				return new BitternessUnit(value);
+			case ABV:
+			case FERMENTABILITY:
+				return new PercentageUnit(value);
+			case CARBONATION:
+				return new CarbonationUnit(value);
+			case EXTRACT:
+				return new WeightUnit(value);
+			case PH:
+				return new PhUnit(value);
+			default:
+				throw new BrewdayException("invalid " + metric);
+		}
 	}
 
 	public List<IngredientAddition> getIngredientAdditions()
@@ -411,11 +494,22 @@ public class Volume
 	 */
 	public Volume clone()
 	{
-		return new Volume(
-			name,
-			type,
-			new HashMap<>(metrics),
-			new ArrayList<>(ingredientAdditions));
+		Volume result = new Volume(name, type);
+		result.copyMetrics(this);
+		result.ingredientAdditions = new ArrayList<>(ingredientAdditions);
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Sets the metrics, ingredient additions and style of this volume to
+	 * those of the other, keeping this volume's name and type.
+	 */
+	public void copy(Volume other)
+	{
+		copyMetrics(other);
+		this.ingredientAdditions = new ArrayList<>(other.ingredientAdditions);
+		this.style = other.style;
 	}
 
 	/*-------------------------------------------------------------------------*/
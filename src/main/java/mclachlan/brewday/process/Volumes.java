@@ -22,7 +22,9 @@ import mclachlan.brewday.BrewdayException;
 import mclachlan.brewday.math.Quantity;
 
 /**
- *
+ * The volumes of a recipe or batch. Adding, updating and looking up single
+ * volumes is thread safe, so that steps on independent branches of a recipe
+ * can be applied concurrently. The maps returned by the getters are not.
  */
 public class Volumes
 {
@@ -44,9 +46,12 @@ public class Volumes
 	 */
 	public Volumes(Volumes other)
 	{
-		for (Map.Entry<String, Volume> e : other.volumes.entrySet())
+		synchronized (other)
 		{
-			this.volumes.put(e.getKey(), e.getValue().clone());
+			for (Map.Entry<String, Volume> e : other.volumes.entrySet())
+			{
+				this.volumes.put(e.getKey(), e.getValue().clone());
+			}
 		}
 	}
 
@@ -54,7 +59,7 @@ public class Volumes
 	/**
 	 * Adds an output volume.
 	 */
-	public void addOutputVolume(String key, Volume v)
+	public synchronized void addOutputVolume(String key, Volume v)
 	{
 		if (volumes.containsKey(key))
 		{
@@ -72,7 +77,7 @@ public class Volumes
 	 * update all of it's estimate metrics. Measured metrics from a volume already
 	 * present are not updated.
 	 */
-	public void addOrUpdateOutputVolume(String key, Volume v)
+	public synchronized void addOrUpdateOutputVolume(String key, Volume v)
 	{
 		addOrUpdateVolume(key, v);
 		v.setName(key);
@@ -83,7 +88,7 @@ public class Volumes
 	/**
 	 * Adds a computed volume.
 	 */
-	public void addVolume(String key, Volume v)
+	public synchronized void addVolume(String key, Volume v)
 	{
 		if (v == null)
 		{
@@ -108,7 +113,7 @@ public class Volumes
 	 * update all of it's estimate metrics. Measured metrics from a volume already
 	 * present are not updated.
 	 */
-	public void addOrUpdateVolume(String key, Volume v)
+	public synchronized void addOrUpdateVolume(String key, Volume v)
 	{
 		if (v == null)
 		{
@@ -144,7 +149,7 @@ public class Volumes
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public Volume getVolume(String key)
+	public synchronized Volume getVolume(String key)
 	{
 		if (!volumes.containsKey(key))
 		{
@@ -156,7 +161,7 @@ public class Volumes
 
 	/*-------------------------------------------------------------------------*/
 	@Override
-	public String toString()
+	public synchronized String toString()
 	{
 		final StringBuilder sb = new StringBuilder("{");
 
@@ -175,6 +180,12 @@ public class Volumes
 		return volumes;
 	}
 
+	/*-------------------------------------------------------------------------*/
+	public synchronized boolean isOutputVolume(String volName)
+	{
+		return outputVolumes.contains(volName);
+	}
+
 	/*-------------------------------------------------------------------------*/
 	public Set<String> getOutputVolumes()
 	{
@@ -194,13 +205,13 @@ public class Volumes
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public boolean contains(String volName)
+	public synchronized boolean contains(String volName)
 	{
 		return volumes.containsKey(volName);
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public String getVolumeByType(Volume.Type type)
+	public synchronized String getVolumeByType(Volume.Type type)
 	{
 		for (Map.Entry<String, Volume> v : volumes.entrySet())
 		{
@@ -214,7 +225,7 @@ public class Volumes
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public Collection<String> getVolumes(Volume.Type... t)
+	public synchronized Collection<String> getVolumes(Volume.Type... t)
 	{
 		List<Volume.Type> types = Arrays.asList(t);
 		Collection<String> result = new HashSet<>();
@@ -231,7 +242,7 @@ public class Volumes
 	}
 
 	/*-------------------------------------------------------------------------*/
-	public void clear()
+	public synchronized void clear()
 	{
 		this.volumes.clear();
 		this.outputVolumes.clear();
@@ -18,8 +18,11 @@
 package mclachlan.brewday.recipe;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import mclachlan.brewday.BrewdayException;
-import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.db.v2.V2DataObject;
 import mclachlan.brewday.equipment.EquipmentProfile;
@@ -35,6 +38,17 @@ import org.jgrapht.traverse.TopologicalOrderIterator;
  */
 public class Recipe implements V2DataObject
 {
+	/**
+	 * Executor for applying the steps of independent branches in parallel.
+	 * Not the common pool: CompletableFuture swaps that for a new thread per
+	 * task when it has a parallelism of one. On a single processor the steps
+	 * are simply applied in turn on the calling thread.
+	 */
+	private static final Executor STEP_EXECUTOR =
+		Runtime.getRuntime().availableProcessors() > 1 ?
+			new ForkJoinPool(Runtime.getRuntime().availableProcessors()) :
+			Runnable::run;
+
 	/**
 	 * Name of this recipe, is unique
 	 */
@@ -72,6 +86,22 @@ public class Recipe implements V2DataObject
 	 */
 	private ProcessLog log;
 
+	/**
+	 * Per-step results of the last run, used by {@link #run(ProcessStep)} to
+	 * avoid re-applying steps that a change cannot affect.
+	 */
+	private Map<ProcessStep, StepResult> stepResults;
+
+	/**
+	 * The step graph and equipment profile that the step results are valid for.
+	 */
+	private List<Object> stepResultsKey;
+
+	/**
+	 * The step graph that the steps were last sorted for, see {@link #sortSteps}.
+	 */
+	private List<Object> sortedStepsKey;
+
 	/*-------------------------------------------------------------------------*/
 	public Recipe()
 	{
@@ -177,14 +207,109 @@ public class Recipe implements V2DataObject
 	 */
 	public void run()
 	{
-		log = new ProcessLog();
+		run(ProcessLog.Level.MESSAGE);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs the recipe end to end as per {@link #run()}, with the log only
+	 * recording entries up to the given level. Use a reduced level when the
+	 * log is not going to be shown.
+	 */
+	public void run(ProcessLog.Level logLevel)
+	{
+		run(null, logLevel);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs the recipe end to end as per {@link #run(ProcessLog.Level)}, but
+	 * with the given equipment profile instead of the one the recipe names.
+	 * A null profile means the one the recipe names.
+	 */
+	public void run(EquipmentProfile equipment, ProcessLog.Level logLevel)
+	{
+		log = new ProcessLog(logLevel);
 		this.volumes = new Volumes();
+		this.stepResults = null;
+		this.stepResultsKey = null;
+
+		sortSteps(log);
+		boolean sorted = !log.hasErrors();
+
+		// results for another profile are no use to run(ProcessStep)
+		boolean ownProfile = equipment == null;
+		if (ownProfile)
+		{
+			equipment = Database.getInstance().getEquipmentProfiles().get(this.equipmentProfile);
+		}
+
+		if (equipment == null)
+		{
+			log.error("equipment.invalid.profile", this.equipmentProfile);
+			return;
+		}
+
+		Map<ProcessStep, StepResult> results = runSteps(volumes, equipment, log, ownProfile);
 
+		if (sorted && ownProfile)
+		{
+			this.stepResults = results;
+			this.stepResultsKey = getStepResultsKey();
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Re-runs the recipe after a change to a single step (including its
+	 * ingredient additions). Steps that cannot be affected by the change keep
+	 * the results of the previous run, only the changed step and the steps
+	 * downstream of it are applied again. The resulting volumes and log are
+	 * the same as those of a full {@link #run()}.
+	 * <p>
+	 * Falls back to a full run if there are no previous results, or if the
+	 * step graph or equipment profile has changed since. Changes to anything
+	 * else (the equipment profile contents, settings, the database) need a
+	 * full run.
+	 */
+	public void run(ProcessStep changed)
+	{
+		if (stepResults == null || !stepResults.containsKey(changed))
+		{
+			run();
+			return;
+		}
+
+		ProcessLog log = new ProcessLog(this.log.getLevel());
 		sortSteps(log);
 
 		EquipmentProfile equipment = Database.getInstance().getEquipmentProfiles().get(this.equipmentProfile);
 
-		this.run(volumes, equipment, log);
+		if (equipment == null ||
+			log.hasErrors() ||
+			!getStepResultsKey().equals(stepResultsKey))
+		{
+			run(log.getLevel());
+			return;
+		}
+
+		Set<ProcessStep> affected = getAffectedSteps(changed);
+		Volumes volumes = new Volumes();
+
+		for (ProcessStep s : getSteps())
+		{
+			if (affected.contains(s))
+			{
+				stepResults.put(s, runStep(s, volumes, equipment, log));
+			}
+			else
+			{
+				stepResults.get(s).restore(volumes, log);
+			}
+		}
+
+		this.log = log;
+		this.volumes = volumes;
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -195,52 +320,381 @@ public class Recipe implements V2DataObject
 	{
 		if (equipment == null)
 		{
-			log.addError(StringUtils.getProcessString("equipment.invalid.profile", this.equipmentProfile));
+			log.error("equipment.invalid.profile", this.equipmentProfile);
 			return;
 		}
 
+		runSteps(volumes, equipment, log, false);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs the recipe end to end over volumes that may hold measurements, as
+	 * per {@link #run(Volumes, EquipmentProfile, ProcessLog)}, but one step at
+	 * a time. The input volumes of each step are recorded as they were before
+	 * it was applied, so that a changed measurement can later be propagated
+	 * with {@link #run(Volumes, EquipmentProfile, ProcessLog, ProcessStep, Map)}.
+	 *
+	 * @return
+	 * 	The recorded input volumes by name, by step name.
+	 */
+	public Map<String, Map<String, Volume>> runRecorded(
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog log)
+	{
+		Map<String, Map<String, Volume>> result = new HashMap<>();
+
+		if (equipment == null)
+		{
+			log.error("equipment.invalid.profile", this.equipmentProfile);
+			return result;
+		}
+
 		for (ProcessStep s : getSteps())
 		{
-			s.setRecipe(this);
+			result.put(s.getName(), recordInputs(s, volumes));
+			applyStep(s, volumes, equipment, log);
+		}
 
-			try
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Re-applies the given step and the steps downstream of it to volumes
+	 * that already hold the results of {@link #runRecorded}, e.g. after a
+	 * measurement of one of the step's output volumes changed. Steps change
+	 * their input volumes in place, so each input not written by an earlier
+	 * re-applied step is first put back as it was recorded.
+	 *
+	 * @param inputs
+	 * 	The input volumes recorded by {@link #runRecorded}, updated with the
+	 * 	inputs of the re-applied steps.
+	 * @return
+	 * 	The steps that were re-applied, in process order.
+	 */
+	public List<ProcessStep> run(
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog log,
+		ProcessStep changed,
+		Map<String, Map<String, Volume>> inputs)
+	{
+		List<ProcessStep> result = new ArrayList<>();
+
+		if (equipment == null)
+		{
+			log.error("equipment.invalid.profile", this.equipmentProfile);
+			return result;
+		}
+
+		Set<ProcessStep> affected = getAffectedSteps(changed);
+		Set<String> rewritten = new HashSet<>();
+
+		for (ProcessStep s : getSteps())
+		{
+			if (!affected.contains(s))
 			{
-				log.addMessage(StringUtils.getProcessString("log.step", s.getName()));
+				continue;
+			}
 
-				for (String inputVolume : s.getInputVolumes())
+			Map<String, Volume> recorded = inputs.getOrDefault(s.getName(), Collections.emptyMap());
+			for (Map.Entry<String, Volume> e : recorded.entrySet())
+			{
+				if (!rewritten.contains(e.getKey()) && volumes.contains(e.getKey()))
 				{
-					if (volumes.contains(inputVolume))
-					{
-						Volume v = volumes.getVolume(inputVolume);
-						log.addMessage(StringUtils.getProcessString("log.volume.in", v.describe(), v.getIngredientAdditions().size()));
-					}
-					else
-					{
-						log.addMessage(StringUtils.getProcessString("log.volume.missing", inputVolume));
-					}
+					volumes.getVolume(e.getKey()).copy(e.getValue());
 				}
+			}
 
-				s.apply(volumes, equipment, log);
+			inputs.put(s.getName(), recordInputs(s, volumes));
+			applyStep(s, volumes, equipment, log);
 
-				for (String outputVolume : s.getOutputVolumes())
+			rewritten.addAll(getTouchedVolumes(s));
+			result.add(s);
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return copies of the input volumes of the given step, by name. Steps
+	 * 	may pass a volume on under another name, so the name of the copy may
+	 * 	not be the same.
+	 */
+	private static Map<String, Volume> recordInputs(ProcessStep step, Volumes volumes)
+	{
+		Map<String, Volume> result = new HashMap<>();
+		for (String key : step.getInputVolumes())
+		{
+			if (volumes.contains(key))
+			{
+				Volume v = volumes.getVolume(key);
+				result.put(key, new Volume(v.getName(), v));
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Applies the sorted steps, in parallel where the step graph allows. A step
+	 * starts once every earlier step touching one of its volumes is done, so
+	 * independent branches (e.g. after a Split) run concurrently while steps
+	 * that share a volume keep their order. A step that only waits on the step
+	 * just before it is applied straight after it, on the same thread. Each step logs to its own log and
+	 * these are merged in step order, so the result is the same as applying the
+	 * steps one by one.
+	 *
+	 * @param recordVolumes
+	 * 	true if the step results should include the volumes touched
+	 * @return
+	 * 	the result of each step
+	 */
+	private Map<ProcessStep, StepResult> runSteps(
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog log,
+		boolean recordVolumes)
+	{
+		Map<ProcessStep, CompletableFuture<StepResult>> tasks = new IdentityHashMap<>();
+		Map<String, ProcessStep> lastTouchedBy = new HashMap<>();
+		ProcessStep previous = null;
+
+		for (ProcessStep s : getSteps())
+		{
+			Set<ProcessStep> deps = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			for (String volume : getTouchedVolumes(s))
+			{
+				ProcessStep prev = lastTouchedBy.put(volume, s);
+				if (prev != null && prev != s)
 				{
-					if (volumes.contains(outputVolume))
-					{
-						Volume v = volumes.getVolume(outputVolume);
-						log.addMessage(StringUtils.getProcessString("log.volume.out", v.describe(), v.getIngredientAdditions().size()));
-					}
-					else
-					{
-						log.addMessage(StringUtils.getProcessString("log.volume.missing", outputVolume));
-					}
+					deps.add(prev);
 				}
 			}
-			catch (BrewdayException e)
+
+			CompletableFuture<StepResult> task;
+			if (deps.size() == 1 && deps.contains(previous))
 			{
-				log.addError(s.getName() + ": " + e.getMessage());
-				e.printStackTrace();
+				// a straight run of steps, no point in handing off to the pool
+				task = tasks.get(previous).thenApply(
+					x -> runStep(s, volumes, equipment, log.getLevel(), recordVolumes));
+			}
+			else
+			{
+				CompletableFuture<?>[] futures = new CompletableFuture<?>[deps.size()];
+				int i = 0;
+				for (ProcessStep dep : deps)
+				{
+					futures[i++] = tasks.get(dep);
+				}
+
+				task = CompletableFuture.allOf(futures).thenApplyAsync(
+					x -> runStep(s, volumes, equipment, log.getLevel(), recordVolumes),
+					STEP_EXECUTOR);
+			}
+
+			tasks.put(s, task);
+			previous = s;
+		}
+
+		// wait for everything to settle before reporting any failure
+		CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0]))
+			.handle((x, e) -> null)
+			.join();
+
+		Map<ProcessStep, StepResult> result = new IdentityHashMap<>();
+		for (ProcessStep s : getSteps())
+		{
+			StepResult stepResult;
+			try
+			{
+				stepResult = tasks.get(s).join();
+			}
+			catch (CompletionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException)e.getCause();
+				}
+				throw new BrewdayException(e.getCause());
+			}
+
+			log.addAll(stepResult.log);
+			result.put(s, stepResult);
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Applies the given step and records what it did.
+	 */
+	private StepResult runStep(
+		ProcessStep s,
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog log)
+	{
+		StepResult result = runStep(s, volumes, equipment, log.getLevel(), true);
+		log.addAll(result.log);
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private StepResult runStep(
+		ProcessStep s,
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog.Level logLevel,
+		boolean recordVolumes)
+	{
+		ProcessLog stepLog = new ProcessLog(logLevel);
+		applyStep(s, volumes, equipment, stepLog);
+
+		return new StepResult(s, volumes, stepLog, recordVolumes);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the input and output volumes of the given step
+	 */
+	private static List<String> getTouchedVolumes(ProcessStep step)
+	{
+		List<String> result = new ArrayList<>(step.getInputVolumes());
+		result.addAll(step.getOutputVolumes());
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void applyStep(
+		ProcessStep s,
+		Volumes volumes,
+		EquipmentProfile equipment,
+		ProcessLog log)
+	{
+		s.setRecipe(this);
+
+		try
+		{
+			log.message("log.step", s.getName());
+			logVolumes("log.volume.in", s.getInputVolumes(), volumes, log);
+
+			s.apply(volumes, equipment, log);
+
+			logVolumes("log.volume.out", s.getOutputVolumes(), volumes, log);
+		}
+		catch (BrewdayException e)
+		{
+			log.addError(s.getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Logs a description of each of the named volumes. Skipped when the log is
+	 * not recording messages, since describing a volume is not cheap.
+	 */
+	private void logVolumes(
+		String key,
+		Collection<String> volumeNames,
+		Volumes volumes,
+		ProcessLog log)
+	{
+		if (!log.isEnabled(ProcessLog.Level.MESSAGE))
+		{
+			return;
+		}
+
+		for (String name : volumeNames)
+		{
+			if (volumes.contains(name))
+			{
+				Volume v = volumes.getVolume(name);
+				log.message(key, v.describe(), v.getIngredientAdditions().size());
+			}
+			else
+			{
+				log.message("log.volume.missing", name);
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	The given step plus every step that consumes a volume it touches,
+	 * 	transitively. Steps sharing an input volume are included because some
+	 * 	steps modify their input volumes in place.
+	 */
+	private Set<ProcessStep> getAffectedSteps(ProcessStep changed)
+	{
+		Set<ProcessStep> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<String> touched = new HashSet<>();
+		Set<String> written = new HashSet<>();
+
+		result.add(changed);
+		touched.addAll(changed.getInputVolumes());
+		touched.addAll(changed.getOutputVolumes());
+		written.addAll(changed.getOutputVolumes());
+
+		boolean grown = true;
+		while (grown)
+		{
+			grown = false;
+			for (ProcessStep s : getSteps())
+			{
+				if (!result.contains(s) &&
+					(!Collections.disjoint(s.getInputVolumes(), touched) ||
+					!Collections.disjoint(s.getOutputVolumes(), written)))
+				{
+					result.add(s);
+					touched.addAll(s.getInputVolumes());
+					touched.addAll(s.getOutputVolumes());
+					written.addAll(s.getOutputVolumes());
+					grown = true;
+				}
 			}
 		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	A key identifying the sorted step graph and the equipment profile.
+	 */
+	private List<Object> getStepResultsKey()
+	{
+		List<Object> result = getStepGraphKey();
+		result.add(equipmentProfile);
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return
+	 * 	A key identifying the steps, in order, and the volumes they connect.
+	 * 	Ingredient changes do not change the key.
+	 */
+	private List<Object> getStepGraphKey()
+	{
+		List<Object> result = new ArrayList<>();
+
+		for (ProcessStep s : getSteps())
+		{
+			result.add(s);
+			result.add(new ArrayList<>(s.getInputVolumes()));
+			result.add(new ArrayList<>(s.getOutputVolumes()));
+		}
+
+		return result;
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -252,6 +706,8 @@ public class Recipe implements V2DataObject
 	{
 		this.log = new ProcessLog();
 		this.volumes = new Volumes();
+		this.stepResults = null;
+		this.stepResultsKey = null;
 
 		dryRun(this.volumes, this.log);
 	}
@@ -267,12 +723,12 @@ public class Recipe implements V2DataObject
 
 			try
 			{
-				log.addMessage(StringUtils.getProcessString("log.step", s.getName()));
+				log.message("log.step", s.getName());
 
 				for (String inputVolume : s.getInputVolumes())
 				{
 					Volume v = volumes.getVolume(inputVolume);
-					log.addMessage(StringUtils.getProcessString("log.volume.in", v.describe(), "?"));
+					log.message("log.volume.in", v.describe(), "?");
 				}
 
 				s.dryRun(this, log);
@@ -280,7 +736,7 @@ public class Recipe implements V2DataObject
 				for (String outputVolume : s.getOutputVolumes())
 				{
 					Volume v = volumes.getVolume(outputVolume);
-					log.addMessage(StringUtils.getProcessString("log.volume.out", v.describe(), "?"));
+					log.message("log.volume.out", v.describe(), "?");
 				}
 			}
 			catch (BrewdayException e)
@@ -295,42 +751,50 @@ public class Recipe implements V2DataObject
 	/**
 	 * Sorts the steps of this recipe in a sensible order. This method treats the
 	 * process steps as a directed acyclic graph and performs a topological
-	 * sort.
+	 * sort. The sort is skipped if the step graph has not changed since the
+	 * last one.
 	 */
 	public void sortSteps(ProcessLog log)
 	{
+		if (getStepGraphKey().equals(sortedStepsKey))
+		{
+			return;
+		}
+
 		DirectedAcyclicGraph<ProcessStep, String> graph =
 			new DirectedAcyclicGraph<>(String.class);
 
+		// index the consuming steps of each volume, in step order
+		Map<String, List<ProcessStep>> consumers = new HashMap<>();
+
 		for (ProcessStep step : this.getSteps())
 		{
 			graph.addVertex(step);
+
+			for (String input : step.getInputVolumes())
+			{
+				consumers.computeIfAbsent(input, k -> new ArrayList<>()).add(step);
+			}
 		}
 
 		for (ProcessStep step1 : this.getSteps())
 		{
 			for (String output : step1.getOutputVolumes())
 			{
-				for (ProcessStep step2 : this.getSteps())
+				for (ProcessStep step2 : consumers.getOrDefault(output, Collections.emptyList()))
 				{
-					for (String input : step2.getInputVolumes())
+					try
 					{
-						if (output.equals(input))
-						{
-							try
-							{
-								graph.addEdge(step1, step2, output);
-							}
-							catch (IllegalArgumentException e)
-							{
-								// the DAG throws this if adding the edge introduces a cycle
-
-								log.addError(
-									StringUtils.getProcessString("recipe.error.circular.dependency",
-										step1.getName(), step2.getName()));
-								return;
-							}
-						}
+						graph.addEdge(step1, step2, output);
+					}
+					catch (IllegalArgumentException e)
+					{
+						// the DAG throws this if adding the edge introduces a cycle
+
+						log.error(
+							"recipe.error.circular.dependency",
+							step1.getName(), step2.getName());
+						return;
 					}
 				}
 			}
@@ -343,6 +807,8 @@ public class Recipe implements V2DataObject
 		{
 			steps.add(iter.next());
 		}
+
+		this.sortedStepsKey = getStepGraphKey();
 	}
 
 	/*-------------------------------------------------------------------------*/
@@ -666,4 +1132,53 @@ public class Recipe implements V2DataObject
 
 		return result;
 	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The volumes a step left behind and what it logged.
+	 */
+	private static class StepResult
+	{
+		private final Map<String, Volume> volumes = new HashMap<>();
+		private final Set<String> outputVolumes = new HashSet<>();
+		private final ProcessLog log;
+
+		StepResult(
+			ProcessStep step,
+			Volumes volumes,
+			ProcessLog log,
+			boolean recordVolumes)
+		{
+			this.log = log;
+
+			if (!recordVolumes)
+			{
+				return;
+			}
+
+			for (String key : getTouchedVolumes(step))
+			{
+				if (volumes.contains(key))
+				{
+					Volume v = volumes.getVolume(key);
+					this.volumes.put(key, new Volume(v.getName(), v));
+				}
+				if (volumes.isOutputVolume(key))
+				{
+					this.outputVolumes.add(key);
+				}
+			}
+		}
+
+		void restore(Volumes volumes, ProcessLog log)
+		{
+			for (Map.Entry<String, Volume> e : this.volumes.entrySet())
+			{
+				Volume v = e.getValue();
+				volumes.getVolumes().put(e.getKey(), new Volume(v.getName(), v));
+			}
+			volumes.getOutputVolumes().addAll(outputVolumes);
+			log.addAll(this.log);
+		}
+	}
 }
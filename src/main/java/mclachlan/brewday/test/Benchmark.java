@@ -0,0 +1,315 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness. Each benchmark is warmed up and then timed over
+ * a number of fixed length samples; the results are printed as a table and
+ * written as CSV, and can be compared against a CSV from an earlier run to
+ * catch regressions.
+ * <p>
+ * Options: <code>-out file</code>, <code>-baseline file</code>,
+ * <code>-threshold fraction</code>, <code>-filter regex</code>,
+ * <code>-warmup ms</code>, <code>-time ms</code> (per sample) and
+ * <code>-samples n</code>.
+ */
+public class Benchmark
+{
+	public static final String CSV_HEADER =
+		"benchmark,samples,ops,ns_per_op,ns_per_op_stddev,ops_per_sec,bytes_per_op";
+
+	/** an operation to time, the result is consumed so it can't be elided */
+	public interface Op
+	{
+		Object run() throws Exception;
+	}
+
+	private final Map<String, Op> benchmarks = new LinkedHashMap<>();
+
+	private File out;
+	private File baseline;
+	private double threshold = 0.25;
+	private Pattern filter;
+	private long warmupMs = 1000;
+	private long sampleMs = 500;
+	private int samples = 5;
+
+	/** results of every operation are folded in here */
+	private volatile int sink;
+
+	/*-------------------------------------------------------------------------*/
+	public Benchmark(String[] args)
+	{
+		for (int i=0; i<args.length; i++)
+		{
+			switch (args[i])
+			{
+				case "-out":
+					out = new File(args[++i]);
+					break;
+				case "-baseline":
+					baseline = new File(args[++i]);
+					break;
+				case "-threshold":
+					threshold = Double.parseDouble(args[++i]);
+					break;
+				case "-filter":
+					filter = Pattern.compile(args[++i]);
+					break;
+				case "-warmup":
+					warmupMs = Long.parseLong(args[++i]);
+					break;
+				case "-time":
+					sampleMs = Long.parseLong(args[++i]);
+					break;
+				case "-samples":
+					samples = Integer.parseInt(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Adds a benchmark, unless it is excluded by the filter.
+	 */
+	public void add(String name, Op op)
+	{
+		if (filter == null || filter.matcher(name).find())
+		{
+			benchmarks.put(name, op);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Runs all the benchmarks, then writes and compares the results.
+	 *
+	 * @return true if no benchmark regressed against the baseline
+	 */
+	public boolean run() throws Exception
+	{
+		List<Result> results = new ArrayList<>();
+
+		System.out.printf("%-60s %14s %12s %14s%n", "benchmark", "ns/op", "+/-", "bytes/op");
+		for (Map.Entry<String, Op> e : benchmarks.entrySet())
+		{
+			Result r;
+			try
+			{
+				r = measure(e.getKey(), e.getValue());
+			}
+			catch (Exception x)
+			{
+				System.out.printf("%-60s failed: %s%n", e.getKey(), x);
+				continue;
+			}
+
+			results.add(r);
+			System.out.printf("%-60s %14.1f %12.1f %14.0f%n",
+				r.name, r.nsPerOp, r.nsPerOpStdDev, r.bytesPerOp);
+		}
+
+		if (out != null)
+		{
+			write(results, out);
+			System.out.println("results written to " + out);
+		}
+
+		return baseline == null || compare(results, read(baseline));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private Result measure(String name, Op op) throws Exception
+	{
+		long end = System.nanoTime() + warmupMs * 1000000L;
+		while (System.nanoTime() < end)
+		{
+			consume(op.run());
+		}
+
+		double[] nsPerOp = new double[samples];
+		long totalOps = 0, totalNanos = 0, totalBytes = 0;
+
+		for (int s=0; s<samples; s++)
+		{
+			long ops = 0;
+			long bytes = getAllocatedBytes();
+			long start = System.nanoTime();
+			long now;
+			do
+			{
+				consume(op.run());
+				ops++;
+				now = System.nanoTime();
+			}
+			while (now - start < sampleMs * 1000000L);
+
+			totalBytes += getAllocatedBytes() - bytes;
+			totalNanos += now - start;
+			totalOps += ops;
+			nsPerOp[s] = (now - start) / (double)ops;
+		}
+
+		double mean = totalNanos / (double)totalOps;
+		double variance = 0;
+		for (double d : nsPerOp)
+		{
+			variance += (d - mean) * (d - mean);
+		}
+
+		Result result = new Result();
+		result.name = name;
+		result.samples = samples;
+		result.ops = totalOps;
+		result.nsPerOp = mean;
+		result.nsPerOpStdDev = samples > 1 ? Math.sqrt(variance / (samples - 1)) : 0;
+		result.opsPerSec = 1E9 / mean;
+		result.bytesPerOp = totalBytes / (double)totalOps;
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private void consume(Object o)
+	{
+		sink += System.identityHashCode(o);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return bytes allocated so far by all live threads, so that work handed
+	 * off to pools is counted too
+	 */
+	private static long getAllocatedBytes()
+	{
+		com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+		long result = 0;
+		for (long b : bean.getThreadAllocatedBytes(bean.getAllThreadIds()))
+		{
+			if (b > 0)
+			{
+				result += b;
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Prints every benchmark that is slower than in the baseline by more than
+	 * the threshold.
+	 *
+	 * @return true if none are
+	 */
+	private boolean compare(List<Result> results, Map<String, Result> base)
+	{
+		boolean ok = true;
+		for (Result r : results)
+		{
+			Result b = base.get(r.name);
+			if (b == null)
+			{
+				continue;
+			}
+
+			double change = (r.nsPerOp - b.nsPerOp) / b.nsPerOp;
+			if (change > threshold)
+			{
+				System.out.printf("REGRESSION %s: %.1f ns/op -> %.1f ns/op (%+.0f%%)%n",
+					r.name, b.nsPerOp, r.nsPerOp, change * 100);
+				ok = false;
+			}
+		}
+
+		System.out.println(ok ? "no regressions against " + baseline : "regressions against " + baseline);
+		return ok;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void write(List<Result> results, File file) throws IOException
+	{
+		if (file.getParentFile() != null)
+		{
+			file.getParentFile().mkdirs();
+		}
+
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file)))
+		{
+			writer.println(CSV_HEADER);
+			for (Result r : results)
+			{
+				writer.println(String.format(Locale.ROOT, "\"%s\",%d,%d,%.3f,%.3f,%.3f,%.1f",
+					r.name.replace("\"", "\"\""),
+					r.samples,
+					r.ops,
+					r.nsPerOp,
+					r.nsPerOpStdDev,
+					r.opsPerSec,
+					r.bytesPerOp));
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static Map<String, Result> read(File file) throws IOException
+	{
+		Map<String, Result> result = new HashMap<>();
+
+		List<String> lines = Files.readAllLines(file.toPath());
+		for (String line : lines.subList(1, lines.size()))
+		{
+			// the name is quoted and may contain commas, the rest are numbers
+			int split = line.lastIndexOf('"');
+			String[] values = line.substring(split + 2).split(",");
+
+			Result r = new Result();
+			r.name = line.substring(1, split).replace("\"\"", "\"");
+			r.samples = Integer.parseInt(values[0]);
+			r.ops = Long.parseLong(values[1]);
+			r.nsPerOp = Double.parseDouble(values[2]);
+			r.nsPerOpStdDev = Double.parseDouble(values[3]);
+			r.opsPerSec = Double.parseDouble(values[4]);
+			r.bytesPerOp = Double.parseDouble(values[5]);
+			result.put(r.name, r);
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class Result
+	{
+		private String name;
+		private int samples;
+		private long ops;
+		private double nsPerOp;
+		private double nsPerOpStdDev;
+		private double opsPerSec;
+		private double bytesPerOp;
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import mclachlan.brewday.Brewday;
+import mclachlan.brewday.EquipmentCalibrator;
+import mclachlan.brewday.batch.Batch;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.db.v2.SimpleMapSilo;
+import mclachlan.brewday.db.v2.V2DataObject;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.importexport.beerxml.BeerXmlParser;
+import mclachlan.brewday.ingredients.Misc;
+import mclachlan.brewday.ingredients.Water;
+import mclachlan.brewday.inventory.MaterialsPlanner;
+import mclachlan.brewday.math.*;
+import mclachlan.brewday.recipe.*;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * Benchmarks of the calculation engine and the persistence layer, run over
+ * the configured database (test_data/test_db in a dev checkout) and the
+ * BeerXML files in test_data/beerxml. See {@link Benchmark} for the options;
+ * the ant "benchmark" target runs this.
+ */
+public class BrewdayBenchmarks
+{
+	private static final String BEERXML_DIR = "test_data/beerxml";
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		Benchmark benchmark = new Benchmark(args);
+
+		addRecipeBenchmarks(benchmark, db);
+		addEquationsBenchmarks(benchmark, db);
+		addWaterBuilderBenchmarks(benchmark, db);
+		addCalibrationBenchmarks(benchmark, db);
+		addPlannerBenchmarks(benchmark, db);
+		addSiloBenchmarks(benchmark, db);
+		addBeerXmlBenchmarks(benchmark);
+
+		boolean ok = benchmark.run();
+
+		// the recipe steps run on a pool of non-daemon threads
+		System.exit(ok ? 0 : 1);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addRecipeBenchmarks(Benchmark benchmark, Database db)
+	{
+		for (Recipe recipe : new TreeMap<>(db.getRecipes()).values())
+		{
+			benchmark.add("recipe.run/" + recipe.getName(), () ->
+			{
+				recipe.run();
+				return recipe.getVolumes();
+			});
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addEquationsBenchmarks(Benchmark benchmark, Database db)
+	{
+		HopAddition hop = null;
+		WaterAddition water = null;
+		List<FermentableAddition> grainBill = new ArrayList<>();
+		List<MiscAddition> miscs = new ArrayList<>();
+
+		// use the ingredients of the biggest recipe
+		Recipe recipe = Collections.max(db.getRecipes().values(),
+			Comparator.comparingInt(r -> r.getIngredients().size()));
+
+		for (IngredientAddition ia : recipe.getIngredients())
+		{
+			if (ia instanceof HopAddition && hop == null)
+			{
+				hop = (HopAddition)ia;
+			}
+			else if (ia instanceof WaterAddition && water == null)
+			{
+				water = (WaterAddition)ia;
+			}
+			else if (ia instanceof FermentableAddition)
+			{
+				grainBill.add((FermentableAddition)ia);
+			}
+			else if (ia instanceof MiscAddition)
+			{
+				miscs.add((MiscAddition)ia);
+			}
+		}
+
+		TimeUnit boilTime = new TimeUnit(60, MINUTES, false);
+		DensityUnit gravity = new DensityUnit(1.050, SPECIFIC_GRAVITY, false);
+		VolumeUnit volume = new VolumeUnit(20, LITRES, false);
+		VolumeUnit boilVolume = new VolumeUnit(25, LITRES, false);
+
+		if (hop != null)
+		{
+			HopAddition h = hop;
+			benchmark.add("equations.ibu/tinseth",
+				() -> Equations.calcIbuTinseth(h, boilTime, gravity, volume, 1D));
+			benchmark.add("equations.ibu/rager",
+				() -> Equations.calcIbuRager(h, boilTime, gravity, volume, 1D));
+			benchmark.add("equations.ibu/garetz",
+				() -> Equations.calcIbuGaretz(h, boilTime, gravity, volume, boilVolume, 1D, 0D));
+			benchmark.add("equations.ibu/daniels",
+				() -> Equations.calcIbuDaniels(h, boilTime, gravity, volume, 1D));
+		}
+
+		if (water != null && !grainBill.isEmpty())
+		{
+			WaterAddition w = water;
+			benchmark.add("equations.ph/mpH",
+				() -> Equations.calcMashPhMpH(w, grainBill, miscs));
+			benchmark.add("equations.ph/ezWater",
+				() -> Equations.calcMashPhEzWater(w, grainBill, miscs));
+			benchmark.add("equations.colour/morey",
+				() -> Equations.calcColourSrmMoreyFormula(grainBill, w.getVolume()));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addWaterBuilderBenchmarks(Benchmark benchmark, Database db)
+	{
+		Water startingWater = db.getWaters().get("Distilled Water");
+		if (startingWater == null || db.getWaterParameters().isEmpty())
+		{
+			return;
+		}
+
+		Map<Misc.WaterAdditionFormula, Boolean> allowed = new HashMap<>();
+		for (Misc.WaterAdditionFormula f : Misc.WaterAdditionFormula.values())
+		{
+			allowed.put(f, f != Misc.WaterAdditionFormula.LACTIC_ACID &&
+				f != Misc.WaterAdditionFormula.PHOSPHORIC_ACID);
+		}
+
+		// scales that weigh in 0.1g steps
+		Map<Misc.WaterAdditionFormula, WeightUnit> increments = new HashMap<>();
+		for (Misc.WaterAdditionFormula f : Misc.WaterAdditionFormula.values())
+		{
+			increments.put(f, new WeightUnit(0.1, GRAMS));
+		}
+		VolumeUnit volume = new VolumeUnit(25, LITRES, false);
+
+		List<WaterParameters> targets = new ArrayList<>(
+			new TreeMap<>(db.getWaterParameters()).values());
+		WaterBuilder wb = new WaterBuilder();
+
+		for (WaterBuilder.AdditionGoal goal : WaterBuilder.AdditionGoal.values())
+		{
+			// one op solves for every target profile
+			benchmark.add("waterbuilder.calcAdditions/" + goal.name(), () ->
+			{
+				int solved = 0;
+				for (WaterParameters target : targets)
+				{
+					if (wb.calcAdditions(startingWater, target, allowed, goal) != null)
+					{
+						solved++;
+					}
+				}
+				return solved;
+			});
+
+			benchmark.add("waterbuilder.calcAdditions.batch/" + goal.name(),
+				() -> wb.calcAdditions(startingWater, targets, allowed, goal));
+
+			benchmark.add("waterbuilder.calcDiscreteAdditions/" + goal.name(), () ->
+			{
+				int solved = 0;
+				for (WaterParameters target : targets)
+				{
+					if (wb.calcDiscreteAdditions(startingWater, target, allowed, goal,
+						volume, increments, 1000, 1000) != null)
+					{
+						solved++;
+					}
+				}
+				return solved;
+			});
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addCalibrationBenchmarks(Benchmark benchmark, Database db)
+	{
+		for (EquipmentProfile profile : new TreeMap<>(db.getEquipmentProfiles()).values())
+		{
+			List<Batch> batches = EquipmentCalibrator.getBatches(profile);
+			if (batches.isEmpty())
+			{
+				continue;
+			}
+
+			benchmark.add("calibrator.fit/" + profile.getName(), () ->
+			{
+				EquipmentCalibrator calibrator = new EquipmentCalibrator(profile);
+				calibrator.fit(batches);
+				return calibrator.getCalibratedProfile();
+			});
+
+			EquipmentCalibrator calibrator = new EquipmentCalibrator(profile);
+			calibrator.fit(batches);
+			benchmark.add("calibrator.update/" + profile.getName(), () ->
+			{
+				calibrator.update(batches.get(0));
+				return calibrator.getCalibratedProfile();
+			});
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addPlannerBenchmarks(Benchmark benchmark, Database db)
+	{
+		List<String> recipes = new ArrayList<>(new TreeMap<>(db.getRecipes()).keySet());
+		if (recipes.isEmpty())
+		{
+			return;
+		}
+
+		// a quarter's brew schedule
+		Random r = new Random(0);
+		List<MaterialsPlanner.PlannedBatch> batches = new ArrayList<>();
+		for (int i = 0; i < 300; i++)
+		{
+			batches.add(new MaterialsPlanner.PlannedBatch(
+				recipes.get(r.nextInt(recipes.size())),
+				1 + r.nextInt(3),
+				LocalDate.of(2021, 1, 1).plusDays(r.nextInt(90))));
+		}
+
+		MaterialsPlanner planner = new MaterialsPlanner();
+		benchmark.add("planner.plan/" + batches.size(), () -> planner.plan(batches));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addSiloBenchmarks(Benchmark benchmark, Database db)
+		throws IOException
+	{
+		File dbDir = new File(Brewday.getInstance().getAppConfig().getProperty(Brewday.BREWDAY_DB));
+
+		for (Map.Entry<String, SimpleMapSilo<?>> e : db.getSilos().entrySet())
+		{
+			File file = new File(dbDir, e.getKey());
+			if (file.exists())
+			{
+				addSiloBenchmarks(benchmark, db, e.getKey(), e.getValue(),
+					new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static <V extends V2DataObject> void addSiloBenchmarks(
+		Benchmark benchmark,
+		Database db,
+		String fileName,
+		SimpleMapSilo<V> silo,
+		String json) throws IOException
+	{
+		Map<String, V> objects = silo.load(new BufferedReader(new StringReader(json)), db);
+
+		benchmark.add("silo.load/" + fileName,
+			() -> silo.load(new BufferedReader(new StringReader(json)), db));
+
+		benchmark.add("silo.save/" + fileName, () ->
+		{
+			StringWriter result = new StringWriter();
+			BufferedWriter writer = new BufferedWriter(result);
+			silo.save(writer, objects, db);
+			writer.flush();
+			return result;
+		});
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void addBeerXmlBenchmarks(Benchmark benchmark)
+	{
+		File[] files = new File(BEERXML_DIR).listFiles((dir, name) -> name.endsWith(".xml"));
+		if (files == null)
+		{
+			return;
+		}
+
+		Arrays.sort(files);
+		BeerXmlParser parser = new BeerXmlParser();
+
+		for (File file : files)
+		{
+			List<File> list = Collections.singletonList(file);
+			try
+			{
+				parser.parse(list, false, false, false);
+			}
+			catch (Exception x)
+			{
+				System.out.println("skipping " + file + ": " + x);
+				continue;
+			}
+
+			benchmark.add("beerxml.parse/" + file.getName(),
+				() -> parser.parse(list, false, false, false));
+		}
+	}
+}
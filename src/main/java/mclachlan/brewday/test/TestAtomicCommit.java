@@ -0,0 +1,184 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import mclachlan.brewday.db.v2.AtomicCommit;
+
+/**
+ * Runs commits to the same directory from several threads, as the journal
+ * compactor and a save do, and checks that each lands intact and that
+ * neither touches the other's temp files or a cache file's temp file. Then
+ * checks that an interrupted append is rolled forward exactly once.
+ */
+public class TestAtomicCommit
+{
+	private static final int THREADS = 4;
+	private static final int COMMITS = 200;
+
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static void fail(String message)
+	{
+		failures++;
+		System.out.println("FAIL " + message);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static String read(File dir, String fileName) throws Exception
+	{
+		return new String(Files.readAllBytes(new File(dir, fileName).toPath()), StandardCharsets.UTF_8);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		File dir = Files.createTempDirectory("brewday").toFile();
+
+		// written outside of any commit, eg the binary snapshot
+		File foreignTemp = new File(dir, "snapshot.bin" + AtomicCommit.TEMP_SUFFIX);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try
+		{
+			Files.write(foreignTemp.toPath(), "cache".getBytes(StandardCharsets.UTF_8));
+
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++)
+			{
+				int thread = t;
+				futures.add(executor.submit(() ->
+				{
+					for (int i = 0; i < COMMITS; i++)
+					{
+						Map<String, String> files = new LinkedHashMap<>();
+						files.put("a" + thread + ".json", thread + " " + i);
+						files.put("b" + thread + ".json", thread + " " + i);
+						new AtomicCommit(dir).commit(files);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> f : futures)
+			{
+				f.get();
+			}
+
+			for (int t = 0; t < THREADS; t++)
+			{
+				String expected = t + " " + (COMMITS - 1);
+				for (String prefix : Arrays.asList("a", "b"))
+				{
+					String actual = read(dir, prefix + t + ".json");
+					if (!expected.equals(actual))
+					{
+						fail(prefix + t + ".json: expected " + expected + " actual " + actual);
+					}
+				}
+			}
+
+			if (new File(dir, AtomicCommit.MANIFEST).exists())
+			{
+				fail("manifest left behind");
+			}
+
+			// an interrupted commit: staged but not committed
+			Files.write(new File(dir, AtomicCommit.MANIFEST + AtomicCommit.TEMP_SUFFIX).toPath(),
+				"a0.json".getBytes(StandardCharsets.UTF_8));
+			Files.write(new File(dir, "a0.json" + AtomicCommit.TEMP_SUFFIX).toPath(),
+				"interrupted".getBytes(StandardCharsets.UTF_8));
+
+			new AtomicCommit(dir).recover();
+
+			if (!read(dir, "a0.json").equals("0 " + (COMMITS - 1)))
+			{
+				fail("recover rolled forward an uncommitted file");
+			}
+
+			File[] temps = dir.listFiles((d, name) -> name.endsWith(AtomicCommit.TEMP_SUFFIX));
+			if (temps == null || temps.length != 1 || !temps[0].equals(foreignTemp))
+			{
+				fail("temp files after recover: " + Arrays.toString(temps));
+			}
+			else if (!read(dir, foreignTemp.getName()).equals("cache"))
+			{
+				fail("foreign temp file changed");
+			}
+
+			// appends, after a torn line left by an older version
+			Files.write(new File(dir, "j.journal").toPath(),
+				"one\ntw".getBytes(StandardCharsets.UTF_8));
+			Map<String, String> files = new HashMap<>();
+			files.put("c.json", "c");
+			Map<String, String> appends = new HashMap<>();
+			appends.put("j.journal", "two\n");
+			new AtomicCommit(dir).commit(files, appends);
+			appends.put("j.journal", "three\n");
+			new AtomicCommit(dir).commit(Collections.emptyMap(), appends);
+
+			if (!read(dir, "j.journal").equals("one\ntwo\nthree\n") || !read(dir, "c.json").equals("c"))
+			{
+				fail("appended: " + read(dir, "j.journal"));
+			}
+
+			// interrupted part way through rolling an append forward
+			Files.write(new File(dir, AtomicCommit.MANIFEST).toPath(),
+				"j.journal\t14".getBytes(StandardCharsets.UTF_8));
+			Files.write(new File(dir, "j.journal" + AtomicCommit.TEMP_SUFFIX).toPath(),
+				"four\n".getBytes(StandardCharsets.UTF_8));
+			Files.write(new File(dir, "j.journal").toPath(),
+				"fo".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+			new AtomicCommit(dir).recover();
+			new AtomicCommit(dir).recover();
+
+			if (!read(dir, "j.journal").equals("one\ntwo\nthree\nfour\n"))
+			{
+				fail("recovered append: " + read(dir, "j.journal"));
+			}
+			if (new File(dir, AtomicCommit.MANIFEST).exists() ||
+				new File(dir, "j.journal" + AtomicCommit.TEMP_SUFFIX).exists())
+			{
+				fail("recovered append left files behind");
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+
+			File[] files = dir.listFiles();
+			if (files != null)
+			{
+				for (File f : files)
+				{
+					Files.deleteIfExists(f.toPath());
+				}
+			}
+			Files.deleteIfExists(dir.toPath());
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
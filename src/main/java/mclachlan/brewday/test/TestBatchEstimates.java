@@ -0,0 +1,129 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.Brewday;
+import mclachlan.brewday.batch.Batch;
+import mclachlan.brewday.batch.BatchVolumeEstimate;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.math.DensityUnit;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.math.VolumeUnit;
+
+/**
+ * Checks that propagating a changed batch measurement to the affected
+ * estimates gives the same measurements as rebuilding all the estimates.
+ */
+public class TestBatchEstimates
+{
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static void testMeasurements(Batch b)
+	{
+		int rows = Brewday.getInstance().getBatchVolumeEstimates(new Batch(b)).size();
+
+		for (int i=0; i<rows; i++)
+		{
+			// propagated to the affected estimates only
+			Batch batch = new Batch(b);
+			List<BatchVolumeEstimate> actual =
+				Brewday.getInstance().getBatchVolumeEstimates(batch);
+			BatchVolumeEstimate bve = actual.get(i);
+
+			if (!measure(bve))
+			{
+				continue;
+			}
+
+			List<BatchVolumeEstimate> updated =
+				Brewday.getInstance().updateBatchVolumeEstimates(batch, actual, bve);
+
+			if (!updated.contains(bve))
+			{
+				failures++;
+				System.out.println("FAIL "+b.getName()+": "+describe(bve)+" not updated");
+			}
+
+			// propagated by rebuilding all the estimates
+			Batch batch2 = new Batch(b);
+			measure(Brewday.getInstance().getBatchVolumeEstimates(batch2).get(i));
+			List<BatchVolumeEstimate> expected =
+				Brewday.getInstance().getBatchVolumeEstimates(batch2);
+
+			for (int j=0; j<rows; j++)
+			{
+				String e = describe(expected.get(j));
+				String a = describe(actual.get(j));
+
+				if (!e.equals(a))
+				{
+					failures++;
+					System.out.println("FAIL "+b.getName()+": "+describe(bve));
+					System.out.println(" expected: "+e);
+					System.out.println(" actual:   "+a);
+				}
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return true if a measurement was made
+	 */
+	private static boolean measure(BatchVolumeEstimate bve)
+	{
+		Quantity estimated = bve.getEstimated();
+
+		if (estimated instanceof VolumeUnit)
+		{
+			bve.setMeasured(new VolumeUnit(estimated.get() * 1.1));
+			return true;
+		}
+		else if (estimated instanceof DensityUnit)
+		{
+			bve.setMeasured(new DensityUnit(estimated.get() + 5));
+			return true;
+		}
+		return false;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static String describe(BatchVolumeEstimate bve)
+	{
+		Quantity q = bve.getMeasured();
+
+		return bve.getMeasuredVolume().getName()+" "+bve.getMetric()+" "+
+			(q == null ? null : q.get()+(q.isEstimated() ? "~" : ""));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database.getInstance().loadAll();
+
+		for (Batch b : Database.getInstance().getBatches().values())
+		{
+			testMeasurements(b);
+			System.out.println(b.getName());
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures+" failures");
+	}
+}
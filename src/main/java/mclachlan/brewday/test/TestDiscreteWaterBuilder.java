@@ -0,0 +1,136 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.ingredients.Misc;
+import mclachlan.brewday.ingredients.Water;
+import mclachlan.brewday.math.*;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * Solves every water profile in the database for every target, in whole
+ * increments of each salt, and checks the solutions against the continuous
+ * ones.
+ */
+public class TestDiscreteWaterBuilder
+{
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args)
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		VolumeUnit volume = new VolumeUnit(25, LITRES, false);
+
+		Map<Misc.WaterAdditionFormula, Boolean> allowed = new HashMap<>();
+		Map<Misc.WaterAdditionFormula, WeightUnit> increments = new HashMap<>();
+		for (Misc.WaterAdditionFormula f : Misc.WaterAdditionFormula.values())
+		{
+			allowed.put(f, f != Misc.WaterAdditionFormula.LACTIC_ACID &&
+				f != Misc.WaterAdditionFormula.PHOSPHORIC_ACID);
+			increments.put(f, new WeightUnit(0.1, GRAMS));
+		}
+		// comes in 5g packets
+		increments.put(Misc.WaterAdditionFormula.SODIUM_BICARBONATE, new WeightUnit(5, GRAMS));
+
+		WaterBuilder wb = new WaterBuilder();
+		int solved = 0, exact = 0, nodes = 0;
+		long start = System.currentTimeMillis();
+
+		for (Water water : new TreeMap<>(db.getWaters()).values())
+		{
+			for (WaterParameters target : new TreeMap<>(db.getWaterParameters()).values())
+			{
+				for (WaterBuilder.AdditionGoal goal : WaterBuilder.AdditionGoal.values())
+				{
+					Map<Misc.WaterAdditionFormula, Double> continuous =
+						wb.calcAdditions(water, target, allowed, goal);
+					WaterBuilder.DiscreteSolution discrete = wb.calcDiscreteAdditions(
+						water, target, allowed, goal, volume, increments, 1000, 2000);
+
+					String name = water.getName() + " -> " + target.getName() + " " + goal.name();
+					if (continuous == null)
+					{
+						if (discrete != null)
+						{
+							fail(name + ": no continuous solution, but a discrete one");
+						}
+						continue;
+					}
+
+					solved++;
+					nodes += discrete.getNodes();
+					check(name, discrete, increments, volume);
+
+					if (discrete.getPpmError() < 1E-6)
+					{
+						exact++;
+
+						// the relaxation bounds the integral solution
+						double total = new WaterBuilder.Solution(target, continuous).getTotalAdditions();
+						boolean worse = goal == WaterBuilder.AdditionGoal.MINIMISE_ADDITIONS ?
+							discrete.getTotalAdditions() >= total - 1E-6 :
+							discrete.getTotalAdditions() <= total + 1E-6;
+						if (!worse)
+						{
+							fail(name + ": " + discrete.getTotalAdditions() + " beats the LP " + total);
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println(solved + " solved, " + exact + " within the targets, " +
+			nodes + " nodes, " + (System.currentTimeMillis() - start) + "ms");
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(
+		String name,
+		WaterBuilder.DiscreteSolution solution,
+		Map<Misc.WaterAdditionFormula, WeightUnit> increments,
+		VolumeUnit volume)
+	{
+		for (Map.Entry<Misc.WaterAdditionFormula, Double> e : solution.getAdditions().entrySet())
+		{
+			double grams = e.getValue() * volume.get(LITRES) / 1000D;
+			double k = grams / increments.get(e.getKey()).get(GRAMS);
+
+			if (e.getValue() < -1E-9 || Math.abs(k - Math.rint(k)) > 1E-6)
+			{
+				fail(name + ": " + e.getKey() + " = " + grams + "g is not a whole increment");
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void fail(String msg)
+	{
+		if (failures++ < 20)
+		{
+			System.out.println(msg);
+		}
+	}
+}
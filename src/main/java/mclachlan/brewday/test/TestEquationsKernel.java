@@ -0,0 +1,294 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.math.*;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * Checks on random inputs that the Quantity based {@link Equations} give the
+ * same results as the formulas they used before delegating to
+ * {@link EquationsKernel}, and that the kernel agrees with the unit
+ * conversions in the Quantity classes.
+ */
+public class TestEquationsKernel
+{
+	private static final int RUNS = 10000;
+
+	private static final Random r = new Random(1234);
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args)
+	{
+		for (int i=0; i<RUNS; i++)
+		{
+			testGravityConversions();
+			testCombinedTemperature();
+			testCombinedGravity();
+			testVolumeChanges();
+			testCoolingShrinkage();
+			testAbvWithGravityChange();
+			testColour();
+			testLinearInterpolation();
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+		if (failures > 0)
+		{
+			System.exit(1);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testGravityConversions()
+	{
+		double gu = gravity();
+		DensityUnit d = new DensityUnit(gu);
+
+		check("sg", (1000+gu)/1000, d.get(SPECIFIC_GRAVITY));
+		double sg = (1000+gu)/1000;
+		check("plato",
+			135.997*Math.pow(sg, 3) - 630.272*Math.pow(sg, 2) + 1111.14*sg - 616.868,
+			d.get(PLATO));
+
+		double plato = r.nextDouble() * 30;
+		check("from plato",
+			1000*(1 + (plato / (258.6 - 227.1*(plato/258.2)))) -1000,
+			new DensityUnit(plato, PLATO).get());
+
+		check("from sg", 1000 * sg -1000, new DensityUnit(sg, SPECIFIC_GRAVITY).get());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testCombinedTemperature()
+	{
+		double v1 = volume(), t1 = temperature(), v2 = volume(), t2 = temperature();
+		boolean e = r.nextBoolean();
+
+		TemperatureUnit result = Equations.calcCombinedTemperature(
+			new VolumeUnit(v1, MILLILITRES, false),
+			new TemperatureUnit(t1, CELSIUS, e),
+			new VolumeUnit(v2, MILLILITRES, false),
+			new TemperatureUnit(t2, CELSIUS, false));
+
+		double c = Const.SPECIFIC_HEAT_OF_WATER;
+		check("combined temp",
+			((v1 * t1 * c) + v2 * t2 * c) / (v1 * c + v2 * c),
+			result.get(CELSIUS));
+		checkEstimated("combined temp", e, result);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testCombinedGravity()
+	{
+		VolumeUnit v1 = new VolumeUnit(volume(), MILLILITRES, false);
+		DensityUnit d1 = new DensityUnit(gravity(), GU, false);
+		VolumeUnit v2 = new VolumeUnit(volume(), MILLILITRES, false);
+		DensityUnit d2 = new DensityUnit(gravity(), GU, r.nextBoolean());
+
+		double e1 = v1.get(LITRES) * d1.get(SPECIFIC_GRAVITY) * (d1.get(PLATO) / 100D);
+		double e2 = v2.get(LITRES) * d2.get(SPECIFIC_GRAVITY) * (d2.get(PLATO) / 100D);
+		double w1 = v1.get(LITRES) * d1.get(SPECIFIC_GRAVITY);
+		double w2 = v2.get(LITRES) * d2.get(SPECIFIC_GRAVITY);
+		double expected = new DensityUnit(100 * (e1 + e2) / (w1 + w2), PLATO).get();
+
+		DensityUnit result = Equations.calcCombinedGravity(v1, d1, v2, d2);
+		// the old method rounded the extract content through grams
+		check("combined gravity", expected, result.get(), 1E-9);
+		checkEstimated("combined gravity", d2.isEstimated(), result);
+
+		check("extract",
+			new WeightUnit(e1, KILOGRAMS).get(KILOGRAMS),
+			Equations.getExtractContent(v1, d1).get(KILOGRAMS));
+
+		// mixing a volume with itself changes nothing, within the accuracy of
+		// the Plato approximations
+		check("combined gravity identity", d1.get(),
+			EquationsKernel.calcCombinedGravity(v1.get(), d1.get(), v1.get(), d1.get()), 0.05);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testVolumeChanges()
+	{
+		double vIn = volume(), vOut = volume();
+		VolumeUnit volumeIn = new VolumeUnit(vIn, MILLILITRES, false);
+		VolumeUnit volumeOut = new VolumeUnit(vOut, MILLILITRES, r.nextBoolean());
+
+		double gu = gravity();
+		DensityUnit g = Equations.calcGravityWithVolumeChange(
+			volumeIn, new DensityUnit(gu, GU, false), volumeOut);
+		check("gravity volume change", gu * vIn / vOut, g.get());
+		checkEstimated("gravity volume change", volumeOut.isEstimated(), g);
+
+		double srm = colour();
+		ColourUnit c = Equations.calcColourWithVolumeChange(
+			volumeIn, new ColourUnit(srm, SRM, false), volumeOut);
+		check("colour volume change", srm * vIn / vOut, c.get());
+		checkEstimated("colour volume change", volumeOut.isEstimated(), c);
+
+		double ibu = r.nextDouble() * 100;
+		BitternessUnit b = Equations.calcBitternessWithVolumeChange(
+			volumeIn, new BitternessUnit(ibu, IBU, false), volumeOut);
+		check("bitterness volume change", ibu * vIn / vOut, b.get());
+		checkEstimated("bitterness volume change", volumeOut.isEstimated(), b);
+
+		double abv = r.nextDouble() * 0.12;
+		PercentageUnit a = Equations.calcAbvWithVolumeChange(
+			volumeIn, new PercentageUnit(abv, false), volumeOut);
+		check("abv volume change", abv * vIn / vOut, a.get());
+		checkEstimated("abv volume change", volumeOut.isEstimated(), a);
+
+		// there and back again
+		check("gravity round trip", gu,
+			EquationsKernel.calcGravityWithVolumeChange(vOut,
+				EquationsKernel.calcGravityWithVolumeChange(vIn, gu, vOut), vIn), 1E-9);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testCoolingShrinkage()
+	{
+		double v = volume();
+		double t = r.nextDouble() * 80;
+
+		VolumeUnit result = Equations.calcCoolingShrinkage(
+			new VolumeUnit(v, MILLILITRES, false),
+			new TemperatureUnit(t, CELSIUS, false));
+
+		check("cooling shrinkage", v * (1 - (Const.COOLING_SHRINKAGE * t)), result.get());
+		checkEstimated("cooling shrinkage", false, result);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testAbvWithGravityChange()
+	{
+		DensityUnit og = new DensityUnit(gravity(), GU, false);
+		DensityUnit fg = new DensityUnit(og.get() * r.nextDouble(), GU, r.nextBoolean());
+
+		PercentageUnit abv = Equations.calcAbvWithGravityChange(og, fg);
+		check("abv",
+			(og.get(SPECIFIC_GRAVITY) - fg.get(SPECIFIC_GRAVITY)) * Const.ABV_CONST / 100D,
+			abv.get());
+		checkEstimated("abv", fg.isEstimated(), abv);
+
+		double sgStart = og.get(SPECIFIC_GRAVITY);
+		double sgEnd = fg.get(SPECIFIC_GRAVITY);
+		check("attenuation",
+			(sgStart - sgEnd) / (sgStart - 1D),
+			Equations.calcAttenuation(og, fg));
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testColour()
+	{
+		double srm = colour();
+
+		check("colour after boil", srm * 1.42,
+			Equations.calcColourAfterBoil(new ColourUnit(srm)).get());
+
+		ColourUnit afterFermentation = Equations.calcColourAfterFermentation(
+			new ColourUnit(srm, SRM, false));
+		check("colour after fermentation",
+			srm * (1 - Const.COLOUR_LOSS_DURING_FERMENTATION),
+			afterFermentation.get());
+		checkEstimated("colour after fermentation", false, afterFermentation);
+
+		TimeUnit duration = new TimeUnit(r.nextDouble() * 2, HOURS, false);
+		check("stand temp", 100 - Const.HEAT_LOSS * duration.get(HOURS),
+			Equations.calcStandEndingTemperature(
+				new TemperatureUnit(100D), duration).get());
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testLinearInterpolation()
+	{
+		double v1 = volume(), v2 = volume(), c1 = colour(), c2 = colour();
+
+		ColourUnit result = Equations.calcCombinedColour(
+			new VolumeUnit(v1, MILLILITRES, false),
+			new ColourUnit(c1, SRM, false),
+			new VolumeUnit(v2, MILLILITRES, false),
+			new ColourUnit(c2, SRM, false));
+
+		double vc = v1 + v2;
+		check("combined colour", (v1 / vc * c1) + (v2 / vc * c2), result.get());
+		checkEstimated("combined colour", false, result);
+
+		// the combination lies between the two inputs
+		if (result.get() < Math.min(c1, c2) - 1E-9 || result.get() > Math.max(c1, c2) + 1E-9)
+		{
+			fail("combined colour out of range: " + c1 + ", " + c2 + " -> " + result.get());
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double volume()
+	{
+		return 100 + r.nextDouble() * 50000;
+	}
+
+	private static double gravity()
+	{
+		return r.nextDouble() * 120;
+	}
+
+	private static double temperature()
+	{
+		return r.nextDouble() * 100;
+	}
+
+	private static double colour()
+	{
+		return r.nextDouble() * 60;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String name, double expected, double actual)
+	{
+		if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual))
+		{
+			fail(name + ": expected " + expected + " but was " + actual);
+		}
+	}
+
+	private static void check(String name, double expected, double actual, double tolerance)
+	{
+		if (Math.abs(expected - actual) > tolerance)
+		{
+			fail(name + ": expected " + expected + " but was " + actual);
+		}
+	}
+
+	private static void checkEstimated(String name, boolean expected, Quantity q)
+	{
+		if (q.isEstimated() != expected)
+		{
+			fail(name + ": expected estimated=" + expected);
+		}
+	}
+
+	private static void fail(String msg)
+	{
+		if (failures++ < 20)
+		{
+			System.out.println(msg);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.time.LocalDate;
+import java.util.*;
+import mclachlan.brewday.EquipmentCalibrator;
+import mclachlan.brewday.EquipmentCalibrator.Parameter;
+import mclachlan.brewday.batch.Batch;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.process.Volume;
+import mclachlan.brewday.process.Volumes;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Brews batches of the test recipes with a known equipment profile, and
+ * checks that calibrating from a different starting profile recovers it,
+ * both with a full fit and with batches added one at a time.
+ */
+public class TestEquipmentCalibrator
+{
+	private static final String PROFILE = "Bears Head Brewery v3";
+
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return a batch with every estimate of the recipe run with the given
+	 * 	profile as a measurement
+	 */
+	private static Batch brew(Recipe recipe, EquipmentProfile profile, int n)
+	{
+		Recipe copy = new Recipe(recipe);
+		copy.run(profile, ProcessLog.Level.NONE);
+
+		Volumes measurements = new Volumes();
+		for (Map.Entry<String, Volume> e : copy.getVolumes().getVolumes().entrySet())
+		{
+			Volume v = new Volume(e.getKey(), e.getValue());
+			for (Map.Entry<Volume.Metric, Quantity> m : v.getMetrics().entrySet())
+			{
+				v.setMetric(m.getKey(), m.getValue(), false);
+			}
+			measurements.getVolumes().put(e.getKey(), v);
+		}
+
+		return new Batch(
+			recipe.getName() + " (" + n + ")",
+			"",
+			recipe.getName(),
+			LocalDate.now(),
+			measurements,
+			false);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String desc, EquipmentCalibrator calibrator, EquipmentProfile expected, double tolerance)
+	{
+		for (Parameter p : Parameter.values())
+		{
+			double e = p.get(expected);
+			double a = calibrator.get(p);
+
+			if (Math.abs(a - e) > tolerance * Math.max(Math.abs(e), 1E-3))
+			{
+				failures++;
+				System.out.println("FAIL " + desc + " " + p + ": expected " + e + " actual " + a);
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		EquipmentProfile start = db.getEquipmentProfiles().get(PROFILE);
+
+		EquipmentProfile actual = new EquipmentProfile(start);
+		Parameter.CONVERSION_EFFICIENCY.set(actual, Parameter.CONVERSION_EFFICIENCY.get(start) * 0.9);
+		Parameter.BOIL_EVAPOURATION_RATE.set(actual, Parameter.BOIL_EVAPOURATION_RATE.get(start) + 0.02);
+		Parameter.LAUTER_LOSS.set(actual, Parameter.LAUTER_LOSS.get(start) + 1000);
+		Parameter.TRUB_AND_CHILLER_LOSS.set(actual, Parameter.TRUB_AND_CHILLER_LOSS.get(start) + 500);
+		Parameter.HOP_UTILISATION.set(actual, Parameter.HOP_UTILISATION.get(start) * 0.8);
+
+		// a few brews of each recipe
+		List<Batch> batches = new ArrayList<>();
+		for (int n=1; n<=5; n++)
+		{
+			for (Recipe recipe : db.getRecipes().values())
+			{
+				if (PROFILE.equals(recipe.getEquipmentProfile()))
+				{
+					batches.add(brew(recipe, actual, n));
+				}
+			}
+		}
+
+		// full fit
+		EquipmentCalibrator calibrator = new EquipmentCalibrator(start);
+		long t = System.nanoTime();
+		int iterations = calibrator.fit(batches);
+		long fitNanos = System.nanoTime() - t;
+
+		check("fit", calibrator, actual, 0.05);
+
+		for (EquipmentCalibrator.BatchResiduals r : calibrator.getResiduals())
+		{
+			if (r.getResiduals().isEmpty() || r.getRmsError() > 0.01)
+			{
+				failures++;
+				System.out.println("FAIL residuals " + r.getBatch() + ": " +
+					r.getResiduals().size() + " rms " + r.getRmsError());
+			}
+		}
+
+		// the same batches, one at a time after a fit to the first brews
+		EquipmentCalibrator incremental = new EquipmentCalibrator(start);
+		incremental.fit(batches.subList(0, 4));
+		t = System.nanoTime();
+		for (Batch batch : batches.subList(4, batches.size()))
+		{
+			incremental.update(batch);
+		}
+		long updateNanos = (System.nanoTime() - t) / (batches.size() - 4);
+
+		check("update", incremental, calibrator.getCalibratedProfile(), 0.02);
+
+		System.out.printf("%d batches, fit %d iterations %.1f ms, update %.3f ms%n",
+			batches.size(), iterations, fitNanos / 1E6, updateNanos / 1E6);
+		for (Parameter p : Parameter.values())
+		{
+			System.out.printf("%-24s start %12.4f actual %12.4f fitted %12.4f%n",
+				p, p.get(start), p.get(actual), calibrator.get(p));
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
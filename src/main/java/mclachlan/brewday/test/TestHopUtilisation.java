@@ -0,0 +1,100 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.math.HopUtilisation;
+
+/**
+ * Checks the error of the tabulated hop utilisation curves against the
+ * exact ones, on random boil times and gravities. The error is relative to
+ * the peak of the curve, since some curves pass through zero.
+ */
+public class TestHopUtilisation
+{
+	private static final int RUNS = 1000000;
+
+	/** the documented bounds on the error within the tables */
+	private static final Map<HopUtilisation, Double> BOUNDS = new EnumMap<>(HopUtilisation.class);
+
+	static
+	{
+		BOUNDS.put(HopUtilisation.TINSETH, 1E-4);
+		BOUNDS.put(HopUtilisation.RAGER, 1E-4);
+		BOUNDS.put(HopUtilisation.GARETZ, 1E-4);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args)
+	{
+		Random r = new Random(1234);
+		int failures = 0;
+
+		for (HopUtilisation model : HopUtilisation.values())
+		{
+			double peak = Math.max(
+				Math.abs(model.calc(HopUtilisation.MAX_MINUTES, HopUtilisation.MIN_SG)),
+				Math.abs(model.calc(0, HopUtilisation.MIN_SG)));
+			double maxError = 0;
+
+			for (int i = 0; i < RUNS; i++)
+			{
+				// boil times of a few minutes and less are where the curves are
+				// closest to zero, so weight towards them
+				double minutes = Math.pow(r.nextDouble(), 2) * HopUtilisation.MAX_MINUTES;
+				double sg = HopUtilisation.MIN_SG +
+					r.nextDouble() * (HopUtilisation.MAX_SG - HopUtilisation.MIN_SG);
+
+				double exact = model.calc(minutes, sg);
+				double error = Math.abs(model.get(minutes, sg) - exact) / peak;
+				maxError = Math.max(maxError, error);
+			}
+
+			System.out.printf("%-10s max error %.2e of peak%n", model, maxError);
+			if (maxError > BOUNDS.get(model))
+			{
+				System.out.println(model + ": exceeds " + BOUNDS.get(model));
+				failures++;
+			}
+
+			// outside the table the curves are exact
+			for (double[] p : new double[][]{{400, 1.050}, {60, 1.250}, {60, 0.990}, {-1, 1.050}})
+			{
+				if (model.get(p[0], p[1]) != model.calc(p[0], p[1]))
+				{
+					System.out.println(model + ": not exact at " + Arrays.toString(p));
+					failures++;
+				}
+			}
+
+			// nor on the grid
+			if (model.get(60, 1.050) != model.calc(60, 1.050) &&
+				Math.abs(model.get(60, 1.050) - model.calc(60, 1.050)) > 1E-12)
+			{
+				System.out.println(model + ": not exact on the grid");
+				failures++;
+			}
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+		if (failures > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.math.TimeUnit;
+import mclachlan.brewday.process.Boil;
+import mclachlan.brewday.process.ProcessStep;
+import mclachlan.brewday.process.Volume;
+import mclachlan.brewday.recipe.IngredientAddition;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Checks that re-running a recipe after a step change gives the same volumes
+ * and log as a full run.
+ */
+public class TestIncrementalRun
+{
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static void testUnchangedSteps(Recipe recipe)
+	{
+		recipe.run();
+
+		for (ProcessStep step : new ArrayList<>(recipe.getSteps()))
+		{
+			recipe.run(step);
+			compare(recipe, "rerun "+step.getName());
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testChangedSteps(Recipe recipe)
+	{
+		recipe.run();
+
+		for (int i=0; i<recipe.getSteps().size(); i++)
+		{
+			ProcessStep step = recipe.getSteps().get(i);
+
+			if (step instanceof Boil)
+			{
+				Boil boil = (Boil)step;
+				boil.setDuration(new TimeUnit(
+					boil.getDuration().get(Quantity.Unit.MINUTES) + 15,
+					Quantity.Unit.MINUTES, false));
+			}
+			else if (!step.getIngredientAdditions().isEmpty())
+			{
+				List<IngredientAddition> additions = step.getIngredientAdditions();
+				step.removeIngredientAddition(additions.get(additions.size()-1));
+			}
+			else
+			{
+				continue;
+			}
+
+			recipe.run(step);
+			compare(recipe, "change "+step.getName());
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void compare(Recipe recipe, String desc)
+	{
+		String actual = describe(recipe);
+
+		recipe.run();
+		String expected = describe(recipe);
+
+		if (!expected.equals(actual))
+		{
+			failures++;
+			System.out.println("FAIL "+recipe.getName()+": "+desc);
+			System.out.println(" expected: "+expected);
+			System.out.println(" actual:   "+actual);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static String describe(Recipe recipe)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(recipe.getLog().getMsgs());
+		sb.append(recipe.getErrors());
+		sb.append(recipe.getWarnings());
+
+		for (String key : new TreeSet<>(recipe.getVolumes().getVolumes().keySet()))
+		{
+			Volume v = recipe.getVolumes().getVolume(key);
+			sb.append(key).append('=').append(v.describe());
+			sb.append(v.getIngredientAdditions().size()).append(';');
+		}
+		sb.append(new TreeSet<>(recipe.getVolumes().getOutputVolumes()));
+
+		return sb.toString();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database.getInstance().loadAll();
+
+		for (Recipe r : Database.getInstance().getRecipes().values())
+		{
+			Recipe recipe = new Recipe(r);
+			recipe.setEquipmentProfile(r.getEquipmentProfile());
+
+			testUnchangedSteps(recipe);
+			testChangedSteps(recipe);
+			System.out.println(r.getName()+": "+recipe.getSteps().size()+" steps");
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures+" failures");
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.batch.Batch;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.db.InventoryTransactionSerialiser;
+import mclachlan.brewday.inventory.InventoryFacade;
+import mclachlan.brewday.inventory.InventoryLedger;
+import mclachlan.brewday.inventory.InventoryLineItem;
+import mclachlan.brewday.inventory.InventoryTransaction;
+import mclachlan.brewday.math.Quantity;
+
+/**
+ * Runs batches against a copy of the test inventory, and checks the
+ * on-hand view, compensating entries and point-in-time queries of the
+ * inventory ledger against a replay of every entry, and the on-hand view
+ * rebuilt from the ledger on reload.
+ */
+public class TestInventoryLedger
+{
+	private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static Map<String, InventoryLineItem> copy(Map<String, InventoryLineItem> inventory)
+	{
+		Map<String, InventoryLineItem> result = new HashMap<>();
+		for (InventoryLineItem item : inventory.values())
+		{
+			result.put(item.getName(), new InventoryLineItem(
+				item.getIngredient(),
+				item.getType(),
+				Quantity.newQuantity(item.getQuantity().get(), item.getQuantity().getUnit()),
+				item.getUnit()));
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the inventory at the given time, by folding every entry
+	 */
+	private static Map<String, Double> replay(InventoryLedger ledger, LocalDateTime time)
+	{
+		Map<String, Double> balances = new HashMap<>();
+		for (InventoryTransaction t : ledger.getTransactions())
+		{
+			if (!t.getTimestamp().isAfter(time))
+			{
+				balances.merge(t.getInventoryId(), t.getQuantity().get(), Double::sum);
+			}
+		}
+		balances.values().removeIf(v -> v <= 0);
+		return balances;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String desc, Map<String, Double> expected, Map<String, InventoryLineItem> actual)
+	{
+		Set<String> ids = new TreeSet<>(expected.keySet());
+		ids.addAll(actual.keySet());
+
+		for (String id : ids)
+		{
+			Double e = expected.get(id);
+			InventoryLineItem a = actual.get(id);
+
+			if (e == null || a == null || Math.abs(e - a.getQuantity().get()) > 1E-6 * Math.max(1, e))
+			{
+				failures++;
+				System.out.println("FAIL " + desc + " " + id + ": expected " + e +
+					" actual " + (a == null ? null : a.getQuantity().get()));
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static Map<String, Double> toBalances(Map<String, InventoryLineItem> inventory)
+	{
+		Map<String, Double> result = new HashMap<>();
+		for (InventoryLineItem item : inventory.values())
+		{
+			result.put(item.getName(), item.getQuantity().get());
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		Map<String, Double> opening = toBalances(db.getInventory());
+
+		// the inventory from before the ledger becomes the opening balance
+		InventoryLedger ledger = new InventoryLedger(Collections.emptyList());
+		ledger.reconcile(copy(db.getInventory()), START);
+		Map<String, InventoryLineItem> inventory = ledger.getInventory();
+		check("opening", opening, ledger.getInventory(START));
+		check("opening view", opening, inventory);
+
+		Random r = new Random(2020);
+		LocalDateTime time = START;
+		List<LocalDateTime> times = new ArrayList<>();
+		List<Batch> batches = new ArrayList<>(db.getBatches().values());
+
+		for (int i = 0; i < 200; i++)
+		{
+			time = time.plusHours(1 + r.nextInt(48));
+			times.add(time);
+
+			Batch batch = batches.get(r.nextInt(batches.size()));
+			String batchName = batch.getName() + " " + i / 4;
+			List<InventoryFacade.InventoryLineItemDelta> deltas =
+				InventoryFacade.getInventoryDelta(batch.getRecipe(), true);
+
+			switch (r.nextInt(4))
+			{
+				case 0:
+					// a brew day, and sometimes an attempt to brew it twice
+					if (!ledger.isConsumed(batchName))
+					{
+						ledger.consume(batchName, deltas, time);
+					}
+					try
+					{
+						ledger.consume(batchName, deltas, time);
+						failures++;
+						System.out.println("FAIL double consume of " + batchName);
+					}
+					catch (BrewdayException e)
+					{
+						// expected
+					}
+					break;
+
+				case 1:
+					// undo a brew day
+					Map<String, Double> before = new HashMap<>();
+					for (InventoryTransaction t : ledger.getTransactions())
+					{
+						before.put(t.getInventoryId(), ledger.getBalance(t.getInventoryId()).get());
+					}
+					boolean consumed = ledger.isConsumed(batchName);
+					List<InventoryTransaction> consumption = ledger.getTransactions(batchName);
+
+					List<InventoryTransaction> restored = ledger.restore(batchName, deltas, time);
+
+					if (consumed)
+					{
+						for (InventoryTransaction t : restored)
+						{
+							if (t.getType() != InventoryTransaction.Type.REVERSAL)
+							{
+								failures++;
+								System.out.println("FAIL restore of " + batchName + ": " + t);
+							}
+						}
+					}
+					else if (!consumption.isEmpty() && !restored.isEmpty())
+					{
+						failures++;
+						System.out.println("FAIL second restore of " + batchName);
+					}
+					if (ledger.isConsumed(batchName))
+					{
+						failures++;
+						System.out.println("FAIL " + batchName + " still consumed");
+					}
+					for (InventoryTransaction t : restored)
+					{
+						before.merge(t.getInventoryId(), t.getQuantity().get(), Double::sum);
+					}
+					before.values().removeIf(v -> v <= 0);
+					check("restore " + batchName, before, inventory);
+					break;
+
+				case 2:
+					// a delivery of something in the recipe
+					InventoryFacade.InventoryLineItemDelta d = deltas.get(r.nextInt(deltas.size()));
+					ledger.receive(d.getIngredient(), d.getType(),
+						Quantity.newQuantity(d.getDelta().get() * 2, d.getDelta().getUnit()),
+						d.getUnit(), time);
+					break;
+
+				case 3:
+					// a stocktake, that finds some short or all gone
+					List<InventoryLineItem> items = new ArrayList<>(inventory.values());
+					if (!items.isEmpty())
+					{
+						InventoryLineItem item = items.get(r.nextInt(items.size()));
+						double shortfall = item.getQuantity().get() * (r.nextBoolean() ? 0.1 : 1);
+						ledger.adjust(item.getIngredient(), item.getType(),
+							Quantity.newQuantity(-shortfall, item.getQuantity().getUnit()),
+							item.getUnit(), time);
+					}
+					break;
+			}
+
+			check("view at " + time, replay(ledger, time), inventory);
+		}
+
+		// point in time queries
+		long replayNanos = 0, queryNanos = 0;
+		for (LocalDateTime t : times)
+		{
+			for (LocalDateTime q : Arrays.asList(t.minusMinutes(1), t, t.plusMinutes(1)))
+			{
+				long start = System.nanoTime();
+				Map<String, Double> expected = replay(ledger, q);
+				replayNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				Map<String, InventoryLineItem> actual = ledger.getInventory(q);
+				queryNanos += System.nanoTime() - start;
+
+				check("inventory at " + q, expected, actual);
+			}
+		}
+
+		// the ledger round trips through its silo
+		InventoryTransactionSerialiser serialiser = new InventoryTransactionSerialiser();
+		List<InventoryTransaction> loaded = new ArrayList<>();
+		for (InventoryTransaction t : ledger.getTransactionMap().values())
+		{
+			loaded.add(serialiser.fromMap(serialiser.toMap(t, db), db));
+		}
+		InventoryLedger reloaded = new InventoryLedger(loaded);
+		check("reloaded view", toBalances(inventory), reloaded.getInventory());
+		if (!reloaded.reconcile(copy(inventory), time).isEmpty())
+		{
+			failures++;
+			System.out.println("FAIL reloaded ledger does not match the inventory");
+		}
+		for (LocalDateTime t : times)
+		{
+			check("reloaded at " + t, replay(ledger, t), reloaded.getInventory(t));
+		}
+
+		System.out.printf("%d entries, point in time query %.1f us, full replay %.1f us%n",
+			ledger.getTransactions().size(),
+			queryNanos / 1E3 / times.size() / 3,
+			replayNanos / 1E3 / times.size() / 3);
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
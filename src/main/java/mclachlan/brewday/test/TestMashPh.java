@@ -0,0 +1,414 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.ingredients.Fermentable;
+import mclachlan.brewday.ingredients.Misc;
+import mclachlan.brewday.math.*;
+import mclachlan.brewday.process.Mash;
+import mclachlan.brewday.process.ProcessStep;
+import mclachlan.brewday.recipe.*;
+
+import static mclachlan.brewday.math.Quantity.Unit.*;
+
+/**
+ * Checks the mash pH solvers: the MpH pH against the spreadsheet's fixed
+ * 26 iterations over the mash steps of the test recipes, the acid additions
+ * of both pH models against their target pH, and the bracket widening and
+ * bisection fallback of the RootFinder.
+ */
+public class TestMashPh
+{
+	/** the tolerance of the acid addition solver in Equations, in ml */
+	private static final double ACID_TOLERANCE_ML = 1E-4;
+
+	private static int failures = 0;
+	private static int checks = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static class MashInputs
+	{
+		private final String desc;
+		private final WaterAddition water;
+		private final List<FermentableAddition> grainBill;
+		private final List<MiscAddition> miscs;
+
+		public MashInputs(String desc, WaterAddition water,
+			List<FermentableAddition> grainBill, List<MiscAddition> miscs)
+		{
+			this.desc = desc;
+			this.water = water;
+			this.grainBill = grainBill;
+			this.miscs = miscs;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String desc, boolean ok)
+	{
+		checks++;
+		if (!ok)
+		{
+			failures++;
+			System.out.println("FAIL " + desc);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the mash inputs of each mash step of the test recipes, picked
+	 * 	out the same way as {@link Mash#apply}
+	 */
+	private static List<MashInputs> getMashes(Database db)
+	{
+		List<MashInputs> result = new ArrayList<>();
+
+		for (Recipe recipe : new TreeMap<>(db.getRecipes()).values())
+		{
+			for (ProcessStep step : recipe.getSteps())
+			{
+				if (!(step instanceof Mash))
+				{
+					continue;
+				}
+
+				Mash mash = (Mash)step;
+				WaterAddition water = mash.getCombinedWaterProfile(mash.getDuration());
+				List<FermentableAddition> grainBill = new ArrayList<>();
+				List<MiscAddition> miscs = new ArrayList<>();
+
+				for (IngredientAddition item : mash.getIngredientAdditions())
+				{
+					if ((int)item.getTime().get(MINUTES) == (int)mash.getDuration().get(MINUTES))
+					{
+						if (item instanceof FermentableAddition)
+						{
+							grainBill.add((FermentableAddition)item);
+						}
+						else if (item instanceof MiscAddition)
+						{
+							miscs.add((MiscAddition)item);
+						}
+					}
+				}
+
+				if (water != null && !grainBill.isEmpty())
+				{
+					result.add(new MashInputs(recipe.getName() + "/" + mash.getName(), water, grainBill, miscs));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * The MpH model as it was, iterating the spreadsheet's fixed point a fixed
+	 * 26 times.
+	 */
+	private static double calcMashPhMpH26(
+		WaterAddition mashWater,
+		List<FermentableAddition> allAdditions,
+		List<MiscAddition> miscAdditions)
+	{
+		List<FermentableAddition> grainBill = new ArrayList<>();
+		for (FermentableAddition fa : allAdditions)
+		{
+			Fermentable f = fa.getFermentable();
+			if (f.getBufferingCapacity() != null && f.getBufferingCapacity().get() > 0 &&
+				f.getDistilledWaterPh() != null && f.getDistilledWaterPh().get() > 0)
+			{
+				grainBill.add(fa);
+			}
+		}
+
+		double totalGrainWeight = Equations.calcTotalGrainWeight(grainBill).get(KILOGRAMS);
+		double total_phi_bi = 0D;
+		double total_bi = 0D;
+
+		double acidMaltMeqL = 0D;
+		double lacticAcidMeqL = 0D;
+		double phosphoricAcidMeqL = 0D;
+
+		for (FermentableAddition fa : grainBill)
+		{
+			Fermentable fermentable = fa.getFermentable();
+
+			double ph_i = fermentable.getDistilledWaterPh().get(PH);
+			double b_i = fermentable.getBufferingCapacity().get(MEQ_PER_KILOGRAM);
+			double f_i = fa.getQuantity().get(KILOGRAMS) / totalGrainWeight;
+
+			total_phi_bi += ph_i * b_i * f_i;
+			total_bi += b_i * f_i;
+
+			if (fermentable.getLacticAcidContent() != null && fermentable.getLacticAcidContent().get() > 0)
+			{
+				double perc = fermentable.getLacticAcidContent().get(PERCENTAGE);
+				acidMaltMeqL += (-perc * fa.getQuantity().get(OUNCES) * 28.35 / 90.09 / mashWater.getVolume().get(LITRES) * 1000);
+			}
+		}
+		for (MiscAddition ma : miscAdditions)
+		{
+			Misc m = ma.getMisc();
+			if (m.getAcidContent() != null && m.getAcidContent().get(PERCENTAGE) > 0)
+			{
+				double perc = m.getAcidContent().get(PERCENTAGE);
+				double ml = ma.getQuantity().get(MILLILITRES);
+
+				if (m.getWaterAdditionFormula() == Misc.WaterAdditionFormula.LACTIC_ACID)
+				{
+					double density = 1 + 0.237 * perc;
+					lacticAcidMeqL += (-perc * density / 90.09 * 1000 * ml / mashWater.getVolume().get(LITRES));
+				}
+				else if (m.getWaterAdditionFormula() == Misc.WaterAdditionFormula.PHOSPHORIC_ACID)
+				{
+					double density = 1 + 0.49 * perc + 0.375 * Math.pow(perc, 2);
+					phosphoricAcidMeqL += (-perc * density / 98 * 1000 * ml / mashWater.getVolume().get(LITRES));
+				}
+			}
+		}
+
+		double distilledPh = total_phi_bi / total_bi;
+		double mashThickness = mashWater.getVolume().get(LITRES) / totalGrainWeight;
+		double maltBufferingCorrectionFactor = Database.getInstance().getSettings()
+			.getSnapshot().getMphMaltBufferingCorrectionFactor();
+		double ph_ra_slope = mashThickness / total_bi / maltBufferingCorrectionFactor;
+
+		double c_alkalinity = Equations.calcAlkalinitySimple(mashWater.getWater()).get(PPM) / 50;
+		double c_total = Equations.calcAlkalinity(mashWater.getWater()).get(PPM) / 50;
+		double caMeqL = 2 * mashWater.getWater().getCalcium().get(PPM) / 40.078;
+		double mgMeqL = 2 * mashWater.getWater().getMagnesium().get(PPM) / 24.305;
+
+		double ph = distilledPh;
+		for (int i = 0; i < 26; i++)
+		{
+			double fph = (1 + 0.0000004435 * Math.pow(10, ph) + 0.0000004435 * 0.00000000004667 * Math.pow(10, 2 * ph))
+				/ (0.0000004435 * Math.pow(10, ph));
+
+			double zra = c_alkalinity - c_total / fph - (caMeqL / 2.8) - (mgMeqL / 5.6) + phosphoricAcidMeqL + lacticAcidMeqL + acidMaltMeqL;
+
+			ph = distilledPh + ph_ra_slope * zra;
+		}
+
+		return ph;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static List<MiscAddition> with(List<MiscAddition> miscs, Misc acid, double ml)
+	{
+		List<MiscAddition> result = new ArrayList<>(miscs);
+		result.add(new MiscAddition(acid, new VolumeUnit(ml, MILLILITRES), MILLILITRES, new TimeUnit(0)));
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testMpH(List<MashInputs> mashes, List<Misc> acids)
+	{
+		double maxDiff = 0;
+
+		for (MashInputs m : mashes)
+		{
+			List<List<MiscAddition>> variants = new ArrayList<>();
+			variants.add(m.miscs);
+			for (Misc acid : acids)
+			{
+				variants.add(with(m.miscs, acid, 2));
+			}
+
+			for (List<MiscAddition> miscs : variants)
+			{
+				double expected = calcMashPhMpH26(m.water, m.grainBill, miscs);
+				double actual = Equations.calcMashPhMpH(m.water, m.grainBill, miscs).get(PH);
+				maxDiff = Math.max(maxDiff, Math.abs(expected - actual));
+
+				check("MpH " + m.desc + " " + miscs.size() + " miscs: expected " + expected + " actual " + actual,
+					Math.abs(expected - actual) < 1E-6);
+			}
+		}
+
+		System.out.printf("MpH: %d mashes, max difference from 26 iterations %.2e pH%n", mashes.size(), maxDiff);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private interface PhModel
+	{
+		PhUnit calcPh(WaterAddition water, List<FermentableAddition> grainBill, List<MiscAddition> miscs);
+	}
+
+	private interface AcidModel
+	{
+		VolumeUnit calcAcid(Misc acid, PhUnit target, WaterAddition water,
+			List<FermentableAddition> grainBill, List<MiscAddition> miscs);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testAcidAdditions(
+		String model,
+		List<MashInputs> mashes,
+		List<Misc> acids,
+		PhModel phModel,
+		AcidModel acidModel)
+	{
+		int solved = 0, ignored = 0;
+
+		for (MashInputs m : mashes)
+		{
+			for (Misc acid : acids)
+			{
+				for (double target : new double[]{5.0, 5.2, 5.4})
+				{
+					String desc = model + " " + m.desc + " " + acid.getName() + " to " + target;
+
+					VolumeUnit volume = acidModel.calcAcid(acid, new PhUnit(target), m.water, m.grainBill, m.miscs);
+					double phWithout = phModel.calcPh(m.water, m.grainBill, m.miscs).get(PH);
+
+					if (volume == null)
+					{
+						// only if the model takes no account of this acid
+						double phWith = phModel.calcPh(m.water, m.grainBill, with(m.miscs, acid, 10)).get(PH);
+						check(desc + ": no addition, but " + acid.getName() + " changes the pH", phWith == phWithout);
+						ignored++;
+						continue;
+					}
+
+					double ml = volume.get(MILLILITRES);
+
+					if (!(phWithout > target))
+					{
+						// already at the target, the minimum is suggested
+						check(desc + ": expected 0.01ml actual " + ml, ml == 0.01);
+						continue;
+					}
+
+					// pH falls as acid is added, so the target lies between a
+					// little less and a little more acid
+					double slack = 2 * ACID_TOLERANCE_ML;
+					double phLess = phModel.calcPh(m.water, m.grainBill, with(m.miscs, acid, Math.max(0, ml - slack))).get(PH);
+					double phMore = phModel.calcPh(m.water, m.grainBill, with(m.miscs, acid, ml + slack)).get(PH);
+
+					check(desc + ": " + ml + "ml gives pH in [" + phMore + ", " + phLess + "]",
+						phLess >= target && target >= phMore);
+					solved++;
+				}
+			}
+		}
+
+		System.out.printf("%s: %d acid additions solved, %d acids not modelled%n", model, solved, ignored);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void testRootFinder()
+	{
+		RootFinder finder = new RootFinder(1E-9, 50);
+		int[] evaluations = new int[1];
+
+		// widening the bracket upwards and downwards
+		double root = finder.solve(x -> x - 100, x -> 1, 0, 1, 0.5);
+		check("widen up: expected 100 actual " + root, Math.abs(root - 100) < 1E-9);
+
+		root = finder.solve(x -> x + 50, x -> 1, 0, 1, 0.5);
+		check("widen down: expected -50 actual " + root, Math.abs(root + 50) < 1E-9);
+
+		// a root on the end of the bracket
+		root = finder.solve(x -> x, x -> 1, 0, 1, 0.5);
+		check("root at lo: expected 0 actual " + root, root == 0);
+
+		root = finder.solve(x -> x - 1, x -> 1, 0, 1, 0.5);
+		check("root at hi: expected 1 actual " + root, root == 1);
+
+		// Newton's method diverges on atan from far enough out, so this only
+		// converges by falling back to bisection
+		DoubleUnaryOperator atan = x ->
+		{
+			evaluations[0]++;
+			return Math.atan(x);
+		};
+		root = finder.solve(atan, x -> 1 / (1 + x * x), -5, 10, 3);
+		check("bisection fallback: expected 0 actual " + root, Math.abs(root) < 1E-9);
+
+		// secant steps when there is no derivative
+		evaluations[0] = 0;
+		DoubleUnaryOperator cubic = x ->
+		{
+			evaluations[0]++;
+			return x * x * x - 2 * x - 5;
+		};
+		root = finder.solve(cubic, null, 0, 3, 1.5);
+		check("secant: expected 2.0945514815423265 actual " + root,
+			Math.abs(root - 2.0945514815423265) < 1E-9);
+		check("secant: " + evaluations[0] + " evaluations", evaluations[0] < 20);
+
+		// stops at the iteration limit, still inside the bracket
+		root = new RootFinder(0, 5).solve(x -> x - Math.PI, null, 0, 10, 9);
+		check("iteration limit: " + root + " outside the bracket", root >= 0 && root <= 10);
+
+		// no root at all
+		try
+		{
+			root = finder.solve(x -> x * x + 1, x -> 2 * x, -1, 1, 0);
+			check("no root: returned " + root, false);
+		}
+		catch (BrewdayException e)
+		{
+			check("no root", true);
+		}
+
+		// NaN is not a sign change
+		try
+		{
+			root = finder.solve(x -> Math.log(x), x -> 1 / x, -2, -1, -1.5);
+			check("NaN: returned " + root, false);
+		}
+		catch (BrewdayException e)
+		{
+			check("NaN", true);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		List<MashInputs> mashes = getMashes(db);
+
+		List<Misc> acids = new ArrayList<>();
+		for (Misc misc : new TreeMap<>(db.getMiscs()).values())
+		{
+			if (misc.isAcidAddition() && misc.getAcidContent() != null && misc.getAcidContent().get() > 0)
+			{
+				acids.add(misc);
+			}
+		}
+
+		testMpH(mashes, acids);
+		testAcidAdditions("MpH", mashes, acids,
+			Equations::calcMashPhMpH, Equations::calcMashAcidAdditionMpH);
+		testAcidAdditions("EZ Water", mashes, acids,
+			Equations::calcMashPhEzWater, Equations::calcMashAcidAdditionEzWater);
+		testRootFinder();
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures in " + checks + " checks");
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.time.LocalDate;
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.inventory.InventoryLineItem;
+import mclachlan.brewday.inventory.MaterialsPlanner;
+import mclachlan.brewday.inventory.MaterialsPlanner.PlannedBatch;
+import mclachlan.brewday.math.Quantity;
+import mclachlan.brewday.recipe.IngredientAddition;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Plans a quarter of brewing the test recipes, and checks the requirements
+ * and dated shopping list against sums over the recipe bills of materials.
+ */
+public class TestMaterialsPlanner
+{
+	private static final LocalDate START = LocalDate.of(2021, 1, 1);
+
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the amount of each ingredient used by the batches on or before
+	 * 	the given date, in base units, keyed on inventory id
+	 */
+	private static Map<String, Double> getRequired(List<PlannedBatch> batches, LocalDate date)
+	{
+		Map<String, Double> result = new HashMap<>();
+		for (PlannedBatch batch : batches)
+		{
+			if (!batch.getDate().isAfter(date))
+			{
+				Recipe recipe = Database.getInstance().getRecipes().get(batch.getRecipe());
+				for (IngredientAddition ia : recipe.getIngredientsBillOfMaterials())
+				{
+					result.merge(ia.getInventoryId(), ia.getQuantity().get() * batch.getScale(), Double::sum);
+				}
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static double getOnHand(String inventoryId)
+	{
+		InventoryLineItem item = Database.getInstance().getInventory().get(inventoryId);
+		return item == null ? 0 : item.getQuantity().get();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String desc, double expected, Quantity actual)
+	{
+		if (Math.abs(expected - actual.get()) > 1E-6 * Math.max(1, Math.abs(expected)))
+		{
+			failures++;
+			System.out.println("FAIL " + desc + ": expected " + expected + " actual " + actual.get());
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void checkPlan(String desc, List<PlannedBatch> batches, MaterialsPlanner.Plan plan)
+	{
+		Map<String, Double> required = getRequired(batches, LocalDate.MAX);
+
+		if (plan.getRequirements().size() != required.size())
+		{
+			failures++;
+			System.out.println("FAIL " + desc + ": " + plan.getRequirements().size() +
+				" requirements, expected " + required.size());
+		}
+
+		for (MaterialsPlanner.Requirement r : plan.getRequirements())
+		{
+			String id = r.getInventoryId();
+			double expected = required.getOrDefault(id, 0D);
+			double onHand = getOnHand(id);
+
+			check(desc + " required " + id, expected, r.getRequired());
+			check(desc + " in inventory " + id, onHand, r.getInInventory());
+			check(desc + " to buy " + id, Math.max(0, expected - onHand), r.getToBuy());
+		}
+
+		// what must be bought by each date is the shortfall so far, less what
+		// has been bought already
+		SortedSet<LocalDate> dates = new TreeSet<>();
+		batches.forEach(b -> dates.add(b.getDate()));
+
+		Map<LocalDate, Map<String, Quantity>> shoppingList = new HashMap<>();
+		for (MaterialsPlanner.ShoppingListItem item : plan.getShoppingList())
+		{
+			shoppingList.computeIfAbsent(item.getNeededBy(), d -> new HashMap<>())
+				.put(item.getInventoryId(), item.getQuantity());
+		}
+
+		Map<String, Double> shortfall = new HashMap<>();
+		Map<String, LocalDate> neededBy = new HashMap<>();
+		for (LocalDate date : dates)
+		{
+			Map<String, Quantity> items = shoppingList.getOrDefault(date, new HashMap<>());
+
+			for (Map.Entry<String, Double> e : getRequired(batches, date).entrySet())
+			{
+				String id = e.getKey();
+				double total = Math.max(0, e.getValue() - getOnHand(id));
+				double buy = total - shortfall.getOrDefault(id, 0D);
+				shortfall.put(id, total);
+
+				if (buy > 1E-6)
+				{
+					neededBy.putIfAbsent(id, date);
+					Quantity q = items.remove(id);
+					if (q == null)
+					{
+						failures++;
+						System.out.println("FAIL " + desc + " " + id + " not bought by " + date);
+					}
+					else
+					{
+						check(desc + " buy " + id + " by " + date, buy, q);
+					}
+				}
+			}
+
+			for (String id : items.keySet())
+			{
+				failures++;
+				System.out.println("FAIL " + desc + " " + id + " bought by " + date + " but not needed");
+			}
+		}
+
+		for (MaterialsPlanner.Requirement r : plan.getRequirements())
+		{
+			if (!Objects.equals(neededBy.get(r.getInventoryId()), r.getNeededBy()))
+			{
+				failures++;
+				System.out.println("FAIL " + desc + " " + r.getInventoryId() + " needed by " +
+					r.getNeededBy() + ", expected " + neededBy.get(r.getInventoryId()));
+			}
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		List<String> recipes = new ArrayList<>(new TreeMap<>(db.getRecipes()).keySet());
+		MaterialsPlanner planner = new MaterialsPlanner();
+
+		// each recipe on its own
+		for (String recipe : recipes)
+		{
+			List<PlannedBatch> batches = Collections.singletonList(new PlannedBatch(recipe, 1, START));
+			checkPlan(recipe, batches, planner.plan(batches));
+		}
+
+		// a quarter of brewing, several batches a day
+		Random r = new Random(2021);
+		List<PlannedBatch> quarter = new ArrayList<>();
+		for (int i = 0; i < 300; i++)
+		{
+			quarter.add(new PlannedBatch(
+				recipes.get(r.nextInt(recipes.size())),
+				0.5 + r.nextInt(4) * 0.5,
+				START.plusDays(r.nextInt(90))));
+		}
+
+		long t = System.nanoTime();
+		MaterialsPlanner.Plan plan = planner.plan(quarter);
+		long planNanos = System.nanoTime() - t;
+		checkPlan("quarter", quarter, plan);
+
+		// editing a recipe changes the plan once it is invalidated
+		String name = recipes.get(0);
+		Recipe recipe = db.getRecipes().get(name);
+		IngredientAddition ia = recipe.getIngredients().get(0);
+		Quantity before = ia.getQuantity();
+		try
+		{
+			ia.setQuantity(Quantity.newQuantity(before.get() * 2, before.getUnit()));
+			planner.invalidate(recipe);
+			checkPlan("edited", quarter, planner.plan(quarter));
+		}
+		finally
+		{
+			ia.setQuantity(before);
+			planner.invalidate(recipe);
+		}
+
+		// replacing a recipe is picked up without an invalidate
+		Recipe replacement = new Recipe(recipe);
+		db.getRecipes().put(name, replacement);
+		try
+		{
+			IngredientAddition replaced = replacement.getIngredients().get(0);
+			replaced.setQuantity(Quantity.newQuantity(replaced.getQuantity().get() * 3, replaced.getQuantity().getUnit()));
+			checkPlan("replaced", quarter, planner.plan(quarter));
+		}
+		finally
+		{
+			db.getRecipes().put(name, recipe);
+		}
+
+		// planning again with the bills of materials compiled
+		int runs = 1000;
+		t = System.nanoTime();
+		for (int i = 0; i < runs; i++)
+		{
+			planner.plan(quarter);
+		}
+		long cachedNanos = (System.nanoTime() - t) / runs;
+
+		System.out.printf("%d batches, %d ingredients, %d to buy: first plan %.3f ms, then %.3f ms%n",
+			quarter.size(), plan.getRequirements().size(), plan.getShoppingList().size(),
+			planNanos / 1E6, cachedNanos / 1E6);
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
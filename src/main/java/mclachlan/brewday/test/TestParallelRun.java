@@ -0,0 +1,127 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.process.ProcessStep;
+import mclachlan.brewday.process.Volume;
+import mclachlan.brewday.process.Volumes;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Checks that running a recipe with independent branches applied in parallel
+ * gives the same volumes as applying the steps one at a time, and the same
+ * log every time.
+ */
+public class TestParallelRun
+{
+	private static final int RUNS = 200;
+
+	/*-------------------------------------------------------------------------*/
+	private static int testRecipe(Recipe recipe)
+	{
+		int failures = 0;
+
+		String expected = describe(runSequential(recipe));
+
+		recipe.run();
+		String expectedLog = recipe.getLog().getMsgs().toString();
+
+		for (int i=0; i<RUNS; i++)
+		{
+			recipe.run();
+
+			if (!expected.equals(describe(recipe.getVolumes())))
+			{
+				failures++;
+				System.out.println("FAIL "+recipe.getName()+": volumes differ on run "+i);
+			}
+			if (!expectedLog.equals(recipe.getLog().getMsgs().toString()))
+			{
+				failures++;
+				System.out.println("FAIL "+recipe.getName()+": log differs on run "+i);
+			}
+		}
+
+		return failures;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static Volumes runSequential(Recipe recipe)
+	{
+		Volumes volumes = new Volumes();
+		ProcessLog log = new ProcessLog();
+		EquipmentProfile equipment =
+			Database.getInstance().getEquipmentProfiles().get(recipe.getEquipmentProfile());
+
+		recipe.sortSteps(log);
+
+		for (ProcessStep s : recipe.getSteps())
+		{
+			s.setRecipe(recipe);
+			try
+			{
+				s.apply(volumes, equipment, log);
+			}
+			catch (BrewdayException e)
+			{
+				log.addError(e.getMessage());
+			}
+		}
+
+		return volumes;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static String describe(Volumes volumes)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (String key : new TreeSet<>(volumes.getVolumes().keySet()))
+		{
+			Volume v = volumes.getVolume(key);
+			sb.append(key).append('=').append(v.describe());
+			sb.append(v.getIngredientAdditions().size()).append(';');
+		}
+		sb.append(new TreeSet<>(volumes.getOutputVolumes()));
+
+		return sb.toString();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database.getInstance().loadAll();
+
+		int failures = 0;
+		for (Recipe r : Database.getInstance().getRecipes().values())
+		{
+			Recipe recipe = new Recipe(r);
+			recipe.setEquipmentProfile(r.getEquipmentProfile());
+
+			failures += testRecipe(recipe);
+			System.out.println(r.getName()+": "+recipe.getSteps().size()+" steps");
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures+" failures");
+	}
+}
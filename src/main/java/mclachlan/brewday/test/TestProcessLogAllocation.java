@@ -0,0 +1,128 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.process.ProcessLog;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Measures the time and heap allocation per Recipe.run() at each log level,
+ * and checks that the quiet levels allocate measurably less than MESSAGE.
+ */
+public class TestProcessLogAllocation
+{
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 1000;
+
+	/** the most a quiet level may allocate, as a fraction of MESSAGE */
+	private static final double MAX_QUIET_RATIO = 0.75;
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return bytes allocated so far by all live threads, which includes the
+	 * pool threads that recipe steps run on
+	 */
+	private static long getAllocatedBytes()
+	{
+		com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+		long result = 0;
+		for (long b : bean.getThreadAllocatedBytes(bean.getAllThreadIds()))
+		{
+			if (b > 0)
+			{
+				result += b;
+			}
+		}
+		return result;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return bytes allocated per run
+	 */
+	private static long measure(List<Recipe> recipes, ProcessLog.Level level)
+	{
+		long bytes = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i=0; i<ITERATIONS; i++)
+		{
+			for (Recipe r : recipes)
+			{
+				r.run(level);
+			}
+		}
+
+		long time = System.nanoTime() - start;
+		bytes = getAllocatedBytes() - bytes;
+		int runs = ITERATIONS * recipes.size();
+
+		System.out.printf("%-8s %10.1f us/run %12d bytes/run%n",
+			level, time/1000D/runs, bytes/runs);
+
+		return bytes/runs;
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database.getInstance().loadAll();
+
+		List<Recipe> recipes = new ArrayList<>();
+		for (Recipe r : Database.getInstance().getRecipes().values())
+		{
+			recipes.add(new Recipe(r));
+		}
+
+		for (int i=0; i<WARMUP; i++)
+		{
+			for (ProcessLog.Level level : ProcessLog.Level.values())
+			{
+				for (Recipe r : recipes)
+				{
+					r.run(level);
+				}
+			}
+		}
+
+		Map<ProcessLog.Level, Long> bytes = new EnumMap<>(ProcessLog.Level.class);
+		for (ProcessLog.Level level : ProcessLog.Level.values())
+		{
+			bytes.put(level, measure(recipes, level));
+		}
+
+		int failures = 0;
+		long max = (long)(bytes.get(ProcessLog.Level.MESSAGE) * MAX_QUIET_RATIO);
+		for (ProcessLog.Level level : Arrays.asList(ProcessLog.Level.NONE, ProcessLog.Level.ERROR))
+		{
+			if (bytes.get(level) > max)
+			{
+				failures++;
+				System.out.println("FAIL " + level + " allocates " + bytes.get(level) +
+					" bytes/run, expected at most " + max);
+			}
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
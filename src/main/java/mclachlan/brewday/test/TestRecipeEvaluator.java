@@ -0,0 +1,85 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.RecipeEvaluator;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.recipe.Recipe;
+
+/**
+ * Compares bulk evaluation against running each recipe in turn, and times
+ * both over the recipes in the database.
+ */
+public class TestRecipeEvaluator
+{
+	private static final int ITERATIONS = 50;
+
+	/*-------------------------------------------------------------------------*/
+	private static String describe(RecipeEvaluator.Result r)
+	{
+		return r.getRecipeName()+": "+
+			(r.getBeer()==null ? "no beer" : r.getBeer().describe().replaceAll("\n", "; "))+
+			" "+r.getErrors();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		Database.getInstance().loadAll();
+
+		List<Recipe> recipes = new ArrayList<>(Database.getInstance().getRecipes().values());
+		RecipeEvaluator evaluator = new RecipeEvaluator();
+
+		List<String> expected = new ArrayList<>();
+		for (Recipe r : recipes)
+		{
+			expected.add(describe(evaluator.evaluate(r)));
+		}
+
+		List<String> actual = new ArrayList<>();
+		evaluator.evaluate(recipes, r -> actual.add(describe(r)));
+
+		for (String s : actual)
+		{
+			System.out.println(s);
+		}
+		System.out.println(expected.equals(actual) ? "OK" : "FAIL: bulk results differ");
+
+		// timings
+		long start = System.nanoTime();
+		for (int i=0; i<ITERATIONS; i++)
+		{
+			for (Recipe r : recipes)
+			{
+				evaluator.evaluate(r);
+			}
+		}
+		long serial = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i=0; i<ITERATIONS; i++)
+		{
+			evaluator.evaluate(recipes);
+		}
+		long bulk = System.nanoTime() - start;
+
+		System.out.printf("%d recipes x %d: serial %.1fms, bulk %.1fms%n",
+			recipes.size(), ITERATIONS, serial/1E6, bulk/1E6);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import mclachlan.brewday.db.Database;
+
+/**
+ * Measures load and save throughput of the silos through the serialisers.
+ * Works on a scratch copy of the given db dir (data/db by default).
+ * <p>
+ * Saves of an unchanged database marshal every silo but write nothing, so
+ * the save timing is the serialisation cost.
+ */
+public class TestSerialiserThroughput
+{
+	private static final int WARMUP = 5;
+	private static final int ITERATIONS = 20;
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		String dbDir = args.length > 0 ? args[0] : "data/db";
+
+		Path scratch = Files.createTempDirectory("brewday");
+		for (File f : new File(dbDir).listFiles((dir, name) -> name.endsWith(".json")))
+		{
+			Files.copy(f.toPath(), scratch.resolve(f.getName()), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		Database db = new Database(scratch.toString());
+
+		for (int i=0; i<WARMUP; i++)
+		{
+			db.loadAll();
+			db.saveAll();
+		}
+
+		Map<String, Long> loadTotals = new TreeMap<>();
+		long loadTime = 0, saveTime = 0;
+
+		for (int i=0; i<ITERATIONS; i++)
+		{
+			long start = System.nanoTime();
+			db.loadAll();
+			loadTime += System.nanoTime() - start;
+
+			for (Map.Entry<String, Long> e : db.getLoadTimings().entrySet())
+			{
+				loadTotals.merge(e.getKey(), e.getValue(), Long::sum);
+			}
+
+			start = System.nanoTime();
+			db.saveAll();
+			saveTime += System.nanoTime() - start;
+		}
+
+		Map<String, Integer> counts = new HashMap<>();
+		counts.put(Database.FERMENTABLES_JSON, db.getFermentables().size());
+		counts.put(Database.HOPS_JSON, db.getHops().size());
+		counts.put(Database.YEASTS_JSON, db.getYeasts().size());
+		counts.put(Database.MISCS_JSON, db.getMiscs().size());
+		counts.put(Database.WATERS_JSON, db.getWaters().size());
+		counts.put(Database.WATER_PARAMETERS_JSON, db.getWaterParameters().size());
+		counts.put(Database.STYLES_JSON, db.getStyles().size());
+
+		System.out.printf("%-24s %8s %10s %12s%n", "silo", "objects", "load ms", "objects/ms");
+		for (Map.Entry<String, Long> e : loadTotals.entrySet())
+		{
+			double ms = e.getValue() / (double)ITERATIONS;
+			Integer count = counts.get(e.getKey());
+
+			System.out.printf("%-24s %8s %10.2f %12s%n",
+				e.getKey(),
+				count == null ? "" : count,
+				ms,
+				count == null || ms == 0 ? "" : String.format("%.1f", count / ms));
+		}
+
+		System.out.printf("loadAll: %.2f ms%n", loadTime / 1000000D / ITERATIONS);
+		System.out.printf("saveAll: %.2f ms%n", saveTime / 1000000D / ITERATIONS);
+
+		for (File f : scratch.toFile().listFiles())
+		{
+			f.delete();
+		}
+		scratch.toFile().delete();
+	}
+}
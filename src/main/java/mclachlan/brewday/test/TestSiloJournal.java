@@ -0,0 +1,243 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.db.v2.SiloJournal;
+import mclachlan.brewday.db.v2.V2DataObject;
+import mclachlan.brewday.db.v2.V2SerialiserMap;
+import mclachlan.brewday.db.v2.V2Utils;
+
+/**
+ * Saves through a silo journal that was left with a torn final line, and
+ * checks that every later save survives a reload and a compaction, and that
+ * a reload leaves nothing to save.
+ */
+public class TestSiloJournal
+{
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static class Note implements V2DataObject
+	{
+		private String name;
+		private String text;
+
+		Note(String name, String text)
+		{
+			this.name = name;
+			this.text = text;
+		}
+
+		@Override
+		public String getName()
+		{
+			return name;
+		}
+
+		@Override
+		public void setName(String newName)
+		{
+			this.name = newName;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static class NoteSerialiser implements V2SerialiserMap<Note>
+	{
+		@Override
+		public Map toMap(Note note, Database db)
+		{
+			Map result = new HashMap();
+			result.put("name", note.name);
+			result.put("text", note.text);
+			return result;
+		}
+
+		@Override
+		public Note fromMap(Map<String, ?> map, Database db)
+		{
+			return new Note((String)map.get("name"), (String)map.get("text"));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static void check(String desc, Map<String, String> expected, Map<String, Note> actual)
+	{
+		Map<String, String> texts = new TreeMap<>();
+		for (Note note : actual.values())
+		{
+			texts.put(note.name, note.text);
+		}
+
+		if (!new TreeMap<>(expected).equals(texts))
+		{
+			failures++;
+			System.out.println("FAIL " + desc + ": expected " + new TreeMap<>(expected) + " actual " + texts);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the silo as the app would load it, the snapshot with the journal
+	 * 	applied
+	 */
+	private static Map<String, Note> reload(File snapshot) throws IOException
+	{
+		return reload(new SiloJournal<>(snapshot, new NoteSerialiser()), snapshot);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static Map<String, Note> reload(SiloJournal<Note> journal, File snapshot) throws IOException
+	{
+		NoteSerialiser serialiser = new NoteSerialiser();
+		Map<String, Note> result = new HashMap<>();
+		List<Map> records = new ArrayList<>();
+
+		if (snapshot.exists())
+		{
+			try (BufferedReader reader = Files.newBufferedReader(snapshot.toPath(), StandardCharsets.UTF_8))
+			{
+				V2Utils.streamObjects(reader, obj ->
+				{
+					Note note = serialiser.fromMap(obj, null);
+					result.put(note.getName(), note);
+					records.add(obj);
+				});
+			}
+		}
+
+		return journal.replay(result, records, null);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		File dir = Files.createTempDirectory("brewday").toFile();
+		File snapshot = new File(dir, "notes.json");
+		File journalFile = new File(snapshot.getPath() + SiloJournal.JOURNAL_SUFFIX);
+
+		try
+		{
+			SiloJournal<Note> journal = new SiloJournal<>(snapshot, new NoteSerialiser());
+			Map<String, Note> notes = reload(journal, snapshot);
+			Map<String, String> expected = new HashMap<>();
+
+			for (int i = 0; i < 3; i++)
+			{
+				notes.put("n" + i, new Note("n" + i, "first " + i));
+				expected.put("n" + i, "first " + i);
+			}
+			journal.append(notes, null);
+
+			// a crash part way through the next save
+			Files.write(journalFile.toPath(),
+				"{\"upsert\":{\"n0\":{\"name\":\"n0\",\"te".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+			check("torn tail", expected, reload(snapshot));
+
+			// the app carries on from the torn journal and saves twice
+			journal = new SiloJournal<>(snapshot, new NoteSerialiser());
+			notes = reload(journal, snapshot);
+
+			notes.get("n0").text = "second";
+			expected.put("n0", "second");
+			journal.append(notes, null);
+
+			notes.remove("n1");
+			expected.remove("n1");
+			notes.put("n3", new Note("n3", "third"));
+			expected.put("n3", "third");
+			journal.append(notes, null);
+
+			check("saved after torn tail", expected, reload(snapshot));
+
+			// a torn tail longer than the buffer used to find the last line
+			StringBuilder longLine = new StringBuilder("{\"upsert\":{\"n2\":{\"name\":\"n2\",\"text\":\"");
+			for (int i = 0; i < 10000; i++)
+			{
+				longLine.append('x');
+			}
+			Files.write(journalFile.toPath(),
+				longLine.toString().getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+			notes.get("n2").text = "fourth";
+			expected.put("n2", "fourth");
+			journal.append(notes, null);
+			check("saved after long torn tail", expected, reload(snapshot));
+
+			// a torn tail that is the whole journal
+			journal.compact();
+			Files.write(journalFile.toPath(),
+				"{\"upsert\"".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE_NEW);
+			notes.get("n3").text = "fifth";
+			expected.put("n3", "fifth");
+			journal.append(notes, null);
+			check("saved after torn only line", expected, reload(snapshot));
+
+			journal.compact();
+			if (journalFile.exists())
+			{
+				failures++;
+				System.out.println("FAIL journal not removed by compaction");
+			}
+			check("compacted", expected, reload(snapshot));
+
+			// nothing to save straight after loading, from the snapshot alone
+			// or with a journal over it
+			for (int i = 0; i < 2; i++)
+			{
+				journal = new SiloJournal<>(snapshot, new NoteSerialiser());
+				notes = reload(journal, snapshot);
+				if (journal.getChange(notes, null) != null)
+				{
+					failures++;
+					System.out.println("FAIL unchanged silo journalled after reload " + i);
+				}
+
+				notes.get("n0").text = "sixth " + i;
+				expected.put("n0", "sixth " + i);
+				journal.append(notes, null);
+			}
+			check("saved after reload", expected, reload(snapshot));
+		}
+		finally
+		{
+			File[] files = dir.listFiles();
+			if (files != null)
+			{
+				for (File f : files)
+				{
+					Files.deleteIfExists(f.toPath());
+				}
+			}
+			Files.deleteIfExists(dir.toPath());
+		}
+
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import mclachlan.brewday.db.v2.V2Utils;
+
+/**
+ * Compares the materialising and streaming JSON load paths for each silo file
+ * in the given db dir (data/db by default), reporting wall time and peak heap.
+ */
+public class TestSiloLoad
+{
+	private static final int ITERATIONS = 10;
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args) throws Exception
+	{
+		String dbDir = args.length > 0 ? args[0] : "data/db";
+
+		File[] files = new File(dbDir).listFiles((dir, name) ->
+			name.endsWith(".json") && !name.equals("settings.json"));
+		Arrays.sort(files);
+
+		System.out.printf("%-24s %8s %12s %12s %12s %12s%n",
+			"file", "kb", "list ms", "list heap kb", "stream ms", "stream heap kb");
+
+		for (File f : files)
+		{
+			// warm up both paths
+			for (int i=0; i<ITERATIONS; i++)
+			{
+				loadList(f);
+				loadStream(f);
+			}
+
+			long[] list = measure(f, true);
+			long[] stream = measure(f, false);
+
+			System.out.printf("%-24s %8d %12.2f %12d %12.2f %12d%n",
+				f.getName(),
+				f.length()/1024,
+				list[0]/1000000D/ITERATIONS,
+				list[1]/1024,
+				stream[0]/1000000D/ITERATIONS,
+				stream[1]/1024);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return [total nanos, peak heap growth in bytes]
+	 */
+	private static long[] measure(File f, boolean materialise) throws IOException
+	{
+		List<MemoryPoolMXBean> pools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				pools.add(pool);
+			}
+		}
+
+		System.gc();
+		long baseline = 0;
+		for (MemoryPoolMXBean pool : pools)
+		{
+			pool.resetPeakUsage();
+			baseline += pool.getUsage().getUsed();
+		}
+
+		long start = System.nanoTime();
+		for (int i=0; i<ITERATIONS; i++)
+		{
+			if (materialise)
+			{
+				loadList(f);
+			}
+			else
+			{
+				loadStream(f);
+			}
+		}
+		long time = System.nanoTime() - start;
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : pools)
+		{
+			peak += pool.getPeakUsage().getUsed();
+		}
+
+		return new long[]{time, Math.max(0, peak - baseline)};
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static int loadList(File f) throws IOException
+	{
+		try (BufferedReader reader = getReader(f))
+		{
+			int count = 0;
+			for (Map map : V2Utils.getObjects(reader))
+			{
+				count += map.size();
+			}
+			return count;
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static int loadStream(File f) throws IOException
+	{
+		try (BufferedReader reader = getReader(f))
+		{
+			int[] count = new int[1];
+			V2Utils.streamObjects(reader, map -> count[0] += map.size());
+			return count[0];
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	private static BufferedReader getReader(File f) throws IOException
+	{
+		return new BufferedReader(
+			new InputStreamReader(
+				new FileInputStream(f),
+				StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of Brewday.
+ *
+ * Brewday is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Brewday is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Brewday.  If not, see https://www.gnu.org/licenses.
+ */
+
+package mclachlan.brewday.test;
+
+import java.util.*;
+import mclachlan.brewday.db.Database;
+import mclachlan.brewday.ingredients.Misc;
+import mclachlan.brewday.ingredients.Water;
+import mclachlan.brewday.math.WaterBuilder;
+import mclachlan.brewday.math.WaterParameters;
+
+/**
+ * Solves every water profile in the database for all the targets at once,
+ * and checks the feasible targets, their additions and their ranking against
+ * solving for each target in turn.
+ */
+public class TestWaterBuilderTargets
+{
+	private static int failures = 0;
+
+	/*-------------------------------------------------------------------------*/
+	private static void fail(String message)
+	{
+		failures++;
+		System.out.println("FAIL " + message);
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the number of targets that can be reached
+	 */
+	private static int check(
+		String desc,
+		WaterBuilder wb,
+		Water water,
+		List<WaterParameters> targets,
+		Map<Misc.WaterAdditionFormula, Boolean> allowed,
+		WaterBuilder.AdditionGoal goal)
+	{
+		List<WaterBuilder.Solution> batch = wb.calcAdditions(water, targets, allowed, goal);
+
+		// one at a time
+		Map<String, Map<Misc.WaterAdditionFormula, Double>> expected = new TreeMap<>();
+		for (WaterParameters target : targets)
+		{
+			Map<Misc.WaterAdditionFormula, Double> additions =
+				wb.calcAdditions(water, target, allowed, goal);
+			if (additions != null)
+			{
+				expected.put(target.getName(), additions);
+			}
+		}
+
+		Set<String> actualNames = new TreeSet<>();
+		for (WaterBuilder.Solution s : batch)
+		{
+			actualNames.add(s.getTarget().getName());
+		}
+		if (!expected.keySet().equals(actualNames) || batch.size() != expected.size())
+		{
+			fail(desc + ": feasible " + actualNames + ", expected " + expected.keySet());
+		}
+
+		WaterBuilder.Solution previous = null;
+		for (WaterBuilder.Solution s : batch)
+		{
+			String name = s.getTarget().getName();
+			Map<Misc.WaterAdditionFormula, Double> additions = expected.get(name);
+
+			if (additions != null && !additions.equals(s.getAdditions()))
+			{
+				fail(desc + " " + name + ": " + s.getAdditions() + ", expected " + additions);
+			}
+
+			double total = 0;
+			for (double d : s.getAdditions().values())
+			{
+				total += d;
+			}
+			if (Math.abs(total - s.getTotalAdditions()) > 1E-9 * Math.max(1, total))
+			{
+				fail(desc + " " + name + ": total " + s.getTotalAdditions() + ", expected " + total);
+			}
+
+			// least total additions first, ties by name
+			if (previous != null)
+			{
+				int c = Double.compare(previous.getTotalAdditions(), s.getTotalAdditions());
+				if (c > 0 || c == 0 && previous.getTarget().getName().compareTo(name) > 0)
+				{
+					fail(desc + ": " + previous.getTarget().getName() + " (" + previous.getTotalAdditions() +
+						") ranked before " + name + " (" + s.getTotalAdditions() + ")");
+				}
+			}
+			previous = s;
+		}
+
+		return batch.size();
+	}
+
+	/*-------------------------------------------------------------------------*/
+	public static void main(String[] args)
+	{
+		Database db = Database.getInstance();
+		db.loadAll();
+
+		Map<Misc.WaterAdditionFormula, Boolean> salts = new HashMap<>();
+		Map<Misc.WaterAdditionFormula, Boolean> all = new HashMap<>();
+		for (Misc.WaterAdditionFormula f : Misc.WaterAdditionFormula.values())
+		{
+			salts.put(f, f != Misc.WaterAdditionFormula.LACTIC_ACID &&
+				f != Misc.WaterAdditionFormula.PHOSPHORIC_ACID);
+			all.put(f, true);
+		}
+
+		WaterBuilder wb = new WaterBuilder();
+		List<WaterParameters> targets = new ArrayList<>(new TreeMap<>(db.getWaterParameters()).values());
+
+		// in reverse too, the ranking must not depend on the order given
+		List<WaterParameters> reversed = new ArrayList<>(targets);
+		Collections.reverse(reversed);
+
+		int runs = 0, solved = 0;
+		for (Water water : new TreeMap<>(db.getWaters()).values())
+		{
+			for (WaterBuilder.AdditionGoal goal : WaterBuilder.AdditionGoal.values())
+			{
+				String desc = water.getName() + " " + goal.name();
+				solved += check(desc + " salts", wb, water, targets, salts, goal);
+				solved += check(desc + " salts reversed", wb, water, reversed, salts, goal);
+				solved += check(desc + " all", wb, water, targets, all, goal);
+				runs += 3;
+			}
+		}
+
+		Water water = db.getWaters().values().iterator().next();
+		if (!wb.calcAdditions(water, Collections.emptyList(), salts, WaterBuilder.AdditionGoal.MINIMISE_ADDITIONS).isEmpty())
+		{
+			fail("solutions for no targets");
+		}
+
+		System.out.println(runs + " runs of " + targets.size() + " targets, " + solved + " solved");
+		System.out.println(failures == 0 ? "OK" : failures + " failures");
+	}
+}
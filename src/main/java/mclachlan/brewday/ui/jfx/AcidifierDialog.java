@@ -185,7 +185,7 @@ public class AcidifierDialog extends Dialog<Boolean>
 
 			if (targetMashPh.getQuantity() != null && misc != null)
 			{
-				Settings.MashPhModel model = Settings.MashPhModel.valueOf(Database.getInstance().getSettings().get(Settings.MASH_PH_MODEL));
+				Settings.MashPhModel model = Database.getInstance().getSettings().getSnapshot().getMashPhModel();
 				switch (model)
 				{
 					case EZ_WATER:
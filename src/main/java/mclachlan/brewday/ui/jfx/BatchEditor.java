@@ -53,6 +53,7 @@ class BatchEditor extends MigPane
 	private TextArea batchNotes;
 	private CheckBox keyOnly;
 	private ToggleButton consumeInventory;
+	private List<BatchVolumeEstimate> estimates;
 	private FilteredList<BatchVolumeEstimate> filteredList;
 	private RecipeTableView recipeTableView;
 
@@ -97,8 +98,8 @@ class BatchEditor extends MigPane
 		detectDirty = false;
 
 		// recipes FK
-		List<BatchVolumeEstimate> bves = Brewday.getInstance().getBatchVolumeEstimates(batch);
-		filteredList = new FilteredList<>(FXCollections.observableList(bves));
+		estimates = Brewday.getInstance().getBatchVolumeEstimates(batch);
+		filteredList = new FilteredList<>(FXCollections.observableList(estimates));
 		table.setItems(filteredList);
 
 		// batch details
@@ -187,6 +188,8 @@ class BatchEditor extends MigPane
 
 			if (detectDirty)
 			{
+				// propagate the measurement to the volumes downstream
+				Brewday.getInstance().updateBatchVolumeEstimates(batch, estimates, bve);
 				refreshBatchAnalysis(batch);
 
 				rowFactory.setDirty(bve);
@@ -371,13 +374,13 @@ class BatchEditor extends MigPane
 		{
 			if (consume)
 			{
-				InventoryFacade.consumeInventory(inventoryDelta);
+				InventoryFacade.consumeInventory(batch, inventoryDelta);
 				batch.setInventoryConsumed(true);
 				consumeInventory.setText(StringUtils.getUiString("batch.consume.inventory.undo"));
 			}
 			else
 			{
-				InventoryFacade.restoreInventory(inventoryDelta);
+				InventoryFacade.restoreInventory(batch, inventoryDelta);
 				batch.setInventoryConsumed(false);
 				consumeInventory.setText(StringUtils.getUiString("batch.consume.inventory"));
 			}
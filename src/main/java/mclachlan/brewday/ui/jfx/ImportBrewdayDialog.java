@@ -123,7 +123,8 @@ class ImportBrewdayDialog extends Dialog<BitSet>
 			{
 				String dbDirPath = dbDir[0].getAbsolutePath();
 
-				Database db = new Database(dbDirPath);
+				// don't touch the directory being imported from
+				Database db = new Database(dbDirPath, true);
 				db.loadAll();
 
 				objs = new HashMap<>();
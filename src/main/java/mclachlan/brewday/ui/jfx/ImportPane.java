@@ -17,6 +17,7 @@
 
 package mclachlan.brewday.ui.jfx;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -29,7 +30,9 @@ import mclachlan.brewday.db.Database;
 import mclachlan.brewday.db.v2.V2DataObject;
 import mclachlan.brewday.equipment.EquipmentProfile;
 import mclachlan.brewday.ingredients.*;
+import mclachlan.brewday.inventory.InventoryLedger;
 import mclachlan.brewday.inventory.InventoryLineItem;
+import mclachlan.brewday.math.Quantity;
 import mclachlan.brewday.math.WaterParameters;
 import mclachlan.brewday.recipe.Recipe;
 import mclachlan.brewday.style.Style;
@@ -162,7 +165,7 @@ public class ImportPane extends MigPane
 		importData(objs.get(EquipmentProfile.class), db.getEquipmentProfiles(), JfxUi.EQUIPMENT_PROFILES, options.get(EQUIPMENT_NEW.ordinal()), options.get(EQUIPMENT_UPDATE.ordinal()));
 		importData(objs.get(WaterParameters.class), db.getWaterParameters(), JfxUi.WATER_PARAMETERS, options.get(WATER_PARAMETERS_NEW.ordinal()), options.get(WATER_PARAMETERS_UPDATE.ordinal()));
 		importData(objs.get(ProcessTemplate.class), db.getProcessTemplates(), JfxUi.PROCESS_TEMPLATES, options.get(PROCESS_TEMPLATE_NEW.ordinal()), options.get(PROCESS_TEMPLATE_UPDATE.ordinal()));
-		importData(objs.get(InventoryLineItem.class), db.getInventory(), JfxUi.INVENTORY, options.get(INVENTORY_NEW.ordinal()), options.get(INVENTORY_UPDATE.ordinal()));
+		importInventory(objs.get(InventoryLineItem.class), options.get(INVENTORY_NEW.ordinal()), options.get(INVENTORY_UPDATE.ordinal()));
 		importData(objs.get(Recipe.class), db.getRecipes(), JfxUi.RECIPES, options.get(RECIPE_NEW.ordinal()), options.get(RECIPE_UPDATE.ordinal()));
 		importData(objs.get(Batch.class), db.getBatches(), JfxUi.BATCHES, options.get(BATCH_NEW.ordinal()), options.get(BATCH_UDPATE.ordinal()));
 	}
@@ -208,6 +211,58 @@ public class ImportPane extends MigPane
 		}
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Imported inventory is recorded in the ledger, new items as receipts and
+	 * updated items as adjustments to the imported amount.
+	 */
+	private void importInventory(
+		Map<String, V2DataObject> imported,
+		boolean importNew,
+		boolean importDupes)
+	{
+		if (imported != null && imported.size() > 0)
+		{
+			InventoryLedger ledger = Database.getInstance().getInventoryLedger();
+			LocalDateTime now = LocalDateTime.now();
+			boolean dirty = false;
+
+			for (V2DataObject obj : imported.values())
+			{
+				InventoryLineItem item = (InventoryLineItem)obj;
+				InventoryLineItem current = ledger.getInventory().get(item.getName());
+				Quantity q = item.getQuantity();
+
+				if (current == null && importNew)
+				{
+					ledger.receive(item.getIngredient(), item.getType(), q, item.getUnit(), now);
+				}
+				else if (current != null && importDupes)
+				{
+					ledger.adjust(item.getIngredient(), item.getType(),
+						Quantity.newQuantity(q.get() - current.getQuantity().get(), q.getUnit()),
+						item.getUnit(), now);
+				}
+				else
+				{
+					continue;
+				}
+				dirty = true;
+
+				InventoryLineItem onHand = ledger.getInventory().get(item.getName());
+				if (onHand != null)
+				{
+					parent.setDirty(onHand);
+				}
+			}
+
+			if (dirty)
+			{
+				parent.setDirty(JfxUi.INVENTORY);
+			}
+		}
+	}
+
 	/*-------------------------------------------------------------------------*/
 	enum Bit
 	{
@@ -18,6 +18,7 @@
 
 package mclachlan.brewday.ui.jfx;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.function.*;
 import javafx.collections.ObservableList;
@@ -30,6 +31,7 @@ import mclachlan.brewday.BrewdayException;
 import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.inventory.InventoryLineItem;
+import mclachlan.brewday.inventory.InventoryTransaction;
 import mclachlan.brewday.math.Quantity;
 import mclachlan.brewday.recipe.*;
 import mclachlan.brewday.ui.UiUtils;
@@ -162,15 +164,11 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 			FermentableAddition addition = dialog.getOutput();
 			if (addition != null)
 			{
-				InventoryLineItem result = new InventoryLineItem(
+				receive(
 					addition.getFermentable().getName(),
 					IngredientAddition.Type.FERMENTABLES,
 					addition.getQuantity(),
 					addition.getUnit());
-
-				getTableModel().add(result);
-				setDirty(result);
-				getTable().getSelectionModel().select(result);
 			}
 		});
 
@@ -183,15 +181,11 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 			HopAddition addition = dialog.getOutput();
 			if (addition != null)
 			{
-				InventoryLineItem result = new InventoryLineItem(
+				receive(
 					addition.getHop().getName(),
 					IngredientAddition.Type.HOPS,
 					addition.getQuantity(),
 					addition.getUnit());
-
-				getTableModel().add(result);
-				setDirty(result);
-				getTable().getSelectionModel().select(result);
 			}
 		});
 
@@ -204,15 +198,11 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 			YeastAddition addition = dialog.getOutput();
 			if (addition != null)
 			{
-				InventoryLineItem result = new InventoryLineItem(
+				receive(
 					addition.getYeast().getName(),
 					IngredientAddition.Type.YEAST,
 					addition.getQuantity(),
 					addition.getUnit());
-
-				getTableModel().add(result);
-				setDirty(result);
-				getTable().getSelectionModel().select(result);
 			}
 		});
 
@@ -225,15 +215,11 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 			MiscAddition addition = dialog.getOutput();
 			if (addition != null)
 			{
-				InventoryLineItem result = new InventoryLineItem(
+				receive(
 					addition.getMisc().getName(),
 					IngredientAddition.Type.MISC,
 					addition.getQuantity(),
 					addition.getUnit());
-
-				getTableModel().add(result);
-				setDirty(result);
-				getTable().getSelectionModel().select(result);
 			}
 		});
 
@@ -246,15 +232,11 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 			WaterAddition addition = dialog.getOutput();
 			if (addition != null)
 			{
-				InventoryLineItem result = new InventoryLineItem(
+				receive(
 					addition.getWater().getName(),
 					IngredientAddition.Type.WATER,
 					addition.getQuantity(),
 					addition.getUnit());
-
-				getTableModel().add(result);
-				setDirty(result);
-				getTable().getSelectionModel().select(result);
 			}
 		});
 
@@ -286,9 +268,10 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 
 				this.add(new Label());
 
+				// a stocktake, recorded as an adjustment
 				addQuantityWidget(obj, parent, "inventory.quantity",
 					InventoryLineItem::getQuantity,
-					(BiConsumer<InventoryLineItem, Quantity>)InventoryLineItem::setQuantity,
+					(BiConsumer<InventoryLineItem, Quantity>)InventoryPane.this::adjust,
 					obj.getUnit(),
 					"wrap");
 			}
@@ -354,7 +337,62 @@ public class InventoryPane extends V2DataObjectPane<InventoryLineItem>
 	@Override
 	protected void cascadeDelete(String deletedName)
 	{
-		// no op
+		// written off in the ledger, which drops it from the on-hand view
+		InventoryLineItem item = Database.getInstance().getInventory().get(deletedName);
+		if (item != null)
+		{
+			adjust(item, Quantity.newQuantity(0, item.getQuantity().getUnit()));
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records a delivery in the inventory ledger, and selects the line item
+	 * it lands on.
+	 */
+	private void receive(
+		String ingredient,
+		IngredientAddition.Type type,
+		Quantity quantity,
+		Quantity.Unit unit)
+	{
+		Database db = Database.getInstance();
+		InventoryTransaction t = db.getInventoryLedger().receive(
+			ingredient, type, quantity, unit, LocalDateTime.now());
+
+		refresh(db);
+
+		InventoryLineItem item = db.getInventory().get(t.getInventoryId());
+		if (item != null)
+		{
+			setDirty(item);
+			getTable().getSelectionModel().select(item);
+		}
+		else
+		{
+			setDirty(JfxUi.INVENTORY);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Records an adjustment in the inventory ledger that brings the given
+	 * line item to the given amount.
+	 */
+	private void adjust(InventoryLineItem item, Quantity quantity)
+	{
+		Quantity balance = Database.getInstance().getInventoryLedger().getBalance(item.getName());
+		double delta = quantity.get() - (balance == null ? 0 : balance.get());
+
+		if (delta != 0)
+		{
+			Database.getInstance().getInventoryLedger().adjust(
+				item.getIngredient(),
+				item.getType(),
+				Quantity.newQuantity(delta, quantity.getUnit()),
+				item.getUnit(),
+				LocalDateTime.now());
+		}
 	}
 
 	@Override
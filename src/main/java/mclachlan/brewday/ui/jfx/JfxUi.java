@@ -34,11 +34,14 @@ import javafx.stage.Stage;
 import jfxtras.styles.jmetro.JMetro;
 import mclachlan.brewday.Brewday;
 import mclachlan.brewday.BrewdayException;
+import mclachlan.brewday.RecipeRunCache;
 import mclachlan.brewday.Settings;
 import mclachlan.brewday.StringUtils;
 import mclachlan.brewday.batch.Batch;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.document.DocumentCreator;
+import mclachlan.brewday.equipment.EquipmentProfile;
+import mclachlan.brewday.inventory.MaterialsPlanner;
 import mclachlan.brewday.ingredients.*;
 import mclachlan.brewday.recipe.Recipe;
 import mclachlan.brewday.style.Style;
@@ -637,6 +640,42 @@ public class JfxUi extends Application implements TrackDirty
 		this.detectDirty = detectDirty;
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Drops any cached recipe runs and bills of materials that an edit to the
+	 * given object affects.
+	 */
+	private void invalidateRuns(Object obj)
+	{
+		RecipeRunCache runCache = Brewday.getInstance().getRunCache();
+		MaterialsPlanner materialsPlanner = Brewday.getInstance().getMaterialsPlanner();
+
+		if (obj instanceof Recipe)
+		{
+			runCache.invalidate((Recipe)obj);
+			materialsPlanner.invalidate((Recipe)obj);
+		}
+		else if (obj instanceof EquipmentProfile)
+		{
+			runCache.invalidate((EquipmentProfile)obj);
+		}
+		else if (obj instanceof String)
+		{
+			switch ((String)obj)
+			{
+				// recipes refer to these by name
+				case WATER:
+				case HOPS:
+				case FERMENTABLES:
+				case YEAST:
+				case MISC:
+					runCache.invalidateAll();
+					materialsPlanner.invalidateAll();
+					break;
+			}
+		}
+	}
+
 	/*-------------------------------------------------------------------------*/
 	public void setDirty(Object... objs)
 	{
@@ -644,6 +683,8 @@ public class JfxUi extends Application implements TrackDirty
 		{
 			for (Object obj : objs)
 			{
+				invalidateRuns(obj);
+
 				if (!this.isDirty(obj))
 				{
 					this.dirty.add(obj);
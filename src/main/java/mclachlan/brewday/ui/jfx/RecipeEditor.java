@@ -169,15 +169,15 @@ class RecipeEditor extends MigPane implements TrackDirty
 			{
 				if (dirty instanceof ProcessStep)
 				{
-					// need to run this first to set up the recipe internal state before refreshing
-					rerunRecipe(recipe);
-
 					ProcessStep step = (ProcessStep)dirty;
 
+					// need to run this first to set up the recipe internal state before refreshing
+					rerunRecipe(recipe, step);
+
 					recipeTreeView.setDirty(step);
 					parent.setDirty(recipe, dirty);
 
-					rerunRecipe(recipe);
+					rerunRecipe(recipe, step);
 
 					Node visible = stepCards.getVisible();
 					if (visible instanceof ProcessStepPane)
@@ -187,14 +187,15 @@ class RecipeEditor extends MigPane implements TrackDirty
 				}
 				else if (dirty instanceof IngredientAddition)
 				{
-					rerunRecipe(recipe);
-
 					IngredientAddition addition = (IngredientAddition)dirty;
+					ProcessStep step = getStep(addition);
+
+					rerunRecipe(recipe, step);
 
 					recipeTreeView.setDirty(addition);
 					parent.setDirty(recipe, dirty);
 
-					rerunRecipe(recipe);
+					rerunRecipe(recipe, step);
 
 					Node visible = stepCards.getVisible();
 					if (visible instanceof IngredientAdditionPane)
@@ -239,6 +240,47 @@ class RecipeEditor extends MigPane implements TrackDirty
 		refreshEndResult(recipe);
 	}
 
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * Re-runs the recipe after a change to the given step, only re-applying
+	 * the steps that the change can affect. A null step re-runs everything.
+	 */
+	protected void rerunRecipe(Recipe recipe, ProcessStep step)
+	{
+		if (processTemplateMode || step == null)
+		{
+			rerunRecipe(recipe);
+		}
+		else
+		{
+			recipe.run(step);
+
+			refreshLog(recipe);
+			refreshEndResult(recipe);
+		}
+	}
+
+	/*-------------------------------------------------------------------------*/
+	/**
+	 * @return the step in the current recipe holding the given addition, or
+	 * null if there isn't one
+	 */
+	private ProcessStep getStep(IngredientAddition addition)
+	{
+		for (ProcessStep step : recipe.getSteps())
+		{
+			for (IngredientAddition ia : step.getIngredientAdditions())
+			{
+				if (ia == addition)
+				{
+					return step;
+				}
+			}
+		}
+
+		return null;
+	}
+
 	/*-------------------------------------------------------------------------*/
 	@Override
 	public void clearDirty()
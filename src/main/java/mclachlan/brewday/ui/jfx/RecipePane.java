@@ -21,6 +21,7 @@ import java.util.*;
 import javafx.scene.Parent;
 import javafx.scene.control.TableColumn;
 import javafx.scene.image.Image;
+import mclachlan.brewday.RecipeEvaluator;
 import mclachlan.brewday.batch.Batch;
 import mclachlan.brewday.db.Database;
 import mclachlan.brewday.math.Quantity;
@@ -99,44 +100,37 @@ public class RecipePane extends V2DataObjectPane<Recipe>
 	@Override
 	protected String[] getCsvColumns(Recipe recipe)
 	{
-		List<Volume> beers = null;
-		try
-		{
-			recipe.run();
-			beers = recipe.getBeers();
-		}
-		catch (Exception e)
-		{
-			// if the recipe is poked just return this blank row
-			return new String[]{recipe.getName(), "", "", "", "", ""};
-		}
+		return getCsvColumns(new RecipeEvaluator().evaluate(recipe));
+	}
 
-		if (beers != null && !beers.isEmpty())
-		{
-			// find the main batch
-			Volume mainBeer = beers.get(0);
+	@Override
+	protected List<String[]> getCsvRows(List<Recipe> recipes)
+	{
+		List<String[]> result = new ArrayList<>();
+		new RecipeEvaluator().evaluate(recipes, r -> result.add(getCsvColumns(r)));
+		return result;
+	}
 
-			for (Volume beer : beers)
-			{
-				if (beer.getVolume().get() > mainBeer.getVolume().get())
-				{
-					mainBeer = beer;
-				}
-			}
+	private String[] getCsvColumns(RecipeEvaluator.Result result)
+	{
+		Volume mainBeer = result.getBeer();
 
+		if (mainBeer != null)
+		{
 			return new String[]
 				{
-					recipe.getName(),
-					""+mainBeer.getOriginalGravity().get(Quantity.Unit.SPECIFIC_GRAVITY),
-					""+mainBeer.getGravity().get(Quantity.Unit.SPECIFIC_GRAVITY),
-					""+mainBeer.getAbv().get(Quantity.Unit.PERCENTAGE_DISPLAY),
-					""+mainBeer.getBitterness().get(Quantity.Unit.IBU),
-					""+mainBeer.getColour().get(Quantity.Unit.SRM)
+					result.getRecipeName(),
+					""+result.getOriginalGravity().get(Quantity.Unit.SPECIFIC_GRAVITY),
+					""+result.getFinalGravity().get(Quantity.Unit.SPECIFIC_GRAVITY),
+					""+result.getAbv().get(Quantity.Unit.PERCENTAGE_DISPLAY),
+					""+result.getBitterness().get(Quantity.Unit.IBU),
+					""+result.getColour().get(Quantity.Unit.SRM)
 				};
 		}
 		else
 		{
-			return new String[]{recipe.getName(), "", "", "", "", ""};
+			// if the recipe is poked just return this blank row
+			return new String[]{result.getRecipeName(), "", "", "", "", ""};
 		}
 	}
 
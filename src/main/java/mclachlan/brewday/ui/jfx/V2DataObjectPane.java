@@ -406,9 +406,9 @@ public abstract class V2DataObjectPane<T extends V2DataObject> extends MigPane i
 			{
 				pw.println(convertToCSV(getCsvHeaders()));
 
-				for (T t : selectedItems)
+				for (String[] row : getCsvRows(selectedItems))
 				{
-					pw.println(convertToCSV(getCsvColumns(t)));
+					pw.println(convertToCSV(row));
 				}
 			}
 			catch (Exception x)
@@ -428,6 +428,20 @@ public abstract class V2DataObjectPane<T extends V2DataObject> extends MigPane i
 		return new String[]{t.getName()};
 	}
 
+	/**
+	 * @return the CSV rows for the given items, one {@link #getCsvColumns}
+	 * per item unless overridden
+	 */
+	protected List<String[]> getCsvRows(List<T> items)
+	{
+		List<String[]> result = new ArrayList<>();
+		for (T t : items)
+		{
+			result.add(getCsvColumns(t));
+		}
+		return result;
+	}
+
 	private String convertToCSV(String[] data)
 	{
 		return Stream.of(data)
@@ -54,7 +54,7 @@ public class CreateProdDb
 			prodDb.getHops().clear();
 			prodDb.getYeasts().clear();
 			prodDb.getMiscs().clear();
-			prodDb.getInventory().clear();
+			prodDb.getInventoryLedger().clear();
 			prodDb.getRecipes().clear();
 			prodDb.getBatches().clear();
 			prodDb.getEquipmentProfiles().clear();
@@ -221,6 +221,9 @@ public class CreateProdDb
 			// should we do this? not doing it for now
 
 			prodDb.saveAll();
+
+			// ship plain snapshots, not journals
+			prodDb.compact();
 		}
 		catch (Exception e)
 		{